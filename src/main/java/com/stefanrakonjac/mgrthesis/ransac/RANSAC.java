@@ -1,5 +1,10 @@
 package com.stefanrakonjac.mgrthesis.ransac;
 
+import java.nio.DoubleBuffer;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * @author Stefan.Rakonjac
  *
@@ -15,11 +20,91 @@ public interface RANSAC extends Runnable {
 	/** Default Best Solution Probability [0-1]: 0.95 */
 	public static final double D_BEST_SOLUTION_PROBABILITY = 0.95d;
 	
+	/** Default Parallelism (number of concurrent hypothesis workers): 1 */
+	public static final int D_PARALLELISM = 1;
+	
+	/** Default Time Budget (in nanoseconds): 0, the run is not limited in time */
+	public static final long D_TIME_BUDGET = 0L;
+	
+	/** Default Minimal Number of Samples Drawn before the Local Optimization: 50 */
+	public static final int D_LO_MIN_SAMPLES = 50;
+	
+	/** Default Number of the Inner RANSAC Repetitions of the Local Optimization: 10 */
+	public static final int D_LO_REPETITIONS = 10;
+	
+	/** Default Number of the Iterative Least Squares Iterations of the Local Optimization: 4 */
+	public static final int D_LO_ITERATIONS = 4;
+	
+	/** Default Threshold Multiplier of the Local Optimization: 4 */
+	public static final double D_LO_THRESHOLD_MULTIPLIER = 4d;
+	
+	/** Default Maximal Fraction of the Run Time Spent by the Local Optimization [0-1]: 1 (not limited) */
+	public static final double D_LO_TIME_FRACTION = 1d;
+	
+	/** Default Sampling: {@link SAMPLING#UNIFORM} */
+	public static final SAMPLING D_SAMPLING = SAMPLING.UNIFORM;
+	
+	/**
+	 * Strategies of drawing the minimal samples
+	 */
+	public static enum SAMPLING {
+		
+		/** all the tentative pairs are drawn with the same probability */
+		UNIFORM, 
+		
+		/** progressive sampling (Chum, Matas: Matching with PROSAC), samples are drawn from a growing set of the pairs 
+		 * having the highest qualities, see {@link RANSAC#setQualities(double[])} */
+		PROSAC, 
+		
+		/** spatially local sampling (Nasuto, Craddock: NAPSAC), the first point of a sample is drawn from all the tentative pairs, 
+		 * the others from its neighbourhood in the first image (grid cells adjacent to the cell of the first point) */
+		NAPSAC;
+	}
+	
+	/** Default Sample Tests: {@link SAMPLE_TEST#REPEATED} and {@link SAMPLE_TEST#ORIENTATION} (the ones not changing the results) */
+	public static final Set<SAMPLE_TEST> D_SAMPLE_TESTS = Collections.unmodifiableSet(EnumSet.of(SAMPLE_TEST.REPEATED, SAMPLE_TEST.ORIENTATION));
+	
+	/**
+	 * Tests of the minimal samples: the geometric ones reject degenerate samples before the model is computed, 
+	 * the orientation one rejects the hypotheses of a sample before they are verified
+	 */
+	public static enum SAMPLE_TEST {
+		
+		/** two pairs of the sample are the same in both the images (duplicated matches), the sample is of a lower rank */
+		REPEATED, 
+		
+		/** two pairs of the sample share a point in one of the images (matches of a bursty visual word), at most one of them is correct */
+		COINCIDENT, 
+		
+		/** all the points of the sample are (nearly) collinear in one of the images */
+		COLLINEAR, 
+		
+		/** oriented epipolar constraint (Chum, Werner, Matas: Epipolar Geometry Estimation via RANSAC Benefits from the Oriented 
+		 * Epipolar Constraint), all the points of the sample must be on the same side of the epipole */
+		ORIENTATION;
+	}
+	
 	/**
 	 * @return The name of the RANSAC implementation
 	 */
 	String name();
 	
+	/**
+	 * <p> Asks the run in progress (or the next run, if none is in progress) to stop. The run stops drawing samples at its next check 
+	 * (every few iterations) and provides the so-far-the-best model and inliers, as if its time budget was exhausted. The request is
+	 * not withdrawn by the run, see {@link #clearCancel()}. Can be called from any thread. </p>
+	 */
+	void cancel();
+	
+	/**
+	 * <p> Withdraws the request of {@link #cancel()}, to be called before the instance is handed over to a new run (e.g. when the run 
+	 * is submitted) so that a cancellation arriving any time later is not lost </p>
+	 * 
+	 * @return
+	 * 		Returns {@code this}
+	 */
+	RANSAC clearCancel();
+	
 	/**
 	 * 
 	 * @return
@@ -39,6 +124,51 @@ public interface RANSAC extends Runnable {
 	 */
 	double[][] getOutliers();
 	
+	/**
+	 * @return
+	 * 		Number of inliers found by the last run
+	 */
+	int getInliersCount();
+	
+	/**
+	 * <p> Inliers of the last run as the (ascending) indices into the tentative pairs, so that no coordinates need to be copied. </p>
+	 * 
+	 * @return
+	 * 		Array of {@link #getInliersCount()} indices
+	 */
+	int[] getInlierIndices();
+	
+	/**
+	 * <p> Inliers of the last run as a mask over the tentative pairs: {@code true} at position {@code i} 
+	 * means the {@code i}-th tentative pair is an inlier. The array is owned by this instance and must not be modified. </p>
+	 * 
+	 * @return
+	 * 		Array having the length equal to the number of tentative pairs
+	 */
+	boolean[] getInliersMask();
+	
+	/**
+	 * <p> Confidence of the last run: probability that at least one of the samples drawn consisted of inliers only, 
+	 * given the inlier ratio of the model found. </p>
+	 * 
+	 * @return
+	 * 		Value from the interval [0, 1]
+	 */
+	double getConfidence();
+	
+	/**
+	 * @return
+	 * 		{@code true} if the last run drew all the samples needed to reach the best solution probability, 
+	 * 		{@code false} if it was stopped by the maximal number of iterations or by the time budget
+	 */
+	boolean isConfidenceReached();
+	
+	/**
+	 * @return
+	 * 		Statistics of the last run, {@code null} if not collected (see {@link #collectStats(boolean)})
+	 */
+	RANSACStats getStats();
+	
 	
 	/* --------------- RANSAC data setters --------------- */
 
@@ -49,6 +179,48 @@ public interface RANSAC extends Runnable {
 	 * 		{@code this}
 	 */
 	RANSAC setTentativePairs(double[][] pairs);
+	
+	/**
+	 * <p> Flat pairs setter: pairs are stored one after another as {@code x1, y1, x2, y2} quadruples. </p>
+	 * <p> The array is used directly (not copied), so it must not be modified while the run or its results are in use. </p>
+	 * 
+	 * @param pairs
+	 * 		Array holding at least {@code 4*count} coordinates
+	 * @param count
+	 * 		Number of pairs
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setTentativePairs(double[] pairs, int count);
+	
+	/**
+	 * <p> Single precision flat pairs setter, stored as by {@link #setTentativePairs(double[], int)}. Pairs take half of the memory 
+	 * of the double precision ones; runs widen the coordinates, so the results are the same as of the double precision pairs having 
+	 * the same coordinates. </p>
+	 * <p> The array is used directly (not copied), so it must not be modified while the run or its results are in use. </p>
+	 * 
+	 * @param pairs
+	 * 		Array holding at least {@code 4*count} coordinates
+	 * @param count
+	 * 		Number of pairs
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setTentativePairs(float[] pairs, int count);
+	
+	/**
+	 * <p> Flat pairs setter reading {@code 4*count} coordinates (see {@link #setTentativePairs(double[], int)}) 
+	 * from the current position of the buffer; position of the buffer is not changed. </p>
+	 * <p> Heap buffers wrapping a whole array are used directly (not copied), other buffers are copied. </p>
+	 * 
+	 * @param pairs
+	 * 		Buffer holding at least {@code 4*count} remaining coordinates
+	 * @param count
+	 * 		Number of pairs
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setTentativePairs(DoubleBuffer pairs, int count);
 
 	/**
 	 * Threshold setter
@@ -68,6 +240,18 @@ public interface RANSAC extends Runnable {
 	 */
 	RANSAC setMaxIterations(int maxIterations);
 	
+	/**
+	 * <p> Time budget setter: the run stops drawing samples once the budget is exhausted and returns the so-far-the-best model 
+	 * and inliers (see {@link #isConfidenceReached()}). The clock is checked every few iterations only, 
+	 * so the budget may be exceeded by a couple of iterations and by the final model refinement, if any. </p>
+	 * 
+	 * @param timeBudget
+	 * 		Time budget of a single run in nanoseconds, 0 for no limit
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setTimeBudget(long timeBudget);
+	
 	/**
 	 * Best solution probability setter
 	 * 
@@ -93,4 +277,133 @@ public interface RANSAC extends Runnable {
 	 * @return
 	 */
 	RANSAC doOptimizations(boolean doOptimizations);
+	
+	/**
+	 * <p> Local optimization setter: minimal number of samples drawn before the first local optimization is run. </p>
+	 * <p> Implementations not supporting local optimization ignore this value, as well as the other local optimization parameters. </p>
+	 * 
+	 * @param minSamples
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setLocalOptimizationMinSamples(int minSamples);
+	
+	/**
+	 * <p> Local optimization setter: number of the inner RANSAC repetitions, each of them drawing a non-minimal sample 
+	 * from the inliers and refining its model by the iterative least squares. </p>
+	 * 
+	 * @param repetitions
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setLocalOptimizationRepetitions(int repetitions);
+	
+	/**
+	 * <p> Local optimization setter: number of the iterative (re-weighted) least squares iterations, 
+	 * the threshold shrinks from {@code threshold * thresholdMultiplier} to {@code threshold} in these steps. </p>
+	 * 
+	 * @param iterations
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setLocalOptimizationIterations(int iterations);
+	
+	/**
+	 * <p> Local optimization setter: multiplier of the threshold selecting the inliers the local optimization starts from. </p>
+	 * 
+	 * @param thresholdMultiplier
+	 * 		Value not lower than 1
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setLocalOptimizationThresholdMultiplier(double thresholdMultiplier);
+	
+	/**
+	 * <p> Local optimization setter: maximal fraction of the run time spent by the local optimizations. Local optimization is skipped 
+	 * while the time already spent by the local optimizations exceeds this fraction of the time elapsed since the run started 
+	 * (the final local optimization of a run having none is always done). </p>
+	 * 
+	 * @param timeFraction
+	 * 		Value from the interval [0, 1]; 1 means not limited, 0 means the final local optimization only
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setLocalOptimizationTimeFraction(double timeFraction);
+	
+	/**
+	 * <p> Do randomized verification (Wald's sequential probability ratio test) setter: hypotheses are verified on the points
+	 * in random order and rejected as soon as they are evaluated as bad ones, instead of being scored on all the points. </p>
+	 * <p> Implementations not supporting randomized verification ignore this value. </p>
+	 * 
+	 * @param doSPRT
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC doSPRT(boolean doSPRT);
+	
+	/**
+	 * <p> Collect statistics setter: the runs provide their {@link RANSACStats} (see {@link #getStats()}). 
+	 * The statistics are not collected by default, as the timings add few {@link System#nanoTime()} calls per sample. </p>
+	 * 
+	 * @param collectStats
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC collectStats(boolean collectStats);
+	
+	/**
+	 * <p> Parallelism setter: number of workers drawing and verifying hypotheses concurrently during a single run. </p>
+	 * <p> Implementations not supporting parallel hypothesis generation ignore this value. </p>
+	 * 
+	 * @param parallelism
+	 * 		Number of workers, must be at least 1 (1 means single-threaded run)
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setParallelism(int parallelism);
+	
+	/**
+	 * <p> Seed setter: runs of the same implementation with the same seed and the same data draw the same samples. 
+	 * Parallel runs derive an independent stream for each worker, but the order in which workers take the iterations is not fixed. </p>
+	 * <p> Without a seed, every run is seeded differently. </p>
+	 * 
+	 * @param seed
+	 * 		Seed of the random samples
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setSeed(long seed);
+	
+	/**
+	 * <p> Sampling setter. Implementations not supporting provided sampling ignore this value. </p>
+	 * 
+	 * @param sampling
+	 * 		Strategy of drawing the minimal samples
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setSampling(SAMPLING sampling);
+	
+	/**
+	 * <p> Sample tests setter: tests done with every minimal sample, see {@link SAMPLE_TEST}. The rejected samples are counted by 
+	 * the statistics (see {@link RANSACStats#getSampleTestRejections(SAMPLE_TEST)}). Implementations not supporting a test ignore it. </p>
+	 * 
+	 * @param sampleTests
+	 * 		Tests to be done, copied; empty set disables all of them
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setSampleTests(Set<SAMPLE_TEST> sampleTests);
+	
+	/**
+	 * <p> Qualities setter: quality of each tentative pair (e.g. reliability of the visual word match), 
+	 * the higher the value, the more likely the pair is an inlier. Used by {@link SAMPLING#PROSAC} sampling. </p>
+	 * <p> The array is used directly (not copied), so it must not be modified while the run is in progress. </p>
+	 * 
+	 * @param qualities
+	 * 		Array having the length equal to the number of tentative pairs (checked by the run), {@code null} to clear the qualities
+	 * @return
+	 * 		{@code this}
+	 */
+	RANSAC setQualities(double[] qualities);
 }
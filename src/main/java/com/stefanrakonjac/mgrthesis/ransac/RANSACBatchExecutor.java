@@ -0,0 +1,644 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLING;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.AffineVerifierImpl;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Verifies many image pairs (e.g. the candidates of a re-ranked query) on a fixed number of threads. Each thread owns
+ * one RANSAC instance created by the {@link Provider}, reused by all the jobs the thread runs, so that the buffers
+ * (and the per-thread workspaces of the implementations) are allocated once per thread instead of once per image pair. </p>
+ *
+ * <p> Jobs carry the tentative pairs and the run parameters ({@link Job}), which are applied to the instance before each run;
+ * the settings of the instance not covered by the job (local optimization, randomized verification etc.) are the ones of the provider.
+ * Results are streamed back in the order the jobs complete (see {@link Batch#take()}). </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class RANSACBatchExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(RANSACBatchExecutor.class);
+
+	private static final AtomicInteger EXECUTORS = new AtomicInteger();
+
+	/**
+	 * <p> Provider of the RANSAC instances, called once by each thread of the executor </p>
+	 *
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	public static interface Provider {
+
+		/**
+		 * @return
+		 * 		Returns new configured RANSAC implementation
+		 */
+		RANSAC newInstance();
+	}
+
+	private final int threads;
+	private final ExecutorService executor;
+	private final ThreadLocal<RANSAC> instances;
+
+	/* totals over all the batches */
+	private final AtomicLong verifiedJobs = new AtomicLong();
+	private final AtomicLong verifiedPairs = new AtomicLong();
+	private final AtomicLong busyTime = new AtomicLong();
+
+	/**
+	 * @param provider
+	 * 		Provider of the RANSAC instances
+	 * @param threads
+	 * 		Number of threads, at least 1
+	 */
+	public RANSACBatchExecutor(final Provider provider, final int threads) {
+
+		if(provider == null)
+			throw new IllegalArgumentException("provider is null");
+		if(threads < 1)
+			throw new IllegalArgumentException("threads: " + threads);
+
+		logger.debug("Creating batch executor of {} threads", threads);
+
+		this.threads = threads;
+		this.instances = new ThreadLocal<RANSAC>() {
+
+			@Override
+			protected RANSAC initialValue() {
+
+				final RANSAC ransac = provider.newInstance();
+				logger.debug("{} instance created for thread {}", ransac.name(), Thread.currentThread().getName());
+
+				return ransac;
+			}
+		};
+
+		final int executorNumber = EXECUTORS.incrementAndGet();
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				final Thread thread = new Thread(runnable, "ransac-batch-" + executorNumber + "-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * <p> Submits provided jobs, they are run in the order of the list (as the threads become free) </p>
+	 *
+	 * @param jobs
+	 * 		Jobs to be run
+	 * @return
+	 * 		Returns batch streaming the results of the jobs
+	 */
+	public Batch submit(final List<Job> jobs) {
+
+		if(jobs == null)
+			throw new IllegalArgumentException("jobs is null");
+
+		final Batch batch = new Batch(jobs.size());
+
+		for(Job job : jobs) {
+
+			if(job == null)
+				throw new IllegalArgumentException("jobs contain null");
+
+			batch.pairs += job.count;
+		}
+
+		logger.debug("Submitting batch of {} jobs ({} tentative pairs)", jobs.size(), batch.pairs);
+
+		for(Job job : jobs) {
+
+			final JobFuture future = new JobFuture(job, batch);
+			batch.futures.add(future);
+			executor.execute(future);
+		}
+
+		return batch;
+	}
+
+	/**
+	 * <p> Stops accepting new batches; the jobs submitted are completed </p>
+	 */
+	public void shutdown() {
+		logger.debug("shutdown()");
+
+		executor.shutdown();
+	}
+
+	/**
+	 * <p> Stops accepting new batches and cancels the jobs submitted </p>
+	 */
+	public void shutdownNow() {
+		logger.debug("shutdownNow()");
+
+		for(Runnable runnable : executor.shutdownNow()) {
+			((JobFuture) runnable).cancel(false);
+		}
+	}
+
+	/**
+	 * @param timeout
+	 * 		Maximal time to wait
+	 * @param unit
+	 * 		Unit of the timeout
+	 * @return
+	 * 		Returns {@code true} if all the threads have terminated, {@code false} if the timeout elapsed
+	 * @throws InterruptedException
+	 * 		If interrupted while waiting
+	 */
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return
+	 * 		Number of the jobs run to the end (not cancelled, not failed) by this executor so far
+	 */
+	public long getVerifiedJobs() {
+		return verifiedJobs.get();
+	}
+
+	/**
+	 * @return
+	 * 		Number of the tentative pairs of the jobs run to the end by this executor so far
+	 */
+	public long getVerifiedPairs() {
+		return verifiedPairs.get();
+	}
+
+	/**
+	 * @return
+	 * 		Throughput of a single thread: tentative pairs verified per second of the time spent by the runs; multiplied by
+	 * 		the number of the threads it estimates the throughput of the executor, see {@link Batch#getThroughput()} for the measured one
+	 */
+	public double getThreadThroughput() {
+
+		final long time = busyTime.get();
+		return time == 0 ? 0d : verifiedPairs.get() * 1e9 / time;
+	}
+
+	/* -------------------------------------------------------------------------
+	 * Jobs and results
+	 * ------------------------------------------------------------------------- */
+
+	/**
+	 * <p> Tentative pairs of a single image pair and the parameters of their verification. Parameters not set have the default
+	 * values of {@link RANSAC}; without a seed, every job is seeded differently. </p>
+	 *
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	public static final class Job {
+
+		private final String name;
+		private final double[] pairs;
+		private final int count;
+
+		private double threshold = RANSAC.D_TRESHOLD;
+		private int maxIterations = RANSAC.D_MAX_ITERATIONS;
+		private long timeBudget = RANSAC.D_TIME_BUDGET;
+		private double bestSolutionProbability = RANSAC.D_BEST_SOLUTION_PROBABILITY;
+		private int inliersLimit;
+		private long seed = XorShiftRandom.newSeed();
+		private SAMPLING sampling = RANSAC.D_SAMPLING;
+		private double[] qualities;
+		private double[] shapes;
+		private boolean collectStats;
+
+		/**
+		 * @param name
+		 * 		Name of the job (e.g. name of the image verified against the query one)
+		 * @param pairs
+		 * 		Tentative pairs, see {@link RANSAC#setTentativePairs(double[][])}; copied
+		 */
+		public Job(final String name, final double[][] pairs) {
+			this(name, flatten(pairs), pairs.length);
+		}
+
+		/**
+		 * @param name
+		 * 		Name of the job (e.g. name of the image verified against the query one)
+		 * @param pairs
+		 * 		Flat tentative pairs, see {@link RANSAC#setTentativePairs(double[], int)}; not copied
+		 * @param count
+		 * 		Number of pairs
+		 */
+		public Job(final String name, final double[] pairs, final int count) {
+
+			if(pairs == null)
+				throw new IllegalArgumentException("pairs is null");
+			if(count < 0 || pairs.length < 4*count)
+				throw new IllegalArgumentException("count: " + count + " (coordinates: " + pairs.length + ")");
+
+			this.name = name;
+			this.pairs = pairs;
+			this.count = count;
+		}
+
+		private static double[] flatten(final double[][] pairs) {
+
+			if(pairs == null)
+				throw new IllegalArgumentException("pairs is null");
+
+			final double[] retval = new double[4*pairs.length];
+			for(int i = 0; i < pairs.length; i++) {
+
+				if(pairs[i].length != 4)
+					throw new IllegalArgumentException("pair does not have exact 4 coordinates ((x1, y1) -> (x2, y2))");
+
+				System.arraycopy(pairs[i], 0, retval, 4*i, 4);
+			}
+
+			return retval;
+		}
+
+		/**
+		 * <p> Applies the tentative pairs and the parameters of this job to provided instance </p>
+		 */
+		private void configure(final RANSAC ransac) {
+
+			ransac.setTentativePairs(pairs, count)
+				  .setThreshold(threshold)
+				  .setMaxIterations(maxIterations)
+				  .setTimeBudget(timeBudget)
+				  .setBestSolutionProbability(bestSolutionProbability)
+				  .setInliersLimit(inliersLimit)
+				  .setSeed(seed)
+				  .setSampling(sampling)
+				  .setQualities(qualities)
+				  .collectStats(collectStats);
+
+			if(ransac instanceof AffineVerifierImpl) {
+				((AffineVerifierImpl) ransac).setShapes(shapes);
+			} else if(shapes != null) {
+				throw new IllegalStateException(ransac.name() + " does not use the shapes of the features");
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return
+		 * 		Flat tentative pairs of the job, must not be modified
+		 */
+		public double[] getPairs() {
+			return pairs;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return
+		 * 		Copy of the {@code index}-th tentative pair
+		 */
+		public double[] getPair(final int index) {
+
+			if(index < 0 || index >= count)
+				throw new IllegalArgumentException("index: " + index);
+
+			final double[] retval = new double[4];
+			System.arraycopy(pairs, 4*index, retval, 0, 4);
+
+			return retval;
+		}
+
+		/** see {@link RANSAC#setThreshold(double)} */
+		public Job setThreshold(final double threshold) {
+			this.threshold = threshold;
+			return this;
+		}
+
+		/** see {@link RANSAC#setMaxIterations(int)} */
+		public Job setMaxIterations(final int maxIterations) {
+			this.maxIterations = maxIterations;
+			return this;
+		}
+
+		/** see {@link RANSAC#setTimeBudget(long)} */
+		public Job setTimeBudget(final long timeBudget) {
+			if(timeBudget < 0) throw new IllegalArgumentException("timeBudget: " + timeBudget);
+
+			this.timeBudget = timeBudget;
+			return this;
+		}
+
+		/** see {@link RANSAC#setBestSolutionProbability(double)} */
+		public Job setBestSolutionProbability(final double bestSolutionProbability) {
+			this.bestSolutionProbability = bestSolutionProbability;
+			return this;
+		}
+
+		/** see {@link RANSAC#setInliersLimit(int)} */
+		public Job setInliersLimit(final int inliersLimit) {
+			this.inliersLimit = inliersLimit;
+			return this;
+		}
+
+		/** see {@link RANSAC#setSeed(long)} */
+		public Job setSeed(final long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/** see {@link RANSAC#setSampling(SAMPLING)} */
+		public Job setSampling(final SAMPLING sampling) {
+			if(sampling == null) throw new IllegalArgumentException("sampling is null");
+
+			this.sampling = sampling;
+			return this;
+		}
+
+		/** see {@link RANSAC#setQualities(double[])} */
+		public Job setQualities(final double[] qualities) {
+			this.qualities = qualities;
+			return this;
+		}
+
+		/** see {@link AffineVerifierImpl#setShapes(double[])}, the jobs having the shapes fail on the other implementations */
+		public Job setShapes(final double[] shapes) {
+			this.shapes = shapes;
+			return this;
+		}
+
+		/** see {@link RANSAC#collectStats(boolean)} */
+		public Job collectStats(final boolean collectStats) {
+			this.collectStats = collectStats;
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Job [name=" + name + ", count=" + count + ", threshold=" + threshold + "]";
+		}
+	}
+
+	/**
+	 * <p> Future of a single job, completed by the run (the result being the immutable {@link RANSACResult}), by a failure
+	 * of the run or by the cancellation. Cancelling the future stops the run at its next check (see {@link RANSAC#cancel()}),
+	 * the cancellation of a job no longer running is ignored (the instance of the thread may be running another job already). </p>
+	 *
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	public final class JobFuture extends FutureTask<RANSACResult> {
+
+		private final Job job;
+		private final Batch batch;
+
+		/** guards {@link #running}, so that the instance is not handed over to the next job while this one is being cancelled */
+		private final Object runningLock = new Object();
+		/** instance running the job, {@code null} if not running */
+		private RANSAC running;
+
+		private JobFuture(final Job job, final Batch batch) {
+			this(new JobCall(job, batch));
+		}
+
+		private JobFuture(final JobCall call) {
+
+			super(call);
+
+			this.job = call.job;
+			this.batch = call.batch;
+			call.future = this;
+		}
+
+		public Job getJob() {
+			return job;
+		}
+
+		@Override
+		public void run() {
+
+			// the cancellations of the previous jobs of the instance are withdrawn, the ones of this job are kept from now on
+			synchronized (runningLock) {
+				running = instances.get().clearCancel();
+			}
+
+			try {
+				super.run();
+			} finally {
+				synchronized (runningLock) {
+					running = null;
+				}
+			}
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+
+			final boolean retval = super.cancel(mayInterruptIfRunning);
+
+			// the run itself is not interruptible, it has to be asked to stop (unless done already)
+			if(retval) {
+				synchronized (runningLock) {
+					if(running != null) running.cancel();
+				}
+			}
+
+			return retval;
+		}
+
+		@Override
+		protected void done() {
+			batch.completed(this);
+		}
+	}
+
+	/**
+	 * <p> Run of a single job by the instance of the current thread </p>
+	 */
+	private final class JobCall implements Callable<RANSACResult> {
+
+		private final Job job;
+		private final Batch batch;
+		/** future of the job, set by its constructor */
+		private JobFuture future;
+
+		private JobCall(final Job job, final Batch batch) {
+			this.job = job;
+			this.batch = batch;
+		}
+
+		@Override
+		public RANSACResult call() {
+
+			final long startTime = System.nanoTime();
+
+			final RANSAC ransac = instances.get();
+			job.configure(ransac);
+			ransac.run();
+
+			final RANSACResult retval = new RANSACResult(ransac);
+
+			// the runs cancelled meanwhile (stopped early, their results discarded) are not counted
+			if(!future.isCancelled()) {
+				busyTime.addAndGet(System.nanoTime() - startTime);
+				verifiedPairs.addAndGet(job.count);
+				verifiedJobs.incrementAndGet();
+				batch.verifiedPairs.addAndGet(job.count);
+			}
+
+			return retval;
+		}
+	}
+
+	/**
+	 * <p> Jobs submitted together, their futures are provided in the order the jobs complete </p>
+	 *
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	public final class Batch {
+
+		private final long startTime = System.nanoTime();
+		private final int size;
+		private long pairs;
+
+		private final List<JobFuture> futures;
+		private final BlockingQueue<JobFuture> completed = new LinkedBlockingQueue<>();
+		private final AtomicInteger completedCount = new AtomicInteger();
+		private final AtomicLong verifiedPairs = new AtomicLong();
+		/** time the last job completed, {@code 0} until then */
+		private volatile long endTime;
+
+		/** number of the futures taken */
+		private int taken;
+
+		private Batch(final int size) {
+
+			this.size = size;
+			this.futures = Collections.synchronizedList(new ArrayList<JobFuture>(size));
+
+			if(size == 0) {
+				endTime = System.nanoTime();
+			}
+		}
+
+		private void completed(final JobFuture future) {
+
+			completed.add(future);
+
+			if(completedCount.incrementAndGet() == size) {
+
+				endTime = System.nanoTime();
+
+				logger.debug("Batch of {} jobs ({} tentative pairs) completed in {} ms, {} pairs/s", size, pairs,
+						(endTime - startTime) / 1000000, String.format("%.0f", getThroughput()));
+			}
+		}
+
+		/**
+		 * @return
+		 * 		Number of the jobs of the batch
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return
+		 * 		Total number of the tentative pairs of the jobs
+		 */
+		public long getPairs() {
+			return pairs;
+		}
+
+		/**
+		 * @return
+		 * 		{@code true} if not all the futures have been taken yet
+		 */
+		public boolean hasNext() {
+			return taken < size;
+		}
+
+		/**
+		 * <p> Waits for the next job to complete. Each future is provided once; {@link #size()} futures are provided in total.
+		 * To be called by a single consumer thread. </p>
+		 *
+		 * @return
+		 * 		Returns completed future of the job
+		 * @throws InterruptedException
+		 * 		If interrupted while waiting
+		 * @throws IllegalStateException
+		 * 		If all the futures have already been taken
+		 */
+		public JobFuture take() throws InterruptedException {
+
+			if(!hasNext())
+				throw new IllegalStateException("all the " + size + " futures have been taken");
+
+			final JobFuture retval = completed.take();
+			taken++;
+
+			return retval;
+		}
+
+		/**
+		 * @return
+		 * 		{@code true} if all the jobs have completed
+		 */
+		public boolean isDone() {
+			return completedCount.get() == size;
+		}
+
+		/**
+		 * <p> Cancels the jobs not completed yet, the running ones stop at their next check </p>
+		 */
+		public void cancel() {
+
+			synchronized (futures) {
+				for(JobFuture future : futures) {
+					future.cancel(false);
+				}
+			}
+		}
+
+		/**
+		 * @return
+		 * 		Tentative pairs of the jobs run to the end (not cancelled, not failed) verified per second of the time elapsed
+		 * 		since the batch was submitted until the last job completed (or until now, if not all of them have)
+		 */
+		public double getThroughput() {
+
+			final long end = endTime;
+			final long time = (end != 0 ? end : System.nanoTime()) - startTime;
+
+			return time <= 0 ? 0d : verifiedPairs.get() * 1e9 / time;
+		}
+	}
+}
@@ -1,9 +1,17 @@
 package com.stefanrakonjac.mgrthesis.ransac;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.AffineVerifierImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACEssentialImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACHomographyImpl;
 import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
 
 /**
@@ -41,6 +49,46 @@ public final class RANSACFactory {
 		return new LoRANSACImpl().doOptimizations(false);
 	}
 	
+	/**
+	 * <p> Provides a new LoRANSAC implementation estimating a homography (4-point samples) instead of the fundamental matrix,
+	 * suited for the (nearly) planar scenes. Local-optimization step is turned {@code on}. </p>
+	 * 
+	 * @return
+	 * 		Returns requested RANSAC implementation
+	 */
+	public static final RANSAC getLoRANSACHomographyImpl() {
+		
+		logger.debug("Creating new homography LoRANSAC implementation");
+		return new LoRANSACHomographyImpl();
+	}
+	
+	/**
+	 * <p> Provides a new LoRANSAC implementation of the calibrated images, estimating the essential matrix (5-point samples),
+	 * the intrinsics of both images need to be provided (see {@link LoRANSACEssentialImpl#setIntrinsics(double[], double[])}). Local-optimization 
+	 * step is turned {@code on}. </p>
+	 * 
+	 * @return
+	 * 		Returns requested RANSAC implementation
+	 */
+	public static final LoRANSACEssentialImpl getLoRANSACEssentialImpl() {
+		
+		logger.debug("Creating new essential matrix LoRANSAC implementation");
+		return new LoRANSACEssentialImpl();
+	}
+	
+	/**
+	 * <p> Provides a new spatial verifier generating the affine hypotheses from single correspondences of the affine covariant features,
+	 * the shapes of the features need to be provided (see {@link AffineVerifierImpl#setShapes(double[])}). Local-optimization step is turned {@code on}. </p>
+	 * 
+	 * @return
+	 * 		Returns requested RANSAC implementation
+	 */
+	public static final AffineVerifierImpl getAffineVerifierImpl() {
+		
+		logger.debug("Creating new affine spatial verifier implementation");
+		return new AffineVerifierImpl();
+	}
+	
 	/**
 	 * <p> Provides a new <b>basic</b> LoRANSAC implementation (local-optimization step turned {@code off}).
 	 * This implementation works as a standard RANSAC procedure </p>
@@ -53,4 +101,156 @@ public final class RANSACFactory {
 		logger.debug("Creating new BoofCV RANSAC implementation");
 		return new BoofCVRANSACImpl();
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * <p> Provides a new executor verifying batches of image pairs on {@code threads} threads,
+	 * each of them reusing a single instance obtained from provided provider. </p>
+	 *
+	 * @param provider
+	 * 		Provider of the configured RANSAC implementations, called once per thread
+	 * @param threads
+	 * 		Number of threads, at least 1
+	 * @return
+	 * 		Returns requested executor, to be shut down when not needed any more
+	 */
+	public static final RANSACBatchExecutor getBatchExecutor(final RANSACBatchExecutor.Provider provider, final int threads) {
+
+		logger.debug("Creating new batch executor of {} threads", threads);
+		return new RANSACBatchExecutor(provider, threads);
+	}
+
+	/**
+	 * <p> Provides a new executor verifying batches of image pairs by the <b>full</b> LoRANSAC implementations
+	 * (see {@link #getLoRANSACOnImpl()}), using as many threads as there are processors available. </p>
+	 *
+	 * @return
+	 * 		Returns requested executor, to be shut down when not needed any more
+	 */
+	public static final RANSACBatchExecutor getLoRANSACBatchExecutor() {
+
+		return getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return getLoRANSACOnImpl();
+			}
+		}, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * <p> Runs provided RANSAC on provided tentative pairs asynchronously, using provided executor. </p>
+	 * 
+	 * <p> The RANSAC is owned by the returned future until it is done, so it must not be used meanwhile. 
+	 * Cancelling the future stops the run at its next check (see {@link RANSAC#cancel()}). </p>
+	 * 
+	 * @param ransac
+	 * 		Configured RANSAC implementation (threshold, probability, time budget etc.)
+	 * @param tentativePairs
+	 * 		Tentative pairs, see {@link RANSAC#setTentativePairs(double[][])}
+	 * @param executor
+	 * 		Executor of the run
+	 * @return
+	 * 		Returns future of the immutable result of the run
+	 */
+	public static final Future<RANSACResult> submit(final RANSAC ransac, final double[][] tentativePairs, final Executor executor) {
+		
+		if(ransac == null)
+			throw new IllegalArgumentException("ransac is null");
+		
+		return submit(ransac.setTentativePairs(tentativePairs), executor);
+	}
+	
+	/**
+	 * <p> Same as {@link #submit(RANSAC, double[][], Executor)}, for the flat tentative pairs (see {@link RANSAC#setTentativePairs(double[], int)}) </p>
+	 * 
+	 * @param ransac
+	 * 		Configured RANSAC implementation
+	 * @param tentativePairs
+	 * 		Flat tentative pairs, not copied
+	 * @param count
+	 * 		Number of pairs
+	 * @param executor
+	 * 		Executor of the run
+	 * @return
+	 * 		Returns future of the immutable result of the run
+	 */
+	public static final Future<RANSACResult> submit(final RANSAC ransac, final double[] tentativePairs, final int count, final Executor executor) {
+		
+		if(ransac == null)
+			throw new IllegalArgumentException("ransac is null");
+		
+		return submit(ransac.setTentativePairs(tentativePairs, count), executor);
+	}
+	
+	/**
+	 * <p> Same as {@link #submit(RANSAC, double[], int, Executor)}, for the single precision pairs (see {@link RANSAC#setTentativePairs(float[], int)}) </p>
+	 * 
+	 * @param ransac
+	 * 		Configured RANSAC implementation
+	 * @param tentativePairs
+	 * 		Flat tentative pairs, not copied
+	 * @param count
+	 * 		Number of pairs
+	 * @param executor
+	 * 		Executor of the run
+	 * @return
+	 * 		Returns future of the immutable result of the run
+	 */
+	public static final Future<RANSACResult> submit(final RANSAC ransac, final float[] tentativePairs, final int count, final Executor executor) {
+		
+		if(ransac == null)
+			throw new IllegalArgumentException("ransac is null");
+		
+		return submit(ransac.setTentativePairs(tentativePairs, count), executor);
+	}
+	
+	private static Future<RANSACResult> submit(final RANSAC ransac, final Executor executor) {
+		
+		if(executor == null)
+			throw new IllegalArgumentException("executor is null");
+		
+		logger.debug("Submitting {} run", ransac.name());
+		
+		// a request left over from an earlier run must not stop this one, the ones arriving from now on are kept by the instance
+		final RANSACTask task = new RANSACTask(ransac.clearCancel());
+		executor.execute(task);
+		
+		return task;
+	}
+	
+	/**
+	 * <p> Future of a single RANSAC run, cancelling the run cooperatively </p>
+	 * 
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	private static final class RANSACTask extends FutureTask<RANSACResult> {
+		
+		private final RANSAC ransac;
+		
+		private RANSACTask(final RANSAC ransac) {
+			
+			super(new Callable<RANSACResult>() {
+				
+				@Override
+				public RANSACResult call() {
+					
+					ransac.run();
+					return new RANSACResult(ransac);
+				}
+			});
+			
+			this.ransac = ransac;
+		}
+		
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			
+			// the run itself is not interruptible, it has to be asked to stop (even if it has not started yet); not if the task is done
+			final boolean retval = super.cancel(mayInterruptIfRunning);
+			if(retval) ransac.cancel();
+			
+			return retval;
+		}
+	}
+}
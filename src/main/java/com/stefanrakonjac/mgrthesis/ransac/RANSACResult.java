@@ -0,0 +1,131 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+/**
+ * <p> Immutable snapshot of the results of a single {@link RANSAC} run, safe to be shared among threads. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class RANSACResult {
+
+	private final String name;
+	private final double[][] geometryEstimation;
+	private final boolean[] inliersMask;
+	private final int inliersCount;
+	private final double confidence;
+	private final boolean confidenceReached;
+	private final RANSACStatsSnapshot stats;
+
+	/**
+	 * <p> Copies the results of the last run of provided RANSAC </p>
+	 *
+	 * @param ransac
+	 * 		RANSAC having finished its run
+	 */
+	public RANSACResult(final RANSAC ransac) {
+
+		if(ransac == null)
+			throw new IllegalArgumentException("ransac is null");
+
+		this.name = ransac.name();
+		this.geometryEstimation = copy(ransac.getGeometryEstimation());
+		this.inliersMask = ransac.getInliersMask().clone();
+		this.inliersCount = ransac.getInliersCount();
+		this.confidence = ransac.getConfidence();
+		this.confidenceReached = ransac.isConfidenceReached();
+
+		final RANSACStats stats = ransac.getStats();
+		this.stats = stats == null ? null : new RANSACStatsSnapshot(stats);
+	}
+
+	/**
+	 * @return
+	 * 		The name of the RANSAC implementation providing the result
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return
+	 * 		Copy of the estimated model
+	 */
+	public double[][] getGeometryEstimation() {
+		return copy(geometryEstimation);
+	}
+
+	/**
+	 * @return
+	 * 		Copy of the inliers mask, see {@link RANSAC#getInliersMask()}
+	 */
+	public boolean[] getInliersMask() {
+		return inliersMask.clone();
+	}
+
+	/**
+	 * @param index
+	 * 		Index of the tentative pair
+	 * @return
+	 * 		{@code true} if the tentative pair is an inlier
+	 */
+	public boolean isInlier(final int index) {
+		return inliersMask[index];
+	}
+
+	public int getInliersCount() {
+		return inliersCount;
+	}
+
+	/**
+	 * @return
+	 * 		Ascending indices of the inliers, see {@link RANSAC#getInlierIndices()}
+	 */
+	public int[] getInlierIndices() {
+
+		final int[] retval = new int[inliersCount];
+		for(int i = 0, j = 0; i < inliersMask.length; i++) {
+			if(inliersMask[i]) retval[j++] = i;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return
+	 * 		See {@link RANSAC#getConfidence()}
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * @return
+	 * 		See {@link RANSAC#isConfidenceReached()}
+	 */
+	public boolean isConfidenceReached() {
+		return confidenceReached;
+	}
+
+	/**
+	 * @return
+	 * 		Copy of the statistics of the run, {@code null} if not collected
+	 */
+	public RANSACStatsSnapshot getStats() {
+		return stats;
+	}
+
+	private static double[][] copy(final double[][] matrix) {
+
+		final double[][] retval = new double[matrix.length][];
+		for(int i = 0; i < matrix.length; i++) {
+			retval[i] = matrix[i].clone();
+		}
+
+		return retval;
+	}
+
+	@Override
+	public String toString() {
+		return "RANSACResult [name=" + name + ", inliersCount=" + inliersCount + ", confidence=" + confidence + ", confidenceReached=" + confidenceReached + "]";
+	}
+}
@@ -0,0 +1,287 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.Arrays;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLE_TEST;
+
+/**
+ * <p> Statistics of a single {@link RANSAC} run, collected if asked for by {@link RANSAC#collectStats(boolean)}. </p>
+ *
+ * <p> Times are in nanoseconds. Values not provided by the implementation stay {@code 0}. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class RANSACStats {
+
+	/** number of the minimal samples drawn */
+	private int samples;
+
+	/** number of the hypotheses (models) computed from the samples */
+	private int hypotheses;
+
+	/** number of the samples no hypothesis could be computed from (e.g. rank of the sample matrix is not as expected) */
+	private int degenerateSamples;
+
+	/** number of the hypotheses rejected by the orientation constraint */
+	private int orientationRejections;
+
+	/** numbers of the samples rejected by the geometric sample tests, by {@link SAMPLE_TEST#ordinal()} */
+	private final int[] sampleTestRejections = new int[SAMPLE_TEST.values().length];
+
+	/** number of the verified hypotheses not better than the so-far-the-best one (including the ones rejected early) */
+	private int rejectedHypotheses;
+
+	/** number of the local optimizations (or model refinements) */
+	private int localOptimizations;
+
+	/** number of the local optimizations skipped by the scheduling (time fraction, repeated inlier sets) */
+	private int skippedLocalOptimizations;
+
+	/** total number of inliers gained by the local optimizations (over the inliers of the samples they started from) */
+	private int localOptimizationGain;
+
+	/** number of the samples needed to reach the best solution probability, as computed for the model found */
+	private int iterationBound;
+
+	private long time;
+	private long solverTime;
+	private long verificationTime;
+	private long localOptimizationTime;
+	private long leastSquaresTime;
+
+	/** bytes allocated by the thread calling {@link RANSAC#run()} and by the threads executing the workers of the parallel runs, {@code -1} if not supported by the JVM */
+	private long allocatedBytes = -1;
+
+	/* history of the so-far-the-best scores */
+	private int historyLength = 0;
+	private int[] historySamples = new int[8];
+	private int[] historyInliers = new int[8];
+
+	public int getSamples() {
+		return samples;
+	}
+
+	public RANSACStats setSamples(int samples) {
+		this.samples = samples;
+		return this;
+	}
+
+	public int getHypotheses() {
+		return hypotheses;
+	}
+
+	public RANSACStats setHypotheses(int hypotheses) {
+		this.hypotheses = hypotheses;
+		return this;
+	}
+
+	public int getDegenerateSamples() {
+		return degenerateSamples;
+	}
+
+	public RANSACStats setDegenerateSamples(int degenerateSamples) {
+		this.degenerateSamples = degenerateSamples;
+		return this;
+	}
+
+	public int getOrientationRejections() {
+		return orientationRejections;
+	}
+
+	public RANSACStats setOrientationRejections(int orientationRejections) {
+		this.orientationRejections = orientationRejections;
+		return this;
+	}
+
+	/**
+	 * @param test
+	 * 		Sample test
+	 * @return
+	 * 		Number of the samples rejected by the test before the models were computed, 
+	 * 		number of the hypotheses for {@link SAMPLE_TEST#ORIENTATION} (see {@link #getOrientationRejections()})
+	 */
+	public int getSampleTestRejections(SAMPLE_TEST test) {
+		return test == SAMPLE_TEST.ORIENTATION ? orientationRejections : sampleTestRejections[test.ordinal()];
+	}
+
+	public RANSACStats setSampleTestRejections(SAMPLE_TEST test, int rejections) {
+		if(test == SAMPLE_TEST.ORIENTATION) {
+			this.orientationRejections = rejections;
+		} else {
+			this.sampleTestRejections[test.ordinal()] = rejections;
+		}
+		return this;
+	}
+
+	public int getRejectedHypotheses() {
+		return rejectedHypotheses;
+	}
+
+	public RANSACStats setRejectedHypotheses(int rejectedHypotheses) {
+		this.rejectedHypotheses = rejectedHypotheses;
+		return this;
+	}
+
+	public int getLocalOptimizations() {
+		return localOptimizations;
+	}
+
+	public RANSACStats setLocalOptimizations(int localOptimizations) {
+		this.localOptimizations = localOptimizations;
+		return this;
+	}
+
+	public int getSkippedLocalOptimizations() {
+		return skippedLocalOptimizations;
+	}
+
+	public RANSACStats setSkippedLocalOptimizations(int skippedLocalOptimizations) {
+		this.skippedLocalOptimizations = skippedLocalOptimizations;
+		return this;
+	}
+
+	public int getLocalOptimizationGain() {
+		return localOptimizationGain;
+	}
+
+	public RANSACStats setLocalOptimizationGain(int localOptimizationGain) {
+		this.localOptimizationGain = localOptimizationGain;
+		return this;
+	}
+
+	public int getIterationBound() {
+		return iterationBound;
+	}
+
+	public RANSACStats setIterationBound(int iterationBound) {
+		this.iterationBound = iterationBound;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Total time of the run
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public RANSACStats setTime(long time) {
+		this.time = time;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Time spent by computing the hypotheses from the minimal samples
+	 */
+	public long getSolverTime() {
+		return solverTime;
+	}
+
+	public RANSACStats setSolverTime(long solverTime) {
+		this.solverTime = solverTime;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Time spent by verifying the hypotheses (errors of the tentative pairs)
+	 */
+	public long getVerificationTime() {
+		return verificationTime;
+	}
+
+	public RANSACStats setVerificationTime(long verificationTime) {
+		this.verificationTime = verificationTime;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Time spent by the local optimizations, including {@link #getLeastSquaresTime()}
+	 */
+	public long getLocalOptimizationTime() {
+		return localOptimizationTime;
+	}
+
+	public RANSACStats setLocalOptimizationTime(long localOptimizationTime) {
+		this.localOptimizationTime = localOptimizationTime;
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Time spent by the least squares model fitting of the local optimizations
+	 */
+	public long getLeastSquaresTime() {
+		return leastSquaresTime;
+	}
+
+	public RANSACStats setLeastSquaresTime(long leastSquaresTime) {
+		this.leastSquaresTime = leastSquaresTime;
+		return this;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public RANSACStats setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+		return this;
+	}
+
+	/**
+	 * <p> Appends new so-far-the-best score to the history </p>
+	 *
+	 * @param sample
+	 * 		Number of the samples drawn when the score has been reached
+	 * @param inliers
+	 * 		Number of inliers of the score
+	 * @return
+	 * 		{@code this}
+	 */
+	public RANSACStats addBestScore(int sample, int inliers) {
+
+		if(historyLength == historySamples.length) {
+			historySamples = Arrays.copyOf(historySamples, 2*historyLength);
+			historyInliers = Arrays.copyOf(historyInliers, 2*historyLength);
+		}
+
+		historySamples[historyLength] = sample;
+		historyInliers[historyLength] = inliers;
+		historyLength++;
+
+		return this;
+	}
+
+	/**
+	 * @return
+	 * 		Numbers of the samples drawn when the so-far-the-best scores have been reached, in the order of {@link #getBestScoreInliers()}
+	 */
+	public int[] getBestScoreSamples() {
+		return Arrays.copyOf(historySamples, historyLength);
+	}
+
+	/**
+	 * @return
+	 * 		Numbers of inliers of the so-far-the-best scores, in the order they have been reached
+	 */
+	public int[] getBestScoreInliers() {
+		return Arrays.copyOf(historyInliers, historyLength);
+	}
+
+	@Override
+	public String toString() {
+		return "RANSACStats [samples=" + samples + ", hypotheses=" + hypotheses + ", degenerateSamples=" + degenerateSamples
+				+ ", orientationRejections=" + orientationRejections + ", sampleTestRejections=" + Arrays.toString(sampleTestRejections) 
+				+ ", rejectedHypotheses=" + rejectedHypotheses
+				+ ", localOptimizations=" + localOptimizations + ", skippedLocalOptimizations=" + skippedLocalOptimizations
+				+ ", localOptimizationGain=" + localOptimizationGain + ", iterationBound=" + iterationBound + ", time=" + time
+				+ ", solverTime=" + solverTime + ", verificationTime=" + verificationTime + ", localOptimizationTime=" + localOptimizationTime
+				+ ", leastSquaresTime=" + leastSquaresTime + ", allocatedBytes=" + allocatedBytes
+				+ ", bestScoreInliers=" + Arrays.toString(getBestScoreInliers()) + "]";
+	}
+}
@@ -0,0 +1,169 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.Arrays;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLE_TEST;
+
+/**
+ * <p> Immutable copy of the {@link RANSACStats} of a finished run, safe to be shared among threads (see {@link RANSACResult#getStats()}).
+ * Values are the ones of {@link RANSACStats}, see there. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class RANSACStatsSnapshot {
+
+	private final int samples;
+	private final int hypotheses;
+	private final int degenerateSamples;
+	private final int orientationRejections;
+	private final int[] sampleTestRejections;
+	private final int rejectedHypotheses;
+	private final int localOptimizations;
+	private final int skippedLocalOptimizations;
+	private final int localOptimizationGain;
+	private final int iterationBound;
+
+	private final long time;
+	private final long solverTime;
+	private final long verificationTime;
+	private final long localOptimizationTime;
+	private final long leastSquaresTime;
+	private final long allocatedBytes;
+
+	private final int[] bestScoreSamples;
+	private final int[] bestScoreInliers;
+
+	/**
+	 * <p> Copies provided statistics </p>
+	 *
+	 * @param stats
+	 * 		Statistics of the run
+	 */
+	public RANSACStatsSnapshot(final RANSACStats stats) {
+
+		if(stats == null)
+			throw new IllegalArgumentException("stats is null");
+
+		this.samples = stats.getSamples();
+		this.hypotheses = stats.getHypotheses();
+		this.degenerateSamples = stats.getDegenerateSamples();
+		this.orientationRejections = stats.getOrientationRejections();
+		this.rejectedHypotheses = stats.getRejectedHypotheses();
+		this.localOptimizations = stats.getLocalOptimizations();
+		this.skippedLocalOptimizations = stats.getSkippedLocalOptimizations();
+		this.localOptimizationGain = stats.getLocalOptimizationGain();
+		this.iterationBound = stats.getIterationBound();
+		this.time = stats.getTime();
+		this.solverTime = stats.getSolverTime();
+		this.verificationTime = stats.getVerificationTime();
+		this.localOptimizationTime = stats.getLocalOptimizationTime();
+		this.leastSquaresTime = stats.getLeastSquaresTime();
+		this.allocatedBytes = stats.getAllocatedBytes();
+		this.bestScoreSamples = stats.getBestScoreSamples();
+		this.bestScoreInliers = stats.getBestScoreInliers();
+
+		this.sampleTestRejections = new int[SAMPLE_TEST.values().length];
+		for(SAMPLE_TEST test : SAMPLE_TEST.values()) {
+			sampleTestRejections[test.ordinal()] = stats.getSampleTestRejections(test);
+		}
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	public int getHypotheses() {
+		return hypotheses;
+	}
+
+	public int getDegenerateSamples() {
+		return degenerateSamples;
+	}
+
+	public int getOrientationRejections() {
+		return orientationRejections;
+	}
+
+	/**
+	 * @param test
+	 * 		Sample test
+	 * @return
+	 * 		See {@link RANSACStats#getSampleTestRejections(SAMPLE_TEST)}
+	 */
+	public int getSampleTestRejections(SAMPLE_TEST test) {
+		return sampleTestRejections[test.ordinal()];
+	}
+
+	public int getRejectedHypotheses() {
+		return rejectedHypotheses;
+	}
+
+	public int getLocalOptimizations() {
+		return localOptimizations;
+	}
+
+	public int getSkippedLocalOptimizations() {
+		return skippedLocalOptimizations;
+	}
+
+	public int getLocalOptimizationGain() {
+		return localOptimizationGain;
+	}
+
+	public int getIterationBound() {
+		return iterationBound;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public long getSolverTime() {
+		return solverTime;
+	}
+
+	public long getVerificationTime() {
+		return verificationTime;
+	}
+
+	public long getLocalOptimizationTime() {
+		return localOptimizationTime;
+	}
+
+	public long getLeastSquaresTime() {
+		return leastSquaresTime;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return
+	 * 		Copy of {@link RANSACStats#getBestScoreSamples()}
+	 */
+	public int[] getBestScoreSamples() {
+		return bestScoreSamples.clone();
+	}
+
+	/**
+	 * @return
+	 * 		Copy of {@link RANSACStats#getBestScoreInliers()}
+	 */
+	public int[] getBestScoreInliers() {
+		return bestScoreInliers.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "RANSACStatsSnapshot [samples=" + samples + ", hypotheses=" + hypotheses + ", degenerateSamples=" + degenerateSamples
+				+ ", orientationRejections=" + orientationRejections + ", sampleTestRejections=" + Arrays.toString(sampleTestRejections)
+				+ ", rejectedHypotheses=" + rejectedHypotheses
+				+ ", localOptimizations=" + localOptimizations + ", skippedLocalOptimizations=" + skippedLocalOptimizations
+				+ ", localOptimizationGain=" + localOptimizationGain + ", iterationBound=" + iterationBound + ", time=" + time
+				+ ", solverTime=" + solverTime + ", verificationTime=" + verificationTime + ", localOptimizationTime=" + localOptimizationTime
+				+ ", leastSquaresTime=" + leastSquaresTime + ", allocatedBytes=" + allocatedBytes
+				+ ", bestScoreInliers=" + Arrays.toString(bestScoreInliers) + "]";
+	}
+}
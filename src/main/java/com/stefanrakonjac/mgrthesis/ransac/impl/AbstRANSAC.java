@@ -1,10 +1,18 @@
 package com.stefanrakonjac.mgrthesis.ransac.impl;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.DoubleBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
 
 /**
  * @author Stefan.Rakonjac
@@ -17,29 +25,78 @@ public abstract class AbstRANSAC implements RANSAC {
 	/* double error */
 	public static double EPSILON = 2.2204e-16;
 	
+	/** runs check the time budget and the cancellation every {@code TIME_CHECK_MASK + 1} iterations */
+	public static final int TIME_CHECK_MASK = 16 - 1;
+	
 	/* RANSAC data */
-	protected double[][] tentativePairs;
+	/** pairs stored one after another as x1, y1, x2, y2 quadruples; either these or {@code tentativePairsFloat} are set, see {@link #coordinate(int)} */
+	protected double[] tentativePairs;
+	/** pairs of the single precision setter, stored as {@code tentativePairs} are */
+	protected float[] tentativePairsFloat;
+	protected int tentativePairsCount;
 	protected double threshold = D_TRESHOLD;
 	protected int maxIterations = D_MAX_ITERATIONS;
+	protected long timeBudget = D_TIME_BUDGET;
 	protected double bestSolutionProbability = D_BEST_SOLUTION_PROBABILITY;
 	protected int inliersLimit;
 	protected boolean doOptimizations = true;
+	protected int loMinSamples = D_LO_MIN_SAMPLES;
+	protected int loRepetitions = D_LO_REPETITIONS;
+	protected int loIterations = D_LO_ITERATIONS;
+	protected double loThresholdMultiplier = D_LO_THRESHOLD_MULTIPLIER;
+	protected double loTimeFraction = D_LO_TIME_FRACTION;
+	protected boolean doSPRT = false;
+	protected boolean collectStats = false;
+	protected int parallelism = D_PARALLELISM;
+	private boolean seeded = false;
+	private long seed;
+	protected SAMPLING sampling = D_SAMPLING;
+	protected Set<SAMPLE_TEST> sampleTests = EnumSet.copyOf(D_SAMPLE_TESTS);
+	protected double[] qualities;
 	
 	/* computed data */
-	protected double[][] inliers = new double[0][4];
-	protected double[][] outliers = inliers;
 	protected double[][] geometryEstimation = new double[3][3];
+	private boolean[] inliersMask = new boolean[0];
+	private int inliersCount = 0;
+	private double confidence = 0d;
+	private boolean confidenceReached = false;
+	private RANSACStats stats;
+	
+	/** set by {@link #cancel()}, cleared by {@link #clearCancel()} only (never by the runs) */
+	protected final AtomicBoolean cancelled = new AtomicBoolean();
+	
+	/* results views, created on demand */
+	private int[] inlierIndices;
+	private double[][] inliers;
+	private double[][] outliers;
 	
 	protected AbstRANSAC() {
 		// no-op
 	}
 
+	@Override
+	public void cancel() {
+		logger.debug("cancel()");
+		
+		cancelled.set(true);
+	}
+	
+	@Override
+	public RANSAC clearCancel() {
+		logger.debug("clearCancel()");
+		
+		cancelled.set(false);
+		return this;
+	}
+
 	@Override
 	public final RANSAC setTentativePairs(final double[][] tentativePairs) {
 		if(tentativePairs == null) throw new IllegalArgumentException("tentativePairs is null");
 		logger.debug("setTentativePairs(double[{}][4])", tentativePairs.length);
 		
-		this.tentativePairs = new double[tentativePairs.length][4];
+		this.tentativePairs = new double[4*tentativePairs.length];
+		this.tentativePairsFloat = null;
+		this.tentativePairsCount = tentativePairs.length;
 		for(int i = 0; i < tentativePairs.length; i++) { 
 			addTentativePair(i, tentativePairs[i]);
 		}
@@ -47,6 +104,49 @@ public abstract class AbstRANSAC implements RANSAC {
 		return this;
 	}
 	
+	@Override
+	public final RANSAC setTentativePairs(final double[] tentativePairs, final int count) {
+		if(tentativePairs == null) throw new IllegalArgumentException("tentativePairs is null");
+		if(count < 0 || tentativePairs.length < 4*count) throw new IllegalArgumentException("count: " + count + " (coordinates: " + tentativePairs.length + ")");
+		logger.debug("setTentativePairs(double[{}], {})", tentativePairs.length, count);
+		
+		this.tentativePairs = tentativePairs;
+		this.tentativePairsFloat = null;
+		this.tentativePairsCount = count;
+		
+		return this;
+	}
+	
+	@Override
+	public final RANSAC setTentativePairs(final float[] tentativePairs, final int count) {
+		if(tentativePairs == null) throw new IllegalArgumentException("tentativePairs is null");
+		if(count < 0 || tentativePairs.length < 4*count) throw new IllegalArgumentException("count: " + count + " (coordinates: " + tentativePairs.length + ")");
+		logger.debug("setTentativePairs(float[{}], {})", tentativePairs.length, count);
+		
+		this.tentativePairs = null;
+		this.tentativePairsFloat = tentativePairs;
+		this.tentativePairsCount = count;
+		
+		return this;
+	}
+	
+	@Override
+	public final RANSAC setTentativePairs(final DoubleBuffer tentativePairs, final int count) {
+		if(tentativePairs == null) throw new IllegalArgumentException("tentativePairs is null");
+		if(count < 0 || tentativePairs.remaining() < 4*count) throw new IllegalArgumentException("count: " + count + " (coordinates: " + tentativePairs.remaining() + ")");
+		
+		if(tentativePairs.hasArray() && tentativePairs.arrayOffset() + tentativePairs.position() == 0) {
+			return setTentativePairs(tentativePairs.array(), count);
+		}
+		
+		logger.debug("setTentativePairs(DoubleBuffer[{}], {}) copies the buffer", tentativePairs.remaining(), count);
+		
+		final double[] copy = new double[4*count];
+		tentativePairs.duplicate().get(copy);
+		
+		return setTentativePairs(copy, count);
+	}
+	
 	@Override
 	public final RANSAC setThreshold(final double threshold) {
 		logger.debug("setThreshold({})", threshold);
@@ -63,6 +163,15 @@ public abstract class AbstRANSAC implements RANSAC {
 		return this;
 	}
 	
+	@Override
+	public final RANSAC setTimeBudget(long timeBudget) {
+		if(timeBudget < 0) throw new IllegalArgumentException("timeBudget: " + timeBudget);
+		logger.debug("setTimeBudget({})", timeBudget);
+		this.timeBudget = timeBudget;
+		
+		return this;
+	}
+	
 	@Override
 	public final RANSAC setBestSolutionProbability(double bestSolutionProbability) {
 		logger.debug("setBestSolutionProbability({})", bestSolutionProbability);
@@ -87,22 +196,246 @@ public abstract class AbstRANSAC implements RANSAC {
 		return this;
 	}
 
+	@Override
+	public RANSAC setLocalOptimizationMinSamples(int minSamples) {
+		if(minSamples < 0) throw new IllegalArgumentException("minSamples: " + minSamples);
+		logger.debug("setLocalOptimizationMinSamples({})", minSamples);
+		
+		this.loMinSamples = minSamples;
+		return this;
+	}
+
+	@Override
+	public RANSAC setLocalOptimizationRepetitions(int repetitions) {
+		if(repetitions < 0) throw new IllegalArgumentException("repetitions: " + repetitions);
+		logger.debug("setLocalOptimizationRepetitions({})", repetitions);
+		
+		this.loRepetitions = repetitions;
+		return this;
+	}
+
+	@Override
+	public RANSAC setLocalOptimizationIterations(int iterations) {
+		if(iterations < 0) throw new IllegalArgumentException("iterations: " + iterations);
+		logger.debug("setLocalOptimizationIterations({})", iterations);
+		
+		this.loIterations = iterations;
+		return this;
+	}
+
+	@Override
+	public RANSAC setLocalOptimizationThresholdMultiplier(double thresholdMultiplier) {
+		if(!(thresholdMultiplier >= 1)) throw new IllegalArgumentException("thresholdMultiplier: " + thresholdMultiplier);
+		logger.debug("setLocalOptimizationThresholdMultiplier({})", thresholdMultiplier);
+		
+		this.loThresholdMultiplier = thresholdMultiplier;
+		return this;
+	}
+
+	@Override
+	public RANSAC setLocalOptimizationTimeFraction(double timeFraction) {
+		if(!(timeFraction >= 0 && timeFraction <= 1)) throw new IllegalArgumentException("timeFraction: " + timeFraction);
+		logger.debug("setLocalOptimizationTimeFraction({})", timeFraction);
+		
+		this.loTimeFraction = timeFraction;
+		return this;
+	}
+
+	@Override
+	public RANSAC doSPRT(boolean doSPRT) {
+		logger.debug("doSPRT({})", doSPRT);
+		
+		this.doSPRT = doSPRT;
+		return this;
+	}
+
+	@Override
+	public RANSAC collectStats(boolean collectStats) {
+		logger.debug("collectStats({})", collectStats);
+		
+		this.collectStats = collectStats;
+		return this;
+	}
+
+	@Override
+	public RANSAC setParallelism(int parallelism) {
+		if(parallelism < 1) throw new IllegalArgumentException("parallelism: " + parallelism);
+		logger.debug("setParallelism({})", parallelism);
+		
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	@Override
+	public RANSAC setSeed(long seed) {
+		logger.debug("setSeed({})", seed);
+		
+		this.seeded = true;
+		this.seed = seed;
+		return this;
+	}
+	
+	@Override
+	public RANSAC setSampling(SAMPLING sampling) {
+		if(sampling == null) throw new IllegalArgumentException("sampling is null");
+		logger.debug("setSampling({})", sampling);
+		
+		this.sampling = sampling;
+		return this;
+	}
+	
+	@Override
+	public RANSAC setSampleTests(Set<SAMPLE_TEST> sampleTests) {
+		if(sampleTests == null) throw new IllegalArgumentException("sampleTests is null");
+		logger.debug("setSampleTests({})", sampleTests);
+		
+		this.sampleTests = sampleTests.isEmpty() ? EnumSet.noneOf(SAMPLE_TEST.class) : EnumSet.copyOf(sampleTests);
+		return this;
+	}
+	
+	@Override
+	public RANSAC setQualities(double[] qualities) {
+		logger.debug("setQualities(double[{}])", qualities == null ? null : qualities.length);
+		
+		this.qualities = qualities;
+		return this;
+	}
+	
+	/**
+	 * @return
+	 * 		Returns seed to be used by the run: the seed set by {@link #setSeed(long)}, or a new one if not set
+	 */
+	protected long runSeed() {
+		return seeded ? seed : XorShiftRandom.newSeed();
+	}
+
+	/**
+	 * @param index
+	 * 		Index of the coordinate, {@code 4*pair + k} for {@code k}-th coordinate ({@code x1, y1, x2, y2}) of the pair
+	 * @return
+	 * 		Returns the coordinate of the tentative pairs, regardless of the precision they have been set with
+	 */
+	protected final double coordinate(final int index) {
+		return tentativePairsFloat != null ? tentativePairsFloat[index] : tentativePairs[index];
+	}
+
 	private void addTentativePair(final int position, final double[] pair) {
 		if(pair.length != 4) throw new IllegalArgumentException("pair does not have exact 4 coordinates ((x1, y1) -> (x2, y2))");
 		
-		this.tentativePairs[position][0] = pair[0];
-		this.tentativePairs[position][1] = pair[1];
-		this.tentativePairs[position][2] = pair[2];
-		this.tentativePairs[position][3] = pair[3];
+		System.arraycopy(pair, 0, this.tentativePairs, 4*position, 4);
+	}
+	
+	/**
+	 * <p> Stores the inliers found by a run. Inliers and outliers views are created from the mask when asked for. </p>
+	 * 
+	 * @param inliersMask
+	 * 		Mask over the tentative pairs, having the length equal to the number of tentative pairs; not copied
+	 * @param inliersCount
+	 * 		Number of {@code true} values in {@code inliersMask}
+	 */
+	protected final void setInliers(final boolean[] inliersMask, final int inliersCount) {
+		if(inliersMask == null || inliersMask.length != tentativePairsCount) throw new IllegalArgumentException("inliersMask does not match the tentative pairs");
+		
+		this.inliersMask = inliersMask;
+		this.inliersCount = inliersCount;
+		
+		this.inlierIndices = null;
+		this.inliers = null;
+		this.outliers = null;
+	}
+	
+	/**
+	 * <p> Stores the confidence reached by a run </p>
+	 * 
+	 * @param confidence
+	 * 		Confidence of the run, see {@link #getConfidence()}
+	 * @param confidenceReached
+	 * 		Whether the run drew all the samples needed, see {@link #isConfidenceReached()}
+	 */
+	protected final void setConfidence(final double confidence, final boolean confidenceReached) {
+		this.confidence = confidence;
+		this.confidenceReached = confidenceReached;
+	}
+	
+	@Override
+	public double getConfidence() {
+		return confidence;
+	}
+	
+	@Override
+	public boolean isConfidenceReached() {
+		return confidenceReached;
+	}
+	
+	/**
+	 * @param stats
+	 * 		Statistics of the run, {@code null} if not collected
+	 */
+	protected final void setStats(final RANSACStats stats) {
+		this.stats = stats;
+	}
+	
+	@Override
+	public RANSACStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * @return
+	 * 		Returns number of bytes allocated by the current thread so far, {@code -1} if the JVM does not provide it
+	 */
+	protected static long currentThreadAllocatedBytes() {
+		
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
+		if(threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled()) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		
+		return -1;
+	}
+	
+	@Override
+	public int getInliersCount() {
+		return inliersCount;
+	}
+	
+	@Override
+	public int[] getInlierIndices() {
+		
+		if(inlierIndices == null) {
+			
+			inlierIndices = new int[inliersCount];
+			for(int i = 0, j = 0; i < inliersMask.length; i++) {
+				if(inliersMask[i]) inlierIndices[j++] = i;
+			}
+		}
+		
+		return inlierIndices;
+	}
+	
+	@Override
+	public boolean[] getInliersMask() {
+		return inliersMask;
 	}
 	
 	@Override
 	public double[][] getInliers() {
+		
+		if(inliers == null) {
+			inliers = getPairs(true, inliersCount);
+		}
+		
 		return inliers;
 	}
 	
 	@Override
 	public double[][] getOutliers() {
+		
+		if(outliers == null) {
+			outliers = getPairs(false, inliersMask.length - inliersCount);
+		}
+		
 		return outliers;
 	}
 
@@ -111,6 +444,30 @@ public abstract class AbstRANSAC implements RANSAC {
 		return geometryEstimation;
 	}
 	
+	/**
+	 * @param inlier
+	 * 		{@code true} to collect the inliers, {@code false} to collect the outliers
+	 * @param count
+	 * 		Number of pairs to be collected
+	 * @return
+	 * 		Returns pairs of the last run having the mask value equal to {@code inlier}
+	 */
+	private double[][] getPairs(final boolean inlier, final int count) {
+		
+		final double[][] retval = new double[count][4];
+		
+		for(int i = 0, j = 0; i < inliersMask.length; i++) {
+			if(inliersMask[i] == inlier) {
+				final double[] pair = retval[j++];
+				for(int k = 0; k < 4; k++) {
+					pair[k] = coordinate(4*i + k);
+				}
+			}
+		}
+		
+		return retval;
+	}
+	
 
 	/**
 	 * 
@@ -121,7 +478,23 @@ public abstract class AbstRANSAC implements RANSAC {
 	 * @return
 	 */
 	public static int recalculateMaxIterations(final int inliersCount, final double confidence, final int minimalInliers, final int totalPoints) {
-		logger.debug("recalculateMaxIterations({}, {}, {}, {})", inliersCount, confidence, minimalInliers, totalPoints);
+		return recalculateMaxIterations(inliersCount, confidence, minimalInliers, totalPoints, 1d);
+	}
+
+	/**
+	 * <p> Same as {@link #recalculateMaxIterations(int, double, int, int)}, for the verification accepting a good model 
+	 * with the probability {@code goodModelAcceptance} only (e.g. randomized verification) </p>
+	 * 
+	 * @param inliersCount
+	 * @param confidence
+	 * @param minimalInliers
+	 * @param totalPoints
+	 * @param goodModelAcceptance
+	 * 		Probability of a model computed from an all-inlier sample to be accepted by the verification
+	 * @return
+	 */
+	public static int recalculateMaxIterations(final int inliersCount, final double confidence, final int minimalInliers, final int totalPoints, final double goodModelAcceptance) {
+		logger.debug("recalculateMaxIterations({}, {}, {}, {}, {})", inliersCount, confidence, minimalInliers, totalPoints, goodModelAcceptance);
 		int retval = D_MAX_ITERATIONS;
 		
 		double a = 1, b = 1;
@@ -130,7 +503,7 @@ public abstract class AbstRANSAC implements RANSAC {
 			b *= totalPoints - i;
 		}
 		
-		final double fraction = a/b;
+		final double fraction = a/b * goodModelAcceptance;
 		
 		if(fraction < EPSILON) {
 			retval = D_MAX_ITERATIONS;
@@ -142,4 +515,39 @@ public abstract class AbstRANSAC implements RANSAC {
 		
 		return retval;
 	}
+
+	/**
+	 * <p> Inverse of {@link #recalculateMaxIterations(int, double, int, int, double)}: probability of drawing at least one 
+	 * all-inlier sample (accepted by the verification) within {@code samples} samples </p>
+	 * 
+	 * @param inliersCount
+	 * @param minimalInliers
+	 * @param totalPoints
+	 * @param samples
+	 * 		Number of the samples drawn
+	 * @param goodModelAcceptance
+	 * 		Probability of a model computed from an all-inlier sample to be accepted by the verification
+	 * @return
+	 * 		Returns confidence from the interval [0, 1]
+	 */
+	public static double achievedConfidence(final int inliersCount, final int minimalInliers, final int totalPoints, final int samples, final double goodModelAcceptance) {
+		
+		if(inliersCount < minimalInliers || samples <= 0) {
+			return 0d;
+		}
+		
+		double a = 1, b = 1;
+		for(int i = 0; i < minimalInliers; i++) {
+			a *= inliersCount - i;
+			b *= totalPoints - i;
+		}
+		
+		final double fraction = a/b * goodModelAcceptance;
+		
+		if(1d - fraction < EPSILON) {
+			return 1d;
+		}
+		
+		return 1d - Math.pow(1d - fraction, samples);
+	}
 }
@@ -1,32 +1,21 @@
 package com.stefanrakonjac.mgrthesis.ransac.impl.boofcv;
 
 import java.util.List;
-import java.util.Random;
 
-import org.ddogleg.fitting.modelset.DistanceFromModel;
-import org.ddogleg.fitting.modelset.ModelGenerator;
-import org.ddogleg.fitting.modelset.ModelMatcher;
 import org.ejml.data.DenseMatrix64F;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import boofcv.abst.geo.Estimate1ofEpipolar;
-import boofcv.abst.geo.fitting.DistanceFromModelResidual;
-import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
-import boofcv.alg.geo.ModelObservationResidual;
-import boofcv.alg.geo.f.FundamentalResidualSampson;
-import boofcv.factory.geo.EnumEpipolar;
-import boofcv.factory.geo.EpipolarError;
-import boofcv.factory.geo.FactoryMultiView;
 import boofcv.struct.geo.AssociatedPair;
-import boofcv.struct.geo.GeoModelRefine;
 
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
 import com.stefanrakonjac.mgrthesis.ransac.impl.AbstRANSAC;
-import com.stefanrakonjac.mgrthesis.ransac.utils.converters.MatrixConverter;
-import com.stefanrakonjac.mgrthesis.ransac.utils.converters.PairsConverter;
 
 
 /**
+ * <p> RANSAC of the BoofCV library (8-point linear fundamental matrix, Sampson error, non-linear refinement of the result).
+ * Model generator, error metric, RANSAC, refiner and the associated pairs are kept per thread and reused by its runs, see {@link BoofCVWorkspace}. </p>
+ * 
  * @author Stefan.Rakonjac
  *
  */
@@ -36,62 +25,70 @@ public class BoofCVRANSACImpl extends AbstRANSAC {
 
 	@Override
 	public void run() {
+		
+		final long startTime = System.nanoTime();
+		final RANSACStats stats = collectStats ? new RANSACStats() : null;
+		final long startAllocatedBytes = collectStats ? currentThreadAllocatedBytes() : -1;
 
-		final int seed = new Random().nextInt();
-		final ModelGenerator<DenseMatrix64F, AssociatedPair> modelGenerator = createModelGenerator();
-		final DistanceFromModel<DenseMatrix64F, AssociatedPair> errorMetric = createErrorMetricMeasurer();
+		final long seed = runSeed();
+		final BoofCVWorkspace workspace = BoofCVWorkspace.forCurrentThread(tentativePairsCount);
+		
+		// pooled pairs overwritten by the tentative pairs of this run
+		final List<AssociatedPair> pairs = workspace.pairs();
+		for(int i = 0; i < tentativePairsCount; i++) {
+			final AssociatedPair pair = pairs.get(i);
+			pair.p1.set(coordinate(4*i), coordinate(4*i + 1));
+			pair.p2.set(coordinate(4*i + 2), coordinate(4*i + 3));
+		}
         
         // Use RANSAC to estimate the Fundamental matrix
-        ModelMatcher<DenseMatrix64F,AssociatedPair> rancas = new DynamicRansac<DenseMatrix64F, AssociatedPair>(seed, modelGenerator, errorMetric, maxIterations, threshold, bestSolutionProbability);
+        final DynamicRansac<DenseMatrix64F,AssociatedPair> rancas = workspace.ransac.reset(seed, maxIterations, threshold, bestSolutionProbability, timeBudget, stats, cancelled);
 
         // Estimate the fundamental matrix while removing outliers
-        if(!rancas.process(PairsConverter.toAssociatedPairList(tentativePairs))) {
+        if(!rancas.process(pairs)) {
         	logger.error("Failed to compute the fundamental matrix");
         }
 
         // save the set of features that were used to compute the fundamental matrix
         final List<AssociatedPair> matches = rancas.getMatchSet();
-        inliers = PairsConverter.getPairs(matches);
+        final boolean[] inliersMask = new boolean[tentativePairsCount];
+        for(int i = 0; i < matches.size(); i++) {
+        	inliersMask[rancas.getInputIndex(i)] = true;
+        }
+        setInliers(inliersMask, matches.size());
+        setConfidence(achievedConfidence(matches.size(), 7, tentativePairsCount, rancas.getSamples(), 1d), rancas.getSamples() >= rancas.getIterationBound());
         
-        // Improve the estimate of the fundamental matrix using non-linear optimization
-        DenseMatrix64F matrix = new DenseMatrix64F(3,3);
-        GeoModelRefine<DenseMatrix64F,AssociatedPair> refine = FactoryMultiView.refineFundamental(1e-8, 400, EpipolarError.SAMPSON);
+        // Improve the estimate of the fundamental matrix using non-linear optimization (skipped if the run has been stopped)
+        final DenseMatrix64F matrix = workspace.matrix;
         
-        if( !refine.process(rancas.getModel(), matches, matrix) ) {
-        	logger.error("Failed to refine the fundamental matrix");
+        if(rancas.isStopped()) {
+        	logger.debug("Run stopped after {} samples (time budget: {} ns, cancelled: {}), the fundamental matrix is not refined", rancas.getSamples(), timeBudget, cancelled.get());
+        	matrix.set(rancas.getModel());
+        } else {
+        	final long refineStartTime = System.nanoTime();
+        	if( !workspace.refine.process(rancas.getModel(), matches, matrix) ) {
+        		logger.error("Failed to refine the fundamental matrix");
+        	}
+        	
+        	if(stats != null) {
+        		// non-linear refinement is the only local optimization of this implementation
+        		stats.setLocalOptimizations(1).setLocalOptimizationTime(System.nanoTime() - refineStartTime);
+        	}
         }
 
-        geometryEstimation = MatrixConverter.toMatrix(matrix);
-	}
-	
-	/**
-	 * @return
-	 * 		Returns fundamental matrix (a 33 matrix which relates corresponding points in stereo images) model generator 
-	 * 		capable of generating models from the provided associated pairs.
-	 */
-	private static ModelGenerator<DenseMatrix64F, AssociatedPair> createModelGenerator() {
-
-        // fundamental 8-point linear algorithm provides single hypothesis >  numRemoveAmbiguity (-1) parameter is obsolete
-        Estimate1ofEpipolar estimateF = FactoryMultiView.computeFundamental_1(EnumEpipolar.FUNDAMENTAL_8_LINEAR, -1);
-        
-        // Wrapper so that this estimator can be used by the robust estimator
-        ModelGenerator<DenseMatrix64F, AssociatedPair> fundamentalMatrixModelGenerator = new GenerateEpipolarMatrix(estimateF);
+        for(int i = 0; i < 3; i++) {
+        	for(int j = 0; j < 3; j++) {
+        		geometryEstimation[i][j] = matrix.get(i, j);
+        	}
+        }
         
-        return fundamentalMatrixModelGenerator;
+        if(stats != null) {
+        	stats.setAllocatedBytes(startAllocatedBytes < 0 ? -1 : currentThreadAllocatedBytes() - startAllocatedBytes)
+        		 .setTime(System.nanoTime() - startTime);
+        }
+        setStats(stats);
 	}
 	
-	private static DistanceFromModel<DenseMatrix64F, AssociatedPair> createErrorMetricMeasurer() {
-
-		// function capable of determining Sampson error for the provided model (fundamental matrix) and pair of points
-		ModelObservationResidual<DenseMatrix64F, AssociatedPair> function = new FundamentalResidualSampson();
-		
-		// wrapper for used function
-        DistanceFromModel<DenseMatrix64F,AssociatedPair> errorMetricMeasurer = new DistanceFromModelResidual<DenseMatrix64F,AssociatedPair>(function);
-        
-        return errorMetricMeasurer;
-	}
-
-
 	@Override
 	public String name() {
 		return BoofCVRANSACImpl.class.getSimpleName();
@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.boofcv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ejml.data.DenseMatrix64F;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import boofcv.abst.geo.Estimate1ofEpipolar;
+import boofcv.abst.geo.fitting.DistanceFromModelResidual;
+import boofcv.abst.geo.fitting.GenerateEpipolarMatrix;
+import boofcv.alg.geo.f.FundamentalResidualSampson;
+import boofcv.factory.geo.EnumEpipolar;
+import boofcv.factory.geo.EpipolarError;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.geo.GeoModelRefine;
+
+/**
+ * <p> Solvers and buffers used by {@link BoofCVRANSACImpl} runs. Workspace is owned by a single thread (see {@link #forCurrentThread(int)})
+ * and reused across the runs: the model generator, the error metric, the RANSAC and the refiner are created once per thread, the associated pairs
+ * are pooled and overwritten by each run, so that the short runs do not pay for the setup. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+final class BoofCVWorkspace {
+
+	private static final Logger logger = LoggerFactory.getLogger(BoofCVWorkspace.class);
+
+	private static final ThreadLocal<BoofCVWorkspace> WORKSPACES = new ThreadLocal<BoofCVWorkspace>() {
+
+		@Override
+		protected BoofCVWorkspace initialValue() {
+			return new BoofCVWorkspace();
+		}
+	};
+
+	/** fundamental matrix model generator, 8-point linear algorithm */
+	final ModelGenerator<DenseMatrix64F, AssociatedPair> modelGenerator;
+
+	/** Sampson error of the pairs */
+	final DistanceFromModel<DenseMatrix64F, AssociatedPair> errorMetric;
+
+	/** RANSAC of the model generator and the error metric, parameters are set by each run */
+	final DynamicRansac<DenseMatrix64F, AssociatedPair> ransac;
+
+	/** non-linear refinement of the fundamental matrix */
+	final GeoModelRefine<DenseMatrix64F, AssociatedPair> refine;
+
+	/** refined fundamental matrix */
+	final DenseMatrix64F matrix = new DenseMatrix64F(3, 3);
+
+	/** all the pairs allocated so far, and the ones of the run (the first {@code count} of them) */
+	private final List<AssociatedPair> pool = new ArrayList<>();
+	private final List<AssociatedPair> pairs = new ArrayList<>();
+
+	private BoofCVWorkspace() {
+
+		// fundamental 8-point linear algorithm provides single hypothesis >  numRemoveAmbiguity (-1) parameter is obsolete
+		final Estimate1ofEpipolar estimateF = FactoryMultiView.computeFundamental_1(EnumEpipolar.FUNDAMENTAL_8_LINEAR, -1);
+
+		// wrapper so that this estimator can be used by the robust estimator
+		modelGenerator = new GenerateEpipolarMatrix(estimateF);
+
+		// function capable of determining Sampson error for the provided model (fundamental matrix) and pair of points, wrapped
+		errorMetric = new DistanceFromModelResidual<DenseMatrix64F, AssociatedPair>(new FundamentalResidualSampson());
+
+		ransac = new DynamicRansac<DenseMatrix64F, AssociatedPair>(modelGenerator, errorMetric);
+
+		refine = FactoryMultiView.refineFundamental(1e-8, 400, EpipolarError.SAMPSON);
+	}
+
+	/**
+	 * <p> Provides the workspace owned by the current thread, its pairs list holding {@code count} pairs </p>
+	 *
+	 * @param count
+	 * 		Number of pairs of the run
+	 * @return
+	 * 		Returns workspace of the current thread
+	 */
+	static BoofCVWorkspace forCurrentThread(final int count) {
+
+		final BoofCVWorkspace workspace = WORKSPACES.get();
+		workspace.resize(count);
+
+		return workspace;
+	}
+
+	/**
+	 * @return
+	 * 		Returns pooled pairs of the run, to be overwritten by its tentative pairs; valid until the next run of the thread
+	 */
+	List<AssociatedPair> pairs() {
+		return pairs;
+	}
+
+	/**
+	 * <p> Makes the pairs list hold {@code count} pairs of the pool, growing the pool if needed </p>
+	 *
+	 * @param count
+	 * 		Number of pairs
+	 */
+	private void resize(final int count) {
+
+		if(count < 0)
+			throw new IllegalArgumentException("count: " + count);
+
+		if(count > pool.size()) {
+
+			logger.debug("Growing BoofCV workspace of thread {} from {} to {} pairs", Thread.currentThread().getName(), pool.size(), count);
+
+			for(int i = pool.size(); i < count; i++) {
+				pool.add(new AssociatedPair());
+			}
+		}
+
+		pairs.clear();
+		for(int i = 0; i < count; i++) {
+			pairs.add(pool.get(i));
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.stefanrakonjac.mgrthesis.ransac.impl.boofcv;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.ddogleg.fitting.modelset.DistanceFromModel;
 import org.ddogleg.fitting.modelset.ModelGenerator;
@@ -8,6 +9,7 @@ import org.ddogleg.fitting.modelset.ransac.Ransac;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
 import com.stefanrakonjac.mgrthesis.ransac.impl.AbstRANSAC;
 
 /**
@@ -19,15 +21,80 @@ class DynamicRansac<Model, Point> extends Ransac<Model, Point> {
 	
 	private static final Logger logger = LoggerFactory.getLogger(DynamicRansac.class);
 	
-	private final double bestSolutionProbability;
+	/* parameters of the next process, see reset(...) */
+	private double bestSolutionProbability;
+	
+	/** time budget in nanoseconds, 0 for no limit */
+	private long timeBudget;
+	
+	/** statistics filled by the process, {@code null} if not collected */
+	private RANSACStats stats;
+	
+	/** cancellation flag of the RANSAC running the process */
+	private AtomicBoolean cancelled;
+	
+	/** model provided if the process finds none, so that the model of the previous process is not */
+	private final Model emptyModel;
+	
+	/* statistics of the last process */
+	private int samples;
+	private int iterationBound;
+	private boolean stopped;
 
-	DynamicRansac(final long randSeed, final ModelGenerator<Model, Point> modelGenerator, final DistanceFromModel<Model, Point> modelDistance, final int maxIterations, final double thresholdFit, final double bestSolutionProbability) {
-		super(randSeed, modelGenerator, modelDistance, maxIterations, thresholdFit);
+	/**
+	 * <p> Creates the RANSAC of provided model, reused by the processes; each of them is to be preceded by {@link #reset(long, int, double, double, long, RANSACStats, AtomicBoolean)} </p>
+	 */
+	DynamicRansac(final ModelGenerator<Model, Point> modelGenerator, final DistanceFromModel<Model, Point> modelDistance) {
+		super(0L, modelGenerator, modelDistance, 0, 0d);
+		this.emptyModel = modelGenerator.createModelInstance();
+	}
+	
+	/**
+	 * <p> Sets the parameters of the next process </p>
+	 * 
+	 * @param randSeed
+	 * 		Seed of the random samples
+	 * @param maxIterations
+	 * 		Maximal number of the samples
+	 * @param thresholdFit
+	 * 		Error threshold of the inliers
+	 * @param bestSolutionProbability
+	 * 		Probability the number of the samples is adapted to
+	 * @param timeBudget
+	 * 		Time budget in nanoseconds, 0 for no limit
+	 * @param stats
+	 * 		Statistics to be filled by the process, {@code null} if not collected
+	 * @param cancelled
+	 * 		Cancellation flag of the RANSAC running the process
+	 * @return
+	 * 		{@code this}
+	 */
+	DynamicRansac<Model, Point> reset(final long randSeed, final int maxIterations, final double thresholdFit, final double bestSolutionProbability, final long timeBudget, final RANSACStats stats, final AtomicBoolean cancelled) {
+		
+		rand.setSeed(randSeed);
+		setMaxIterations(maxIterations);
+		setThresholdFit(thresholdFit);
+		
 		this.bestSolutionProbability = bestSolutionProbability;
+		this.timeBudget = timeBudget;
+		this.stats = stats;
+		this.cancelled = cancelled;
+		return this;
 	}
 	
 	@Override
 	public boolean process(List<Point> dataSet) {
+		
+		final long deadline = System.nanoTime() + timeBudget;
+		samples = 0;
+		iterationBound = AbstRANSAC.D_MAX_ITERATIONS;
+		stopped = false;
+		
+		int hypotheses = 0, degenerateSamples = 0, rejectedHypotheses = 0;
+		long solverTime = 0, verificationTime = 0, time;
+		
+		// best fit of the previous process is dropped also if this one ends before the initialization
+		bestFitPoints.clear();
 
 		// see if it has the minimum number of points
 		if (dataSet.size() < modelGenerator.getMinimumPoints() )
@@ -40,33 +107,114 @@ class DynamicRansac<Model, Point> extends Ransac<Model, Point> {
 		// is in the inlier set
 		int maximalNumerOfIterations = maxIterations;
 		for (int i = 0; i < maximalNumerOfIterations && bestFitPoints.size() != dataSet.size(); i++) {
+			
+			// check the cancellation and the time budget every few iterations only
+			if((i & AbstRANSAC.TIME_CHECK_MASK) == 0 && (cancelled.get() || (timeBudget > 0 && System.nanoTime() - deadline >= 0))) {
+				stopped = true;
+				break;
+			}
+			
+			samples++;
+			
 			// sample the a small set of points
 			randomDraw(dataSet, sampleSize, initialSample, rand);
 			
+			time = stats != null ? System.nanoTime() : 0L;
+			
 			// get the candidate(s) for this sample set
-			if( modelGenerator.generate(initialSample, candidateParam ) ) {
+			final boolean generated = modelGenerator.generate(initialSample, candidateParam);
+			
+			if(stats != null) {
+				final long now = System.nanoTime();
+				solverTime += now - time;
+				time = now;
+			}
+			
+			if( generated ) {
+				
+				hypotheses++;
 
 				// see if it can find a model better than the current best one
 				selectMatchSet(dataSet, thresholdFit, candidateParam);
+				
+				if(stats != null) {
+					verificationTime += System.nanoTime() - time;
+				}
 
 				// save this results
 				if (bestFitPoints.size() < candidatePoints.size()) {
 					swapCandidateWithBest();
 					
+					if(stats != null) {
+						stats.addBestScore(samples, bestFitPoints.size());
+					}
+					
 					// updating number of samples needed
 					
 					final int newTotalIterations = AbstRANSAC.recalculateMaxIterations(bestFitPoints.size() + 1, bestSolutionProbability, 7, dataSet.size());
+					iterationBound = newTotalIterations;
 					if (newTotalIterations < maximalNumerOfIterations) {
 						logger.debug("Downsizing total number of iterations from {} to {} (inliers found: {}; best solution prob: {}; minimal inliers: {}, tentative pairs count: {}", 
 								maximalNumerOfIterations, newTotalIterations, bestFitPoints.size(), bestSolutionProbability, 7, dataSet.size());
 						
 						maximalNumerOfIterations = newTotalIterations;
 					}
+				} else {
+					rejectedHypotheses++;
 				}
+			} else {
+				degenerateSamples++;
 			}
 		}
 
+		if(bestFitPoints.size() == dataSet.size()) {
+			iterationBound = Math.min(iterationBound, samples);
+		}
+		
+		if(stats != null) {
+			stats.setSamples(samples)
+				 .setHypotheses(hypotheses)
+				 .setDegenerateSamples(degenerateSamples)
+				 .setRejectedHypotheses(rejectedHypotheses)
+				 .setIterationBound(iterationBound)
+				 .setSolverTime(solverTime)
+				 .setVerificationTime(verificationTime);
+		}
+
 		return bestFitPoints.size() > 0;
 	}
+	
+	/**
+	 * @return
+	 * 		Model found by the last process, the empty one (as created by the model generator) if none
+	 */
+	@Override
+	public Model getModel() {
+		return bestFitPoints.isEmpty() ? emptyModel : super.getModel();
+	}
+	
+	/**
+	 * @return
+	 * 		Number of samples drawn by the last process
+	 */
+	int getSamples() {
+		return samples;
+	}
+	
+	/**
+	 * @return
+	 * 		Number of samples needed to reach the best solution probability, as computed for the model found by the last process
+	 */
+	int getIterationBound() {
+		return iterationBound;
+	}
+	
+	/**
+	 * @return
+	 * 		{@code true} if the last process has been stopped by the time budget or by the cancellation
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
 
 }
@@ -0,0 +1,517 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inlierIndices;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inliersSignature;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.randomSubset;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.sample;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SignatureSet;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Single-threaded LO-RANSAC of the models other than the fundamental matrix of {@link LoRANSACImpl}: uniform minimal samples,
+ * consensus with the bail-out, local optimization by the inner RANSAC and the iterative least squares scheduled the same way
+ * {@link LoRANSACImpl} does. The implementations provide the model: minimal solver, error kernels, least squares fit and orientation check. </p>
+ *
+ * <p> Errors are compared to the {@code threshold} the same way the errors of {@link LoRANSACImpl} are. Runs are single-threaded, sampling
+ * is uniform and the hypotheses are verified on all the pairs: parallelism and randomized verification settings are ignored, so are PROSAC
+ * and NAPSAC samplings (not supported). </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public abstract class AbstSingleThreadedLoRANSAC extends AbstSingleThreadedRANSAC {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstSingleThreadedLoRANSAC.class);
+
+	/**
+	 * Maximal size of the non-minimal samples drawn by the inner RANSAC of the local optimization
+	 */
+	private static final int LO_SAMPLE_SIZE = 12;
+
+	/**
+	 * Minimal number of the inliers the least squares of the local optimization are computed from
+	 */
+	private static final int LO_MIN_INLIERS = 8;
+
+	/** size of the minimal sample */
+	private final int sampleSize;
+	/** models of the minimal sample */
+	private final double[][] models;
+
+	/* buffers, grown to the largest input and reused across the runs */
+	private int[] pool;
+	/** buffer of the solvers and of the least squares fits, 18 x capacity (at least 81) */
+	protected double[] buffer;
+
+	/* local optimization buffers */
+	private final double[] loModel = new double[9];
+	private final double[] iterModel = new double[9];
+	private double[] loErrors;
+	private int[] loInliers;
+	private int[] iterInliers;
+	private int[] subset;
+	private double[] weights;
+	private final XorShiftRandom random = new XorShiftRandom();
+
+	/* scores */
+	private final Score loScore = new Score();
+	private final Score iterScore = new Score();
+
+	/* run state */
+	private int totalIterations;
+	private int iterationBound;
+	private int inlLimit;
+	private int samples;
+
+	/* statistics of the run, see RANSACStats */
+	private int hypotheses, degenerateSamples, orientationRejections, rejectedHypotheses, localOptimizations, skippedLocalOptimizations, localOptimizationGain;
+	private final int[] sampleTestRejections = new int[SAMPLE_TEST.values().length];
+	private long solverTime, verificationTime, localOptimizationTime, leastSquaresTime;
+
+	/* local optimization scheduling */
+	private long runStartTime;
+	/** signatures of the inlier sets the local optimizations of the run started from, reused by the runs of this instance */
+	private final SignatureSet loSignatures = new SignatureSet();
+
+	/**
+	 * @param sampleSize
+	 * 		Size of the minimal sample
+	 * @param maxModels
+	 * 		Maximal number of the models of a minimal sample
+	 */
+	protected AbstSingleThreadedLoRANSAC(final int sampleSize, final int maxModels) {
+
+		this.sampleSize = sampleSize;
+		this.models = new double[maxModels][9];
+	}
+
+	/* -------------------------------------------------------------------------
+	 * Model of the implementation
+	 * ------------------------------------------------------------------------- */
+
+	/**
+	 * <p> Geometric tests of the minimal sample before it gets to the solver </p>
+	 *
+	 * @param pool
+	 * 		Indices of the tentative pairs
+	 * @param offset
+	 * 		Offset of the minimal sample in the {@code pool}
+	 * @return
+	 * 		Returns the test the sample has failed, {@code null} if none (the default)
+	 */
+	protected SAMPLE_TEST validateSample(final int[] pool, final int offset) {
+		return null;
+	}
+
+	/**
+	 * <p> Minimal solver </p>
+	 *
+	 * @param pool
+	 * 		Indices of the tentative pairs
+	 * @param offset
+	 * 		Offset of the minimal sample in the {@code pool}
+	 * @param models
+	 * 		Models of the sample to be computed
+	 * @return
+	 * 		Returns number of the models computed, {@code 0} if the sample is degenerate
+	 */
+	protected abstract int solve(int[] pool, int offset, double[][] models);
+
+	/**
+	 * <p> Orientation constraint of the model computed from the minimal sample </p>
+	 *
+	 * @return
+	 * 		Returns {@code true} if the sample is consistent with the model
+	 */
+	protected abstract boolean orientationValid(double[] model, int[] pool, int offset);
+
+	/**
+	 * <p> Errors of the tentative pairs, the consensus bailing out as soon as the model cannot have more than {@code best} inliers </p>
+	 *
+	 * @return
+	 * 		Returns number of the inliers within the {@code threshold}, not more than {@code best} if bailed out
+	 */
+	protected abstract int errorsInliers(double[] model, double[] errors, int best);
+
+	/**
+	 * <p> Errors of all the tentative pairs </p>
+	 */
+	protected abstract void errors(double[] model, double[] errors);
+
+	/**
+	 * <p> Errors of all the tentative pairs and their weights of the weighted least squares </p>
+	 */
+	protected abstract void weightedErrors(double[] model, double[] errors, double[] weights);
+
+	/**
+	 * <p> Least squares fit of the model to the first {@code count} tentative pairs of {@code inliers} </p>
+	 *
+	 * @param weights
+	 * 		Weights of the tentative pairs, {@code null} for the unweighted fit
+	 */
+	protected abstract void fit(int[] inliers, double[] weights, int count, double[] model);
+
+	/* -------------------------------------------------------------------------
+	 * Actual RANSAC implementation
+	 * ------------------------------------------------------------------------- */
+
+	@Override
+	public void run() {
+
+		if(sampling != SAMPLING.UNIFORM)
+			logger.debug("{} supports uniform sampling only, {} sampling ignored", name(), sampling);
+
+		resetStats();
+
+		final long startTime = startRun();
+		runStartTime = startTime;
+
+		inlLimit = inliersLimit == 0 ? Integer.MAX_VALUE : inliersLimit; /* 0 stands for unlimited least squares */
+
+		totalIterations = maxIterations;
+		iterationBound = D_MAX_ITERATIONS;
+		samples = 0;
+		loSignatures.clear();
+		random.setSeed(runSeed());
+
+		for(int i = 0; i < length; i++) {
+			pool[i] = i;
+		}
+
+		if(length >= sampleSize) {
+			mainLoop();
+		}
+
+		// If there were no LOs, do at least one now
+		if(doOptimizations && localOptimizations == 0 && maxScoreSingle.getInliers() > sampleSize && !stopRequested()) {
+			localOptimization();
+		}
+
+		writeData();
+
+		if(stats != null) {
+			collectStats(startTime);
+		}
+		setStats(stats);
+
+		setConfidence(achievedConfidence(getInliersCount(), sampleSize, length, samples, 1d), samples >= iterationBound);
+
+		if(stopped) {
+			logger.debug("Run stopped after {} samples (time budget: {} ns, cancelled: {}, confidence: {})", samples, timeBudget, cancelled.get(), getConfidence());
+		}
+	}
+
+	/**
+	 * <p> Main LoRANSAC loop: minimal samples drawn until the number of samples needed for the so-far-the-best model is reached </p>
+	 */
+	private void mainLoop() {
+
+		final boolean timed = stats != null;
+		final int offset = length - sampleSize;
+		boolean loSkipped = false;
+
+		for(int iteration = 0; iteration < totalIterations; iteration++) {
+
+			if((iteration & TIME_CHECK_MASK) == 0 && stopRequested()) {
+				break;
+			}
+
+			samples++;
+			boolean doIterate = false;
+
+			// random minimal sample, moved to the tail of the pool
+			for(int i = 0; i < sampleSize; i++) {
+				sample(pool, length, i, random);
+			}
+
+			long time = timed ? System.nanoTime() : 0L;
+
+			// degenerate samples rejected before they get to the solver
+			final SAMPLE_TEST failed = validateSample(pool, offset);
+			if(failed != null) {
+				sampleTestRejections[failed.ordinal()]++;
+				if(timed) solverTime += System.nanoTime() - time;
+				continue;
+			}
+
+			final int numberOfModels = solve(pool, offset, models);
+
+			if(numberOfModels == 0) {
+				degenerateSamples++;
+				if(timed) solverTime += System.nanoTime() - time;
+				continue;
+			}
+
+			hypotheses += numberOfModels;
+
+			if(timed) {
+				final long now = System.nanoTime();
+				solverTime += now - time;
+				time = now;
+			}
+
+			for(int i = 0; i < numberOfModels; i++) {
+
+				final double[] model = models[i];
+
+				// orientation constraint
+				if(!orientationValid(model, pool, offset)) {
+					orientationRejections++;
+					continue;
+				}
+
+				/* consensus (scores are ranked by the number of inliers, see Score.TYPE.SC_R) */
+				final int inliersCount = errorsInliers(model, errors, maxScoreSingle.getInliers());
+
+				if(timed) {
+					final long now = System.nanoTime();
+					verificationTime += now - time;
+					time = now;
+				}
+
+				if(inliersCount <= maxScoreSingle.getInliers()) { /* rejected or not better than so-far-the-best from sample */
+					rejectedHypotheses++;
+				} else {
+
+					inlierIndices(errors, length, threshold, inliers, score);
+
+					/* so-far-the-best from sample */
+					maxScoreSingle.assign(score);
+					doIterate = iteration > loMinSamples;
+
+					final double[] d = singleErrors;
+					singleErrors = errors;
+					errors = d;
+
+					offerMaximum(score, model, singleErrors);
+				}
+			}
+
+			if(iteration >= loMinSamples && localOptimizations == 0 && !loSkipped && maxScoreSingle.getInliers() > sampleSize) {
+				doIterate = true;
+			}
+
+			if(doIterate && doOptimizations) {
+
+				if(scheduleLocalOptimization()) {
+					localOptimization();
+				} else {
+					skippedLocalOptimizations++;
+					loSkipped = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p> Decides whether the local optimization of the so-far-the-best sample is worth running,
+	 * the same way {@link LoRANSACImpl} does (time fraction of the local optimizations, signatures of the inlier sets) </p>
+	 */
+	private boolean scheduleLocalOptimization() {
+
+		if(loTimeFraction < 1 && localOptimizationTime >= loTimeFraction * (System.nanoTime() - runStartTime)) {
+			return false;
+		}
+
+		return loSignatures.add(inliersSignature(singleErrors, length, threshold, LoRANSACImpl.LO_SIGNATURE_HASHES));
+	}
+
+	/**
+	 * <p> Accepts provided score as the new so-far-the-best one if it is better, number of total iterations is updated accordingly </p>
+	 */
+	@Override
+	protected boolean offerMaximum(final Score score, final double[] model, final double[] errors) {
+
+		if(!super.offerMaximum(score, model, errors)) {
+			return false;
+		}
+
+		// updating number of samples needed
+
+		iterationBound = recalculateMaxIterations(maxScore.getInliers(), bestSolutionProbability, sampleSize, length);
+
+		if(stats != null) {
+			stats.addBestScore(samples, maxScore.getInliers());
+		}
+
+		if(iterationBound < totalIterations) {
+			logger.debug("Downsizing total number of iterations from {} to {} (inliers found: {}; best solution prob: {}; minimal inliers: {}, tentative pairs count: {}",
+						totalIterations, iterationBound, maxScore.getInliers(), bestSolutionProbability, sampleSize, length);
+
+			totalIterations = iterationBound;
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> Local optimization of the so-far-the-best sample: least squares fit of the inliers within the wider threshold,
+	 * followed by the inner RANSAC drawing non-minimal samples from the inliers, each of them refined by the iterative least squares.
+	 * All the models computed are offered as the new maximum. </p>
+	 */
+	private void localOptimization() {
+
+		final long startTime = System.nanoTime();
+		localOptimizations++;
+
+		final int sampleInliers = maxScoreSingle.getInliers();
+		final int bestBefore = maxScore.getInliers();
+
+		inlierIndices(singleErrors, length, loThresholdMultiplier*threshold, loInliers, loScore);
+
+		if(loScore.getInliers() >= LO_MIN_INLIERS) {
+
+			leastSquares(loInliers, null, loScore.getInliers(), loModel);
+			errors(loModel, loErrors);
+
+			inlierIndices(loErrors, length, threshold, loInliers, loScore);
+			offerMaximum(loScore, loModel, loErrors);
+
+			innerRansac(loScore.getInliers());
+		}
+
+		final long time = System.nanoTime() - startTime;
+		localOptimizationTime += time;
+		localOptimizationGain += Math.max(0, maxScore.getInliers() - Math.max(sampleInliers, bestBefore));
+	}
+
+	/**
+	 * <p> Inner RANSAC of the local optimization: {@code loRepetitions} samples of up to {@link #LO_SAMPLE_SIZE} pairs drawn
+	 * from the first {@code numberOfInliers} elements of {@code loInliers} </p>
+	 */
+	private void innerRansac(final int numberOfInliers) {
+
+		if(numberOfInliers < 2*LO_MIN_INLIERS) {
+			return;
+		}
+
+		final int loSampleSize = Math.min(numberOfInliers/2, LO_SAMPLE_SIZE);
+
+		for(int i = 0; i < loRepetitions && !stopRequested(); i++) {
+
+			randomSubset(loInliers, numberOfInliers, loSampleSize, subset, random);
+			leastSquares(subset, null, loSampleSize, loModel);
+			errors(loModel, loErrors);
+
+			iterativeLeastSquares();
+		}
+	}
+
+	/**
+	 * <p> Iterative least squares of the model {@code loModel} having errors {@code loErrors}: least squares fit of its inliers,
+	 * followed by {@code loIterations} weighted least squares fits, the threshold shrinking from {@code loThresholdMultiplier*threshold}
+	 * to {@code threshold} </p>
+	 */
+	private void iterativeLeastSquares() {
+
+		double[] d = loErrors;
+
+		inlierIndices(d, length, threshold, iterInliers, iterScore);
+
+		if(iterScore.getInliers() < LO_MIN_INLIERS) {
+			return;
+		}
+
+		leastSquares(iterInliers, null, iterScore.getInliers(), iterModel);
+
+		double thresholds = loThresholdMultiplier*threshold;
+		final double dth = (thresholds - threshold) / Math.max(1, loIterations);
+
+		for(int it = 0; it < loIterations; it++) {
+
+			weightedErrors(iterModel, d, weights);
+
+			inlierIndices(d, length, threshold, iterInliers, iterScore);
+			offerMaximum(iterScore, iterModel, d);
+
+			inlierIndices(d, length, thresholds, iterInliers, iterScore);
+
+			if(iterScore.getInliers() < LO_MIN_INLIERS) {
+				return;
+			}
+
+			leastSquares(iterInliers, weights, iterScore.getInliers(), iterModel);
+
+			thresholds -= dth;
+		}
+
+		errors(iterModel, d);
+		inlierIndices(d, length, threshold, iterInliers, iterScore);
+		offerMaximum(iterScore, iterModel, d);
+	}
+
+	/**
+	 * <p> Least squares fit of the model to the provided inliers (see {@link #fit(int[], double[], int, double[])}), limited to the
+	 * random subset of {@code inliersLimit} of them. The time is measured if the statistics are collected. </p>
+	 */
+	private void leastSquares(final int[] inliers, final double[] w, final int count, final double[] model) {
+
+		final long startTime = stats != null ? System.nanoTime() : 0L;
+
+		final int[] fitted = count <= inlLimit ? inliers : randomSubset(inliers, count, inlLimit, subset, random);
+		fit(fitted, w, Math.min(count, inlLimit), model);
+
+		if(stats != null) {
+			leastSquaresTime += System.nanoTime() - startTime;
+		}
+	}
+
+	private void resetStats() {
+
+		hypotheses = degenerateSamples = orientationRejections = rejectedHypotheses = localOptimizations = skippedLocalOptimizations = localOptimizationGain = 0;
+		solverTime = verificationTime = localOptimizationTime = leastSquaresTime = 0L;
+
+		for(int i = 0; i < sampleTestRejections.length; i++) {
+			sampleTestRejections[i] = 0;
+		}
+	}
+
+	private void collectStats(final long startTime) {
+
+		for(SAMPLE_TEST test : SAMPLE_TEST.values()) {
+			if(test != SAMPLE_TEST.ORIENTATION) {
+				stats.setSampleTestRejections(test, sampleTestRejections[test.ordinal()]);
+			}
+		}
+
+		stats.setSamples(samples)
+			 .setHypotheses(hypotheses)
+			 .setDegenerateSamples(degenerateSamples)
+			 .setOrientationRejections(orientationRejections)
+			 .setRejectedHypotheses(rejectedHypotheses)
+			 .setLocalOptimizations(localOptimizations)
+			 .setSkippedLocalOptimizations(skippedLocalOptimizations)
+			 .setLocalOptimizationGain(localOptimizationGain)
+			 .setIterationBound(iterationBound)
+			 .setSolverTime(solverTime)
+			 .setVerificationTime(verificationTime)
+			 .setLocalOptimizationTime(localOptimizationTime)
+			 .setLeastSquaresTime(leastSquaresTime)
+			 .setAllocatedBytes(allocatedBytes())
+			 .setTime(System.nanoTime() - startTime);
+
+		logger.debug("{}", stats);
+	}
+
+	@Override
+	protected void growBuffers(final int capacity) {
+
+		super.growBuffers(capacity);
+
+		pool = new int[capacity];
+		buffer = new double[Math.max(18*capacity, 81)];
+		loErrors = new double[capacity];
+		loInliers = new int[capacity];
+		iterInliers = new int[capacity];
+		subset = new int[capacity];
+		weights = new double[capacity];
+	}
+}
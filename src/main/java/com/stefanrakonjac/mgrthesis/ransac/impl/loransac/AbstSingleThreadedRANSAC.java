@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.scoreLess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.impl.AbstRANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
+
+/**
+ * <p> Common base of the single-threaded implementations working on the tentative pairs in the LoRANSAC format (see {@link LoRANSACImpl}):
+ * buffers grown to the largest input and reused across the runs of the instance, the so-far-the-best model and its errors, the cancellation
+ * and the time budget checks and the results written from the so-far-the-best errors. The model is a 3x3 matrix stored by the rows. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public abstract class AbstSingleThreadedRANSAC extends AbstRANSAC {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstSingleThreadedRANSAC.class);
+
+	/** number of the tentative pairs of the run */
+	protected int length;
+	/** so-far-the-best model */
+	protected final double[] serializedModel = new double[9];
+
+	/* buffers, grown to the largest input and reused across the runs */
+	private int capacity = -1;
+	/** 6 x capacity, tentative pairs in LoRANSAC format */
+	protected double[] u;
+	/** errors of the hypothesis being verified */
+	protected double[] errors;
+	/** errors of the so-far-the-best hypothesis */
+	protected double[] singleErrors;
+	/** errors of the so-far-the-best model */
+	protected double[] maxErrors;
+	protected int[] inliers;
+
+	/* scores */
+	protected final Score maxScore = new Score();
+	protected final Score maxScoreSingle = new Score();
+	protected final Score score = new Score();
+
+	/* run state */
+	private long deadline;
+	private long startAllocatedBytes;
+	protected boolean stopped;
+	protected RANSACStats stats;
+
+	protected AbstSingleThreadedRANSAC() {
+		// no-op
+	}
+
+	/**
+	 * <p> Starts the run: deadline of the time budget, statistics (if collected) and the data (see {@link #prepareData()}) </p>
+	 *
+	 * @return
+	 * 		Returns {@link System#nanoTime()} the run started at
+	 */
+	protected long startRun() {
+
+		final long startTime = System.nanoTime();
+		deadline = startTime + timeBudget;
+		stopped = false;
+
+		stats = collectStats ? new RANSACStats() : null;
+		startAllocatedBytes = collectStats ? currentThreadAllocatedBytes() : -1;
+
+		prepareData();
+
+		return startTime;
+	}
+
+	/**
+	 * @return
+	 * 		Returns bytes allocated by the current thread since the run started, {@code -1} if not supported (or not collected)
+	 */
+	protected long allocatedBytes() {
+		return startAllocatedBytes < 0 ? -1 : currentThreadAllocatedBytes() - startAllocatedBytes;
+	}
+
+	/**
+	 * <p> Checks the cancellation and the time budget of the run </p>
+	 *
+	 * @return
+	 * 		Returns {@code true} if the run has been cancelled or its time budget has been exhausted
+	 */
+	protected final boolean stopRequested() {
+
+		if(!stopped && (cancelled.get() || (timeBudget > 0 && System.nanoTime() - deadline >= 0))) {
+			stopped = true;
+		}
+
+		return stopped;
+	}
+
+	/**
+	 * <p> Accepts provided score as the new so-far-the-best one if it is better; model and errors are copied </p>
+	 *
+	 * @param score
+	 * 		Score of the model
+	 * @param model
+	 * 		Model related to the {@code score}
+	 * @param errors
+	 * 		Errors related to the {@code score}
+	 * @return
+	 * 		Returns {@code true} if the score has been accepted
+	 */
+	protected boolean offerMaximum(final Score score, final double[] model, final double[] errors) {
+
+		if(!scoreLess(maxScore, score)) {
+			return false;
+		}
+
+		System.arraycopy(errors, 0, maxErrors, 0, length);
+		System.arraycopy(model, 0, serializedModel, 0, 9);
+		maxScore.assign(score);
+
+		return true;
+	}
+
+	/**
+	 * <p> Serializes the tentative pairs into the LoRANSAC format (see {@link LoRANSACImpl}), growing the buffers if needed;
+	 * resets the so-far-the-best model, its errors and the scores </p>
+	 */
+	protected void prepareData() {
+
+		length = tentativePairsCount;
+
+		if(length > capacity) {
+
+			logger.debug("Growing {} buffers from {} to {} correspondences", name(), capacity, length);
+
+			growBuffers(length);
+			capacity = length;
+		}
+
+		for(int i = 0; i < length; i++) {
+			 u[6*i] = coordinate(4*i);
+			 u[6*i + 1] = coordinate(4*i + 1);
+			 u[6*i + 2] = 1; // we are dealing with 2D data, 3rd dimension is always 1
+			 u[6*i + 3] = coordinate(4*i + 2);
+			 u[6*i + 4] = coordinate(4*i + 3);
+			 u[6*i + 5] = 1; // ditto
+
+			 maxErrors[i] = Double.POSITIVE_INFINITY;
+		}
+
+		for(int i = 0; i < 9; i++) {
+			serializedModel[i] = 0d;
+		}
+
+		maxScore.reset();
+		maxScoreSingle.reset();
+	}
+
+	/**
+	 * <p> Allocates the buffers of provided number of the tentative pairs, the implementations add their own ones </p>
+	 *
+	 * @param capacity
+	 * 		Number of the tentative pairs
+	 */
+	protected void growBuffers(final int capacity) {
+
+		u = new double[6*capacity];
+		errors = new double[capacity];
+		singleErrors = new double[capacity];
+		maxErrors = new double[capacity];
+		inliers = new int[capacity];
+	}
+
+	/**
+	 * <p> Marks the pairs within the threshold of the so-far-the-best errors as inliers and de-serializes the estimated model </p>
+	 */
+	protected final void writeData() {
+
+		final boolean[] inliersMask = new boolean[length];
+		int inliersCount = 0;
+
+		for(int i = 0; i < length; i++) {
+			if(inliersMask[i] = maxErrors[i] <= threshold) inliersCount++;
+		}
+
+		setInliers(inliersMask, inliersCount);
+
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+				geometryEstimation[i][j] = serializedModel[i*3 + j];
+			}
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ATools.shapeToAffine;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ATools.u2a;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.hds;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.hdsInliers;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inlierIndices;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p> Spatial verification by the affine hypotheses generated from single correspondences of the affine covariant features
+ * (Philbin et al.: Object retrieval with large vocabularies and fast spatial matching), instead of the random minimal samples:
+ * each pair having the shapes (see {@link #setShapes(double[])}) gives one hypothesis, so there are {@code n} hypotheses only,
+ * all of them verified. The best one is refined by the local optimization (iterative least squares affine fit). </p>
+ *
+ * <p> The run is deterministic: no sampling, the seed is not used. Verification is {@code O(n^2)} in the worst case, which is fast
+ * for the short lists of the tentative pairs of the re-ranking. The hypotheses are only approximate far from their features,
+ * so they are scored with the threshold of the local optimization ({@code loThresholdMultiplier * threshold}). </p>
+ *
+ * <p> Errors are the symmetric transfer errors of {@link LoRANSACHomographyImpl}, geometry estimation is the affine transformation
+ * mapping the first image to the second one (the last row being {@code 0, 0, 1}). Sampling, parallelism, randomized verification
+ * and inliers limit settings are ignored. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class AffineVerifierImpl extends AbstSingleThreadedRANSAC {
+
+	private static final Logger logger = LoggerFactory.getLogger(AffineVerifierImpl.class);
+
+	/**
+	 * Minimal number of the inliers the affine transformation is fitted to by the local optimization
+	 */
+	private static final int LO_MIN_INLIERS = 3;
+
+	/** affine shapes of the features of the tentative pairs, see {@link #setShapes(double[])} */
+	private double[] shapes;
+
+	/** hypothesis being verified, affine fit of the local optimization */
+	private final double[] h = new double[9];
+
+	/**
+	 * <p> Shapes setter: affine shapes (e.g. Hessian-affine ellipses) of the features of each tentative pair, 6 values per pair:
+	 * {@code a1, b1, c1, a2, b2, c2}, the ellipse of the {@code i}-th feature being {@code a(x'-x)^2 + 2b(x'-x)(y'-y) + c(y'-y)^2 = 1}.
+	 * Required by the run. </p>
+	 * <p> The array is used directly (not copied), so it must not be modified while the run is in progress. </p>
+	 *
+	 * @param shapes
+	 * 		Array having 6 times the number of tentative pairs elements (checked by the run), {@code null} to clear the shapes
+	 * @return
+	 * 		{@code this}
+	 */
+	public AffineVerifierImpl setShapes(double[] shapes) {
+		logger.debug("setShapes(double[{}])", shapes == null ? null : shapes.length);
+
+		this.shapes = shapes;
+		return this;
+	}
+
+	/* -------------------------------------------------------------------------
+	 * Actual verification
+	 * ------------------------------------------------------------------------- */
+
+	@Override
+	public void run() {
+
+		if(shapes == null || shapes.length != 6*tentativePairsCount)
+			throw new IllegalStateException(name() + " requires shapes of all the " + tentativePairsCount + " tentative pairs");
+
+		final long startTime = startRun();
+
+		final double hypothesisThreshold = loThresholdMultiplier*threshold;
+		int hypotheses = 0, degenerateSamples = 0, rejectedHypotheses = 0, localOptimizations = 0;
+		long verificationTime = 0, localOptimizationTime = 0;
+
+		// single-correspondence hypotheses
+		int tried = 0;
+		for(; tried < length; tried++) {
+
+			if((tried & TIME_CHECK_MASK) == 0 && stopRequested()) {
+				break;
+			}
+
+			if(!shapeToAffine(u, shapes, tried, h)) {
+				degenerateSamples++;
+				continue;
+			}
+
+			hypotheses++;
+
+			final long time = stats != null ? System.nanoTime() : 0L;
+			final int inliersCount = hdsInliers(u, h, errors, length, hypothesisThreshold, maxScoreSingle.getInliers());
+
+			if(stats != null) {
+				verificationTime += System.nanoTime() - time;
+			}
+
+			if(inliersCount <= maxScoreSingle.getInliers()) { /* rejected or not better than the best hypothesis */
+				rejectedHypotheses++;
+				continue;
+			}
+
+			maxScoreSingle.setInliers(inliersCount);
+
+			final double[] d = singleErrors;
+			singleErrors = errors;
+			errors = d;
+
+			// the hypothesis itself, scored by the threshold
+			inlierIndices(singleErrors, length, threshold, inliers, score);
+			offerMaximum(score, h, singleErrors);
+
+			if(stats != null) {
+				stats.addBestScore(tried + 1, maxScore.getInliers());
+			}
+		}
+
+		final int hypothesisInliers = maxScore.getInliers();
+
+		if(doOptimizations && maxScoreSingle.getInliers() >= LO_MIN_INLIERS && !stopRequested()) {
+
+			final long time = System.nanoTime();
+			localOptimizations++;
+			localOptimization();
+			localOptimizationTime = System.nanoTime() - time;
+		}
+
+		writeData();
+
+		if(stats != null) {
+
+			stats.setSamples(tried)
+				 .setHypotheses(hypotheses)
+				 .setDegenerateSamples(degenerateSamples)
+				 .setRejectedHypotheses(rejectedHypotheses)
+				 .setLocalOptimizations(localOptimizations)
+				 .setLocalOptimizationGain(maxScore.getInliers() - hypothesisInliers)
+				 .setIterationBound(length)
+				 .setVerificationTime(verificationTime)
+				 .setLocalOptimizationTime(localOptimizationTime)
+				 .setAllocatedBytes(allocatedBytes())
+				 .setTime(System.nanoTime() - startTime);
+
+			logger.debug("{}", stats);
+		}
+		setStats(stats);
+
+		// all the hypotheses verified: the best single-correspondence hypothesis has been found for sure
+		final boolean completed = tried == length;
+		setConfidence(completed ? 1d : achievedConfidence(getInliersCount(), 1, length, tried, 1d), completed);
+
+		if(stopped) {
+			logger.debug("Run stopped after {} hypotheses (time budget: {} ns, cancelled: {}, confidence: {})", tried, timeBudget, cancelled.get(), getConfidence());
+		}
+	}
+
+	/**
+	 * <p> Local optimization of the best hypothesis: least squares affine fit of its inliers within {@code loThresholdMultiplier * threshold},
+	 * repeated {@code loIterations} times, the threshold shrinking to {@code threshold}. All the fits are offered as the new maximum. </p>
+	 */
+	private void localOptimization() {
+
+		double thresholds = loThresholdMultiplier*threshold;
+		final double dth = (thresholds - threshold) / Math.max(1, loIterations);
+
+		double[] d = singleErrors;
+
+		for(int it = 0; it <= loIterations; it++) {
+
+			inlierIndices(d, length, thresholds, inliers, score);
+
+			if(score.getInliers() < LO_MIN_INLIERS || !u2a(u, inliers, score.getInliers(), h)) {
+				return;
+			}
+
+			hds(u, h, errors, length);
+			d = errors;
+
+			inlierIndices(d, length, threshold, inliers, score);
+			offerMaximum(score, h, d);
+
+			thresholds = Math.max(threshold, thresholds - dth);
+		}
+	}
+
+	/*
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String name() {
+		return AffineVerifierImpl.class.getSimpleName();
+	}
+}
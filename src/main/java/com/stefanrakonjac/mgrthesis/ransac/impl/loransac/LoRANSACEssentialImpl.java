@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.e2f;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.invertIntrinsics;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.normalise;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.u2e;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.u2ew;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.exFDs;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fds;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fdsInliers;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FivePointSolver;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SampleValidator;
+
+/**
+ * <p> LO-RANSAC of the calibrated images, estimating the essential matrix instead of the fundamental matrix estimated by {@link LoRANSACImpl}:
+ * minimal samples of 5 pairs solved by the {@link FivePointSolver} in the coordinates normalized by the intrinsics (see {@link #setIntrinsics(double[], double[])}),
+ * local optimization by the inner RANSAC and the iterative least squares as in {@link LoRANSACImpl}, the least squares fits projected to the
+ * essential matrices. For the same fraction of the inliers it needs far less samples than the 7-point fundamental matrix. </p>
+ *
+ * <p> Error of a pair is the Sampson error of the fundamental matrix {@code F = K2^-T E K1^-1} in the pixel coordinates, compared to the
+ * {@code threshold} the same way the errors of {@link LoRANSACImpl} are (the algebraic error of the normalized pair is the same, so the
+ * weights of the iterative least squares are too). Geometry estimation is this fundamental matrix. </p>
+ *
+ * <p> Runs are single-threaded, sampling is uniform and the hypotheses are verified on all the pairs: parallelism and randomized
+ * verification settings are ignored, so are PROSAC and NAPSAC samplings (not supported). </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class LoRANSACEssentialImpl extends AbstSingleThreadedLoRANSAC {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoRANSACEssentialImpl.class);
+
+	/**
+	 * Size of the minimal sample
+	 */
+	private static final int SAMPLE_SIZE = FivePointSolver.SAMPLE_SIZE;
+
+	/** calibration matrices of the cameras, see {@link #setIntrinsics(double[], double[])} */
+	private double[] intrinsics1, intrinsics2;
+
+	/** 6 x capacity, tentative pairs normalized by the inverse intrinsics */
+	private double[] n;
+	private final double[] inverse1 = new double[9], inverse2 = new double[9];
+	/** essential matrices of the sample */
+	private final double[][] es = new double[FivePointSolver.MAX_SOLUTIONS][9];
+	/** essential matrix of the least squares fit */
+	private final double[] e = new double[9];
+	private final FivePointSolver solver = new FivePointSolver();
+	private SampleValidator validator;
+
+	public LoRANSACEssentialImpl() {
+		super(SAMPLE_SIZE, FivePointSolver.MAX_SOLUTIONS);
+	}
+
+	/**
+	 * <p> Intrinsics setter: calibration matrices of the cameras of both the images (e.g. by the EXIF focal length), 9 values each,
+	 * upper triangular {@code K = [fx s cx; 0 fy cy; 0 0 1]} stored by the rows. Required by the run; the geometry estimated is
+	 * the fundamental matrix {@code K2^-T E K1^-1} of the pixel coordinates. </p>
+	 * <p> The arrays are used directly (not copied), so they must not be modified while the run is in progress. </p>
+	 *
+	 * @param intrinsics1
+	 * 		Calibration matrix of the first image, {@code null} to clear the intrinsics
+	 * @param intrinsics2
+	 * 		Calibration matrix of the second image, {@code null} to clear the intrinsics
+	 * @return
+	 * 		{@code this}
+	 */
+	public LoRANSACEssentialImpl setIntrinsics(double[] intrinsics1, double[] intrinsics2) {
+		logger.debug("setIntrinsics({}, {})", Arrays.toString(intrinsics1), Arrays.toString(intrinsics2));
+
+		this.intrinsics1 = intrinsics1;
+		this.intrinsics2 = intrinsics2;
+		return this;
+	}
+
+	@Override
+	public void run() {
+
+		if(intrinsics1 == null || intrinsics2 == null)
+			throw new IllegalStateException(name() + " needs the intrinsics of both images");
+
+		invertIntrinsics(intrinsics1, inverse1);
+		invertIntrinsics(intrinsics2, inverse2);
+		validator = new SampleValidator(sampleTests);
+
+		super.run();
+	}
+
+	/* -------------------------------------------------------------------------
+	 * Model: essential matrix, verified as the fundamental matrix of the pixel coordinates
+	 * ------------------------------------------------------------------------- */
+
+	@Override
+	protected SAMPLE_TEST validateSample(final int[] pool, final int offset) {
+		return validator.validate(u, pool, offset, SAMPLE_SIZE);
+	}
+
+	@Override
+	protected int solve(final int[] pool, final int offset, final double[][] models) {
+
+		final int numberOfSolutions = solver.solve(n, pool, offset, es);
+
+		for(int i = 0; i < numberOfSolutions; i++) { // up to 10 hypotheses per sample
+			e2f(es[i], inverse1, inverse2, models[i]);
+		}
+
+		return numberOfSolutions;
+	}
+
+	@Override
+	protected boolean orientationValid(final double[] f, final int[] pool, final int offset) {
+		return validator.orientationValid(f, u, pool, offset, SAMPLE_SIZE);
+	}
+
+	@Override
+	protected int errorsInliers(final double[] f, final double[] errors, final int best) {
+		return fdsInliers(u, f, errors, length, threshold, best);
+	}
+
+	@Override
+	protected void errors(final double[] f, final double[] errors) {
+		fds(u, f, errors, length);
+	}
+
+	@Override
+	protected void weightedErrors(final double[] f, final double[] errors, final double[] weights) {
+		exFDs(u, f, errors, weights, length);
+	}
+
+	/**
+	 * <p> Least squares fit of the essential matrix to the provided inliers (normalized), projected to the fundamental matrix </p>
+	 */
+	@Override
+	protected void fit(final int[] inliers, final double[] weights, final int count, final double[] f) {
+
+		if(weights == null) {
+			u2e(n, inliers, count, e, buffer);
+		} else {
+			u2ew(n, inliers, weights, count, e, buffer);
+		}
+
+		e2f(e, inverse1, inverse2, f);
+	}
+
+	/**
+	 * <p> Serializes the tentative pairs and normalizes them by the inverse intrinsics </p>
+	 */
+	@Override
+	protected void prepareData() {
+
+		super.prepareData();
+
+		normalise(u, length, inverse1, inverse2, n);
+	}
+
+	@Override
+	protected void growBuffers(final int capacity) {
+
+		super.growBuffers(capacity);
+
+		n = new double[6*capacity];
+	}
+
+	/*
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String name() {
+		return LoRANSACEssentialImpl.class.getSimpleName();
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.allOrientationValidH;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.degenerateSampleH;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.exHDs;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.hds;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.hdsInliers;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.u2h;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.HTools.u2hw;
+
+/**
+ * <p> LO-RANSAC estimating a homography instead of the fundamental matrix estimated by {@link LoRANSACImpl}: minimal samples of 4 pairs
+ * solved by the normalized DLT, pairs verified by the symmetric transfer error, local optimization by the inner RANSAC and the iterative
+ * least squares as in {@link LoRANSACImpl}. Suited for the (nearly) planar scenes, e.g. building facades, where it needs far less samples
+ * than the 7-point fundamental matrix. </p>
+ *
+ * <p> Error of a pair is the sum of the squared transfer errors in both images, compared to the {@code threshold} the same way the errors
+ * of {@link LoRANSACImpl} are. Geometry estimation is the homography {@code H} mapping the first image to the second one, {@code u2 ~ H u1}. </p>
+ *
+ * <p> Runs are single-threaded, sampling is uniform and the hypotheses are verified on all the pairs: parallelism and randomized
+ * verification settings are ignored, so are PROSAC and NAPSAC samplings (not supported). </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class LoRANSACHomographyImpl extends AbstSingleThreadedLoRANSAC {
+
+	/**
+	 * Size of the minimal sample
+	 */
+	private static final int SAMPLE_SIZE = 4;
+
+	private final int[] sample = new int[SAMPLE_SIZE];
+
+	public LoRANSACHomographyImpl() {
+		super(SAMPLE_SIZE, 1);
+	}
+
+	/* -------------------------------------------------------------------------
+	 * Model: homography
+	 * ------------------------------------------------------------------------- */
+
+	@Override
+	protected int solve(final int[] pool, final int offset, final double[][] models) {
+
+		if(degenerateSampleH(u, pool, offset, SAMPLE_SIZE)) {
+			return 0;
+		}
+
+		System.arraycopy(pool, offset, sample, 0, SAMPLE_SIZE);
+		u2h(u, sample, SAMPLE_SIZE, models[0], buffer);
+
+		return 1;
+	}
+
+	@Override
+	protected boolean orientationValid(final double[] h, final int[] pool, final int offset) {
+		return allOrientationValidH(h, u, pool, offset, SAMPLE_SIZE);
+	}
+
+	@Override
+	protected int errorsInliers(final double[] h, final double[] errors, final int best) {
+		return hdsInliers(u, h, errors, length, threshold, best);
+	}
+
+	@Override
+	protected void errors(final double[] h, final double[] errors) {
+		hds(u, h, errors, length);
+	}
+
+	@Override
+	protected void weightedErrors(final double[] h, final double[] errors, final double[] weights) {
+		exHDs(u, h, errors, weights, length);
+	}
+
+	@Override
+	protected void fit(final int[] inliers, final double[] weights, final int count, final double[] h) {
+
+		if(weights == null) {
+			u2h(u, inliers, count, h, buffer);
+		} else {
+			u2hw(u, inliers, weights, count, h, buffer);
+		}
+	}
+
+	/*
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String name() {
+		return LoRANSACHomographyImpl.class.getSimpleName();
+	}
+}
@@ -3,27 +3,45 @@
  */
 package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
 
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.allOrientationValid;
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.exFDs;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.exFDsScatter;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fds;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fdsInliers;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrix;
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.realRoots;
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.slcm;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrixN;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.singulF;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.u2f;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.u2fw;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inlierIndices;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inliersSignature;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.napsacSample;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.prosacSample;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.rSampleT;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.randomSubset;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.sampleT;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.scoreLess;
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.nullSpace;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SymmetricEigen.smallestEigenpair;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.denormF;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.normu;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLE_TEST;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
 import com.stefanrakonjac.mgrthesis.ransac.impl.AbstRANSAC;
 import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SampleValidator;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SevenPointSolver;
 import com.stefanrakonjac.mgrthesis.ransac.utils.ArraysUtils;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
 
 /**
  * This implementation heavily uses BoofCV library as well as {@link BoofCVRANSACImpl} implementation does, but it provides its own
@@ -37,27 +55,90 @@ public class LoRANSACImpl extends AbstRANSAC {
 	private static final Logger logger = LoggerFactory.getLogger(LoRANSACImpl.class);
 
 	/**
-	 * Defines what is the minimal number of samples to draw before running local optimization
+	 * Number of the min-hashes of the inlier set signature: local optimization is not repeated on the inlier sets having the same signature, 
+	 * which is the case of the sets having Jaccard similarity J with probability J<sup>LO_SIGNATURE_HASHES</sup>
 	 */
-	private static final int MIN_SAMPLES_DRAWN_TO_LO = 50;
+	static final int LO_SIGNATURE_HASHES = 4;
 	
 	/**
-	 * TODO: define meaning
+	 * Initial estimate of the inlier ratio of a good model used by the randomized verification
 	 */
-	private static final int TC = 4;
+	private static final double SPRT_EPSILON = 0.1d;
+	
+	/**
+	 * Initial estimate of the probability of a point being consistent with a bad model used by the randomized verification
+	 */
+	private static final double SPRT_DELTA = 0.01d;
+	
+	/**
+	 * Number of samples after which PROSAC draws from all the tentative pairs, as RANSAC does
+	 */
+	private static final int PROSAC_TN = 200000;
+	
+	/**
+	 * Probability of a pair being consistent with a bad model, used by the PROSAC non-randomness criterion
+	 */
+	private static final double PROSAC_BETA = 0.05d;
 	
-	private static final int ILSQ_ITERS = 4;
-
 	/**
-	 * TODO: define meaning
+	 * Quantile of the normal distribution (probability 0.95), used by the PROSAC non-randomness criterion
 	 */
-	private static final int RANSAC_REPEAT = 10;
+	private static final double PROSAC_NON_RANDOMNESS_QUANTILE = 1.645d;
+	
+	/**
+	 * Minimal number of the top-ranked pairs the PROSAC stopping criterion is evaluated for
+	 */
+	private static final int PROSAC_MIN_STOP_LENGTH = 20;
+	
+	/**
+	 * Average number of the tentative pairs per NAPSAC grid cell; a sample is drawn from 3 x 3 cells
+	 */
+	private static final int NAPSAC_CELL_POINTS = 8;
+	
+	/**
+	 * Pool executing the workers of parallel runs; shared among all the {@link LoRANSACImpl} instances
+	 */
+	private static final ForkJoinPool WORKERS_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
 	private int length;
-	private boolean[] inliersMap;
-	private int inliersCount = 0;
-	private double[] serializedTentativePairs;
 	private double[] serializedModel;
+	
+	/** workspace of the thread calling {@link #run()}, valid during the run only */
+	private LoRANSACWorkspace workspace;
+	
+	/* data shared by all the workers of a single run */
+	private final Object maximumLock = new Object();
+	private final AtomicInteger iterationCounter = new AtomicInteger();
+	private volatile int totalIterations;
+	private volatile boolean loIteration;
+	/** so-far-the-best score of the run, guarded by {@code maximumLock} */
+	private final Score maxScore = new Score();
+	/** inliers of {@code maxScore}, read by the workers without locking (scores are ranked by the number of inliers, see Score.TYPE.SC_R) */
+	private volatile int maxInliers;
+	/** number of samples needed to reach the best solution probability, as computed for the so-far-the-best model */
+	private volatile int iterationBound;
+	private long seed;
+	/** {@link System#nanoTime()} the time budget ends at, valid if {@code timeBudget > 0} */
+	private long deadline;
+	/** whether the run has been stopped by the time budget or by {@link #cancel()} */
+	private volatile boolean stopped;
+	/** randomized verification, {@code null} if not used */
+	private SPRT sprt;
+	/** whether the samples are drawn by PROSAC */
+	private boolean prosac;
+	/** whether the samples are drawn by NAPSAC */
+	private boolean napsac;
+	/** number of the NAPSAC grid cells per side */
+	private int gridSize;
+	/** tests of the minimal samples, see {@link #setSampleTests(Set)} */
+	private SampleValidator validator;
+	/** statistics of the run, {@code null} if not collected */
+	private RANSACStats stats;
+	
+	/* local optimization scheduling */
+	private long runStartTime;
+	/** time spent by the local optimizations of the run */
+	private final AtomicLong loTime = new AtomicLong();
 
 	/* -------------------------------------------------------------------------
 	 * Actual RANSAC implementation
@@ -66,251 +147,851 @@ public class LoRANSACImpl extends AbstRANSAC {
 	@Override
 	public void run() {
 		
+		final long startTime = System.nanoTime();
+		runStartTime = startTime;
+		deadline = startTime + timeBudget;
+		stopped = false;
+		
+		stats = collectStats ? new RANSACStats() : null;
+		final long startAllocatedBytes = collectStats ? currentThreadAllocatedBytes() : -1;
+		
+		workspace = LoRANSACWorkspace.forCurrentThread(tentativePairsCount);
+		
 		prepareLoRANSACData();
 		
 		if(inliersLimit == 0) { /* in the case of unlimited least squares */
 			inliersLimit = Integer.MAX_VALUE;
 		}
 		
-		boolean loIteration = false;
-		
 		// keep track of the scores accomplished
-		Score maxScore = new Score(), maxScoreSingle = new Score();
+		maxScore.reset();
+		maxInliers = 0;
+		Arrays.fill(workspace.maxErrors, 0, length, 0d);
+		loIteration = false;
+		totalIterations = maxIterations;
+		iterationBound = D_MAX_ITERATIONS;
+		iterationCounter.set(0);
+		loTime.set(0);
+		workspace.loSignatures.clear();
+		seed = runSeed();
 		
-		// initialize the pool
-		final int[] pool = new int[length];
-		for (int i = 0; i < length; i++) {
-			pool[i] = i;
+		if(doSPRT) {
+			sprt = new SPRT(SPRT_EPSILON, SPRT_DELTA);
+			shuffleVerificationOrder();
+		} else {
+			sprt = null;
 		}
 		
-		double[] f1 = new double[81]; // 9x9
-		double[] f2; // f1[9] inclusive ... f1[18] exclusive
-
-		final double[] poly = new double[4];
-		final double[] roots = new double[3]; // 1 or 3 roots of poly
-		final double[] a = new double[9*9];
-		final double[] z = new double[9*length];
+		prosac = sampling == SAMPLING.PROSAC;
+		if(prosac) {
+			if(qualities == null || qualities.length != length) 
+				throw new IllegalStateException("PROSAC sampling requires qualities of all the " + length + " tentative pairs");
+			preparePROSAC();
+		}
 		
-		int[] nullspaceBuffer = new int[2*9];
+		napsac = sampling == SAMPLING.NAPSAC;
+		if(napsac) {
+			prepareNAPSAC();
+		}
 		
-		lineariseFundamentalMatrix(serializedTentativePairs, z, pool, length);
+		validator = new SampleValidator(sampleTests);
 		
-		final double[] buffer = new double[9*length];
-		final double[] f = new double[9];
+		lineariseFundamentalMatrix(workspace.serializedTentativePairs, workspace.linearisedTentativePairs, workspace.indices, length);
 		
-		double[] error0 = new double[length];
-		double[] error1 = new double[length];
-		double[] error2 = new double[length];
-		double[] error3 = new double[length];
+		if(doOptimizations) {
+			// single normalization of all the pairs, so that the unweighted fits of the local optimization update their scatter matrix
+			normu(workspace.serializedTentativePairs, workspace.indices, length, workspace.normalisation1, workspace.normalisation2);
+			lineariseFundamentalMatrixN(workspace.serializedTentativePairs, workspace.normalisedTentativePairs, workspace.indices, length, 
+					workspace.normalisation1, workspace.normalisation2);
+		}
 		
-		double[][] errors = new double[5][];
-		errors[0] = error0;
-		errors[1] = error1;
-		errors[2] = error2;
-		errors[3] = error3;
-		errors[4] = error3;
+		// main LoRANSAC loop
+		final Worker[] workers = new Worker[parallelism];
+		for(int i = 0; i < parallelism; i++) {
+			workers[i] = new Worker(i);
+		}
+		
+		if(parallelism == 1) {
+			workers[0].call();
+		} else {
+			runInParallel(workers);
+		}
 		
-		final int[] inliers = new int[length];
+		// If there were no LOs, do at least one now (on the worker having the best sample)
+		Worker bestSampleWorker = workers[0];
+		for(Worker worker : workers) {
+			if(scoreLess(bestSampleWorker.maxScoreSingle, worker.maxScoreSingle)) {
+				bestSampleWorker = worker;
+			}
+		}
 		
-		boolean newMaximum;
-		boolean doIterate;
+		if (doOptimizations && !loIteration && bestSampleWorker.maxScoreSingle.getInliers() > 7 && !stopRequested()) {
+			if(parallelism > 1) {
+				// workspace of the thread which executed the worker may already be used by another run
+				bestSampleWorker.takeOver(workspace);
+			}
+			bestSampleWorker.localOptimization();
+			bestSampleWorker.collectLeastSquaresTime();
+		}
 		
-		// main LoRANSAC loop
-		int totalIterations = maxIterations;
-		for(int iteration = 0; iteration < totalIterations; iteration++) {
+		writeLoRANSACData();
+		
+		int samples = 0;
+		for(Worker worker : workers) {
+			samples += worker.samples;
+		}
+		
+		if(stats != null) {
+			collectStats(workers, samples, startTime, startAllocatedBytes);
+		}
+		setStats(stats);
+		
+		final double goodModelAcceptance = sprt != null ? sprt.getGoodModelAcceptance() : 1d;
+		setConfidence(achievedConfidence(getInliersCount(), 7, length, samples, goodModelAcceptance), samples >= iterationBound);
+		
+		if(stopped) {
+			logger.debug("Run stopped after {} samples (time budget: {} ns, cancelled: {}, confidence: {})", samples, timeBudget, cancelled.get(), getConfidence());
+		}
+		
+		workspace = null;
+	}
+	
+	/**
+	 * <p> Splits the main LoRANSAC loop among provided workers, each of them being executed by {@link #WORKERS_POOL}. 
+	 * Returns when all the workers are done. </p>
+	 * 
+	 * @param workers
+	 * 		Workers to be executed
+	 */
+	private void runInParallel(final Worker[] workers) {
+		
+		logger.debug("Running LoRANSAC main loop using {} workers", workers.length);
+		
+		try {
 			
-			newMaximum = false;
-			doIterate = false;
+			for(Future<Void> future : WORKERS_POOL.invokeAll(Arrays.asList(workers))) {
+				future.get();
+			}
+			
+		} catch (InterruptedException ex) {
+			
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("LoRANSAC run interrupted", ex);
 			
-			// random minimal sample
-			rSampleT(z, 9, pool, 7, length, a);
+		} catch (ExecutionException ex) {
 			
-			for (int i = 7*9; i < 9*9; i++) { 
-				// fill with zeros to square
-				a[i] = 0d;
+			throw new IllegalStateException("LoRANSAC worker failed", ex.getCause());
+		}
+	}
+	
+	/**
+	 * <p> Sums the statistics of the workers into the statistics of the run </p>
+	 * 
+	 * @param workers
+	 * 		Workers of the run
+	 * @param samples
+	 * 		Number of samples drawn by all the workers
+	 * @param startTime
+	 * 		{@link System#nanoTime()} the run started at
+	 * @param startAllocatedBytes
+	 * 		Bytes allocated by the current thread when the run started, the workers of the parallel runs are added
+	 */
+	private void collectStats(final Worker[] workers, final int samples, final long startTime, final long startAllocatedBytes) {
+		
+		int hypotheses = 0, degenerateSamples = 0, orientationRejections = 0, rejectedHypotheses = 0, localOptimizations = 0, skippedLocalOptimizations = 0, localOptimizationGain = 0;
+		long solverTime = 0, verificationTime = 0, localOptimizationTime = 0, leastSquaresTime = 0;
+		final int[] sampleTestRejections = new int[SAMPLE_TEST.values().length];
+		
+		// the workers of the parallel runs allocate on the threads of the pool
+		long allocatedBytes = startAllocatedBytes < 0 ? -1 : currentThreadAllocatedBytes() - startAllocatedBytes;
+		
+		for(Worker worker : workers) {
+			for(int i = 0; i < sampleTestRejections.length; i++) {
+				sampleTestRejections[i] += worker.sampleTestRejections[i];
 			}
+			hypotheses += worker.hypotheses;
+			degenerateSamples += worker.degenerateSamples;
+			orientationRejections += worker.orientationRejections;
+			rejectedHypotheses += worker.rejectedHypotheses;
+			localOptimizations += worker.localOptimizations;
+			skippedLocalOptimizations += worker.skippedLocalOptimizations;
+			localOptimizationGain += worker.localOptimizationGain;
+			solverTime += worker.solverTime;
+			verificationTime += worker.verificationTime;
+			localOptimizationTime += worker.localOptimizationTime;
+			leastSquaresTime += worker.leastSquaresTime;
+			allocatedBytes = allocatedBytes < 0 || worker.allocatedBytes < 0 ? -1 : allocatedBytes + worker.allocatedBytes;
+		}
+		
+		stats.setSamples(samples)
+			 .setHypotheses(hypotheses)
+			 .setDegenerateSamples(degenerateSamples)
+			 .setOrientationRejections(orientationRejections)
+			 .setSampleTestRejections(SAMPLE_TEST.REPEATED, sampleTestRejections[SAMPLE_TEST.REPEATED.ordinal()])
+			 .setSampleTestRejections(SAMPLE_TEST.COINCIDENT, sampleTestRejections[SAMPLE_TEST.COINCIDENT.ordinal()])
+			 .setSampleTestRejections(SAMPLE_TEST.COLLINEAR, sampleTestRejections[SAMPLE_TEST.COLLINEAR.ordinal()])
+			 .setRejectedHypotheses(rejectedHypotheses)
+			 .setLocalOptimizations(localOptimizations)
+			 .setSkippedLocalOptimizations(skippedLocalOptimizations)
+			 .setLocalOptimizationGain(localOptimizationGain)
+			 .setIterationBound(iterationBound)
+			 .setSolverTime(solverTime)
+			 .setVerificationTime(verificationTime)
+			 .setLocalOptimizationTime(localOptimizationTime)
+			 .setLeastSquaresTime(leastSquaresTime)
+			 .setAllocatedBytes(allocatedBytes)
+			 .setTime(System.nanoTime() - startTime);
+		
+		logger.debug("{}", stats);
+	}
+	
+	/**
+	 * <p> Decides whether the local optimization of the sample having provided errors is worth running: it is not if the local optimizations 
+	 * have already spent more than {@code loTimeFraction} of the run time, or if a local optimization has already started 
+	 * from the same (or nearly the same) inlier set </p>
+	 * 
+	 * @param errors
+	 * 		Errors of the sample to be optimized
+	 * @return
+	 * 		Returns {@code true} if the local optimization is to be run
+	 */
+	private boolean scheduleLocalOptimization(final double[] errors) {
+		
+		if(loTimeFraction < 1 && loTime.get() >= loTimeFraction * (System.nanoTime() - runStartTime)) {
+			return false;
+		}
+		
+		final long signature = inliersSignature(errors, length, threshold, LO_SIGNATURE_HASHES);
+		
+		synchronized (maximumLock) {
+			return workspace.loSignatures.add(signature);
+		}
+	}
+	
+	/**
+	 * <p> Checks the cancellation and the time budget of the run; once the run is stopped, no worker starts a new iteration </p>
+	 * 
+	 * @return
+	 * 		Returns {@code true} if the run has been cancelled or its time budget has been exhausted
+	 */
+	private boolean stopRequested() {
+		
+		if(!stopped && (cancelled.get() || (timeBudget > 0 && System.nanoTime() - deadline >= 0))) {
+			stopped = true;
+		}
+		
+		return stopped;
+	}
+	
+	/**
+	 * <p> Offers the score accomplished by a worker as the new so-far-the-best one. Model and errors are copied into the run workspace 
+	 * if the score is accepted, so that the worker keeps owning its buffers. Number of total iterations is updated accordingly. </p>
+	 * 
+	 * @param score
+	 * 		Score accomplished by the worker
+	 * @param f
+	 * 		Model related to the {@code score}
+	 * @param errors
+	 * 		Errors related to the {@code score}
+	 * @return
+	 * 		Returns {@code true} if the score has been accepted, {@code false} if other worker has already reached better score
+	 */
+	private boolean offerMaximum(final Score score, final double[] f, final double[] errors) {
+		
+		synchronized (maximumLock) {
 			
-			if (nullSpace(a, f1, 9, nullspaceBuffer) != 2) {
-				continue;
+			if(!scoreLess(maxScore, score)) {
+				return false;
 			}
+
+			System.arraycopy(errors, 0, workspace.maxErrors, 0, length);
+			System.arraycopy(f, 0, serializedModel, 0, 9);
+			maxScore.assign(score);
+			maxInliers = maxScore.getInliers();
 			
-			// in C version, f2 is a reference to f1 + 9 and following slcm method expects two 3x3 matrices (f1 and f2)
-			f2 = ArrayUtils.subarray(f1, 9, 18);
+			// updating number of samples needed
 			
-			slcm(f1, f2, poly);
+			final double goodModelAcceptance;
+			if(sprt != null) {
+				sprt.adaptEpsilon(((double) maxScore.getInliers()) / length);
+				goodModelAcceptance = sprt.getGoodModelAcceptance();
+			} else {
+				goodModelAcceptance = 1d;
+			}
 			
-			// slcm changes f2 so this change needs to be pushed back to f1
-			ArraysUtils.copySubArray(f1, f2, 9);
+			int newTotalIterations = recalculateMaxIterations(maxScore.getInliers(), bestSolutionProbability, 7, length, goodModelAcceptance);
+			if(prosac) {
+				newTotalIterations = Math.min(newTotalIterations, prosacMaxIterations(goodModelAcceptance));
+			} else if(napsac) {
+				newTotalIterations = napsacMaxIterations(goodModelAcceptance);
+			}
 			
-			int numberOfSolutions = realRoots(poly, roots);
+			iterationBound = newTotalIterations;
 			
-			for (int i = 0; i < numberOfSolutions; i++) { // 1 or 3 hypotheses per sample
+			if(stats != null) {
+				stats.addBestScore(iterationCounter.get(), maxScore.getInliers());
+			}
+
+			if (newTotalIterations < totalIterations) {
+				logger.debug("Downsizing total number of iterations from {} to {} (inliers found: {}; best solution prob: {}; minimal inliers: {}, tentative pairs count: {}", 
+							totalIterations, newTotalIterations, maxScore.getInliers(), bestSolutionProbability, 7, length);
 				
-				for (int j = 0; j < 9; j++) {
-					f[j] = f1[j] * roots[i] + f2[j] * (1 - roots[i]);
-				}
+				totalIterations = newTotalIterations;
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * <p> Single worker of the main LoRANSAC loop. Samples drawn by all the workers of a run are counted together, 
+	 * each worker uses the workspace of the thread executing it. The single worker of a sequential run runs local optimization on every new best sample 
+	 * of its own (as the sequential LoRANSAC loop does), the workers of a parallel run on the samples accepted as the new maximum of the run only. </p>
+	 * 
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	private final class Worker implements Callable<Void> {
+		
+		/** index of the worker within the run, selects the random stream */
+		private final int index;
+		
+		/** workspace of the thread executing this worker */
+		private LoRANSACWorkspace ws;
+		
+		/** score of the so-far-the-best sample of this worker, kept when the worker is done */
+		private final Score maxScoreSingle = new Score();
+		
+		/** number of samples drawn by this worker */
+		private int samples;
+		
+		/* statistics of this worker, see RANSACStats */
+		private int hypotheses, degenerateSamples, orientationRejections, rejectedHypotheses, localOptimizations, skippedLocalOptimizations, localOptimizationGain;
+		private long solverTime, verificationTime, localOptimizationTime, leastSquaresTime;
+		/** bytes allocated by the pool thread executing this worker (parallel runs only, the single worker is measured by the run), {@code -1} if not supported */
+		private long allocatedBytes;
+		/** samples rejected by the geometric sample tests, by {@link SAMPLE_TEST#ordinal()} */
+		private final int[] sampleTestRejections = new int[SAMPLE_TEST.values().length];
+		
+		/** errors of the so-far-the-best sample of this worker, kept when the worker is done (parallel runs only) */
+		private double[] sampleErrors;
+		
+		/** randomized verification of the hypotheses, {@code null} if not used */
+		private final SPRT.Verifier verifier;
+		
+		private Worker(final int index) {
+			this.index = index;
+			this.verifier = sprt != null ? sprt.newVerifier() : null;
+		}
 
-				// orientation constraint
-				if (!allOrientationValid(f, serializedTentativePairs, ArrayUtils.subarray(pool, pool.length-7, pool.length), 7)) {
-					continue;
+		@Override
+		public Void call() {
+			
+			final long startAllocatedBytes = stats != null && parallelism > 1 ? currentThreadAllocatedBytes() : 0L;
+			
+			ws = LoRANSACWorkspace.forCurrentThread(length);
+			ws.random.setSeed(XorShiftRandom.streamSeed(seed, index));
+			ws.leastSquaresTime = 0;
+			
+			final boolean timed = stats != null;
+			
+			final int[] pool = ws.pool;
+			for (int i = 0; i < length; i++) {
+				pool[i] = i;
+			}
+			
+			final double[] u = workspace.serializedTentativePairs;
+			final double[] x1 = workspace.x1, y1 = workspace.y1, x2 = workspace.x2, y2 = workspace.y2;
+			final double[] linearisedTentativePairs = workspace.linearisedTentativePairs;
+			final int[] order = workspace.order;
+			final int[] ranking = workspace.ranking;
+			final int[] growth = workspace.prosacGrowth;
+			final int[] cellPoints = workspace.cellPoints;
+			final int[] cellStarts = workspace.cellStarts;
+			final int[] pointCells = workspace.pointCells;
+			final int[] sample = ws.sample;
+			int n = 7; // PROSAC: number of the top-ranked pairs drawn from
+			final double[] a = ws.a;
+			final double[][] fs = ws.fs;
+			final double[][] errors = ws.errors;
+			final Score score = ws.score;
+			
+			ws.maxScoreSingle.reset();
+			
+			boolean doIterate;
+			final boolean shared = parallelism > 1;
+			boolean loSkipped = false;
+			
+			for(int iteration = iterationCounter.getAndIncrement(); iteration < totalIterations && !stopped; iteration = iterationCounter.getAndIncrement()) {
+				
+				if((iteration & TIME_CHECK_MASK) == 0 && stopRequested()) {
+					break;
 				}
-
-				/* consensus */
-				final double[] d = errors[i];
-				fds(serializedTentativePairs, f, d, length);
 				
-				final Score score = inlierIndices(d, length, threshold, inliers);
-
-				if(scoreLess(maxScore, score)) { /* so-far-the-best */
-					maxScore = score.clone();
-					errors[i] = errors[3];
-					errors[3] = d;
-					serializedModel = f.clone();
-					newMaximum = true;
+				samples++;
+				doIterate = false;
+				
+				// random minimal sample
+				final int[] sampleIndices;
+				final int sampleOffset;
+				
+				if(prosac) {
+					final int t = iteration + 1;
+					while(n < length && growth[n] <= t) {
+						n++;
+					}
+					
+					prosacSample(pool, ranking, n, 7, growth[n] > t, sample, ws.random);
+					sampleT(linearisedTentativePairs, 9, sample, 7, length, a);
+					
+					sampleIndices = sample;
+					sampleOffset = 0;
+				} else if(napsac && napsacSample(cellPoints, cellStarts, pointCells, gridSize, length, 7, ws.neighbourhood, sample, ws.random)) {
+					sampleT(linearisedTentativePairs, 9, sample, 7, length, a);
+					
+					sampleIndices = sample;
+					sampleOffset = 0;
+				} else { // uniform sample, also if the NAPSAC neighbourhood is too small
+					rSampleT(linearisedTentativePairs, 9, pool, 7, length, a, ws.random);
+					
+					sampleIndices = pool;
+					sampleOffset = length-7; // sampled indices are moved to the tail of the pool
 				}
 				
-				if(scoreLess(maxScoreSingle, score)) { /* so-far-the-best from sample */
-					maxScoreSingle = score.clone();
-					doIterate = iteration > MIN_SAMPLES_DRAWN_TO_LO;
-					errors[4] = d;
+				long time = timed ? System.nanoTime() : 0L;
+				
+				// degenerate samples rejected before they get to the solver
+				final SAMPLE_TEST failed = validator.validate(u, sampleIndices, sampleOffset, 7);
+				if(failed != null) {
+					sampleTestRejections[failed.ordinal()]++;
+					if(timed) solverTime += System.nanoTime() - time;
+					continue;
 				}
-			}
-			
-			if(iteration >= MIN_SAMPLES_DRAWN_TO_LO && !loIteration && maxScoreSingle.getInliers() > 7) {
-				doIterate = true;
-			}
-			
-			if(doIterate && doOptimizations) {
-				loIteration = true;
 				
-				double[] d = errors[0];
+				final int numberOfSolutions = SevenPointSolver.solve(a, fs);
 				
-				Score score = inlierIndices(errors[4], length, TC*threshold, inliers);
+				if (numberOfSolutions == 0) {
+					degenerateSamples++;
+					if(timed) solverTime += System.nanoTime() - time;
+					continue;
+				}
 				
-				u2f(serializedTentativePairs, inliers, score.getInliers(), f, buffer);
-				fds(serializedTentativePairs, f, d, length);
+				hypotheses += numberOfSolutions;
 				
-				score = inlierIndices(d, length, threshold, inliers);
-				score = inFrani(serializedTentativePairs, length, inliers, score.getInliers(), threshold, errors, buffer, f, inliersLimit);
-
-				if(scoreLess(maxScore, score)) {
-					maxScore = score.clone();
-					d = errors[0];
-					errors[0] = errors[3];
-					errors[3] = d;
-					serializedModel = f.clone();
-					newMaximum = true;
+				if(timed) {
+					final long now = System.nanoTime();
+					solverTime += now - time;
+					time = now;
 				}
-			}
-			
-			if (newMaximum) { 
-				// updating number of samples needed
 				
-				final int newTotalIterations = recalculateMaxIterations(maxScore.getInliers(), bestSolutionProbability, 7, length);
-				if (newTotalIterations < totalIterations) {
-					logger.debug("Downsizing total number of iterations from {} to {} (inliers found: {}; best solution prob: {}; minimal inliers: {}, tentative pairs count: {}", 
-								totalIterations, newTotalIterations, maxScore.getInliers(), bestSolutionProbability, 7, length);
+				for (int i = 0; i < numberOfSolutions; i++) { // 1 or 3 hypotheses per sample
+					
+					final double[] f = fs[i];
+	
+					// orientation constraint
+					if (!validator.orientationValid(f, u, sampleIndices, sampleOffset, 7)) {
+						orientationRejections++;
+						continue;
+					}
+	
+					/* consensus (scores are ranked by the number of inliers, see Score.TYPE.SC_R), the workers of a parallel run bail out 
+					 * once neither the best of the worker nor the one of the run can be exceeded */
+					final double[] d = errors[i];
+					final int inliersCount = verifier == null 
+							? fdsInliers(x1, y1, x2, y2, f, d, length, threshold, shared ? Math.max(ws.maxScoreSingle.getInliers(), maxInliers) : ws.maxScoreSingle.getInliers())
+							: verifier.verify(u, f, d, order, length, threshold);
+					
+					if(timed) {
+						final long now = System.nanoTime();
+						verificationTime += now - time;
+						time = now;
+					}
+					
+					if(inliersCount <= ws.maxScoreSingle.getInliers()) { /* rejected or not better than so-far-the-best from sample */
+						rejectedHypotheses++;
+						continue;
+					}
+					
+					inlierIndices(d, length, threshold, ws.inliers, score);
 					
-					totalIterations = newTotalIterations;
+					/* so-far-the-best from sample */
+					ws.maxScoreSingle.assign(score);
+					System.arraycopy(d, 0, ws.singleErrors, 0, length);
+	
+					final boolean accepted = score.getInliers() > maxInliers && offerMaximum(score, f, d); /* so-far-the-best */
+					
+					if(accepted || !shared) { /* optimized by this worker */
+						doIterate = iteration > loMinSamples;
+					}
+				}
+				
+				if(iteration >= loMinSamples && !loIteration && !loSkipped && ws.maxScoreSingle.getInliers() > 7) {
+					doIterate = true;
+				}
+				
+				if(doIterate && doOptimizations) {
+					
+					if(scheduleLocalOptimization(ws.singleErrors)) {
+						loIteration = true;
+						localOptimization();
+					} else {
+						skippedLocalOptimizations++;
+						loSkipped = true;
+					}
 				}
 			}
+			
+			maxScoreSingle.assign(ws.maxScoreSingle);
+			collectLeastSquaresTime();
+			
+			if(parallelism > 1 && doOptimizations && !loIteration) {
+				// final LO may be needed after the thread's workspace gets to another run
+				sampleErrors = Arrays.copyOf(ws.singleErrors, length);
+			}
+			
+			if(stats != null && parallelism > 1) {
+				allocatedBytes = startAllocatedBytes < 0 ? -1 : currentThreadAllocatedBytes() - startAllocatedBytes;
+			}
+			
+			return null;
 		}
 		
-		// If there were no LOs, do at least one now
-		if (doOptimizations && !loIteration && maxScoreSingle.getInliers() > 7) {
+		/**
+		 * <p> Moves the so-far-the-best sample of this worker into provided workspace, which is used by the worker from now on </p>
+		 * 
+		 * @param workspace
+		 * 		Workspace to be used by this worker
+		 */
+		private void takeOver(final LoRANSACWorkspace workspace) {
 			
-			double[] d = errors[0];
+			System.arraycopy(sampleErrors, 0, workspace.singleErrors, 0, length);
+			workspace.maxScoreSingle.assign(maxScoreSingle);
+			workspace.random.setSeed(XorShiftRandom.streamSeed(seed, parallelism));
+			workspace.leastSquaresTime = 0;
+			ws = workspace;
+		}
+		
+		/**
+		 * <p> Moves the least squares time measured in the workspace to the statistics of this worker </p>
+		 */
+		private void collectLeastSquaresTime() {
 			
-			Score score = inlierIndices(errors[4], length, TC*threshold, inliers);
-			u2f(serializedTentativePairs, inliers, score.getInliers(), f, buffer);
-			fds(serializedTentativePairs, f, d, length);
+			leastSquaresTime += ws.leastSquaresTime;
+			ws.leastSquaresTime = 0;
+		}
+		
+		/**
+		 * <p> Runs local optimization on the so-far-the-best sample of this worker and offers the result as the new maximum </p>
+		 */
+		private void localOptimization() {
+			
+			final long startTime = System.nanoTime();
+			localOptimizations++;
+			
+			final double[] u = workspace.serializedTentativePairs;
+			final double[][] errors = ws.errors;
+			final int[] inliers = ws.inliers;
+			final double[] f = ws.loF;
+			final Score score = ws.loScore;
+			
+			ws.scatter.reset(workspace.normalisedTentativePairs, length);
 			
-			score = inlierIndices(d, length, threshold, inliers);
-			score = inFrani (serializedTentativePairs, length, inliers, score.getInliers(), threshold, errors, buffer, f, inliersLimit);
+			errors[4] = ws.singleErrors;
+			
+			final double[] d = errors[0];
+			
+			inlierIndices(errors[4], length, loThresholdMultiplier*threshold, inliers, score);
+			
+			leastSquares(u, inliers, null, score.getInliers(), f, ws.buffer, ws);
+			fds(workspace.x1, workspace.y1, workspace.x2, workspace.y2, f, d, length);
+			
+			inlierIndices(d, length, threshold, inliers, score);
+			score.assign(inFrani(u, length, inliers, score.getInliers(), threshold, errors, ws.buffer, f, inliersLimit, ws));
 
-			if(scoreLess(maxScore, score)) {
-				maxScore = score.clone();
-				d = errors[0];
-				errors[0] = errors[3];
-				errors[3] = d;
-				serializedModel = f.clone();
+			if(score.getInliers() > maxInliers) {
+				offerMaximum(score, f, errors[0]);
 			}
+			
+			final long time = System.nanoTime() - startTime;
+			loTime.addAndGet(time);
+			localOptimizationTime += time;
+			localOptimizationGain += Math.max(0, score.getInliers() - ws.maxScoreSingle.getInliers());
 		}
+	}
+
+
+	/**
+	 * <p> Ranks the tentative pairs by their qualities and computes the PROSAC growth function: {@code prosacGrowth[n]} is 
+	 * the number of samples after which the {@code n+1}-th top-ranked pair gets to the samples (T'<sub>n</sub> of the PROSAC paper) </p>
+	 */
+	private void preparePROSAC() {
 		
+		final int[] ranking = workspace.ranking;
 		for(int i = 0; i < length; i++) {
-			if(inliersMap[i] = errors[3][i] <= threshold) inliersCount ++;
+			ranking[i] = i;
 		}
 		
-		writeLoRANSACData();
+		ArraysUtils.sortIndicesDescending(qualities, ranking, length);
+		
+		final int[] growth = workspace.prosacGrowth;
+		
+		double tn = PROSAC_TN; // average number of samples drawn from the n top-ranked pairs only, T_n
+		for(int i = 0; i < 7; i++) {
+			tn *= (double) (7 - i) / (length - i);
+		}
+		
+		growth[7] = 1;
+		for(int n = 7; n < length; n++) {
+			final double nextTn = tn * (n + 1) / (n + 1 - 7);
+			growth[n + 1] = growth[n] + (int) Math.ceil(nextTn - tn);
+			tn = nextTn;
+		}
+	}
+	
+	/**
+	 * <p> PROSAC stopping criterion: for each set of the {@code n} top-ranked pairs, having the so-far-the-best model supported 
+	 * by non-random number of inliers, the number of samples needed to find better model with the requested probability 
+	 * (maximality) is computed. The minimum of these numbers is returned. </p>
+	 * 
+	 * @param goodModelAcceptance
+	 * 		Probability of a good model to be accepted by the verification
+	 * @return
+	 * 		Returns number of samples needed
+	 */
+	private int prosacMaxIterations(final double goodModelAcceptance) {
+		
+		final int[] ranking = workspace.ranking;
+		final double[] errors = workspace.maxErrors;
+		
+		int retval = D_MAX_ITERATIONS;
+		int inliers = 0;
+		
+		for(int n = 1; n <= length; n++) {
+			
+			if(errors[ranking[n - 1]] <= threshold) {
+				inliers++;
+			}
+			
+			// non-randomness (normal approximation of the binomial distribution of the inliers supporting a bad model)
+			if(n < PROSAC_MIN_STOP_LENGTH || inliers < 7 + PROSAC_BETA*(n - 7) + PROSAC_NON_RANDOMNESS_QUANTILE * Math.sqrt(PROSAC_BETA*(1 - PROSAC_BETA)*(n - 7))) {
+				continue;
+			}
+			
+			// maximality
+			double fraction = goodModelAcceptance;
+			for(int i = 0; i < 7; i++) {
+				fraction *= (double) (inliers - i) / (n - i);
+			}
+			
+			if(fraction < EPSILON) {
+				continue;
+			} else if(1d - fraction < EPSILON) {
+				return 1;
+			}
+			
+			retval = (int) Math.min(retval, Math.round(Math.log(1d - bestSolutionProbability) / Math.log(1d - fraction)));
+		}
+		
+		return retval;
+	}
+
+	/**
+	 * <p> Buckets the tentative pairs into a {@code gridSize} x {@code gridSize} grid over the bounding box of their points in the first image, 
+	 * so that NAPSAC can draw the samples from the neighbouring cells </p>
+	 */
+	private void prepareNAPSAC() {
+		
+		final double[] u = workspace.serializedTentativePairs;
+		final int[] cellPoints = workspace.cellPoints;
+		final int[] cellStarts = workspace.cellStarts;
+		final int[] pointCells = workspace.pointCells;
+		
+		gridSize = Math.max(1, (int) Math.sqrt((double) length / NAPSAC_CELL_POINTS));
+		final int cells = gridSize*gridSize;
+		
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < length; i++) {
+			minX = Math.min(minX, u[6*i]);
+			maxX = Math.max(maxX, u[6*i]);
+			minY = Math.min(minY, u[6*i + 1]);
+			maxY = Math.max(maxY, u[6*i + 1]);
+		}
+		
+		final double cellWidth = maxX > minX ? (maxX - minX) / gridSize : 1d;
+		final double cellHeight = maxY > minY ? (maxY - minY) / gridSize : 1d;
+		
+		// counting sort of the pairs by their cells
+		Arrays.fill(cellStarts, 0, cells + 1, 0);
+		for(int i = 0; i < length; i++) {
+			final int x = Math.min(gridSize - 1, (int) ((u[6*i] - minX) / cellWidth));
+			final int y = Math.min(gridSize - 1, (int) ((u[6*i + 1] - minY) / cellHeight));
+			pointCells[i] = y*gridSize + x;
+			cellStarts[pointCells[i] + 1]++;
+		}
+		
+		for(int cell = 0; cell < cells; cell++) {
+			cellStarts[cell + 1] += cellStarts[cell];
+		}
+		
+		for(int i = 0; i < length; i++) {
+			cellPoints[cellStarts[pointCells[i]]++] = i;
+		}
+		
+		// positions have been moved to the ends of the cells by the placement
+		for(int cell = cells; cell > 0; cell--) {
+			cellStarts[cell] = cellStarts[cell - 1];
+		}
+		cellStarts[0] = 0;
+	}
+	
+	/**
+	 * <p> NAPSAC stopping criterion: number of samples needed to draw an all-inlier sample of the so-far-the-best model with the requested probability. 
+	 * The probability of an all-inlier sample is averaged over the first points of the samples, each of them having its own neighbourhood. </p>
+	 * 
+	 * @param goodModelAcceptance
+	 * 		Probability of a good model to be accepted by the verification
+	 * @return
+	 * 		Returns number of samples needed
+	 */
+	private int napsacMaxIterations(final double goodModelAcceptance) {
+		
+		final double[] errors = workspace.maxErrors;
+		final int[] cellStarts = workspace.cellStarts;
+		final int[] pointCells = workspace.pointCells;
+		final int[] cellInliers = workspace.cellInliers;
+		
+		int inliers = 0;
+		Arrays.fill(cellInliers, 0, gridSize*gridSize, 0);
+		for(int i = 0; i < length; i++) {
+			if(errors[i] <= threshold) {
+				cellInliers[pointCells[i]]++;
+				inliers++;
+			}
+		}
+		
+		// samples falling back to the uniform ones
+		double uniformFraction = 1d;
+		for(int i = 0; i < 7; i++) {
+			uniformFraction *= (double) (inliers - i) / (length - i);
+		}
+		
+		double fraction = 0d;
+		
+		for(int i = 0; i < length; i++) {
+			
+			final int cx = pointCells[i] % gridSize, cy = pointCells[i] / gridSize;
+			final boolean inlier = errors[i] <= threshold;
+			
+			int m = -1, k = inlier ? -1 : 0; // the first point is not a part of its neighbourhood
+			for(int y = Math.max(0, cy - 1); y <= Math.min(gridSize - 1, cy + 1); y++) {
+				for(int x = Math.max(0, cx - 1); x <= Math.min(gridSize - 1, cx + 1); x++) {
+					m += cellStarts[y*gridSize + x + 1] - cellStarts[y*gridSize + x];
+					k += cellInliers[y*gridSize + x];
+				}
+			}
+			
+			if(m < 6) {
+				fraction += uniformFraction;
+			} else if(inlier) {
+				double local = 1d;
+				for(int j = 0; j < 6; j++) {
+					local *= (double) Math.max(0, k - j) / (m - j);
+				}
+				fraction += local;
+			}
+		}
+		
+		fraction *= goodModelAcceptance / length;
+		
+		if(fraction < EPSILON) {
+			return D_MAX_ITERATIONS;
+		} else if(1d - fraction < EPSILON) {
+			return 1;
+		}
+		
+		return (int) Math.round(Math.min((double) D_MAX_ITERATIONS, Math.log(1d - bestSolutionProbability) / Math.log(1d - fraction)));
 	}
 
+	/**
+	 * <p> Shuffles the order in which the randomized verification evaluates the points </p>
+	 */
+	private void shuffleVerificationOrder() {
+		
+		final int[] order = workspace.order;
+		final XorShiftRandom random = workspace.runRandom;
+		random.setSeed(XorShiftRandom.streamSeed(seed, -1));
+		
+		for(int i = 0; i < length; i++) {
+			order[i] = i;
+		}
+		
+		for(int i = length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int q = order[i];
+			order[i] = order[j];
+			order[j] = q;
+		}
+	}
 
 	/**
 	 * <p> Does all the necessary data transformations so it can be used by LoRANSAC algorithm: <p>
 	 * 
 	 * <ul>
-	 * 	<li> Serializes 2D array of tentative pairs (field: {@code tentativePairs} ) into 1D array having the length 
-	 *  	 6 times the original pairs length (new field: {@code serializedTentativePairs})  </li>
-	 *  <li> Sets the {@code length} field to the number of tentative pairs (value of: {@code tentativePairs.length}) </li>
-	 *  <li> Assigns to {@code inliers} field a new array of double having the length equal to {@code length} field </li>
+	 * 	<li> Serializes flat array of tentative pairs (field: {@code tentativePairs} or {@code tentativePairsFloat}) into the workspace array having (at least) the length 
+	 *  	 6 times the pairs count (workspace field: {@code serializedTentativePairs})  </li>
+	 *  <li> Sets the {@code length} field to the number of tentative pairs (value of: {@code tentativePairsCount}) </li>
 	 *  <li> Assigns to {@code serializedModel} field a new array of double having the length 9 </li>
 	 * </ul>
 	 * 
-	 * <p> Sets {@code tentativePairs} field to null when done. </p>
-	 * 
 	 */
 	private void prepareLoRANSACData() {
 		
 		// prepare LoRANSAC pairs data format
 		
-		length = tentativePairs.length;
-		inliersMap = new boolean[length];
-		serializedTentativePairs = new double[length*6];
+		length = tentativePairsCount;
 		serializedModel = new double[9];
 		
-		double[] pair;
-		for(int i = 0; i < tentativePairs.length; i++) {
-			 pair = tentativePairs[i];
-			 serializedTentativePairs[6*i] = pair[0];
-			 serializedTentativePairs[6*i + 1] = pair[1];
+		final double[] serializedTentativePairs = workspace.serializedTentativePairs;
+		final double[] x1 = workspace.x1, y1 = workspace.y1, x2 = workspace.x2, y2 = workspace.y2;
+		
+		for(int i = 0; i < length; i++) {
+			 serializedTentativePairs[6*i] = coordinate(4*i);
+			 serializedTentativePairs[6*i + 1] = coordinate(4*i + 1);
 			 serializedTentativePairs[6*i + 2] = 1; // we are dealing with 2D data, 3rd dimension is always 1
-			 serializedTentativePairs[6*i + 3] = pair[2];
-			 serializedTentativePairs[6*i + 4] = pair[3];
+			 serializedTentativePairs[6*i + 3] = coordinate(4*i + 2);
+			 serializedTentativePairs[6*i + 4] = coordinate(4*i + 3);
 			 serializedTentativePairs[6*i + 5] = 1; // ditto
 		}
 		
-		tentativePairs = null; // let garbage collector do its job
+		// the same coordinates for the error kernels, without the stride and the constant 1s (single precision pairs are widened here, 
+		// once per run: the double kernels are vectorized, the errors are the same as of the double pairs having the same coordinates)
+		for(int i = 0; i < length; i++) {
+			x1[i] = coordinate(4*i);
+			y1[i] = coordinate(4*i + 1);
+			x2[i] = coordinate(4*i + 2);
+			y2[i] = coordinate(4*i + 3);
+		}
 	}
 	
 	/**
-	 * <p> Makes opposite actions to {@link #prepareLoRANSACData()} </p>
+	 * <p> Makes opposite actions to {@link #prepareLoRANSACData()}: marks the pairs within the threshold of the so-far-the-best errors 
+	 * as inliers and de-serializes the estimated model </p>
 	 * 
 	 * TODO: define contract
 	 * 
 	 */
 	private void writeLoRANSACData() {
 		
-		inliers = new double[inliersCount][4];
-		outliers = new double[serializedTentativePairs.length/6 - inliersCount][4];
+		final double[] maxErrors = workspace.maxErrors;
+		final boolean[] inliersMask = new boolean[length];
+		int inliersCount = 0;
 		
-		// sort tentative pairs to inliers or outliers
-		
-		for(int i = 0, j = 0, k = 0; i < length; i++) {
-			if (inliersMap[i]) {
-				inliers[j][0] = serializedTentativePairs[i*6];
-				inliers[j][1] = serializedTentativePairs[i*6 + 1];
-				inliers[j][2] = serializedTentativePairs[i*6 + 3];
-				inliers[j][3] = serializedTentativePairs[i*6 + 4];
-				j++;
-			} else {
-				outliers[k][0] = serializedTentativePairs[i*6];
-				outliers[k][1] = serializedTentativePairs[i*6 + 1];
-				outliers[k][2] = serializedTentativePairs[i*6 + 3];
-				outliers[k][3] = serializedTentativePairs[i*6 + 4];
-				k++;
-			}
+		for(int i = 0; i < length; i++) {
+			if(inliersMask[i] = maxErrors[i] <= threshold) inliersCount ++;
 		}
 		
+		setInliers(inliersMask, inliersCount);
+		
 		// de-serialize estimated model
 		
 		for(int i = 0; i < 3; i++) {
@@ -327,37 +1008,37 @@ public class LoRANSACImpl extends AbstRANSAC {
 	 * Helper methods
 	 * ------------------------------------------------------------------------- */
 	
-	private Score inFrani (double[] u, int length, int[] inliers, int numberOfInliers, double threshold, double[][] errors, double[] buffer, double[] serializedModel, int inlLimit) {
+	private Score inFrani (double[] u, int length, int[] inliers, int numberOfInliers, double threshold, double[][] errors, double[] buffer, double[] serializedModel, int inlLimit, LoRANSACWorkspace ws) {
 
-		Score score, maxScore = new Score();
+		Score score, maxScore = ws.franiMaxScore.reset();
 
 		if (numberOfInliers < 16) {
 			return maxScore;
 		}
 		
 		int sampleSize = numberOfInliers/2 <= 14 ? numberOfInliers/2 : 14;
-		double[] f = new double[9];
-		int[] intbuff = new int[length];
+		double[] f = ws.franiF;
+		int[] intbuff = ws.loInliers;
 
 		double[] d = errors[2];
 		errors[2] = errors[0];
 		errors[0] = d;
 
-		for (int i = 0; i < RANSAC_REPEAT; ++i) {
+		for (int i = 0; i < loRepetitions; ++i) {
 			
-			int[] sample = randomSubset(inliers, numberOfInliers, sampleSize);
-			u2f(u, sample, sampleSize, f, buffer);
-			fds (u, f, errors[0], length);
+			int[] sample = randomSubset(inliers, numberOfInliers, sampleSize, ws.subset, ws.random);
+			leastSquares(u, sample, null, sampleSize, f, buffer, ws);
+			fds(workspace.x1, workspace.y1, workspace.x2, workspace.y2, f, errors[0], length);
 			errors[4] = errors[0];
 
-			score = iterF(u, length, intbuff, threshold, TC*threshold, f, errors, buffer, inlLimit);
+			score = iterF(u, length, intbuff, threshold, loThresholdMultiplier*threshold, f, errors, buffer, inlLimit, ws);
 
 			if (scoreLess(maxScore, score)) {
-				maxScore = score;
+				maxScore.assign(score);
 				d = errors[2];
 				errors[2] = errors[0];
 				errors[0] = d;
-				serializedModel = f.clone();
+				System.arraycopy(f, 0, serializedModel, 0, 9);
 			}
 		}
 		
@@ -391,86 +1072,142 @@ public class LoRANSACImpl extends AbstRANSAC {
 	 * 
 	 * @param inlLimit
 	 * 
+	 * @param ws
+	 * 		Workspace providing the scratch buffers
+	 * 
 	 * @return
 	 * 
 	 */
-	private Score iterF(double[] u, int length, int[] inliers, double threshold, double thresholds, double[] serializedModel, double[][] errors, double[] buffer, int inlLimit) {
+	private Score iterF(double[] u, int length, int[] inliers, double threshold, double thresholds, double[] serializedModel, double[][] errors, double[] buffer, int inlLimit, LoRANSACWorkspace ws) {
 		
 		double[] d = errors[1];
-		double[] f = new double[9]; 
-		double dth = (thresholds - threshold) / ILSQ_ITERS;
+		double[] f = ws.iterF; 
+		double dth = (thresholds - threshold) / loIterations;
 		
 		int[] inlSubset;
 		
-		Score score = new Score(), singleScore, maxScore;
+		Score score = ws.iterScore.reset(), singleScore = ws.iterSingleScore, maxScore = ws.iterMaxScore;
 
-		double[] w = new double[length];
+		double[] w = ws.weights;
 		
 
 		// F from the sample inliers by threshold
-		maxScore = inlierIndices(errors[4], length, threshold, inliers);
+		inlierIndices(errors[4], length, threshold, inliers, maxScore);
 		
 		if (maxScore.getInliers() < 8) return score;
 		
 		if (maxScore.getInliers() <= inlLimit) { 
 			
 			// if we are under the limit, just use what we have without shuffling
-			u2f(u, inliers, maxScore.getInliers(), f, buffer);
+			leastSquares(u, inliers, null, maxScore.getInliers(), f, buffer, ws);
 		
 		} else {
 			
-			inlSubset = randomSubset (inliers, maxScore.getInliers(), inlLimit);
-			u2f(u, inlSubset, inlLimit, f, buffer);
+			inlSubset = randomSubset (inliers, maxScore.getInliers(), inlLimit, ws.subset, ws.random);
+			leastSquares(u, inlSubset, null, inlLimit, f, buffer, ws);
 		}
 
 		// iterate
 		
-		for (int it = 0; it < ILSQ_ITERS; it++) {
+		for (int it = 0; it < loIterations; it++) {
 			
-			exFDs (u, f, d, w, length);
-			score = inlierIndices(d, length, threshold, inliers);
-			singleScore = inlierIndices(d, length, thresholds, inliers);
+			// errors, weights, both the scores and the weighted scatter matrix of the inliers in a single pass
+			exFDsScatter(workspace.x1, workspace.y1, workspace.x2, workspace.y2, workspace.normalisedTentativePairs, f, d, w, length, 
+					threshold, score, thresholds, inliers, singleScore, ws.weightedScatter);
 
 			if (scoreLess(maxScore, score)) {
-				maxScore = score;
+				maxScore.assign(score);
 				errors[1] = errors[0];
 				errors[0] = d;
 				d = errors[1];
-				serializedModel = f.clone();
+				System.arraycopy(f, 0, serializedModel, 0, 9);
 			}
 			
 			if (singleScore.getInliers() < 8) {
 				return maxScore;
 			}
 
-			if (singleScore.getInliers() <= inlLimit) { 
+			if (singleScore.getInliers() > 8 && singleScore.getInliers() <= inlLimit) {
+				
+				// all the inliers, their scatter matrix is accumulated already
+				weightedLeastSquares(ws.weightedScatter, f, buffer, ws);
+				
+			} else if (singleScore.getInliers() <= inlLimit) { 
 				
 				// if we are under the limit, just use what we have without shuffling
-				u2fw(u, inliers, w, singleScore.getInliers(), f, buffer);
+				leastSquares(u, inliers, w, singleScore.getInliers(), f, buffer, ws);
 				
 			} else {
 				
-				inlSubset = randomSubset (inliers, singleScore.getInliers(), inlLimit);
-				u2fw(u, inlSubset, w, inlLimit, f, buffer);
+				inlSubset = randomSubset (inliers, singleScore.getInliers(), inlLimit, ws.subset, ws.random);
+				leastSquares(u, inlSubset, w, inlLimit, f, buffer, ws);
 				
 			}
 
 			thresholds -= dth;
 		}
 
-		fds(u, f, d, length);
-		score = inlierIndices(d, length, threshold, inliers);
+		fds(workspace.x1, workspace.y1, workspace.x2, workspace.y2, f, d, length);
+		inlierIndices(d, length, threshold, inliers, score);
 		
 		if (scoreLess(maxScore, score)) {
-			maxScore = score;
+			maxScore.assign(score);
 			errors[1] = errors[0];
 			errors[0] = d;
-			serializedModel = f.clone();
+			System.arraycopy(f, 0, serializedModel, 0, 9);
 		}
 		
 		return maxScore;
 	}
 
+	/**
+	 * <p> Least squares fit of the model to the provided inliers: {@code u2f} if no weights are provided, 
+	 * {@code u2fw} otherwise. The time is measured into the workspace if the statistics are collected. </p>
+	 * 
+	 * <p> Unweighted fits of more than 8 inliers use the scatter matrix of the workspace instead, linearised by the normalization 
+	 * of the run: the consecutive inlier sets differ by a few pairs, only those are added to or removed from the matrix. 
+	 * Weights of the weighted fits change for all the pairs, so these are fitted from scratch. </p>
+	 */
+	private void leastSquares(double[] u, int[] inliers, double[] w, int length, double[] serializedModel, double[] buffer, LoRANSACWorkspace ws) {
+		
+		final long startTime = stats != null ? System.nanoTime() : 0L;
+		
+		if(w == null && length > 8) {
+			ws.scatter.fit(inliers, length);
+			ws.scatter.smallestEigenpair(serializedModel, buffer);
+			singulF(serializedModel, buffer);
+			denormF(serializedModel, workspace.normalisation1, workspace.normalisation2);
+		} else if(w == null) {
+			u2f(u, inliers, length, serializedModel, buffer);
+		} else {
+			u2fw(u, inliers, w, length, serializedModel, buffer);
+		}
+		
+		if(stats != null) {
+			ws.leastSquaresTime += System.nanoTime() - startTime;
+		}
+	}
+
+	/**
+	 * <p> Weighted least squares fit of the model to the scatter matrix accumulated by {@code FTools.exFDsScatter}, linearised by the normalization of the run. 
+	 * The time is measured into the workspace if the statistics are collected. </p>
+	 * 
+	 * @param cv
+	 * 		81-element array, the weighted scatter matrix; destroyed
+	 */
+	private void weightedLeastSquares(double[] cv, double[] serializedModel, double[] buffer, LoRANSACWorkspace ws) {
+		
+		final long startTime = stats != null ? System.nanoTime() : 0L;
+		
+		smallestEigenpair(cv, serializedModel, buffer);
+		singulF(serializedModel, buffer);
+		denormF(serializedModel, workspace.normalisation1, workspace.normalisation2);
+		
+		if(stats != null) {
+			ws.leastSquaresTime += System.nanoTime() - startTime;
+		}
+	}
+
 	/**
 	 * A simple structure for holding relative results of single algorithm runs 
 	 * 
@@ -535,6 +1272,34 @@ public class LoRANSACImpl extends AbstRANSAC {
 			return "Score [error=" + error + ", inliers=" + inliers + ", type=" + type + "]";
 		}
 		
+		/**
+		 * <p> Sets the score to its initial state (no error, no inliers) </p>
+		 * 
+		 * @return
+		 * 		Returns this score
+		 */
+		public Score reset() {
+			this.type = TYPE.SC_R;
+			this.error = 0;
+			this.inliers = 0;
+			return this;
+		}
+		
+		/**
+		 * <p> Copies the values of provided score into this one </p>
+		 * 
+		 * @param score
+		 * 		Score to be copied
+		 * @return
+		 * 		Returns this score
+		 */
+		public Score assign(Score score) {
+			this.type = score.type;
+			this.error = score.error;
+			this.inliers = score.inliers;
+			return this;
+		}
+		
 		@Override
 		public Score clone() {
 			return new Score().setType(type).setError(error).setInliers(inliers);
@@ -0,0 +1,199 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ScatterMatrix;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SevenPointSolver;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SignatureSet;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Buffers used by {@link LoRANSACImpl} runs. Workspace is owned by a single thread (see {@link #forCurrentThread(int)}),
+ * sized to the largest input seen by that thread and reused across the runs, so that the main loop and the local optimization
+ * do not allocate once the workspace has grown large enough. </p>
+ *
+ * <p> Run-level buffers are used by the thread calling {@link LoRANSACImpl#run()}, worker-level buffers by the thread executing
+ * the worker. These two sets never overlap, so a single thread may act as both. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+final class LoRANSACWorkspace {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoRANSACWorkspace.class);
+
+	private static final ThreadLocal<LoRANSACWorkspace> WORKSPACES = new ThreadLocal<LoRANSACWorkspace>() {
+
+		@Override
+		protected LoRANSACWorkspace initialValue() {
+			return new LoRANSACWorkspace();
+		}
+	};
+
+	/** number of correspondences the buffers are sized for */
+	private int capacity = -1;
+
+	/* run-level buffers */
+
+	/** 6 x capacity, tentative pairs in LoRANSAC format */
+	double[] serializedTentativePairs;
+	/** capacity each, coordinates of the tentative pairs (structure of arrays, read by the error kernels) */
+	double[] x1;
+	double[] y1;
+	double[] x2;
+	double[] y2;
+	/** 9 x capacity, tentative pairs linearised with respect to entries of fundamental matrix */
+	double[] linearisedTentativePairs;
+	/** 9 x capacity, tentative pairs linearised after the normalization of the run (local optimization) */
+	double[] normalisedTentativePairs;
+	/** normalization of the run, see {@link UTools#normu(double[], int[], int, double[], double[])} */
+	final double[] normalisation1 = new double[3];
+	final double[] normalisation2 = new double[3];
+	/** identity indices 0 ... capacity-1 */
+	int[] indices;
+	double[] maxErrors;
+	/** order of the points verified by the randomized verification */
+	int[] order;
+	/** indices of the pairs sorted by the qualities (PROSAC) */
+	int[] ranking;
+	/** PROSAC growth function, capacity + 1 elements */
+	int[] prosacGrowth;
+	/** NAPSAC grid: indices of the pairs sorted by their cells, positions the cells start at (capacity + 1 elements), cells of the pairs */
+	int[] cellPoints;
+	int[] cellStarts;
+	int[] pointCells;
+	/** NAPSAC: inliers of the so-far-the-best model per cell */
+	int[] cellInliers;
+	final XorShiftRandom runRandom = new XorShiftRandom();
+	/** signatures of the inlier sets the local optimizations of the run started from, guarded by the maximum lock of the run */
+	final SignatureSet loSignatures = new SignatureSet();
+
+	/* worker-level buffers */
+
+	int[] pool;
+	/** NAPSAC: points of the neighbourhood a sample is drawn from */
+	int[] neighbourhood;
+
+	/** 7 x 9 system of the minimal sample */
+	final double[] a = new double[SevenPointSolver.SAMPLE_SIZE*9];
+	/** 1 or 3 hypotheses of the minimal sample */
+	final double[][] fs = new double[SevenPointSolver.MAX_SOLUTIONS][9];
+	final int[] sample = new int[SevenPointSolver.SAMPLE_SIZE];
+
+	double[] buffer;
+
+	/** errors[0..2] -- hypotheses of a sample, errors[3] -- not used (so-far-the-best errors are shared), errors[4] -- sample to be optimized */
+	final double[][] errors = new double[5][];
+	double[] singleErrors;
+	int[] inliers;
+
+	final Score score = new Score();
+	final Score maxScoreSingle = new Score();
+
+	/* local optimization buffers */
+
+	final double[] loF = new double[9];
+	final double[] franiF = new double[9];
+	final double[] iterF = new double[9];
+	int[] loInliers;
+	int[] subset;
+	double[] weights;
+	/** scatter matrix of the last unweighted least squares fit */
+	final ScatterMatrix scatter = new ScatterMatrix();
+	/** weighted scatter matrix of the inliers of the last reweighted least squares step, see {@code FTools.exFDsScatter} */
+	final double[] weightedScatter = new double[81];
+
+	final Score loScore = new Score();
+	final Score franiMaxScore = new Score();
+	final Score iterScore = new Score();
+	final Score iterSingleScore = new Score();
+	final Score iterMaxScore = new Score();
+
+	/** reseeded by each worker, see {@link XorShiftRandom#streamSeed(long, int)} */
+	final XorShiftRandom random = new XorShiftRandom();
+	
+	/** time of the least squares fits of the worker being executed, measured if the statistics are collected */
+	long leastSquaresTime;
+
+	private LoRANSACWorkspace() {
+		// no-op
+	}
+
+	/**
+	 * <p> Provides the workspace owned by the current thread, grown to hold at least {@code length} correspondences </p>
+	 *
+	 * @param length
+	 * 		Number of correspondences of the run
+	 * @return
+	 * 		Returns workspace of the current thread
+	 */
+	static LoRANSACWorkspace forCurrentThread(final int length) {
+
+		final LoRANSACWorkspace workspace = WORKSPACES.get();
+		workspace.ensureCapacity(length);
+
+		return workspace;
+	}
+
+	/**
+	 * <p> Grows the buffers so that they can hold {@code length} correspondences. Does nothing if they already can. </p>
+	 *
+	 * @param length
+	 * 		Number of correspondences
+	 */
+	private void ensureCapacity(final int length) {
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+
+		if(length <= capacity) {
+			return;
+		}
+
+		logger.debug("Growing LoRANSAC workspace of thread {} from {} to {} correspondences", Thread.currentThread().getName(), capacity, length);
+
+		serializedTentativePairs = new double[6*length];
+		x1 = new double[length];
+		y1 = new double[length];
+		x2 = new double[length];
+		y2 = new double[length];
+		linearisedTentativePairs = new double[9*length];
+		normalisedTentativePairs = new double[9*length];
+		maxErrors = new double[length];
+		order = new int[length];
+		ranking = new int[length];
+		prosacGrowth = new int[length + 1];
+		cellPoints = new int[length];
+		cellStarts = new int[length + 1];
+		pointCells = new int[length];
+		cellInliers = new int[length];
+
+		indices = new int[length];
+		for (int i = 0; i < length; i++) {
+			indices[i] = i;
+		}
+
+		pool = new int[length];
+		neighbourhood = new int[length];
+		buffer = new double[9*length];
+
+		errors[0] = new double[length];
+		errors[1] = new double[length];
+		errors[2] = new double[length];
+		singleErrors = new double[length];
+		errors[4] = singleErrors;
+		inliers = new int[length];
+
+		loInliers = new int[length];
+		subset = new int[length];
+		weights = new double[length];
+
+		capacity = length;
+	}
+}
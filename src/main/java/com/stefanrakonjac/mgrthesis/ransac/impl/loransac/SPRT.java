@@ -0,0 +1,222 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p> Wald's sequential probability ratio test used by randomized RANSAC (Matas, Chum: Randomized RANSAC with Sequential Probability
+ * Ratio Test). Points are verified one by one and the hypothesis is rejected as soon as the likelihood ratio of being a bad model
+ * exceeds the decision threshold {@code A}. </p>
+ *
+ * <p> The test is shared by all the workers of a run: {@code epsilon} (inlier ratio of a good model) is adapted from the so-far-the-best
+ * score, {@code delta} (probability of a point being consistent with a bad model) from the rejected hypotheses.
+ * Each adaptation replaces the test as a whole, so the workers always read consistent parameters. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+final class SPRT {
+
+	private static final Logger logger = LoggerFactory.getLogger(SPRT.class);
+
+	/**
+	 * Time of the hypothesis computation (7-point solver) in units of a single point verification
+	 */
+	private static final double MODEL_COMPUTATION_TIME = 200d;
+
+	/**
+	 * Average number of models per sample of the 7-point solver
+	 */
+	private static final double MODELS_PER_SAMPLE = 2.38d;
+
+	/**
+	 * Relative change of delta needed to design a new test
+	 */
+	private static final double DELTA_TOLERANCE = 0.05d;
+
+	private static final double MIN_DELTA = 1e-3d;
+	
+	/**
+	 * Inconsistent points would not reject any model with epsilon equal to 1
+	 */
+	private static final double MAX_EPSILON = 0.99d;
+
+	private volatile Test test;
+
+	SPRT(final double epsilon, final double delta) {
+		this.test = new Test(epsilon, delta);
+	}
+
+	/**
+	 * @return
+	 * 		Returns probability of accepting a good model by the current test ({@code 1 - 1/A})
+	 */
+	double getGoodModelAcceptance() {
+		return 1d - 1d/test.a;
+	}
+
+	/**
+	 * <p> Designs a new test if provided inlier ratio (of the so-far-the-best model) is higher than the current one </p>
+	 *
+	 * @param epsilon
+	 * 		Inlier ratio of the so-far-the-best model
+	 */
+	synchronized void adaptEpsilon(final double epsilon) {
+
+		if(epsilon > test.epsilon && test.epsilon < MAX_EPSILON) {
+			test = new Test(Math.min(epsilon, MAX_EPSILON), test.delta);
+		}
+	}
+
+	/**
+	 * <p> Designs a new test if provided estimate of delta differs significantly from the current one </p>
+	 *
+	 * @param delta
+	 * 		Average fraction of the points consistent with the rejected models
+	 */
+	synchronized void adaptDelta(final double delta) {
+
+		if(significantChange(test, delta)) {
+			test = new Test(test.epsilon, delta);
+		}
+	}
+
+	private static boolean significantChange(final Test test, final double delta) {
+		return Math.abs(boundedDelta(test.epsilon, delta) - test.delta) > DELTA_TOLERANCE * test.delta;
+	}
+	
+	/**
+	 * delta needs to stay below epsilon, otherwise consistent points would not support the model
+	 */
+	private static double boundedDelta(final double epsilon, final double delta) {
+		return Math.max(MIN_DELTA, Math.min(delta, epsilon / 2));
+	}
+
+	/**
+	 * @return
+	 * 		Returns new verifier, to be used by a single worker
+	 */
+	Verifier newVerifier() {
+		return new Verifier();
+	}
+
+	/**
+	 * <p> Sequential verification of the hypotheses of a single worker, keeping the statistics of the rejected ones </p>
+	 *
+	 * @author Stefan.Rakonjac
+	 *
+	 */
+	final class Verifier {
+
+		private long rejectedTested = 0;
+		private long rejectedConsistent = 0;
+
+		private Verifier() {
+			// no-op
+		}
+
+		/**
+		 * <p> Verifies the model on the points in the provided order, until it is rejected or all the points are verified. </p>
+		 *
+		 * @param u
+		 * 		tentative correspondences (6 x {@code length}-element array)
+		 * @param f
+		 * 		9-element array (model)
+		 * @param p
+		 * 		{@code length}-element array, errors; complete only if the model is accepted
+		 * @param order
+		 * 		{@code length}-element array, random order of the points
+		 * @param length
+		 * 		number of correspondences
+		 * @param threshold
+		 * 		Error threshold of the consistent points
+		 * @return
+		 * 		Returns number of the consistent points (error not higher than {@code threshold}) if the model is accepted, {@code -1} if it is rejected
+		 */
+		int verify(final double[] u, final double[] f, final double[] p, final int[] order, final int length, final double threshold) {
+
+			final Test test = SPRT.this.test;
+
+			double lambda = 1d;
+			int consistent = 0;
+
+			for(int k = 0; k < length; k++) {
+
+				final int i = order[k];
+
+				if((p[i] = fd(u, f, i)) <= threshold) {
+					lambda *= test.consistentRatio;
+					consistent++;
+				} else {
+					lambda *= test.inconsistentRatio;
+				}
+
+				if(lambda > test.a) {
+					reject(k + 1, consistent);
+					return -1;
+				}
+			}
+
+			return consistent;
+		}
+
+		private void reject(final int tested, final int consistent) {
+
+			rejectedTested += tested;
+			rejectedConsistent += consistent;
+
+			final double delta = ((double) rejectedConsistent) / rejectedTested;
+
+			if(significantChange(test, delta)) {
+				adaptDelta(delta);
+			}
+		}
+	}
+
+	/**
+	 * Parameters of a single test
+	 */
+	private static final class Test {
+
+		private final double epsilon;
+		private final double delta;
+		private final double a;
+		private final double consistentRatio;
+		private final double inconsistentRatio;
+
+		private Test(final double epsilon, double delta) {
+
+			delta = boundedDelta(epsilon, delta);
+
+			this.epsilon = epsilon;
+			this.delta = delta;
+			this.consistentRatio = delta / epsilon;
+			this.inconsistentRatio = (1 - delta) / (1 - epsilon);
+			this.a = decisionThreshold(epsilon, delta);
+
+			logger.debug("SPRT test designed (epsilon: {}, delta: {}, A: {})", epsilon, delta, a);
+		}
+
+		/**
+		 * <p> Optimal decision threshold {@code A}, the solution of {@code A = tM * C / mS + 1 + ln(A)} </p>
+		 */
+		private static double decisionThreshold(final double epsilon, final double delta) {
+
+			final double c = (1 - delta) * Math.log((1 - delta) / (1 - epsilon)) + delta * Math.log(delta / epsilon);
+			final double k = MODEL_COMPUTATION_TIME * c / MODELS_PER_SAMPLE + 1;
+
+			double a = k, previous;
+			do {
+				previous = a;
+				a = k + Math.log(previous);
+			} while(Math.abs(a - previous) > 1e-5);
+
+			return a;
+		}
+	}
+}
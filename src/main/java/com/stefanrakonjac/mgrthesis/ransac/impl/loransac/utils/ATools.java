@@ -0,0 +1,181 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Affine transformations of the correspondences, stored as the homographies of {@link HTools} (the last row being {@code 0, 0, 1}),
+ * so that they are verified by the same kernels. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class ATools {
+
+	/**
+	 * <p> Affine transformation from a single correspondence of the affine covariant features (Philbin et al.: Object retrieval
+	 * with large vocabularies and fast spatial matching): the ellipse of the first feature is mapped to the ellipse of the second one,
+	 * its centre to the centre. The vertical direction is kept (gravity vector assumption), which resolves the rotation. </p>
+	 *
+	 * <p> Each ellipse {@code E} is the unit circle mapped by the lower triangular {@code T}, {@code T T' = E^-1}; the transformation
+	 * is {@code A = T2 T1^-1} and the translation maps the first centre to the second one. </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param shapes
+	 * 		ellipses of the correspondences (6 x {@code length}-element array), {@code a1, b1, c1, a2, b2, c2} each
+	 * @param i
+	 * 		index of the correspondence
+	 * @param h
+	 * 		9-element array, the affine transformation
+	 * @return
+	 * 		Returns {@code false} if any of the ellipses is not valid (not positive definite), {@code h} is not changed then
+	 */
+	public static boolean shapeToAffine(final double[] u, final double[] shapes, final int i, final double[] h) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(i < 0)
+			throw new IllegalArgumentException("i: " + i);
+		if(u == null || u.length < 6*(i + 1))
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(shapes == null || shapes.length < 6*(i + 1))
+			throw new IllegalArgumentException("shapes: " + ArrayUtils.toString(shapes));
+		if(h == null || h.length != 9)
+			throw new IllegalArgumentException("h: " + ArrayUtils.toString(h));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final int s = 6*i;
+
+		// T1 = [p1 0; q1 r1], T2 = [p2 0; q2 r2]
+		double a = shapes[s], b = shapes[s + 1], c = shapes[s + 2];
+		double det = a*c - b*b;
+
+		if(!(a > 0 && det > 0)) {
+			return false;
+		}
+
+		final double p1 = Math.sqrt(c / det), q1 = -b / det / p1, r1 = Math.sqrt(a / det - q1*q1);
+
+		a = shapes[s + 3];
+		b = shapes[s + 4];
+		c = shapes[s + 5];
+		det = a*c - b*b;
+
+		if(!(a > 0 && det > 0)) {
+			return false;
+		}
+
+		final double p2 = Math.sqrt(c / det), q2 = -b / det / p2, r2 = Math.sqrt(a / det - q2*q2);
+
+		// A = T2 T1^-1, T1^-1 = [1/p1 0; -q1/(p1 r1) 1/r1]
+		h[0] = p2 / p1;
+		h[1] = 0;
+		h[3] = q2 / p1 - r2 * q1 / (p1 * r1);
+		h[4] = r2 / r1;
+
+		h[2] = u[s + 3] - h[0] * u[s] - h[1] * u[s + 1];
+		h[5] = u[s + 4] - h[3] * u[s] - h[4] * u[s + 1];
+
+		h[6] = 0;
+		h[7] = 0;
+		h[8] = 1;
+
+		return true;
+	}
+
+	/**
+	 * <p> Least squares affine transformation of the provided correspondences (at least 3 of them, not collinear), minimising
+	 * the transfer error in the second image. Points are centred, so the translation is solved separately from the 2 x 2 part. </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param inliers
+	 * 		indices of the correspondences to be used
+	 * @param length
+	 * 		number of the correspondences to be used
+	 * @param h
+	 * 		9-element array, the affine transformation
+	 * @return
+	 * 		Returns {@code false} if the correspondences do not determine the transformation, {@code h} is not changed then
+	 */
+	public static boolean u2a(final double[] u, final int[] inliers, final int length, final double[] h) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(u == null || u.length == 0)
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(inliers == null || inliers.length < length)
+			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(inliers));
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(h == null || h.length != 9)
+			throw new IllegalArgumentException("h: " + ArrayUtils.toString(h));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 3) {
+			return false;
+		}
+
+		double mx1 = 0, my1 = 0, mx2 = 0, my2 = 0;
+
+		for(int i = 0; i < length; i++) {
+			final int index = 6 * inliers[i];
+			mx1 += u[index];
+			my1 += u[index + 1];
+			mx2 += u[index + 3];
+			my2 += u[index + 4];
+		}
+
+		mx1 /= length;
+		my1 /= length;
+		mx2 /= length;
+		my2 /= length;
+
+		double sxx = 0, sxy = 0, syy = 0, sxu = 0, syu = 0, sxv = 0, syv = 0;
+
+		for(int i = 0; i < length; i++) {
+
+			final int index = 6 * inliers[i];
+			final double x = u[index] - mx1, y = u[index + 1] - my1;
+			final double x2 = u[index + 3] - mx2, y2 = u[index + 4] - my2;
+
+			sxx += x*x;
+			sxy += x*y;
+			syy += y*y;
+			sxu += x*x2;
+			syu += y*x2;
+			sxv += x*y2;
+			syv += y*y2;
+		}
+
+		final double det = sxx*syy - sxy*sxy;
+
+		if(!(det > 1e-12 * (sxx*syy))) {
+			return false;
+		}
+
+		h[0] = (syy*sxu - sxy*syu) / det;
+		h[1] = (sxx*syu - sxy*sxu) / det;
+		h[3] = (syy*sxv - sxy*syv) / det;
+		h[4] = (sxx*syv - sxy*sxv) / det;
+
+		h[2] = mx2 - h[0]*mx1 - h[1]*my1;
+		h[5] = my2 - h[3]*mx1 - h[4]*my1;
+
+		h[6] = 0;
+		h[7] = 0;
+		h[8] = 1;
+
+		return true;
+	}
+}
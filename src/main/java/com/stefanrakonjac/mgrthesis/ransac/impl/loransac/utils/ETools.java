@@ -0,0 +1,440 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.u2f;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.u2fw;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.LapWrapper.lapackSVD;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Essential matrix counterparts of {@link FTools}. Essential matrix {@code e} is a 9-element array, the 3 x 3 matrix stored row by row,
+ * of the correspondences normalized by the inverse calibration matrices: {@code n2^T E n1 = 0}, {@code n = K^-1 u}. The fundamental matrix
+ * of the pixel coordinates is {@code F = K2^-T E K1^-1}, the errors are the ones of {@link FTools} of this matrix. </p>
+ *
+ * <p> Calibration matrices are upper triangular, {@code [fx s cx; 0 fy cy; 0 0 1]}, stored row by row. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class ETools {
+
+	/**
+	 * Maximal number of the Gauss-Newton iterations of {@link #refineE(double[], int[], double[], int, double[])}, 2 or 3 are needed usually
+	 */
+	private static final int REFINE_ITERATIONS = 10;
+
+	/**
+	 * Relative decrease of the error the iterations of {@link #refineE(double[], int[], double[], int, double[])} stop at
+	 */
+	private static final double REFINE_TOLERANCE = 1e-10;
+
+	/**
+	 * <p> Inverse of the calibration matrix </p>
+	 *
+	 * @param k
+	 * 		9-element array, calibration matrix
+	 * @param inverse
+	 * 		9-element array, its inverse (upper triangular as well)
+	 */
+	public static void invertIntrinsics(final double[] k, final double[] inverse) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(k == null || k.length != 9 || k[3] != 0 || k[6] != 0 || k[7] != 0 || k[8] != 1 || k[0] == 0 || k[4] == 0)
+			throw new IllegalArgumentException("k: " + ArrayUtils.toString(k));
+		if(inverse == null || inverse.length != 9)
+			throw new IllegalArgumentException("inverse: " + ArrayUtils.toString(inverse));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double fx = k[0], s = k[1], cx = k[2], fy = k[4], cy = k[5];
+
+		inverse[0] = 1 / fx;
+		inverse[1] = -s / (fx * fy);
+		inverse[2] = (s * cy - cx * fy) / (fx * fy);
+		inverse[3] = 0;
+		inverse[4] = 1 / fy;
+		inverse[5] = -cy / fy;
+		inverse[6] = 0;
+		inverse[7] = 0;
+		inverse[8] = 1;
+	}
+
+	/**
+	 * <p> Normalizes the correspondences by the inverse calibration matrices, {@code n1 = K1^-1 u1} and {@code n2 = K2^-1 u2} </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param length
+	 * 		number of correspondences
+	 * @param inverse1
+	 * 		9-element array, inverse calibration matrix of the first image
+	 * @param inverse2
+	 * 		9-element array, inverse calibration matrix of the second image
+	 * @param n
+	 * 		6 x {@code length}-element array, normalized correspondences (third coordinates being 1)
+	 */
+	public static void normalise(final double[] u, final int length, final double[] inverse1, final double[] inverse2, final double[] n) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(u == null || u.length < 6*length)
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(n == null || n.length < 6*length)
+			throw new IllegalArgumentException("n: " + ArrayUtils.toString(n));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double a0 = inverse1[0], a1 = inverse1[1], a2 = inverse1[2], a4 = inverse1[4], a5 = inverse1[5];
+		final double b0 = inverse2[0], b1 = inverse2[1], b2 = inverse2[2], b4 = inverse2[4], b5 = inverse2[5];
+
+		for(int i = 0, end = 6*length; i < end; i += 6) {
+
+			final double x1 = u[i], y1 = u[i + 1], x2 = u[i + 3], y2 = u[i + 4];
+
+			n[i] = a0*x1 + a1*y1 + a2;
+			n[i + 1] = a4*y1 + a5;
+			n[i + 2] = 1;
+			n[i + 3] = b0*x2 + b1*y2 + b2;
+			n[i + 4] = b4*y2 + b5;
+			n[i + 5] = 1;
+		}
+	}
+
+	/**
+	 * <p> Fundamental matrix of the pixel coordinates, {@code F = K2^-T E K1^-1} </p>
+	 *
+	 * @param e
+	 * 		9-element array, essential matrix
+	 * @param inverse1
+	 * 		9-element array, inverse calibration matrix of the first image
+	 * @param inverse2
+	 * 		9-element array, inverse calibration matrix of the second image
+	 * @param f
+	 * 		9-element array, the fundamental matrix
+	 */
+	public static void e2f(final double[] e, final double[] inverse1, final double[] inverse2, final double[] f) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(e == null || e.length != 9)
+			throw new IllegalArgumentException("e: " + ArrayUtils.toString(e));
+		if(f == null || f.length != 9 || f == e)
+			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		// M = E K1^-1
+		final double[] b = inverse1;
+		final double m0 = e[0]*b[0], m1 = e[0]*b[1] + e[1]*b[4], m2 = e[0]*b[2] + e[1]*b[5] + e[2],
+					 m3 = e[3]*b[0], m4 = e[3]*b[1] + e[4]*b[4], m5 = e[3]*b[2] + e[4]*b[5] + e[5],
+					 m6 = e[6]*b[0], m7 = e[6]*b[1] + e[7]*b[4], m8 = e[6]*b[2] + e[7]*b[5] + e[8];
+
+		// F = K2^-T M, K2^-T lower triangular
+		final double[] a = inverse2;
+		f[0] = a[0]*m0;
+		f[1] = a[0]*m1;
+		f[2] = a[0]*m2;
+		f[3] = a[1]*m0 + a[4]*m3;
+		f[4] = a[1]*m1 + a[4]*m4;
+		f[5] = a[1]*m2 + a[4]*m5;
+		f[6] = a[2]*m0 + a[5]*m3 + m6;
+		f[7] = a[2]*m1 + a[5]*m4 + m7;
+		f[8] = a[2]*m2 + a[5]*m5 + m8;
+	}
+
+	/**
+	 * <p> Least squares fit of the essential matrix to the normalized correspondences: the fundamental matrix of {@link FTools#u2f(double[], int[], int, double[], double[])}
+	 * refined on the essential matrices, see {@link #refineE(double[], int[], double[], int, double[])} </p>
+	 *
+	 * @param n
+	 * 		normalized correspondences (6 x {@code length}-element array), see {@link #normalise(double[], int, double[], double[], double[])}
+	 * @param inliers
+	 * 		indices of the correspondences fitted
+	 * @param length
+	 * 		number of the correspondences fitted, 8 at least
+	 * @param e
+	 * 		9-element array, the essential matrix
+	 * @param buffer
+	 * 		at least {@code 9*length}-element array
+	 */
+	public static void u2e(final double[] n, final int[] inliers, final int length, final double[] e, final double[] buffer) {
+
+		u2f(n, inliers, length, e, buffer);
+		refineE(n, inliers, null, length, e);
+	}
+
+	/**
+	 * <p> Weighted counterpart of {@link #u2e(double[], int[], int, double[], double[])}, see {@link FTools#u2fw(double[], int[], double[], int, double[], double[])} </p>
+	 *
+	 * @param n
+	 * 		normalized correspondences (6 x {@code length}-element array)
+	 * @param inliers
+	 * 		indices of the correspondences fitted
+	 * @param w
+	 * 		weights of all the correspondences, indexed by {@code inliers}
+	 * @param length
+	 * 		number of the correspondences fitted, 8 at least
+	 * @param e
+	 * 		9-element array, the essential matrix
+	 * @param buffer
+	 * 		at least {@code 9*length}-element array
+	 */
+	public static void u2ew(final double[] n, final int[] inliers, final double[] w, final int length, final double[] e, final double[] buffer) {
+
+		u2fw(n, inliers, w, length, e, buffer);
+		refineE(n, inliers, w, length, e);
+	}
+
+	/**
+	 * <p> Closest essential matrix {@code E = U diag(1, 1, 0) V^T} of the matrix (its singular values replaced), refined by the Gauss-Newton
+	 * iterations minimizing the (weighted) algebraic errors {@code w n2^T E n1} of the correspondences. The projection alone is not enough: 
+	 * the noise of the linear fit is in the difference of the singular values mostly, and dropping it moves the epipolar lines by pixels. </p>
+	 *
+	 * <p> {@code U} and {@code V} are rotated by {@code exp([a]x)} and {@code exp([b]x)}, {@code b3 = 0} (the rotations about the third axis 
+	 * of both leave {@code E} as it is): 5 parameters, the normal equations are solved by the Cholesky decomposition. Iterations stop 
+	 * as soon as the error does not decrease. </p>
+	 *
+	 * @param n
+	 * 		normalized correspondences (6 x {@code length}-element array)
+	 * @param inliers
+	 * 		indices of the correspondences fitted
+	 * @param w
+	 * 		weights of all the correspondences, indexed by {@code inliers}, {@code null} for the unit ones
+	 * @param length
+	 * 		number of the correspondences fitted
+	 * @param e
+	 * 		9-element array, the matrix and then the essential matrix
+	 */
+	public static void refineE(final double[] n, final int[] inliers, final double[] w, final int length, final double[] e) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(inliers == null || inliers.length < length)
+			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(inliers));
+		if(e == null || e.length != 9)
+			throw new IllegalArgumentException("e: " + ArrayUtils.toString(e));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double[] s = new double[3], u = new double[9], vt = new double[9];
+
+		if(!lapackSVD(s, e, u, 3, vt, 3)) {
+			return;
+		}
+
+		// V by the rows of V^T, both of them rotations (E is up to the sign)
+		final double[] v = new double[9];
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+				v[3*i + j] = vt[3*j + i];
+			}
+		}
+		if(determinant(u) < 0) negate(u);
+		if(determinant(v) < 0) negate(v);
+
+		final double[] jtj = new double[25], jtr = new double[5], delta = new double[5];
+		final double[] u0 = new double[9], v0 = new double[9];
+
+		double cost = cost(n, inliers, w, length, u, v, null, null);
+
+		for(int iteration = 0; iteration < REFINE_ITERATIONS && cost > 0; iteration++) {
+
+			cost(n, inliers, w, length, u, v, jtj, jtr);
+
+			if(!cholesky(jtj, jtr, delta)) {
+				break;
+			}
+
+			System.arraycopy(u, 0, u0, 0, 9);
+			System.arraycopy(v, 0, v0, 0, 9);
+
+			rotate(u, -delta[0], -delta[1], -delta[2]);
+			rotate(v, -delta[3], -delta[4], 0);
+
+			final double updated = cost(n, inliers, w, length, u, v, null, null);
+
+			if(!(updated < cost)) {
+
+				System.arraycopy(u0, 0, u, 0, 9);
+				System.arraycopy(v0, 0, v, 0, 9);
+				break;
+			}
+
+			final double decrease = cost - updated;
+			cost = updated;
+
+			if(decrease <= REFINE_TOLERANCE * cost) {
+				break;
+			}
+		}
+
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+				e[3*i + j] = u[3*i] * v[3*j] + u[3*i + 1] * v[3*j + 1];
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		Returns sum of the squared (weighted) algebraic errors of {@code E = U diag(1, 1, 0) V^T}; if {@code jtj} is not {@code null}, 
+	 * 		the normal equations {@code J^T J} and {@code J^T r} of the parameters are accumulated in {@code jtj} and {@code jtr}
+	 */
+	private static double cost(final double[] n, final int[] inliers, final double[] w, final int length, final double[] u, final double[] v, 
+			final double[] jtj, final double[] jtr) {
+
+		if(jtj != null) {
+			for(int k = 0; k < 25; k++) jtj[k] = 0;
+			for(int k = 0; k < 5; k++) jtr[k] = 0;
+		}
+
+		final double[] j = new double[5];
+		double cost = 0;
+
+		for(int i = 0; i < length; i++) {
+
+			final int index = inliers[i], offset = 6*index;
+			final double x1 = n[offset], y1 = n[offset + 1], z1 = n[offset + 2], x2 = n[offset + 3], y2 = n[offset + 4], z2 = n[offset + 5];
+
+			// p = U^T n2, q = V^T n1, the error is p1 q1 + p2 q2
+			final double p1 = u[0]*x2 + u[3]*y2 + u[6]*z2, p2 = u[1]*x2 + u[4]*y2 + u[7]*z2, p3 = u[2]*x2 + u[5]*y2 + u[8]*z2;
+			final double q1 = v[0]*x1 + v[3]*y1 + v[6]*z1, q2 = v[1]*x1 + v[4]*y1 + v[7]*z1, q3 = v[2]*x1 + v[5]*y1 + v[8]*z1;
+
+			final double weight = w == null ? 1 : w[index];
+			final double r = weight * (p1*q1 + p2*q2);
+			cost += r*r;
+
+			if(jtj == null) {
+				continue;
+			}
+
+			// derivatives by a1, a2, a3, b1, b2: p' = p x a, q' = q x b
+			j[0] = weight * p3*q2;
+			j[1] = -weight * p3*q1;
+			j[2] = weight * (p2*q1 - p1*q2);
+			j[3] = weight * p2*q3;
+			j[4] = -weight * p1*q3;
+
+			for(int k = 0; k < 5; k++) {
+				jtr[k] += j[k] * r;
+				for(int l = 0; l <= k; l++) {
+					jtj[5*k + l] += j[k] * j[l];
+				}
+			}
+		}
+
+		return cost;
+	}
+
+	/**
+	 * <p> Solves {@code A x = b} of the symmetric positive definite 5 x 5 matrix, its lower triangle given (and destroyed) </p>
+	 *
+	 * @return
+	 * 		Returns {@code false} if the matrix is not positive definite
+	 */
+	private static boolean cholesky(final double[] a, final double[] b, final double[] x) {
+
+		for(int k = 0; k < 5; k++) {
+
+			double d = a[6*k];
+			for(int l = 0; l < k; l++) {
+				d -= a[5*k + l] * a[5*k + l];
+			}
+
+			if(!(d > 0)) {
+				return false;
+			}
+
+			d = Math.sqrt(d);
+			a[6*k] = d;
+
+			for(int i = k + 1; i < 5; i++) {
+
+				double s = a[5*i + k];
+				for(int l = 0; l < k; l++) {
+					s -= a[5*i + l] * a[5*k + l];
+				}
+				a[5*i + k] = s / d;
+			}
+		}
+
+		// L y = b, L^T x = y
+		for(int i = 0; i < 5; i++) {
+
+			double s = b[i];
+			for(int l = 0; l < i; l++) {
+				s -= a[5*i + l] * x[l];
+			}
+			x[i] = s / a[6*i];
+		}
+
+		for(int i = 4; i >= 0; i--) {
+
+			double s = x[i];
+			for(int l = i + 1; l < 5; l++) {
+				s -= a[5*l + i] * x[l];
+			}
+			x[i] = s / a[6*i];
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> {@code m = m exp([a]x)} by the Rodrigues formula, {@code m} stored by the rows </p>
+	 */
+	private static void rotate(final double[] m, final double a1, final double a2, final double a3) {
+
+		final double theta = Math.sqrt(a1*a1 + a2*a2 + a3*a3);
+		if(theta == 0) {
+			return;
+		}
+
+		final double x = a1 / theta, y = a2 / theta, z = a3 / theta;
+		final double c = Math.cos(theta), s = Math.sin(theta), t = 1 - c;
+
+		final double r0 = t*x*x + c, r1 = t*x*y - s*z, r2 = t*x*z + s*y,
+					 r3 = t*x*y + s*z, r4 = t*y*y + c, r5 = t*y*z - s*x,
+					 r6 = t*x*z - s*y, r7 = t*y*z + s*x, r8 = t*z*z + c;
+
+		for(int i = 0; i < 9; i += 3) {
+
+			final double m0 = m[i], m1 = m[i + 1], m2 = m[i + 2];
+			m[i] = m0*r0 + m1*r3 + m2*r6;
+			m[i + 1] = m0*r1 + m1*r4 + m2*r7;
+			m[i + 2] = m0*r2 + m1*r5 + m2*r8;
+		}
+	}
+
+	private static double determinant(final double[] m) {
+		return m[0]*(m[4]*m[8] - m[5]*m[7]) - m[1]*(m[3]*m[8] - m[5]*m[6]) + m[2]*(m[3]*m[7] - m[4]*m[6]);
+	}
+
+	private static void negate(final double[] m) {
+
+		for(int i = 0; i < 9; i++) {
+			m[i] = -m[i];
+		}
+	}
+}
@@ -1,11 +1,15 @@
 package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
 
+import java.util.Arrays;
+
 import org.apache.commons.lang3.ArrayUtils;
 
-import com.stefanrakonjac.mgrthesis.ransac.utils.ArraysUtils;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
 
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.*;
-import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.LapWrapper.*;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SymmetricEigen.smallestEigenpair;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SmallSVD.closestRank2;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SmallSVD.smallestSingularPair;
 import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.MathUtils.*;
 
 /**
@@ -38,11 +42,11 @@ public class FTools {
 		
 		if(length < 0) 
 			throw new IllegalArgumentException("length: " + length);
-		if(u == null || u.length != 6*length) 
+		if(u == null || u.length < 6*length) 
 			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
 		if(f == null || f.length != 9) 
 			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
-		if(p == null || p.length != length) 
+		if(p == null || p.length < length) 
 			throw new IllegalArgumentException("p: " + ArrayUtils.toString(p));
 		
 		/* ---------------------------------------------------------------------------------------
@@ -67,6 +71,432 @@ public class FTools {
 		}
 	}
 	
+	/**
+	 * <p> Fused consensus kernel: determines error (parameter {@code p}) of the correspondences as {@link #fds(double[], double[], double[], int)} does
+	 * and counts the inliers at the same time. Stops as soon as the model cannot have more than {@code best} inliers, 
+	 * i.e. it cannot beat the so-far-the-best model ranked by the number of inliers. </p>
+	 * 
+	 * @param u 
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param p
+	 * 		{@code length}-element array, error; complete only if the inliers count is returned
+	 * @param length
+	 * 		number of correspondences  
+	 * @param threshold
+	 * 		error threshold of the inliers
+	 * @param best
+	 * 		number of inliers to be exceeded
+	 * @return
+	 * 		Returns number of inliers (error not higher than {@code threshold}), or {@code -1} if the model cannot exceed {@code best} inliers
+	 */
+	public static int fdsInliers(final double[] u, final double[] f, final double[] p, final int length, final double threshold, final int best) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+		
+		if(length < 0) 
+			throw new IllegalArgumentException("length: " + length);
+		if(u == null || u.length < 6*length) 
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(f == null || f.length != 9) 
+			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
+		if(p == null || p.length < length) 
+			throw new IllegalArgumentException("p: " + ArrayUtils.toString(p));
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		final double f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4], f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8];
+		
+		double x1, y1, x2, y2, rx, ry, rwc, ryc, rxc, r;
+		int inliers = 0;
+		
+		for(int i = 0, j = 0; i < length; i++, j += 6) {
+			
+			x1 = u[j]; 
+			y1 = u[j + 1];
+			x2 = u[j + 3];
+			y2 = u[j + 4];
+			
+			rxc = f0 * x2 + f3 * y2 + f6;
+			ryc = f1 * x2 + f4 * y2 + f7;
+			rwc = f2 * x2 + f5 * y2 + f8;
+			
+			r = x1 * rxc + y1 * ryc + rwc;
+			
+			rx = f0 * x1 + f1 * y1 + f2;
+			ry = f3 * x1 + f4 * y1 + f5;
+			
+			if((p[i] = r*r / (rxc*rxc + ryc*ryc + rx*rx + ry*ry)) <= threshold) {
+				inliers++;
+			} else if(inliers + length - i - 1 <= best) {
+				return -1;
+			}
+		}
+		
+		return inliers;
+	}
+	
+	/**
+	 * <p> Number of correspondences the structure-of-arrays kernels compute at once, before the inliers are counted </p>
+	 */
+	private static final int SOA_BLOCK = 256;
+	
+	/**
+	 * <p> Structure-of-arrays version of {@link #fds(double[], double[], double[], int)}: coordinates of the correspondences in separate arrays,
+	 * same operations (the same errors). The loop is straight (no branches, consecutive elements) so that the JIT can vectorize it. </p>
+	 * 
+	 * @param x1
+	 * 		{@code length}-element array, x of the first points
+	 * @param y1
+	 * 		{@code length}-element array, y of the first points
+	 * @param x2
+	 * 		{@code length}-element array, x of the second points
+	 * @param y2
+	 * 		{@code length}-element array, y of the second points
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param p
+	 * 		{@code length}-element array, error
+	 * @param length
+	 * 		number of correspondences  
+	 */
+	public static void fds(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, final int length) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+		
+		checkSoA(x1, y1, x2, y2, f, p, length);
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		sampson(x1, y1, x2, y2, f, p, 0, length);
+	}
+	
+	/**
+	 * <p> Structure-of-arrays version of {@link #fdsInliers(double[], double[], double[], int, double, int)}. Errors are computed in blocks by 
+	 * the vectorizable kernel of {@link #fds(double[], double[], double[], double[], double[], double[], int)}, the inliers counted and the 
+	 * bail-out checked after each block. Returns the same as the interleaved version does. </p>
+	 * 
+	 * @param x1
+	 * 		{@code length}-element array, x of the first points
+	 * @param y1
+	 * 		{@code length}-element array, y of the first points
+	 * @param x2
+	 * 		{@code length}-element array, x of the second points
+	 * @param y2
+	 * 		{@code length}-element array, y of the second points
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param p
+	 * 		{@code length}-element array, error; complete only if the inliers count is returned
+	 * @param length
+	 * 		number of correspondences  
+	 * @param threshold
+	 * 		error threshold of the inliers
+	 * @param best
+	 * 		number of inliers to be exceeded
+	 * @return
+	 * 		Returns number of inliers (error not higher than {@code threshold}), or {@code -1} if the model cannot exceed {@code best} inliers
+	 */
+	public static int fdsInliers(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, 
+			final int length, final double threshold, final int best) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+		
+		checkSoA(x1, y1, x2, y2, f, p, length);
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		int inliers = 0;
+		boolean outlier = false;
+		
+		for(int from = 0; from < length; from += SOA_BLOCK) {
+			
+			final int to = Math.min(from + SOA_BLOCK, length);
+			sampson(x1, y1, x2, y2, f, p, from, to);
+			
+			int blockInliers = 0;
+			for(int i = from; i < to; i++) {
+				blockInliers += p[i] <= threshold ? 1 : 0;
+			}
+			
+			inliers += blockInliers;
+			outlier |= blockInliers < to - from;
+			
+			// as the interleaved version: bail out after an outlier, once the rest cannot exceed the best
+			if(outlier && inliers + length - to <= best) {
+				return -1;
+			}
+		}
+		
+		return inliers;
+	}
+	
+	/**
+	 * <p> Structure-of-arrays version of {@link #exFDs(double[], double[], double[], double[], int)}, same operations (the same errors and weights), 
+	 * vectorizable loop </p>
+	 * 
+	 * @param x1
+	 * 		{@code length}-element array, x of the first points
+	 * @param y1
+	 * 		{@code length}-element array, y of the first points
+	 * @param x2
+	 * 		{@code length}-element array, x of the second points
+	 * @param y2
+	 * 		{@code length}-element array, y of the second points
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param p
+	 * 		{@code length}-element array, error
+	 * @param w
+	 * 		{@code length}-element array, weights (inverse norms of the gradients)
+	 * @param length
+	 * 		number of correspondences  
+	 */
+	public static void exFDs(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, 
+			final double[] w, final int length) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+		
+		checkSoA(x1, y1, x2, y2, f, p, length);
+		if(w == null || w.length < length) 
+			throw new IllegalArgumentException("w: " + ArrayUtils.toString(w));
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		exFDs(x1, y1, x2, y2, f, p, w, 0, length);
+	}
+	
+	/**
+	 * <p> Single step of the iteratively reweighted least squares, fusing {@link #exFDs(double[], double[], double[], double[], double[], double[], double[], int)}, 
+	 * {@link RTools#inlierIndices(double[], int, double, int[], Score)} by two thresholds and the weighted scatter matrix of the inliers by the wider 
+	 * one into a single pass over the correspondences: errors and weights of a block are computed by the vectorizable loop, the block is classified 
+	 * and its inliers accumulated while it is in the cache. </p>
+	 * 
+	 * <p> Scores are the same as of {@code inlierIndices}. The scatter matrix is the one {@link #u2fw(double[], int[], double[], int, double[], double[])} 
+	 * computes, {@code sum w^2 z z^T}, but of the rows linearised by a fixed normalization (of the run) instead of the one of the inliers. </p>
+	 * 
+	 * @param x1
+	 * 		{@code length}-element array, x of the first points
+	 * @param y1
+	 * 		{@code length}-element array, y of the first points
+	 * @param x2
+	 * 		{@code length}-element array, x of the second points
+	 * @param y2
+	 * 		{@code length}-element array, y of the second points
+	 * @param z
+	 * 		9 x {@code length}-element array, normalised linearised correspondences (see {@link #lineariseFundamentalMatrixN(double[], double[], int[], int, double[], double[])})
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param p
+	 * 		{@code length}-element array, error
+	 * @param w
+	 * 		{@code length}-element array, weights (inverse norms of the gradients)
+	 * @param length
+	 * 		number of correspondences  
+	 * @param threshold
+	 * 		error threshold of {@code score}
+	 * @param score
+	 * 		score by {@code threshold}, reset and filled
+	 * @param thresholds
+	 * 		error threshold of the inliers of the scatter matrix
+	 * @param inliers
+	 * 		{@code length}-element array, indices of the inliers by {@code thresholds}
+	 * @param inliersScore
+	 * 		score by {@code thresholds}, reset and filled
+	 * @param cv
+	 * 		81-element array, the (symmetric) weighted scatter matrix of the inliers by {@code thresholds}
+	 */
+	public static void exFDsScatter(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] z, final double[] f, 
+			final double[] p, final double[] w, final int length, final double threshold, final Score score, final double thresholds, final int[] inliers, 
+			final Score inliersScore, final double[] cv) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+		
+		checkSoA(x1, y1, x2, y2, f, p, length);
+		if(w == null || w.length < length) 
+			throw new IllegalArgumentException("w: " + ArrayUtils.toString(w));
+		if(z == null || z.length < 9*length) 
+			throw new IllegalArgumentException("z: " + ArrayUtils.toString(z));
+		if(threshold < 0 || thresholds < 0) 
+			throw new IllegalArgumentException("thresholds: " + threshold + ", " + thresholds);
+		if(inliers == null || inliers.length < length) 
+			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(inliers));
+		if(score == null || inliersScore == null) 
+			throw new IllegalArgumentException("score is null");
+		if(cv == null || cv.length < 81) 
+			throw new IllegalArgumentException("cv: " + ArrayUtils.toString(cv));
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		score.reset();
+		inliersScore.reset();
+		Arrays.fill(cv, 0, 81, 0d);
+		
+		// truncated quadratic errors as by inlierIndices, none for the zero threshold
+		final double truncation = threshold*9d/4, truncations = thresholds*9d/4;
+		double error = 0, errors = 0;
+		
+		for(int from = 0; from < length; from += SOA_BLOCK) {
+			
+			final int to = Math.min(from + SOA_BLOCK, length);
+			exFDs(x1, y1, x2, y2, f, p, w, from, to);
+			
+			for(int i = from; i < to; i++) {
+				
+				final double e = p[i];
+				
+				if(e < truncation) {
+					error += 1 - e/truncation;
+				}
+				if(e <= threshold) {
+					score.increasInliers();
+				}
+				if(e < truncations) {
+					errors += 1 - e/truncations;
+				}
+				if(e <= thresholds) {
+					
+					inliers[inliersScore.increasInliers()] = i;
+					
+					// upper triangle of w^2 z z^T
+					final double ww = w[i] * w[i];
+					final int row = 9*i;
+					
+					for(int a = 0; a < 9; a++) {
+						
+						final double za = ww * z[row + a];
+						for(int b = a; b < 9; b++) {
+							cv[9*a + b] += za * z[row + b];
+						}
+					}
+				}
+			}
+		}
+		
+		if(threshold > 0) score.addError(error);
+		if(thresholds > 0) inliersScore.addError(errors);
+		
+		for(int a = 1; a < 9; a++) {
+			for(int b = 0; b < a; b++) {
+				cv[9*a + b] = cv[9*b + a];
+			}
+		}
+	}
+	
+	/**
+	 * <p> Errors and weights of the correspondences {@code from} (inclusive) {@code to} (exclusive) </p>
+	 */
+	private static void exFDs(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, 
+			final double[] w, final int from, final int to) {
+		
+		final double f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4], f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8];
+		
+		for(int i = from; i < to; i++) {
+			
+			final double u1 = x1[i], v1 = y1[i], u2 = x2[i], v2 = y2[i];
+			
+			final double rxc = f0 * u2 + f3 * v2 + f6;
+			final double ryc = f1 * u2 + f4 * v2 + f7;
+			final double rwc = f2 * u2 + f5 * v2 + f8;
+			final double r = u1 * rxc + v1 * ryc + rwc;
+			final double rx = f0 * u1 + f1 * v1 + f2;
+			final double ry = f3 * u1 + f4 * v1 + f5;
+			
+			final double g = rxc * rxc + ryc * ryc + rx * rx + ry * ry;
+			p[i] = r * r / g;
+			w[i] = 1 / Math.sqrt(g);
+		}
+	}
+	
+	/**
+	 * <p> Sampson errors of the correspondences {@code from} (inclusive) {@code to} (exclusive) </p>
+	 */
+	private static void sampson(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, 
+			final int from, final int to) {
+		
+		final double f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4], f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8];
+		
+		for(int i = from; i < to; i++) {
+			
+			final double u1 = x1[i], v1 = y1[i], u2 = x2[i], v2 = y2[i];
+			
+			final double rxc = f0 * u2 + f3 * v2 + f6;
+			final double ryc = f1 * u2 + f4 * v2 + f7;
+			final double rwc = f2 * u2 + f5 * v2 + f8;
+			final double r = u1 * rxc + v1 * ryc + rwc;
+			final double rx = f0 * u1 + f1 * v1 + f2;
+			final double ry = f3 * u1 + f4 * v1 + f5;
+			
+			p[i] = r*r / (rxc*rxc + ryc*ryc + rx*rx + ry*ry);
+		}
+	}
+	
+	private static void checkSoA(final double[] x1, final double[] y1, final double[] x2, final double[] y2, final double[] f, final double[] p, final int length) {
+		
+		if(length < 0) 
+			throw new IllegalArgumentException("length: " + length);
+		if(x1 == null || x1.length < length) 
+			throw new IllegalArgumentException("x1: " + ArrayUtils.toString(x1));
+		if(y1 == null || y1.length < length) 
+			throw new IllegalArgumentException("y1: " + ArrayUtils.toString(y1));
+		if(x2 == null || x2.length < length) 
+			throw new IllegalArgumentException("x2: " + ArrayUtils.toString(x2));
+		if(y2 == null || y2.length < length) 
+			throw new IllegalArgumentException("y2: " + ArrayUtils.toString(y2));
+		if(f == null || f.length != 9) 
+			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
+		if(p == null || p.length < length) 
+			throw new IllegalArgumentException("p: " + ArrayUtils.toString(p));
+	}
+	
+	/**
+	 * <p> Error of a single correspondence, same as computed by {@link #fds(double[], double[], double[], int)}. 
+	 * Contract is not checked, as the method is called for every point by the sequential verification. </p>
+	 * 
+	 * @param u 
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param i
+	 * 		index of the correspondence
+	 * @return
+	 * 		Returns error of the {@code i}-th correspondence
+	 */
+	public static double fd(final double[] u, final double[] f, final int i) {
+		
+		final double rxc = f[0] * u[i*6 + 3] + f[3] * u[i*6 + 4] + f[6];
+		final double ryc = f[1] * u[i*6 + 3] + f[4] * u[i*6 + 4] + f[7];
+		final double rwc = f[2] * u[i*6 + 3] + f[5] * u[i*6 + 4] + f[8];
+		
+		final double r = u[i*6] * rxc + u[i*6 + 1] * ryc + rwc;
+		
+		final double rx = f[0] * u[i*6] + f[1] * u[i*6 + 1] + f[2];
+		final double ry = f[3] * u[i*6] + f[4] * u[i*6 + 1] + f[5];
+		
+		return r*r / (rxc*rxc + ryc*ryc + rx*rx + ry*ry);
+	}
+	
 	/**
 	 * <b> double checked </b>
 	 * 
@@ -205,6 +635,33 @@ public class FTools {
 	 */
 	public static boolean allOrientationValid(double[] f, double[] u, int[] indices, int n) {
 		
+		if(indices == null || n != indices.length) 
+			throw new IllegalArgumentException("n: " + n);
+		
+		return allOrientationValid(f, u, indices, 0, n, new double[3]);
+	}
+	
+	/**
+	 * <p> Validates orientation. Same as {@link #allOrientationValid(double[], double[], int[], int)}, but reads the sample indices
+	 * starting at {@code indicesOffset} (C version gets a pointer to the end of the pool) and uses provided epipole buffer. </p>
+	 * 
+	 * @param f
+	 * 
+	 * @param u
+	 * 
+	 * @param indices
+	 * 
+	 * @param indicesOffset
+	 * 		Position of the first sample index within {@code indices}
+	 * @param n
+	 * 
+	 * @param ec
+	 * 		3-element epipole buffer
+	 * @return
+	 * 		Returns {@code true} if orientation is valid for all {@code n} sample indices, otherwie returns {@code false}
+	 */
+	public static boolean allOrientationValid(double[] f, double[] u, int[] indices, int indicesOffset, int n, double[] ec) {
+		
 		/* ---------------------------------------------------------------------------------------
 		 * method contract
 		 * --------------------------------------------------------------------------------------- */
@@ -213,23 +670,24 @@ public class FTools {
 			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
 		if(u == null || u.length == 0) 
 			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
-		if(indices == null || 6*indices.length > u.length) 
+		if(indices == null || indicesOffset < 0 || indicesOffset + n > indices.length) 
 			throw new IllegalArgumentException("indices: " + ArrayUtils.toString(indices));
-		if(n < 0 || n != indices.length) 
+		if(n < 0) 
 			throw new IllegalArgumentException("n: " + n);
+		if(ec == null || ec.length != 3) 
+			throw new IllegalArgumentException("ec: " + ArrayUtils.toString(ec));
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method business logic
 		 * --------------------------------------------------------------------------------------- */
 		
-		final double[] ec = new double[3];
 		epipole(ec, f);
 		
-		final double sig0 = getOrientationSig(f, ec, ArrayUtils.subarray(u, 6*indices[0], 6*indices[0] + 6));
+		final double sig0 = getOrientationSig(f, ec, u, 6*indices[indicesOffset]);
 		
 		for(int i = 1; i < n; i++) {
 			
-			final double sig = getOrientationSig(f, ec, ArrayUtils.subarray(u, 6*indices[i], 6*indices[i] + 6));
+			final double sig = getOrientationSig(f, ec, u, 6*indices[indicesOffset + i]);
 			if(sig0*sig < 0) return false;
 		}
 		
@@ -266,16 +724,14 @@ public class FTools {
 		
 		final double xeps = 1.9984e-15;
 		
-		final double[] f6 = ArrayUtils.subarray(f, 6, 9);
-		crossproduct(ec, f, f6, 1);
+		crossproduct(ec, f, 0, f, 6, 1);
 		
 		for(int i = 0; i < 3; i++) {
 			
 			if(ec[i] > xeps || ec[i] < -xeps) return;
 		}
 		
-		final double[] f3 = ArrayUtils.subarray(f, 3, 6);
-		crossproduct(ec, f3, f6, 1);
+		crossproduct(ec, f, 3, f, 6, 1);
 	}
 	
 	/**
@@ -295,6 +751,27 @@ public class FTools {
 	 * 
 	 */
 	public static void crossproduct(double[] out, double[] a, double[] b, int step) {
+		crossproduct(out, a, 0, b, 0, step);
+	}
+	
+	/**
+	 * <p> Same as {@link #crossproduct(double[], double[], double[], int)}, but vectors {@code a} and {@code b} start at provided offsets 
+	 * (C version gets pointers inside the arrays) </p>
+	 * 
+	 * @param out
+	 * 		Method updates this parameter
+	 * @param a
+	 * 		Method does not update this parameter
+	 * @param aOffset
+	 * 
+	 * @param b
+	 * 		Method does not update this parameter
+	 * @param bOffset
+	 * 
+	 * @param step
+	 * 
+	 */
+	public static void crossproduct(double[] out, double[] a, int aOffset, double[] b, int bOffset, int step) {
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method contract
@@ -304,18 +781,18 @@ public class FTools {
 			throw new IllegalArgumentException("out: " + ArrayUtils.toString(out));
 		if(step <= 0) 
 			throw new IllegalArgumentException("st: " + step);
-		if(a == null || a.length < 2*step) 
+		if(a == null || aOffset < 0 || a.length - aOffset < 2*step) 
 			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
-		if(b == null || b.length < 2*step) 
+		if(b == null || bOffset < 0 || b.length - bOffset < 2*step) 
 			throw new IllegalArgumentException("b: " + ArrayUtils.toString(b));
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method business logic
 		 * --------------------------------------------------------------------------------------- */
 
-		out[0] = a[step]*b[2*step] - a[2*step]*b[step];
-		out[1] = a[2*step]*b[0] - a[0]*b[2*step];
-		out[2] = a[0]*b[step] - a[step]*b[0];
+		out[0] = a[aOffset + step]*b[bOffset + 2*step] - a[aOffset + 2*step]*b[bOffset + step];
+		out[1] = a[aOffset + 2*step]*b[bOffset] - a[aOffset]*b[bOffset + 2*step];
+		out[2] = a[aOffset]*b[bOffset + step] - a[aOffset + step]*b[bOffset];
 	}
 	
 	
@@ -337,6 +814,28 @@ public class FTools {
 	 */
 	public static double getOrientationSig(double[] f, double[] ec, double[] u) {
 		
+		if(u == null || u.length != 6) 
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		
+		return getOrientationSig(f, ec, u, 0);
+	}
+	
+	/**
+	 * <p> Same as {@link #getOrientationSig(double[], double[], double[])}, but the correspondence starts at {@code uOffset} </p>
+	 * 
+	 * @param f
+	 * 		Method does not update this parameter
+	 * @param ec
+	 * 		Method does not update this parameter
+	 * @param u
+	 * 		Method does not update this parameter
+	 * @param uOffset
+	 * 		Position of the correspondence within {@code u}
+	 * @return
+	 * 
+	 */
+	public static double getOrientationSig(double[] f, double[] ec, double[] u, int uOffset) {
+		
 		/* ---------------------------------------------------------------------------------------
 		 * method contract
 		 * --------------------------------------------------------------------------------------- */
@@ -345,15 +844,15 @@ public class FTools {
 			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
 		if(ec == null || ec.length == 0) 
 			throw new IllegalArgumentException("ec: " + ArrayUtils.toString(ec));
-		if(u == null || u.length != 6) 
+		if(u == null || uOffset < 0 || u.length - uOffset < 6) 
 			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method business logic
 		 * --------------------------------------------------------------------------------------- */
 		
-		final double s1 = f[0]*u[3] + f[3]*u[4] + f[6]*u[5];
-		final double s2 = ec[1]*u[2] - ec[2]*u[1];
+		final double s1 = f[0]*u[uOffset + 3] + f[3]*u[uOffset + 4] + f[6]*u[uOffset + 5];
+		final double s2 = ec[1]*u[uOffset + 2] - ec[2]*u[uOffset + 1];
 		
 		return s1*s2;
 	}
@@ -390,59 +889,38 @@ public class FTools {
 			throw new IllegalArgumentException("length: " + length);
 		if(f == null || f.length != 9) 
 			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
-		if(buffer == null || buffer.length != 9*(u.length/6)) 
+		if(buffer == null || buffer.length < 9*length) 
 			throw new IllegalArgumentException("buffer: " + ArrayUtils.toString(buffer));
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method business logic
 		 * --------------------------------------------------------------------------------------- */
 
-		final double[] a1 = new double[3], a2 = new double[3];
-
-		double[] z = buffer != null ? buffer : new double[9*length];
-		double[] v = new double[9*9], U = new double[8*8], d = new double[9];
+		final double[] z = buffer;
 
 		if (length > 8) {
 			
+			final double[] a1 = new double[3], a2 = new double[3], v = new double[9*9];
+			
 			normu(u, inliers, length, a1, a2);
 			lineariseFundamentalMatrixN(u, z, inliers, length, a1, a2);
 
 			covMat(v, z, length, 9);
-			lapackEigen(v, d, 9);
 
-		} else {
-
-			lineariseFundamentalMatrix(u, z, inliers, length);
+			// linearised correspondences are not needed any more, z holds the rotations
+			smallestEigenpair(v, f, z);
 			
-			// TODO: check svduv
-			svduv(d, z, v, 9, U, 8);
-
-		}
-
-		int p = 0; // V related
-
-		if (length > 8) {
-
-			int j = 0;
-			for (int i = 1; i < 9; i++)
-				if (d[i] < d[j])
-					j = i;
-			p = j;
+			singulF(f, z);
+			denormF(f, a1, a2);
 
 		} else {
 
-			p = 8;
-		}
-
-		for (int i = 0; i < 9; i++) {
-			f[i] = v[p];
-			p += 9;
-		}
-		
-		singulF(f);
-
-		if (length > 8) {
-			denormF(f, a1, a2);
+			lineariseFundamentalMatrix(u, z, inliers, length);
+			
+			// null vector of the length x 9 system, in place
+			smallestSingularPair(z, length, f);
+			
+			singulF(f, z);
 		}
 	}
 	
@@ -634,10 +1112,11 @@ public class FTools {
 	 */
 	public static void u2fw(final double[] u, final int[] inliers, final double[] w, final int length, final double[] serializedModel, final double[] buffer) {
 
-		   double[] a1 = new double[3], a2 = new double[3];
-		   double[] z = buffer, v = new double[9*9], U = new double[8*8], D = new double[9];
+		   double[] z = buffer;
 
 		   if (length > 8) {
+		      final double[] a1 = new double[3], a2 = new double[3], v = new double[9*9];
+		      
 		      normu(u, inliers, length, a1, a2); 
 		      lineariseFundamentalMatrixN(u, z, inliers, length, a1, a2);
 		      
@@ -647,7 +1126,10 @@ public class FTools {
 		      }
 		      
 		      covMat(v, z, length, 9);
-		      lapackEigen(v, D, 9);
+		      smallestEigenpair(v, serializedModel, z);
+		      
+		      singulF(serializedModel, z);
+		      denormF(serializedModel, a1, a2);
 		      
 		   } else {
 			   
@@ -655,43 +1137,18 @@ public class FTools {
 		      for(int i = 0, j; i < length; i++) {
 		    	  
 		         j = inliers[i];
-		         scalmul(z, i, w[j], 9, 9);
-		      }
-		      
-		      svduv(D,z,v,9,U,8);
-		   }
-		   
-		   int p;
-
-		   if (length > 8) {
-		      
-			  int j = 0;
-		      for (int i = 1; i < 9; i++) {
-		         if (D[i] < D[j]) j = i;
+		         scalmul(z, i, w[j], 9, length); // row i of the system stored by the columns
 		      }
 		      
-		       p = j; // v related
-		   
-		   } else {
+		      smallestSingularPair(z, length, serializedModel);
 		      
-			   p = 8; // v related
-		   }
-		   
-		   for (int i = 0; i < 9; i++) {
-			   serializedModel[i] = v[p];
-		       p += 9;
-		   }
-
-		   singulF(serializedModel); 
-
-		   if (length > 8) {
-		      denormF(serializedModel, a1, a2);
+		      // the small fits of the local optimization do not allocate
+		      singulF(serializedModel, z);
 		   }
-
 	}
 	
 	/**
-	 * <p> def </p>
+	 * <p> Closest rank 2 fundamental matrix, in place; allocates its buffer, see {@link #singulF(double[], double[])} </p>
 	 * 
 	 * {@ code Fools.h : void singulF(double *F) }
 	 * 
@@ -699,29 +1156,20 @@ public class FTools {
 	 */
 	public static void singulF(double[] f) {
 		
-		   double[] S = new double[3], u = new double[9], vt = new double[9], d = new double[]{1,0,0,0,1,0,0,0,1}, vd = new double[9];
-		   
-		   // our 'lapack' does not store column-wise
-//		   trnm(f,3);  
-		   
-		   if(!lapackSVD (S, f, u, 3, vt, 3)) {
-			   
-		     ArraysUtils.copyArray(f, d);
-		     return;
-		   }
-		   
-		   d[0] = S[0];
-		   d[4] = S[1];
-		   d[8] = 0;
-		   
-		   final double[] dvt = new double[9];
-		   mmul(dvt, d, vt, 3);
-		   mmul(f, u, dvt, 3);
-		   
-//		   mmul(vd, v, d, 3); /*F = U.D.V^T = (V.D^T.U^T)^T = (V.D.U^T)^T*/
-//		   mmul(f, vd, ut, 3);
-//		   
-//		   trnm(f,3);
+		singulF(f, new double[2*9]);
+	}
+	
+	/**
+	 * <p> Closest rank 2 fundamental matrix (the smallest singular value of {@code F = U D V^T} set to zero), in place, 
+	 * by {@link SmallSVD#closestRank2(double[], double[])}: allocates nothing, so that the least squares fits of the local optimization do not </p>
+	 * 
+	 * @param f
+	 * 		9-element array (matrix)
+	 * @param buffer
+	 * 		at least 18-element array
+	 */
+	public static void singulF(final double[] f, final double[] buffer) {
 		
+		closestRank2(f, buffer);
 	}
 }
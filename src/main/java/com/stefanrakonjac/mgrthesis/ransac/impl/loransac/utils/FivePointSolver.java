@@ -0,0 +1,628 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrix;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SmallSVD.nullSpace;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Five-point essential matrix solver of the minimal samples of the calibrated correspondences (Stewenius, Engels, Nister:
+ * Recent Developments on Direct Relative Orientation). The null space of the 5 x 9 system is 4-dimensional, {@code E = x X + y Y + z Z + W};
+ * the cubic constraints {@code det(E) = 0} and {@code 2 E E^T E - tr(E E^T) E = 0} are 10 equations of the 20 monomials of {@code x, y, z},
+ * eliminated by Gauss-Jordan so that the action matrix of the multiplication by {@code x} can be read out. Its real eigenvectors are the
+ * solutions, up to 10 of them. </p>
+ *
+ * <p> Eigenvalues of the action matrix are the ones of its Hessenberg form by the shifted QR iterations ({@code elmhes} and {@code hqr} 
+ * of the Numerical Recipes), the eigenvector of a real one is the null vector of {@code A - x I} by the Gaussian elimination, the last 
+ * element (of the monomial {@code 1}) being 1. Polynomials are held in the arrays of their coefficients, the buffers of the solver are reused,
+ * nothing is allocated. Not thread-safe. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class FivePointSolver {
+
+	/** number of the correspondences of a sample */
+	public static final int SAMPLE_SIZE = 5;
+
+	/** maximal number of the hypotheses of a sample */
+	public static final int MAX_SOLUTIONS = 10;
+
+	/** pivots lower than this part of the largest coefficient are considered zero */
+	private static final double TOLERANCE = 1e-12;
+
+	/** maximal number of the QR iterations per eigenvalue */
+	private static final int MAX_ITERATIONS = 30;
+
+	/** number of the monomials of degree 3 at most */
+	private static final int MONOMIALS = 20;
+
+	/**
+	 * exponents of {@code x, y, z} of the monomials: the ones of degree 3 eliminated first, then the basis of the action matrix
+	 * {@code x^2, xy, xz, y^2, yz, z^2, x, y, z, 1} (the quadratic polynomials are stored in these 10, the linear ones in the last 4)
+	 */
+	private static final int[][] EXPONENTS = {
+		{ 3, 0, 0 }, { 2, 1, 0 }, { 2, 0, 1 }, { 1, 2, 0 }, { 1, 1, 1 }, { 1, 0, 2 }, { 0, 3, 0 }, { 0, 2, 1 }, { 0, 1, 2 }, { 0, 0, 3 },
+		{ 2, 0, 0 }, { 1, 1, 0 }, { 1, 0, 1 }, { 0, 2, 0 }, { 0, 1, 1 }, { 0, 0, 2 }, { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 }, { 0, 0, 0 }
+	};
+
+	/** monomial of the product of two linear ones, index into the quadratic polynomial */
+	private static final int[][] LINEAR_LINEAR = new int[4][4];
+
+	/** monomial of the product of a quadratic and a linear one, index into the cubic polynomial */
+	private static final int[][] QUADRATIC_LINEAR = new int[10][4];
+
+	static {
+		for(int i = 0; i < 10; i++) {
+			for(int j = 0; j < 4; j++) {
+
+				QUADRATIC_LINEAR[i][j] = monomial(EXPONENTS[10 + i], EXPONENTS[16 + j]);
+				if(i < 4) LINEAR_LINEAR[i][j] = monomial(EXPONENTS[16 + i], EXPONENTS[16 + j]) - 10;
+			}
+		}
+	}
+
+	private final int[] sample = new int[SAMPLE_SIZE];
+	/** linearised sample, null space of its system */
+	private final double[] a = new double[9*SAMPLE_SIZE], basis = new double[9*4];
+
+	/** elements of {@code E}, linear polynomials (coefficients of {@code x, y, z, 1}) */
+	private final double[][] e = new double[9][4];
+	/** upper triangle of {@code E E^T} and the temporary products, quadratic polynomials */
+	private final double[][] eet = new double[9][10];
+	private final double[] trace = new double[10], minor = new double[10];
+
+	/** 10 x 20 constraints, row by row */
+	private final double[] c = new double[10*MONOMIALS];
+
+	/** action matrix, its Hessenberg form and {@code A - x I}, 10 x 10 row by row */
+	private final double[] action = new double[100], hessenberg = new double[100], shifted = new double[100];
+	/** real and imaginary parts of the eigenvalues */
+	private final double[] re = new double[10], im = new double[10];
+	private final double[] v = new double[10];
+
+	/**
+	 * <p> Computes the essential matrices of a minimal sample </p>
+	 *
+	 * @param u
+	 * 		correspondences of the normalized image coordinates (by the inverse calibration matrices, 6 x {@code length}-element array)
+	 * @param indices
+	 * 		sample indices
+	 * @param indicesOffset
+	 * 		position of the first sample index within {@code indices}
+	 * @param es
+	 * 		10 x 9-element arrays, the matrices (stored by the rows, {@code u2^T E u1 = 0}, unit Frobenius norm)
+	 * @return
+	 * 		Returns number of the matrices, 0 for the degenerate samples
+	 */
+	public int solve(final double[] u, final int[] indices, final int indicesOffset, final double[][] es) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(u == null)
+			throw new IllegalArgumentException("u: null");
+		if(indices == null || indicesOffset < 0 || indicesOffset + SAMPLE_SIZE > indices.length)
+			throw new IllegalArgumentException("indices: " + ArrayUtils.toString(indices));
+		if(es == null || es.length < MAX_SOLUTIONS)
+			throw new IllegalArgumentException("es: " + ArrayUtils.toString(es));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		System.arraycopy(indices, indicesOffset, sample, 0, SAMPLE_SIZE);
+		lineariseFundamentalMatrix(u, a, sample, SAMPLE_SIZE);
+		nullSpace(a, SAMPLE_SIZE, basis);
+
+		for(int m = 0; m < 9; m++) {
+			for(int k = 0; k < 4; k++) {
+				e[m][k] = basis[9*k + m];
+			}
+		}
+
+		constraints();
+
+		if(!eliminate()) {
+			return 0;
+		}
+
+		// action matrix of x on x^2, xy, xz, y^2, yz, z^2, x, y, z, 1: x^3 ... xz^2 by the eliminated rows 0 ... 5, the rest are in the basis
+		final double[] m = action;
+		for(int i = 0; i < 6; i++) {
+			for(int j = 0; j < 10; j++) {
+				m[10*i + j] = -c[MONOMIALS*i + 10 + j];
+			}
+		}
+		for(int i = 60; i < 100; i++) {
+			m[i] = 0;
+		}
+		m[60] = m[71] = m[82] = m[96] = 1;
+
+		System.arraycopy(action, 0, hessenberg, 0, 100);
+		elmhes(hessenberg);
+		if(!hqr(hessenberg, re, im)) {
+			return 0;
+		}
+
+		int solutions = 0;
+		for(int i = 0; i < 10 && solutions < MAX_SOLUTIONS; i++) {
+
+			if(im[i] != 0 || !eigenvector(re[i])) {
+				continue;
+			}
+
+			final double x = re[i], y = v[7], z = v[8];
+			final double[] f = es[solutions++];
+
+			double norm = 0;
+			for(int k = 0; k < 9; k++) {
+				f[k] = x*basis[k] + y*basis[9 + k] + z*basis[18 + k] + basis[27 + k];
+				norm += f[k] * f[k];
+			}
+
+			norm = 1 / Math.sqrt(norm);
+			for(int k = 0; k < 9; k++) {
+				f[k] *= norm;
+			}
+		}
+
+		return solutions;
+	}
+
+	/**
+	 * <p> Coefficients of the 10 cubic constraints of the linear polynomials {@link #e} </p>
+	 */
+	private void constraints() {
+
+		for(int i = 0; i < c.length; i++) {
+			c[i] = 0;
+		}
+
+		// det(E), by the first row
+		minor(4, 8, 5, 7);
+		cubic(minor, e[0], 1, 0);
+		minor(3, 8, 5, 6);
+		cubic(minor, e[1], -1, 0);
+		minor(3, 7, 4, 6);
+		cubic(minor, e[2], 1, 0);
+
+		// E E^T, symmetric: element (i, j) held at 3i + j, i <= j
+		for(int i = 0; i < 3; i++) {
+			for(int j = i; j < 3; j++) {
+
+				final double[] q = eet[3*i + j];
+				for(int k = 0; k < 10; k++) {
+					q[k] = 0;
+				}
+				for(int k = 0; k < 3; k++) {
+					quadratic(e[3*i + k], e[3*j + k], q, 1);
+				}
+			}
+		}
+
+		for(int k = 0; k < 10; k++) {
+			trace[k] = eet[0][k] + eet[4][k] + eet[8][k];
+		}
+
+		// 2 E E^T E - tr(E E^T) E
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+
+				final int row = 1 + 3*i + j;
+				for(int k = 0; k < 3; k++) {
+					cubic(eet[i <= k ? 3*i + k : 3*k + i], e[3*k + j], 2, row);
+				}
+				cubic(trace, e[3*i + j], -1, row);
+			}
+		}
+	}
+
+	/**
+	 * <p> Gauss-Jordan elimination of the first 10 monomials of the constraints, partial pivoting </p>
+	 *
+	 * @return
+	 * 		Returns {@code false} if the constraints are (nearly) dependent
+	 */
+	private boolean eliminate() {
+
+		double max = 0;
+		for(int i = 0; i < c.length; i++) {
+			max = Math.max(max, Math.abs(c[i]));
+		}
+
+		final double tolerance = TOLERANCE * max;
+
+		for(int col = 0; col < 10; col++) {
+
+			int pivot = col;
+			for(int row = col + 1; row < 10; row++) {
+				if(Math.abs(c[MONOMIALS*row + col]) > Math.abs(c[MONOMIALS*pivot + col])) pivot = row;
+			}
+
+			if(!(Math.abs(c[MONOMIALS*pivot + col]) > tolerance)) {
+				return false;
+			}
+
+			if(pivot != col) {
+				for(int k = col; k < MONOMIALS; k++) {
+
+					final double t = c[MONOMIALS*pivot + k];
+					c[MONOMIALS*pivot + k] = c[MONOMIALS*col + k];
+					c[MONOMIALS*col + k] = t;
+				}
+			}
+
+			final int p = MONOMIALS*col;
+			final double scale = 1 / c[p + col];
+			for(int k = col; k < MONOMIALS; k++) {
+				c[p + k] *= scale;
+			}
+
+			for(int row = 0; row < 10; row++) {
+
+				final int r = MONOMIALS*row;
+				final double factor = c[r + col];
+				if(row == col || factor == 0) continue;
+
+				for(int k = col; k < MONOMIALS; k++) {
+					c[r + k] -= factor * c[p + k];
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> Null vector of {@code A - x I} of the action matrix into {@link #v}, scaled so that its last element is 1: Gaussian elimination 
+	 * with the partial pivoting, the last pivot being the (nearly) zero one </p>
+	 *
+	 * @return
+	 * 		Returns {@code false} if the vector is at infinity (rank of {@code A - x I} lower than 9)
+	 */
+	private boolean eigenvector(final double x) {
+
+		final double[] a = shifted;
+		System.arraycopy(action, 0, a, 0, 100);
+		for(int i = 0; i < 10; i++) {
+			a[11*i] -= x;
+		}
+
+		for(int col = 0; col < 9; col++) {
+
+			int pivot = col;
+			for(int row = col + 1; row < 10; row++) {
+				if(Math.abs(a[10*row + col]) > Math.abs(a[10*pivot + col])) pivot = row;
+			}
+
+			if(a[10*pivot + col] == 0) {
+				return false;
+			}
+
+			if(pivot != col) {
+				for(int k = col; k < 10; k++) {
+
+					final double t = a[10*pivot + k];
+					a[10*pivot + k] = a[10*col + k];
+					a[10*col + k] = t;
+				}
+			}
+
+			for(int row = col + 1; row < 10; row++) {
+
+				final double factor = a[10*row + col] / a[11*col];
+				if(factor == 0) continue;
+
+				for(int k = col + 1; k < 10; k++) {
+					a[10*row + k] -= factor * a[10*col + k];
+				}
+			}
+		}
+
+		// back substitution, v[9] = 1
+		v[9] = 1;
+		for(int i = 8; i >= 0; i--) {
+
+			double sum = a[10*i + 9];
+			for(int k = i + 1; k < 9; k++) {
+				sum += a[10*i + k] * v[k];
+			}
+
+			v[i] = -sum / a[11*i];
+		}
+
+		for(int i = 0; i < 10; i++) {
+			if(Double.isNaN(v[i]) || Double.isInfinite(v[i])) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> Reduction of the 10 x 10 matrix to the upper Hessenberg form by the stabilized elementary similarity transformations 
+	 * ({@code elmhes} of the Numerical Recipes); the elements below the subdiagonal are zeroed </p>
+	 */
+	private static void elmhes(final double[] a) {
+
+		final int n = 10;
+
+		for(int m = 1; m < n - 1; m++) {
+
+			double x = 0;
+			int i = m;
+			for(int j = m; j < n; j++) {
+				if(Math.abs(a[n*j + m - 1]) > Math.abs(x)) {
+					x = a[n*j + m - 1];
+					i = j;
+				}
+			}
+
+			if(i != m) {
+				for(int j = m - 1; j < n; j++) {
+					final double t = a[n*i + j];
+					a[n*i + j] = a[n*m + j];
+					a[n*m + j] = t;
+				}
+				for(int j = 0; j < n; j++) {
+					final double t = a[n*j + i];
+					a[n*j + i] = a[n*j + m];
+					a[n*j + m] = t;
+				}
+			}
+
+			if(x != 0) {
+				for(i = m + 1; i < n; i++) {
+
+					double y = a[n*i + m - 1];
+					if(y == 0) continue;
+
+					y /= x;
+					a[n*i + m - 1] = 0;
+					for(int j = m; j < n; j++) {
+						a[n*i + j] -= y * a[n*m + j];
+					}
+					for(int j = 0; j < n; j++) {
+						a[n*j + m] += y * a[n*j + i];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p> Eigenvalues of the 10 x 10 upper Hessenberg matrix by the Francis double shift QR iterations ({@code hqr} of the Numerical Recipes,
+	 * indices from 1 as there); method destroys the matrix </p>
+	 *
+	 * @return
+	 * 		Returns {@code false} if the iterations do not converge
+	 */
+	private static boolean hqr(final double[] h, final double[] wr, final double[] wi) {
+
+		final int n = 10;
+		int nn, m, l, k, j, its, i, mmin;
+		double z = 0, y, x, w, v, u, t, s, r = 0, q = 0, p = 0, anorm = 0;
+
+		for(i = 1; i <= n; i++) {
+			for(j = Math.max(i - 1, 1); j <= n; j++) {
+				anorm += Math.abs(h[n*(i - 1) + j - 1]);
+			}
+		}
+
+		nn = n;
+		t = 0;
+
+		while(nn >= 1) {
+
+			its = 0;
+
+			do {
+
+				for(l = nn; l >= 2; l--) {
+
+					s = Math.abs(h[n*(l - 2) + l - 2]) + Math.abs(h[n*(l - 1) + l - 1]);
+					if(s == 0) s = anorm;
+					if(Math.abs(h[n*(l - 1) + l - 2]) + s == s) {
+						h[n*(l - 1) + l - 2] = 0;
+						break;
+					}
+				}
+
+				x = h[n*(nn - 1) + nn - 1];
+
+				if(l == nn) {
+
+					wr[nn - 1] = x + t;
+					wi[nn - 1] = 0;
+					nn--;
+
+				} else {
+
+					y = h[n*(nn - 2) + nn - 2];
+					w = h[n*(nn - 1) + nn - 2] * h[n*(nn - 2) + nn - 1];
+
+					if(l == nn - 1) {
+
+						p = 0.5 * (y - x);
+						q = p*p + w;
+						z = Math.sqrt(Math.abs(q));
+						x += t;
+
+						if(q >= 0) {
+							z = p + (p >= 0 ? Math.abs(z) : -Math.abs(z));
+							wr[nn - 2] = wr[nn - 1] = x + z;
+							if(z != 0) wr[nn - 1] = x - w / z;
+							wi[nn - 2] = wi[nn - 1] = 0;
+						} else {
+							wr[nn - 2] = wr[nn - 1] = x + p;
+							wi[nn - 2] = -z;
+							wi[nn - 1] = z;
+						}
+
+						nn -= 2;
+
+					} else {
+
+						if(its == MAX_ITERATIONS) {
+							return false;
+						}
+
+						if(its == 10 || its == 20) { // exceptional shift
+							t += x;
+							for(i = 1; i <= nn; i++) {
+								h[n*(i - 1) + i - 1] -= x;
+							}
+							s = Math.abs(h[n*(nn - 1) + nn - 2]) + Math.abs(h[n*(nn - 2) + nn - 3]);
+							y = x = 0.75 * s;
+							w = -0.4375 * s*s;
+						}
+
+						++its;
+
+						for(m = nn - 2; m >= l; m--) {
+
+							z = h[n*(m - 1) + m - 1];
+							r = x - z;
+							s = y - z;
+							p = (r*s - w) / h[n*m + m - 1] + h[n*(m - 1) + m];
+							q = h[n*m + m] - z - r - s;
+							r = h[n*(m + 1) + m];
+							s = Math.abs(p) + Math.abs(q) + Math.abs(r);
+							p /= s;
+							q /= s;
+							r /= s;
+
+							if(m == l) break;
+
+							u = Math.abs(h[n*(m - 1) + m - 2]) * (Math.abs(q) + Math.abs(r));
+							v = Math.abs(p) * (Math.abs(h[n*(m - 2) + m - 2]) + Math.abs(z) + Math.abs(h[n*m + m]));
+							if(u + v == v) break;
+						}
+
+						for(i = m + 2; i <= nn; i++) {
+							h[n*(i - 1) + i - 3] = 0;
+							if(i != m + 2) h[n*(i - 1) + i - 4] = 0;
+						}
+
+						for(k = m; k <= nn - 1; k++) {
+
+							if(k != m) {
+								p = h[n*(k - 1) + k - 2];
+								q = h[n*k + k - 2];
+								r = 0;
+								if(k != nn - 1) r = h[n*(k + 1) + k - 2];
+								if((x = Math.abs(p) + Math.abs(q) + Math.abs(r)) != 0) {
+									p /= x;
+									q /= x;
+									r /= x;
+								}
+							}
+
+							s = Math.sqrt(p*p + q*q + r*r);
+							if(p < 0) s = -s;
+
+							if(s != 0) {
+
+								if(k == m) {
+									if(l != m) h[n*(k - 1) + k - 2] = -h[n*(k - 1) + k - 2];
+								} else {
+									h[n*(k - 1) + k - 2] = -s * x;
+								}
+
+								p += s;
+								x = p / s;
+								y = q / s;
+								z = r / s;
+								q /= p;
+								r /= p;
+
+								for(j = k; j <= nn; j++) {
+									p = h[n*(k - 1) + j - 1] + q * h[n*k + j - 1];
+									if(k != nn - 1) {
+										p += r * h[n*(k + 1) + j - 1];
+										h[n*(k + 1) + j - 1] -= p * z;
+									}
+									h[n*k + j - 1] -= p * y;
+									h[n*(k - 1) + j - 1] -= p * x;
+								}
+
+								mmin = nn < k + 3 ? nn : k + 3;
+								for(i = l; i <= mmin; i++) {
+									p = x * h[n*(i - 1) + k - 1] + y * h[n*(i - 1) + k];
+									if(k != nn - 1) {
+										p += z * h[n*(i - 1) + k + 1];
+										h[n*(i - 1) + k + 1] -= p * r;
+									}
+									h[n*(i - 1) + k] -= p * q;
+									h[n*(i - 1) + k - 1] -= p;
+								}
+							}
+						}
+					}
+				}
+
+			} while(l < nn - 1);
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> {@link #minor} = {@code e[i] e[j] - e[k] e[l]} </p>
+	 */
+	private void minor(final int i, final int j, final int k, final int l) {
+
+		for(int m = 0; m < 10; m++) {
+			minor[m] = 0;
+		}
+
+		quadratic(e[i], e[j], minor, 1);
+		quadratic(e[k], e[l], minor, -1);
+	}
+
+	/**
+	 * <p> {@code q += scale * l1 l2} </p>
+	 */
+	private static void quadratic(final double[] l1, final double[] l2, final double[] q, final double scale) {
+
+		for(int i = 0; i < 4; i++) {
+
+			final double s = scale * l1[i];
+			for(int j = 0; j < 4; j++) {
+				q[LINEAR_LINEAR[i][j]] += s * l2[j];
+			}
+		}
+	}
+
+	/**
+	 * <p> Constraint {@code row += scale * q l} </p>
+	 */
+	private void cubic(final double[] q, final double[] l, final double scale, final int row) {
+
+		final int offset = MONOMIALS*row;
+
+		for(int i = 0; i < 10; i++) {
+
+			final double s = scale * q[i];
+			for(int j = 0; j < 4; j++) {
+				c[offset + QUADRATIC_LINEAR[i][j]] += s * l[j];
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		Returns index of the monomial of the product of the monomials
+	 */
+	private static int monomial(final int[] m1, final int[] m2) {
+
+		for(int i = 0; i < MONOMIALS; i++) {
+			if(EXPONENTS[i][0] == m1[0] + m2[0] && EXPONENTS[i][1] == m1[1] + m2[1] && EXPONENTS[i][2] == m1[2] + m2[2]) {
+				return i;
+			}
+		}
+
+		throw new IllegalStateException("degree higher than 3");
+	}
+}
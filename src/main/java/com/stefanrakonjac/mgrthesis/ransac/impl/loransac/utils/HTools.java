@@ -0,0 +1,398 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SymmetricEigen.smallestEigenpair;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.covMat;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.normu;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Homography counterparts of {@link FTools}. Homography {@code h} is a 9-element array, the 3 x 3 matrix stored row by row,
+ * mapping the points of the first image to the points of the second one: {@code u2 ~ H u1}. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class HTools {
+
+	/**
+	 * Sine of the angle the sample points need to span, so that no three of them are treated as collinear
+	 */
+	private static final double COLLINEARITY_TOLERANCE = 1e-3d;
+
+	/**
+	 * <p> Method determines symmetric transfer error (parameter {@code p}) of the provided correspondences: sum of the squared
+	 * distances of {@code u2} to {@code H u1} and of {@code u1} to {@code H^-1 u2} </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param h
+	 * 		9-element array (homography)
+	 * @param p
+	 * 		{@code length}-element array, error
+	 * @param length
+	 * 		number of correspondences
+	 */
+	public static void hds(final double[] u, final double[] h, final double[] p, final int length) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(u == null || u.length < 6*length)
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(h == null || h.length != 9)
+			throw new IllegalArgumentException("h: " + ArrayUtils.toString(h));
+		if(p == null || p.length < length)
+			throw new IllegalArgumentException("p: " + ArrayUtils.toString(p));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3], h4 = h[4], h5 = h[5], h6 = h[6], h7 = h[7], h8 = h[8];
+
+		// adjugate, the inverse up to scale
+		final double i0 = h4*h8 - h5*h7, i1 = h2*h7 - h1*h8, i2 = h1*h5 - h2*h4,
+					 i3 = h5*h6 - h3*h8, i4 = h0*h8 - h2*h6, i5 = h2*h3 - h0*h5,
+					 i6 = h3*h7 - h4*h6, i7 = h1*h6 - h0*h7, i8 = h0*h4 - h1*h3;
+
+		double x1, y1, x2, y2, w, dx, dy, e;
+
+		for(int i = 0, j = 0; i < length; i++, j += 6) {
+
+			x1 = u[j];
+			y1 = u[j + 1];
+			x2 = u[j + 3];
+			y2 = u[j + 4];
+
+			w = h6 * x1 + h7 * y1 + h8;
+			dx = (h0 * x1 + h1 * y1 + h2) / w - x2;
+			dy = (h3 * x1 + h4 * y1 + h5) / w - y2;
+			e = dx*dx + dy*dy;
+
+			w = i6 * x2 + i7 * y2 + i8;
+			dx = (i0 * x2 + i1 * y2 + i2) / w - x1;
+			dy = (i3 * x2 + i4 * y2 + i5) / w - y1;
+
+			p[i] = e + dx*dx + dy*dy;
+		}
+	}
+
+	/**
+	 * <p> Fused consensus kernel: determines error (parameter {@code p}) of the correspondences as {@link #hds(double[], double[], double[], int)} does
+	 * and counts the inliers at the same time. Stops as soon as the model cannot have more than {@code best} inliers,
+	 * see {@link FTools#fdsInliers(double[], double[], double[], int, double, int)}. </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param h
+	 * 		9-element array (homography)
+	 * @param p
+	 * 		{@code length}-element array, error; complete only if the inliers count is returned
+	 * @param length
+	 * 		number of correspondences
+	 * @param threshold
+	 * 		error threshold of the inliers
+	 * @param best
+	 * 		number of inliers to be exceeded
+	 * @return
+	 * 		Returns number of inliers (error not higher than {@code threshold}), or {@code -1} if the model cannot exceed {@code best} inliers
+	 */
+	public static int hdsInliers(final double[] u, final double[] h, final double[] p, final int length, final double threshold, final int best) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(u == null || u.length < 6*length)
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(h == null || h.length != 9)
+			throw new IllegalArgumentException("h: " + ArrayUtils.toString(h));
+		if(p == null || p.length < length)
+			throw new IllegalArgumentException("p: " + ArrayUtils.toString(p));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3], h4 = h[4], h5 = h[5], h6 = h[6], h7 = h[7], h8 = h[8];
+
+		final double i0 = h4*h8 - h5*h7, i1 = h2*h7 - h1*h8, i2 = h1*h5 - h2*h4,
+					 i3 = h5*h6 - h3*h8, i4 = h0*h8 - h2*h6, i5 = h2*h3 - h0*h5,
+					 i6 = h3*h7 - h4*h6, i7 = h1*h6 - h0*h7, i8 = h0*h4 - h1*h3;
+
+		double x1, y1, x2, y2, w, dx, dy, e;
+		int inliers = 0;
+
+		for(int i = 0, j = 0; i < length; i++, j += 6) {
+
+			x1 = u[j];
+			y1 = u[j + 1];
+			x2 = u[j + 3];
+			y2 = u[j + 4];
+
+			w = h6 * x1 + h7 * y1 + h8;
+			dx = (h0 * x1 + h1 * y1 + h2) / w - x2;
+			dy = (h3 * x1 + h4 * y1 + h5) / w - y2;
+			e = dx*dx + dy*dy;
+
+			w = i6 * x2 + i7 * y2 + i8;
+			dx = (i0 * x2 + i1 * y2 + i2) / w - x1;
+			dy = (i3 * x2 + i4 * y2 + i5) / w - y1;
+
+			if((p[i] = e + dx*dx + dy*dy) <= threshold) {
+				inliers++;
+			} else if(inliers + length - i - 1 <= best) {
+				return -1;
+			}
+		}
+
+		return inliers;
+	}
+
+	/**
+	 * <p> Errors of the correspondences as {@link #hds(double[], double[], double[], int)}, together with the weights of the iterative
+	 * least squares: the inverse of the third coordinate of {@code H u1}, relating the algebraic error minimised by the DLT to the geometric one </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param h
+	 * 		9-element array (homography)
+	 * @param p
+	 * 		{@code length}-element array, error
+	 * @param w
+	 * 		{@code length}-element array, weights
+	 * @param length
+	 * 		number of correspondences
+	 */
+	public static void exHDs(final double[] u, final double[] h, final double[] p, final double[] w, final int length) {
+
+		hds(u, h, p, length);
+
+		final double h6 = h[6], h7 = h[7], h8 = h[8];
+
+		for(int i = 0, j = 0; i < length; i++, j += 6) {
+			w[i] = 1d / Math.abs(h6 * u[j] + h7 * u[j + 1] + h8);
+		}
+	}
+
+	/**
+	 * <p> Normalized DLT: least squares homography of the provided correspondences (at least 4 of them, minimal sample included).
+	 * Points are normalized by {@link UTools#normu(double[], int[], int, double[], double[])}, the homography is the eigen-vector
+	 * of the smallest eigenvalue of the 9 x 9 covariance matrix of the DLT equations, denormalized back. </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param inliers
+	 * 		indices of the correspondences to be used
+	 * @param length
+	 * 		number of the correspondences to be used
+	 * @param h
+	 * 		9-element array, the homography
+	 * @param buffer
+	 * 		at least max(18 x {@code length}, 81)-element array
+	 */
+	public static void u2h(final double[] u, final int[] inliers, final int length, final double[] h, final double[] buffer) {
+		u2hw(u, inliers, null, length, h, buffer);
+	}
+
+	/**
+	 * <p> Weighted least squares homography, same as {@link #u2h(double[], int[], int, double[], double[])} with the equations
+	 * of the correspondence {@code inliers[i]} multiplied by {@code w[inliers[i]]} </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param inliers
+	 * 		indices of the correspondences to be used
+	 * @param w
+	 * 		weights of the correspondences, indexed as {@code u}; {@code null} for the unweighted least squares
+	 * @param length
+	 * 		number of the correspondences to be used
+	 * @param h
+	 * 		9-element array, the homography
+	 * @param buffer
+	 * 		at least max(18 x {@code length}, 81)-element array
+	 */
+	public static void u2hw(final double[] u, final int[] inliers, final double[] w, final int length, final double[] h, final double[] buffer) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(u == null || u.length == 0)
+			throw new IllegalArgumentException("u: " + ArrayUtils.toString(u));
+		if(inliers == null || inliers.length < length)
+			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(inliers));
+		if(length < 4)
+			throw new IllegalArgumentException("length: " + length);
+		if(h == null || h.length != 9)
+			throw new IllegalArgumentException("h: " + ArrayUtils.toString(h));
+		if(buffer == null || buffer.length < Math.max(18*length, 81))
+			throw new IllegalArgumentException("buffer: " + ArrayUtils.toString(buffer));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		final double[] a1 = new double[3], a2 = new double[3];
+		final double[] v = new double[9*9];
+
+		normu(u, inliers, length, a1, a2);
+		lineariseHomographyN(u, buffer, inliers, w, length, a1, a2);
+
+		covMat(v, buffer, 2*length, 9);
+
+		// DLT equations are not needed any more, buffer holds the rotations
+		smallestEigenpair(v, h, buffer);
+
+		denormH(h, a1, a2);
+	}
+
+	/**
+	 * <p> Two DLT equations per correspondence, {@code (u2 x H u1) = 0}, of the normalized points </p>
+	 */
+	private static void lineariseHomographyN(final double[] u, final double[] z, final int[] inliers, final double[] w, final int length, final double[] a1, final double[] a2) {
+
+		for(int i = 0, k = 0; i < length; i++, k += 18) {
+
+			final int index = 6 * inliers[i];
+			final double x1 = a1[0] * u[index] + a1[1], y1 = a1[0] * u[index + 1] + a1[2];
+			final double x2 = a2[0] * u[index + 3] + a2[1], y2 = a2[0] * u[index + 4] + a2[2];
+			final double s = w == null ? 1d : w[inliers[i]];
+
+			z[k] = -x1 * s;
+			z[k + 1] = -y1 * s;
+			z[k + 2] = -s;
+			z[k + 3] = 0;
+			z[k + 4] = 0;
+			z[k + 5] = 0;
+			z[k + 6] = x2 * x1 * s;
+			z[k + 7] = x2 * y1 * s;
+			z[k + 8] = x2 * s;
+
+			z[k + 9] = 0;
+			z[k + 10] = 0;
+			z[k + 11] = 0;
+			z[k + 12] = -x1 * s;
+			z[k + 13] = -y1 * s;
+			z[k + 14] = -s;
+			z[k + 15] = y2 * x1 * s;
+			z[k + 16] = y2 * y1 * s;
+			z[k + 17] = y2 * s;
+		}
+	}
+
+	/**
+	 * <p> Denormalizes the homography of the points normalized by {@link UTools#normu(double[], int[], int, double[], double[])}:
+	 * {@code H = T2^-1 Hn T1} </p>
+	 *
+	 * @param h
+	 * 		9-element array (homography)
+	 * @param a1
+	 * 		normalization of the first image (scale, x shift, y shift)
+	 * @param a2
+	 * 		normalization of the second image
+	 */
+	public static void denormH(final double[] h, final double[] a1, final double[] a2) {
+
+		// Hn T1
+		double r = a1[0], x = a1[1], y = a1[2];
+
+		for(int i = 0; i < 9; i += 3) {
+			h[i + 2] += x * h[i] + y * h[i + 1];
+			h[i] *= r;
+			h[i + 1] *= r;
+		}
+
+		// T2^-1 (Hn T1)
+		r = a2[0];
+		x = a2[1];
+		y = a2[2];
+
+		for(int j = 0; j < 3; j++) {
+			h[j] = (h[j] - x * h[6 + j]) / r;
+			h[3 + j] = (h[3 + j] - y * h[6 + j]) / r;
+		}
+	}
+
+	/**
+	 * <p> Orientation constraint of the sample: all the sample points of the first image need to be mapped by the homography
+	 * on the same side of the line at infinity, otherwise they cannot be the points of a plane seen by both cameras </p>
+	 *
+	 * @param h
+	 * 		9-element array (homography)
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param indices
+	 * 		indices of the sample
+	 * @param indicesOffset
+	 * 		position of the first sample index in {@code indices}
+	 * @param n
+	 * 		sample size
+	 * @return
+	 * 		Returns {@code true} if the orientation of the sample is valid
+	 */
+	public static boolean allOrientationValidH(final double[] h, final double[] u, final int[] indices, final int indicesOffset, final int n) {
+
+		double sig = 0;
+
+		for(int i = indicesOffset; i < indicesOffset + n; i++) {
+
+			final int index = 6 * indices[i];
+			final double s = h[6] * u[index] + h[7] * u[index + 1] + h[8];
+
+			if(i == indicesOffset) {
+				sig = s;
+			} else if(sig * s <= 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> Degeneracy of the minimal sample: any three of its points being (nearly) collinear in either image
+	 * leave the homography undetermined </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param indices
+	 * 		indices of the sample
+	 * @param indicesOffset
+	 * 		position of the first sample index in {@code indices}
+	 * @param n
+	 * 		sample size
+	 * @return
+	 * 		Returns {@code true} if the sample is degenerate
+	 */
+	public static boolean degenerateSampleH(final double[] u, final int[] indices, final int indicesOffset, final int n) {
+
+		for(int i = indicesOffset; i < indicesOffset + n; i++) {
+			for(int j = i + 1; j < indicesOffset + n; j++) {
+				for(int k = j + 1; k < indicesOffset + n; k++) {
+					if(collinear(u, 6 * indices[i], 6 * indices[j], 6 * indices[k])
+							|| collinear(u, 6 * indices[i] + 3, 6 * indices[j] + 3, 6 * indices[k] + 3)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean collinear(final double[] u, final int a, final int b, final int c) {
+
+		final double bx = u[b] - u[a], by = u[b + 1] - u[a + 1];
+		final double cx = u[c] - u[a], cy = u[c + 1] - u[a + 1];
+		final double cross = bx * cy - by * cx;
+
+		return cross * cross <= COLLINEARITY_TOLERANCE * COLLINEARITY_TOLERANCE * (bx * bx + by * by) * (cx * cx + cy * cy);
+	}
+}
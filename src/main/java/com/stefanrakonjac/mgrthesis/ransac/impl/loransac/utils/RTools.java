@@ -1,10 +1,9 @@
 package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
 
-import java.util.Random;
-
 import org.apache.commons.lang3.ArrayUtils;
 
 import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
 
 public class RTools {
 
@@ -27,6 +26,27 @@ public class RTools {
 	 * 		Returns RANSAC score
 	 */
 	public static Score inlierIndices(final double[] error, final int length, final double threshold, final int[] inliers) {
+		return inlierIndices(error, length, threshold, inliers, new Score());
+	}
+	
+	/**
+	 * <p> Indices of inliers with error lower than given threshold. Same as {@link #inlierIndices(double[], int, double, int[])}, 
+	 * but the score is written to the provided instance instead of a new one. </p>
+	 * 
+	 * @param error
+	 * 
+	 * @param length
+	 * 		number of correspondences  
+	 * @param threshold
+	 * 
+	 * @param inliers
+	 * 
+	 * @param score
+	 * 		Score instance to be reset and filled
+	 * @return
+	 * 		Returns provided {@code score}
+	 */
+	public static Score inlierIndices(final double[] error, final int length, final double threshold, final int[] inliers, final Score score) {
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method contract
@@ -34,28 +54,51 @@ public class RTools {
 
 		if(length < 0) 
 			throw new IllegalArgumentException("length: " + length);
-		if(error == null || error.length != length) 
+		if(error == null || error.length < length) 
 			throw new IllegalArgumentException("error: " + ArrayUtils.toString(error));
 		if(threshold < 0) 
 			throw new IllegalArgumentException("threshold: " + threshold);
-		if(inliers == null || inliers.length != length) 
+		if(inliers == null || inliers.length < length) 
 			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(inliers));
+		if(score == null) 
+			throw new IllegalArgumentException("score is null");
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method business logic
 		 * --------------------------------------------------------------------------------------- */
 		
-		final Score retval = new Score();
+		score.reset();
+		
+		if(threshold == 0) { // no truncated quadratic error, see truncatedQuadraticError(double, double)
+			
+			for(int i = 0; i < length; i++) {
+				if(error[i] <= threshold) {
+					inliers[score.increasInliers()] = i;
+				}
+			}
+			
+			return score;
+		}
+		
+		// truncatedQuadraticError(double, double) inlined
+		final double truncation = threshold*9d/4;
+		double truncatedError = 0;
 		
 		for(int i = 0; i < length; i++) {
 			
-			retval.addError(truncatedQuadraticError(error[i], threshold));
-			if(error[i] <= threshold) {
-				inliers[retval.increasInliers()] = i;
+			final double e = error[i];
+			
+			if(e < truncation) {
+				truncatedError += 1 - e/truncation;
+			}
+			if(e <= threshold) {
+				inliers[score.increasInliers()] = i;
 			}
 		}
 		
-		return retval;
+		score.addError(truncatedError);
+		
+		return score;
 	}
 	
 	/**
@@ -114,9 +157,11 @@ public class RTools {
 	 * @param maxSize
 	 * 		length of the pool
 	 * @param destination
-	 * 		9 x 9 matrix represented by an array of double
+	 * 		{@code size} x {@code dataSize} matrix represented by an array of double (row-major), e.g. 7 x 9
+	 * @param random
+	 * 		Source of randomness
 	 */
-	public static void rSampleT(double[] data, int dataSize, int[] pool, int size, int maxSize, double[] destination) {
+	public static void rSampleT(double[] data, int dataSize, int[] pool, int size, int maxSize, double[] destination, XorShiftRandom random) {
 		
 		/* ---------------------------------------------------------------------------------------
 		 * method contract
@@ -128,11 +173,11 @@ public class RTools {
 			throw new IllegalArgumentException("size: " + size);
 		if(maxSize < 0) 
 			throw new IllegalArgumentException("maxSize: " + maxSize);
-		if(data == null || data.length != 9*maxSize) 
+		if(data == null || data.length < 9*maxSize) 
 			throw new IllegalArgumentException("data: " + ArrayUtils.toString(data));
-		if(pool == null || pool.length != maxSize) 
+		if(pool == null || pool.length < maxSize) 
 			throw new IllegalArgumentException("inliers: " + ArrayUtils.toString(pool));
-		if(destination == null || destination.length != 81) 
+		if(destination == null || destination.length < size*dataSize) 
 			throw new IllegalArgumentException("destination: " + ArrayUtils.toString(destination));
 		
 		/* ---------------------------------------------------------------------------------------
@@ -144,7 +189,7 @@ public class RTools {
 		
 		for(int i = 0; i < size; ++i) {
 			
-			int q = sample(pool, maxSize, i);
+			int q = sample(pool, maxSize, i, random);
 			
 			src = q; // data related
 			
@@ -169,12 +214,14 @@ public class RTools {
 	 * 
 	 * @param i
 	 * 
+	 * @param random
+	 * 		Source of randomness
 	 * @return
 	 * 
 	 */
-	public static int sample(int[] pool, int maxSize, int i) {
+	public static int sample(int[] pool, int maxSize, int i, XorShiftRandom random) {
 		
-		int s = new Random().nextInt(Integer.MAX_VALUE) % (maxSize - i);
+		int s = random.nextInt(maxSize - i);
 		int j = maxSize - i - 1;
 		int q = pool[s];
 		pool[s] = pool[j];
@@ -182,6 +229,143 @@ public class RTools {
 		return q;
 	}
 	
+	/**
+	 * <p> Copies the data of provided sample to the destination, the same way {@link #rSampleT(double[], int, int[], int, int, double[], XorShiftRandom)} 
+	 * copies the data of the drawn sample </p>
+	 * 
+	 * @param data
+	 * 		{@code dataSize} x {@code maxSize} array, column-major
+	 * @param dataSize
+	 * 		
+	 * @param sample
+	 * 		indices of the sample
+	 * @param size
+	 * 		number of samples (i.e. 7)
+	 * @param maxSize
+	 * 		number of correspondences
+	 * @param destination
+	 * 		{@code size} x {@code dataSize}-element array
+	 */
+	public static void sampleT(double[] data, int dataSize, int[] sample, int size, int maxSize, double[] destination) {
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(dataSize < 0) 
+			throw new IllegalArgumentException("dataSize: " + dataSize);
+		if(size < 0) 
+			throw new IllegalArgumentException("size: " + size);
+		if(maxSize < 0) 
+			throw new IllegalArgumentException("maxSize: " + maxSize);
+		if(data == null || data.length < dataSize*maxSize) 
+			throw new IllegalArgumentException("data: " + ArrayUtils.toString(data));
+		if(sample == null || sample.length < size) 
+			throw new IllegalArgumentException("sample: " + ArrayUtils.toString(sample));
+		if(destination == null || destination.length < size*dataSize) 
+			throw new IllegalArgumentException("destination: " + ArrayUtils.toString(destination));
+		
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+		
+		int p = 0; // destination related
+		
+		for(int i = 0; i < size; ++i) {
+			
+			for(int j = 0, src = sample[i]; j < dataSize; j++, src += maxSize) {
+				destination[p++] = data[src];
+			}
+		}
+	}
+	
+	/**
+	 * <p> PROSAC sample: {@code size} points drawn from the {@code n} top-ranked points, or {@code size - 1} points drawn 
+	 * from the {@code n - 1} top-ranked points and the {@code n}-th point (if {@code includeLast} is {@code true}) </p>
+	 * 
+	 * @param pool
+	 * 		ranks (positions in the {@code ranking}) the points are drawn from; the first {@code n - 1} (if {@code includeLast}) 
+	 * 		or {@code n} elements must hold the ranks {@code 0, 1, ...} in any order, only their order is changed by this method
+	 * @param ranking
+	 * 		indices of the points, sorted by the quality
+	 * @param n
+	 * 		number of the top-ranked points to draw from
+	 * @param size
+	 * 		number of samples (i.e. 7)
+	 * @param includeLast
+	 * 		whether the {@code n}-th point is a part of the sample 
+	 * @param sample
+	 * 		{@code size}-element array, indices of the drawn points
+	 * @param random
+	 * 		Source of randomness
+	 */
+	public static void prosacSample(int[] pool, int[] ranking, int n, int size, boolean includeLast, int[] sample, XorShiftRandom random) {
+		
+		final int drawn = includeLast ? size - 1 : size;
+		final int maxSize = includeLast ? n - 1 : n;
+		
+		for(int i = 0; i < drawn; i++) {
+			sample[i] = ranking[sample(pool, maxSize, i, random)];
+		}
+		
+		if(includeLast) {
+			sample[size - 1] = ranking[n - 1];
+		}
+	}
+	
+	/**
+	 * <p> NAPSAC sample: the first point drawn from all the points, the other {@code size - 1} points drawn from the neighbourhood 
+	 * of the first one, i.e. from the 3 x 3 grid cells centered at the cell of the first point </p>
+	 * 
+	 * @param cellPoints
+	 * 		indices of the points, sorted by their cells
+	 * @param cellStarts
+	 * 		{@code gridSize*gridSize + 1}-element array, positions in {@code cellPoints} the cells start at
+	 * @param pointCells
+	 * 		{@code length}-element array, cells of the points
+	 * @param gridSize
+	 * 		number of the grid cells per side
+	 * @param length
+	 * 		number of the points
+	 * @param size
+	 * 		number of samples (i.e. 7)
+	 * @param neighbourhood
+	 * 		{@code length}-element buffer
+	 * @param sample
+	 * 		{@code size}-element array, indices of the drawn points
+	 * @param random
+	 * 		Source of randomness
+	 * @return
+	 * 		Returns {@code true} if the sample has been drawn, {@code false} if the neighbourhood of the first point is too small
+	 */
+	public static boolean napsacSample(int[] cellPoints, int[] cellStarts, int[] pointCells, int gridSize, int length, int size, int[] neighbourhood, int[] sample, XorShiftRandom random) {
+		
+		final int first = random.nextInt(length);
+		final int cx = pointCells[first] % gridSize, cy = pointCells[first] / gridSize;
+		
+		int m = 0;
+		for(int y = Math.max(0, cy - 1); y <= Math.min(gridSize - 1, cy + 1); y++) {
+			for(int x = Math.max(0, cx - 1); x <= Math.min(gridSize - 1, cx + 1); x++) {
+				
+				final int cell = y*gridSize + x;
+				for(int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+					if(cellPoints[k] != first) neighbourhood[m++] = cellPoints[k];
+				}
+			}
+		}
+		
+		if(m < size - 1) {
+			return false;
+		}
+		
+		sample[0] = first;
+		for(int i = 1; i < size; i++) {
+			sample[i] = sample(neighbourhood, m, i - 1, random);
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * <p> Score comparator </p>
 	 * 
@@ -221,23 +405,60 @@ public class RTools {
 	 * 
 	 * @param size
 	 * 
+	 * @param subset
+	 * 		Array the drawn subset is copied to (C version returns pointer to the end of the pool instead)
+	 * @param random
+	 * 		Source of randomness
 	 * @return
-	 * 
+	 * 		Returns provided {@code subset}
 	 */
-	public static int[] randomSubset(int[] pool, int maxSize, int size) {
+	public static int[] randomSubset(int[] pool, int maxSize, int size, int[] subset, XorShiftRandom random) {
 		
 		   int j,q,s;
-		   
-		   final Random random = new Random();
 
 		   for(int i = 0; i < size; i++) {
-		      s = random.nextInt(Integer.MAX_VALUE) % (maxSize - i);
+		      s = random.nextInt(maxSize - i);
 		      j = maxSize - i - 1; 
 		      q = pool[s];
 		      pool[s] = pool[j];
 		      pool[j] = q;
 		   }
 
-		   return ArrayUtils.subarray(pool, maxSize-size, maxSize); 
+		   System.arraycopy(pool, maxSize-size, subset, 0, size);
+		   return subset; 
+	}
+	
+	/**
+	 * <p> Min-hash signature of the set of the points having the error within the threshold: two sets having Jaccard similarity J 
+	 * get the same signature with probability J<sup>hashes</sup> </p>
+	 * 
+	 * @param error
+	 * 		{@code length}-element array, errors of the points
+	 * @param length
+	 * 		number of correspondences
+	 * @param threshold
+	 * 		error threshold of the inliers
+	 * @param hashes
+	 * 		number of the min-hashes combined into the signature
+	 * @return
+	 * 		Returns signature of the inlier set
+	 */
+	public static long inliersSignature(final double[] error, final int length, final double threshold, final int hashes) {
+		
+		long signature = 0;
+		
+		for(int h = 0; h < hashes; h++) {
+			
+			long minHash = Long.MAX_VALUE;
+			for(int i = 0; i < length; i++) {
+				if(error[i] <= threshold) {
+					minHash = Math.min(minHash, XorShiftRandom.mix(((long) h << 32) | i));
+				}
+			}
+			
+			signature = XorShiftRandom.mix(signature ^ minHash);
+		}
+		
+		return signature;
 	}
 }
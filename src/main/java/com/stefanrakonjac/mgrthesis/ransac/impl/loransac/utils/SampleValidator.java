@@ -0,0 +1,220 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import java.util.Set;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLE_TEST;
+
+/**
+ * <p> Pre-validation of the minimal samples: geometric tests of {@link SAMPLE_TEST} which reject the degenerate samples
+ * (repeated correspondences, coincident or collinear points of an image) before they get to the {@link SevenPointSolver},
+ * and the orientation constraint of its hypotheses. All the tests are {@code O(n)} or {@code O(n^2)} in the sample size,
+ * read the serialized correspondences directly and do not allocate. </p>
+ *
+ * <p> Immutable, shared by the workers of a run. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SampleValidator {
+
+	/** 
+	 * samples of an image are collinear if the smaller eigenvalue of their 2 x 2 scatter matrix is lower than this part of the larger one
+	 * ({@code det <= COLLINEARITY * trace^2} then, up to the second order) 
+	 */
+	public static final double COLLINEARITY = 1e-6;
+
+	/** epipole components lower than this are considered zero, as by {@link FTools#epipole(double[], double[])} */
+	private static final double XEPS = 1.9984e-15;
+
+	private final boolean repeated, coincident, collinear, orientation;
+
+	/**
+	 * @param tests
+	 * 		tests to be applied, none if empty
+	 */
+	public SampleValidator(final Set<SAMPLE_TEST> tests) {
+
+		if(tests == null)
+			throw new IllegalArgumentException("tests: null");
+
+		this.repeated = tests.contains(SAMPLE_TEST.REPEATED);
+		this.coincident = tests.contains(SAMPLE_TEST.COINCIDENT);
+		this.collinear = tests.contains(SAMPLE_TEST.COLLINEAR);
+		this.orientation = tests.contains(SAMPLE_TEST.ORIENTATION);
+	}
+
+	/**
+	 * <p> Applies the geometric tests of the validator to the sample, in the order {@link SAMPLE_TEST#REPEATED}, {@link SAMPLE_TEST#COINCIDENT},
+	 * {@link SAMPLE_TEST#COLLINEAR}; the orientation constraint applies to the hypotheses, see {@link #orientationValid(double[], double[], int[], int, int)} </p>
+	 *
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param indices
+	 * 		sample indices
+	 * @param indicesOffset
+	 * 		position of the first sample index within {@code indices}
+	 * @param n
+	 * 		number of the sample indices
+	 * @return
+	 * 		Returns the first test the sample fails, {@code null} if it is valid
+	 */
+	public SAMPLE_TEST validate(final double[] u, final int[] indices, final int indicesOffset, final int n) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(u == null)
+			throw new IllegalArgumentException("u: null");
+		if(indices == null || indicesOffset < 0 || n < 1 || indicesOffset + n > indices.length)
+			throw new IllegalArgumentException("indices: " + ArrayUtils.toString(indices));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		if(repeated || coincident) {
+
+			SAMPLE_TEST failed = null;
+
+			for(int i = 1; i < n; i++) {
+
+				final int o = 6*indices[indicesOffset + i];
+
+				for(int j = 0; j < i; j++) {
+
+					final int p = 6*indices[indicesOffset + j];
+
+					final boolean same1 = u[o] == u[p] && u[o + 1] == u[p + 1];
+					final boolean same2 = u[o + 3] == u[p + 3] && u[o + 4] == u[p + 4];
+
+					if(same1 && same2) {
+						if(repeated) return SAMPLE_TEST.REPEATED;
+						failed = SAMPLE_TEST.COINCIDENT; // repeated correspondence has coincident points as well
+					} else if(same1 || same2) {
+						if(coincident && failed == null) failed = SAMPLE_TEST.COINCIDENT;
+					}
+				}
+			}
+
+			if(coincident && failed != null) {
+				return failed;
+			}
+		}
+
+		if(collinear && (collinear(u, indices, indicesOffset, n, 0) || collinear(u, indices, indicesOffset, n, 3))) {
+			return SAMPLE_TEST.COLLINEAR;
+		}
+
+		return null;
+	}
+
+	/**
+	 * <p> Orientation constraint of the sample if the validator applies it, see {@link #allOrientationValid(double[], double[], int[], int, int)} </p>
+	 *
+	 * @return
+	 * 		Returns {@code true} if the constraint is not applied or orientation is valid for all {@code n} sample indices, otherwise returns {@code false}
+	 */
+	public boolean orientationValid(final double[] f, final double[] u, final int[] indices, final int indicesOffset, final int n) {
+		return !orientation || allOrientationValid(f, u, indices, indicesOffset, n);
+	}
+
+	/**
+	 * <p> Orientation constraint of the sample, same as {@link FTools#allOrientationValid(double[], double[], int[], int, int, double[])},
+	 * the epipole being held in the local variables. Applied to all the hypotheses whatever the tests of the validator are,
+	 * see {@link #orientationValid(double[], double[], int[], int, int)} for the configurable one. </p>
+	 *
+	 * @param f
+	 * 		9-element array, the fundamental matrix
+	 * @param u
+	 * 		tentative correspondences (6 x {@code length}-element array)
+	 * @param indices
+	 * 		sample indices
+	 * @param indicesOffset
+	 * 		position of the first sample index within {@code indices}
+	 * @param n
+	 * 		number of the sample indices
+	 * @return
+	 * 		Returns {@code true} if orientation is valid for all {@code n} sample indices, otherwise returns {@code false}
+	 */
+	public static boolean allOrientationValid(final double[] f, final double[] u, final int[] indices, final int indicesOffset, final int n) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(f == null || f.length != 9)
+			throw new IllegalArgumentException("f: " + ArrayUtils.toString(f));
+		if(indices == null || indicesOffset < 0 || n < 1 || indicesOffset + n > indices.length)
+			throw new IllegalArgumentException("indices: " + ArrayUtils.toString(indices));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		// epipole: cross product of the 1st and 3rd row, the 2nd and 3rd row if it is zero
+		double e1 = f[2]*f[6] - f[0]*f[8];
+		double e2 = f[0]*f[7] - f[1]*f[6];
+
+		final double e0 = f[1]*f[8] - f[2]*f[7];
+		if(!(e0 > XEPS || e0 < -XEPS || e1 > XEPS || e1 < -XEPS || e2 > XEPS || e2 < -XEPS)) {
+			e1 = f[5]*f[6] - f[3]*f[8];
+			e2 = f[3]*f[7] - f[4]*f[6];
+		}
+
+		double sig0 = 0;
+
+		for(int i = 0; i < n; i++) {
+
+			final int o = 6*indices[indicesOffset + i];
+
+			final double s1 = f[0]*u[o + 3] + f[3]*u[o + 4] + f[6]*u[o + 5];
+			final double s2 = e1*u[o + 2] - e2*u[o + 1];
+			final double sig = s1*s2;
+
+			if(i == 0) {
+				sig0 = sig;
+			} else if(sig0*sig < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param image
+	 * 		offset of the image within the correspondence, 0 or 3
+	 * @return
+	 * 		Returns {@code true} if the points of the image are collinear (see {@link #COLLINEARITY}), otherwise returns {@code false}
+	 */
+	private static boolean collinear(final double[] u, final int[] indices, final int indicesOffset, final int n, final int image) {
+
+		double mx = 0, my = 0;
+		for(int i = 0; i < n; i++) {
+
+			final int o = 6*indices[indicesOffset + i] + image;
+			mx += u[o];
+			my += u[o + 1];
+		}
+
+		mx /= n;
+		my /= n;
+
+		double sxx = 0, sxy = 0, syy = 0;
+		for(int i = 0; i < n; i++) {
+
+			final int o = 6*indices[indicesOffset + i] + image;
+			final double dx = u[o] - mx, dy = u[o + 1] - my;
+
+			sxx += dx*dx;
+			sxy += dx*dy;
+			syy += dy*dy;
+		}
+
+		final double trace = sxx + syy;
+		return sxx*syy - sxy*sxy <= COLLINEARITY * trace*trace;
+	}
+}
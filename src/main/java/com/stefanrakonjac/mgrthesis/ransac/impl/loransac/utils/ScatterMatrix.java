@@ -0,0 +1,234 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> 9 x 9 scatter matrix {@code Z^T Z} of a set of the linearised correspondences (rows of {@code Z}), maintained incrementally:
+ * fitting a set which differs from the previous one by a few correspondences costs rank-one updates of the added and removed
+ * ones only, instead of {@link UTools#covMat(double[], double[], int, int)} of the whole set. </p>
+ *
+ * <p> Rows are linearised once (by a fixed normalization) and provided by {@link #reset(double[], int)}. The matrix is rebuilt
+ * from scratch when the sets differ by more than they have in common, and after {@value #REBUILD_REMOVALS} removals, which
+ * bounds the rounding errors the subtractions accumulate. Not thread-safe. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class ScatterMatrix {
+
+	/** dimension of the matrix (length of the rows) */
+	public static final int N = 9;
+
+	/** number of the rank-one removals after which the matrix is rebuilt */
+	private static final int REBUILD_REMOVALS = 1024;
+
+	/** upper triangle of the scatter matrix */
+	private final double[] s = new double[N*N];
+	/** symmetric copy destroyed by the eigen solver */
+	private final double[] a = new double[N*N];
+
+	/** rows, 9 per correspondence */
+	private double[] z;
+	private int capacity = -1;
+
+	private boolean[] members;
+	/** indices of the current set, in the order they were fitted */
+	private int[] memberList;
+	private int count;
+
+	/** marks of the set being fitted, see {@link #fit(int[], int)} */
+	private int[] marks;
+	private int generation;
+
+	private int removals;
+
+	/**
+	 * <p> Empties the matrix and sets its rows, growing the buffers if needed </p>
+	 *
+	 * @param z
+	 * 		9 x {@code length}-element array, rows of the correspondences; not copied, must not change until the next reset
+	 * @param length
+	 * 		number of the correspondences
+	 */
+	public void reset(final double[] z, final int length) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length < 0)
+			throw new IllegalArgumentException("length: " + length);
+		if(z == null || z.length < N*length)
+			throw new IllegalArgumentException("z: " + ArrayUtils.toString(z));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		if(length > capacity) {
+
+			members = new boolean[length];
+			memberList = new int[length];
+			marks = new int[length];
+			generation = 0;
+			capacity = length;
+
+		} else {
+
+			for(int i = 0; i < count; i++) {
+				members[memberList[i]] = false;
+			}
+		}
+
+		this.z = z;
+		count = 0;
+		removals = 0;
+		Arrays.fill(s, 0d);
+	}
+
+	/**
+	 * <p> Makes the matrix the scatter matrix of the provided correspondences </p>
+	 *
+	 * @param indices
+	 * 		indices of the correspondences, distinct
+	 * @param length
+	 * 		number of the correspondences
+	 */
+	public void fit(final int[] indices, final int length) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(z == null)
+			throw new IllegalStateException("rows have not been set");
+		if(length < 0 || length > capacity)
+			throw new IllegalArgumentException("length: " + length);
+		if(indices == null || indices.length < length)
+			throw new IllegalArgumentException("indices: " + ArrayUtils.toString(indices));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		if(++generation == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			generation = 1;
+		}
+
+		int added = 0;
+		for(int i = 0; i < length; i++) {
+
+			final int index = indices[i];
+			marks[index] = generation;
+			if(!members[index]) added++;
+		}
+
+		final int removed = count - (length - added);
+
+		if(added + removed >= length || removals + removed > REBUILD_REMOVALS) {
+
+			for(int i = 0; i < count; i++) {
+				members[memberList[i]] = false;
+			}
+
+			Arrays.fill(s, 0d);
+			for(int i = 0; i < length; i++) {
+
+				members[indices[i]] = true;
+				update(indices[i], 1d);
+			}
+
+			removals = 0;
+
+		} else {
+
+			for(int i = 0; i < count; i++) {
+
+				final int index = memberList[i];
+				if(marks[index] != generation) {
+
+					members[index] = false;
+					update(index, -1d);
+				}
+			}
+
+			for(int i = 0; i < length; i++) {
+
+				final int index = indices[i];
+				if(!members[index]) {
+
+					members[index] = true;
+					update(index, 1d);
+				}
+			}
+
+			removals += removed;
+		}
+
+		System.arraycopy(indices, 0, memberList, 0, length);
+		count = length;
+	}
+
+	/**
+	 * <p> Smallest eigenvalue of the matrix and its eigenvector, see {@link SymmetricEigen#smallestEigenpair(double[], double[], double[])} </p>
+	 *
+	 * @param v
+	 * 		9-element array, the unit eigenvector
+	 * @param buffer
+	 * 		at least 81-element array
+	 * @return
+	 * 		Returns the smallest eigenvalue
+	 */
+	public double smallestEigenpair(final double[] v, final double[] buffer) {
+
+		get(a);
+		return SymmetricEigen.smallestEigenpair(a, v, buffer);
+	}
+
+	/**
+	 * <p> Copies the (symmetric) matrix into provided array </p>
+	 *
+	 * @param cv
+	 * 		81-element array
+	 */
+	public void get(final double[] cv) {
+
+		if(cv == null || cv.length < N*N)
+			throw new IllegalArgumentException("cv: " + ArrayUtils.toString(cv));
+
+		for(int i = 0; i < N; i++) {
+			for(int j = i; j < N; j++) {
+
+				cv[N*i + j] = s[N*i + j];
+				cv[N*j + i] = s[N*i + j];
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		Returns number of the correspondences of the matrix
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * <p> Rank-one update {@code s += sign * r r^T} by the row of the correspondence </p>
+	 */
+	private void update(final int index, final double sign) {
+
+		final int row = N * index;
+
+		for(int i = 0; i < N; i++) {
+
+			final double ri = sign * z[row + i];
+			for(int j = i; j < N; j++) {
+				s[N*i + j] += ri * z[row + j];
+			}
+		}
+	}
+}
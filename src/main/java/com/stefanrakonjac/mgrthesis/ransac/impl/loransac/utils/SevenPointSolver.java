@@ -0,0 +1,243 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.MathUtils.limit;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Seven-point fundamental matrix solver of the minimal samples, fusing the chain of the C version
+ * ({@link UTools#nullSpace(double[], double[], int, int[])}, {@link FTools#slcm(double[], double[], double[])},
+ * {@link FTools#realRoots(double[], double[])} and the combination of the null space vectors) into a single pass
+ * which does not allocate nor copy: the elimination works on the 7 x 9 system directly, pivot columns are kept in a bit mask,
+ * the null space vectors and the cubic are held in the local variables. </p>
+ *
+ * <p> Arithmetic is the one of the chain, operation by operation, so that the hypotheses are the same. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SevenPointSolver {
+
+	/** number of the correspondences of a sample */
+	public static final int SAMPLE_SIZE = 7;
+
+	/** maximal number of the hypotheses of a sample */
+	public static final int MAX_SOLUTIONS = 3;
+
+	/** pivots lower than this are considered zero, as by {@link UTools#nullSpace(double[], double[], int, int[])} */
+	private static final double TOLERANCE = 1e-12;
+
+	private SevenPointSolver() {
+		// no-op
+	}
+
+	/**
+	 * <p> Computes the fundamental matrices of a minimal sample: the null space of the 7 x 9 system is 2-dimensional,
+	 * {@code F = x F1 + (1 - x) F2}, and {@code x} are the real roots of the cubic {@code det(F) = 0}. </p>
+	 *
+	 * @param a
+	 * 		7 x 9 system (at least 63 elements, row-major), rows being the linearised correspondences of the sample
+	 * 		(see {@link RTools#rSampleT(double[], int, int[], int, int, double[], com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom)});
+	 * 		method destroys its content
+	 * @param fs
+	 * 		{@link #MAX_SOLUTIONS} x 9 array, the fundamental matrices are written into its first rows
+	 * @return
+	 * 		Returns number of the fundamental matrices (1 or 3), {@code 0} if the sample is degenerate (the null space
+	 * 		is not 2-dimensional)
+	 */
+	public static int solve(final double[] a, final double[][] fs) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(a == null || a.length < SAMPLE_SIZE*9)
+			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
+		if(fs == null || fs.length < MAX_SOLUTIONS || fs[0].length != 9 || fs[1].length != 9 || fs[2].length != 9)
+			throw new IllegalArgumentException("fs: " + ArrayUtils.toString(fs));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		// Gauss-Jordan elimination, rows 7 and 8 of the C version are zeros and never chosen as pivots
+		int pivotColumns = 0;
+		int i = 0;
+
+		for(int j = 0; j < 9; j++) {
+
+			if(i == SAMPLE_SIZE) {
+				continue; // no rows left: non-pivot column
+			}
+
+			// find pivot, start with diagonal element
+			double pivot = Math.abs(a[9*i + j]);
+			int max = i;
+
+			for(int k = i + 1; k < SAMPLE_SIZE; k++) {
+				final double t = Math.abs(a[9*k + j]);
+				if(pivot < t) {
+					pivot = t;
+					max = k;
+				}
+			}
+
+			if(pivot < TOLERANCE) {
+
+				// negligible column, zero out
+				for(int k = i; k < SAMPLE_SIZE; k++) {
+					a[9*k + j] = 0;
+				}
+
+				continue;
+			}
+
+			pivotColumns |= 1 << j;
+
+			// swap rows i <-> max
+			if(max != i) {
+				for(int k = j; k < 9; k++) {
+					final double t = a[9*i + k];
+					a[9*i + k] = a[9*max + k];
+					a[9*max + k] = t;
+				}
+			}
+
+			pivot = a[9*i + j];
+
+			// divide the pivot row by the pivot element
+			for(int k = j; k < 9; k++) {
+				a[9*i + k] /= pivot;
+			}
+
+			// subtract multiples of the pivot row from all the other rows
+			for(int k = 0; k < SAMPLE_SIZE; k++) {
+
+				if(k == i) continue;
+
+				final double m = a[9*k + j];
+
+				if(k < i) {
+					for(int l = j; l < 9; l++) {
+						a[9*k + l] += -m*a[9*i + l];
+					}
+				} else {
+					for(int l = j; l < 9; l++) {
+						a[9*k + l] -= m*a[9*i + l];
+					}
+				}
+			}
+
+			i++;
+		}
+
+		if(9 - i != 2) {
+			return 0;
+		}
+
+		// null space vectors F1, F2 (one per non-pivot column), written to fs[0], fs[1] first
+		for(int k = 0, column = 0; k < 2; column++) {
+
+			if((pivotColumns & (1 << column)) != 0) continue;
+
+			final double[] v = fs[k++];
+
+			for(int c = 0, l = 0; c < 9; c++) {
+				if((pivotColumns & (1 << c)) != 0) {
+					v[c] = -a[9*(l++) + column];
+				} else {
+					v[c] = c == column ? 1 : 0;
+				}
+			}
+		}
+
+		final double[] f1 = fs[0], f2 = fs[1];
+		final double a11 = f1[0], a12 = f1[1], a13 = f1[2], a21 = f1[3], a22 = f1[4], a23 = f1[5], a31 = f1[6], a32 = f1[7], a33 = f1[8];
+		double b11 = f2[0], b12 = f2[1], b13 = f2[2], b21 = f2[3], b22 = f2[4], b23 = f2[5], b31 = f2[6], b32 = f2[7], b33 = f2[8];
+
+		// cubic det(x F1 + (1 - x) F2) = 0, see FTools.slcm
+		final double p0 = -(b13*b22*b31) + b12*b23*b31 + b13*b21*b32 -
+				b11*b23*b32 - b12*b21*b33 + b11*b22*b33;
+
+		final double p1 = -(a33*b12*b21) + a32*b13*b21 + a33*b11*b22 -
+				a31*b13*b22 - a32*b11*b23 + a31*b12*b23 +
+				a23*b12*b31 - a22*b13*b31 - a13*b22*b31 +
+				3*b13*b22*b31 + a12*b23*b31 - 3*b12*b23*b31 -
+				a23*b11*b32 + a21*b13*b32 + a13*b21*b32 -
+				3*b13*b21*b32 - a11*b23*b32 + 3*b11*b23*b32 +
+				(a22*b11 - a21*b12 - a12*b21 + 3*b12*b21 + a11*b22 - 3*b11*b22)*b33;
+
+		final double p2 = -(a21*a33*b12) + a21*a32*b13 +
+				a13*a32*b21 - a12*a33*b21 + 2*a33*b12*b21 -
+				2*a32*b13*b21 - a13*a31*b22 + a11*a33*b22 -
+				2*a33*b11*b22 + 2*a31*b13*b22 + a12*a31*b23 -
+				a11*a32*b23 + 2*a32*b11*b23 - 2*a31*b12*b23 +
+				2*a13*b22*b31 - 3*b13*b22*b31 - 2*a12*b23*b31 +
+				3*b12*b23*b31 + a13*a21*b32 - 2*a21*b13*b32 -
+				2*a13*b21*b32 + 3*b13*b21*b32 + 2*a11*b23*b32 -
+				3*b11*b23*b32 + a23*(-(a32*b11) + a31*b12 + a12*b31 - 2*b12*b31 - a11*b32 + 2*b11*b32) +
+				(-(a12*a21) + 2*a21*b12 + 2*a12*b21 - 3*b12*b21 - 2*a11*b22 + 3*b11*b22)*b33 +
+				a22*(a33*b11 - a31*b13 - a13*b31 + 2*b13*b31 + a11*b33 - 2*b11*b33);
+
+		// F2 := F1 - F2
+		b11 = a11 - b11; b12 = a12 - b12; b13 = a13 - b13;
+		b21 = a21 - b21; b22 = a22 - b22; b23 = a23 - b23;
+		b31 = a31 - b31; b32 = a32 - b32; b33 = a33 - b33;
+
+		final double p3 = -(b13*b22*b31) + b12*b23*b31 + b13*b21*b32 -
+				b11*b23*b32 - b12*b21*b33 + b11*b22*b33;
+
+		// real roots of the cubic, see FTools.realRoots
+		final double b = p1/p0;
+		final double c = p2/p0;
+		final double b2 = b*b;
+		final double bt = b/3;
+		final double p = (3*c - b2)/9;
+		final double q = (2*b2*b/27 - b*c/3 + p3/p0)/2;
+		final double d = q*q + p*p*p;
+
+		final int solutions;
+		double x0, x1 = 0, x2 = 0;
+
+		if(d > 0) {
+
+			final double s = Math.sqrt(d) - q;
+			if(s > 0) {
+				final double v = Math.pow(s, 1d/3);
+				x0 = v - p/v - bt;
+			} else {
+				final double v = Math.pow(-s, 1d/3);
+				x0 = p/v - v - bt;
+			}
+
+			solutions = 1;
+
+		} else {
+
+			final double r = ((q > 0) ? 1 : -1) * Math.sqrt(-p);
+			final double pit = 3.14159265358979/3;
+			final double cosphi = limit(q/(r*r*r), -1, 1);
+			final double phit = Math.acos(cosphi)/3;
+
+			x0 = -2*r*Math.cos(phit) - bt;
+			x1 =  2*r*Math.cos(pit - phit) - bt;
+			x2 =  2*r*Math.cos(pit + phit) - bt;
+
+			solutions = 3;
+		}
+
+		// F = x F1 + (1 - x) F2, the null space vectors are not needed any more
+		for(int s = 0; s < solutions; s++) {
+
+			final double x = s == 0 ? x0 : s == 1 ? x1 : x2;
+			final double y = 1 - x;
+			final double[] f = fs[s];
+
+			f[0] = a11*x + b11*y; f[1] = a12*x + b12*y; f[2] = a13*x + b13*y;
+			f[3] = a21*x + b21*y; f[4] = a22*x + b22*y; f[5] = a23*x + b23*y;
+			f[6] = a31*x + b31*y; f[7] = a32*x + b32*y; f[8] = a33*x + b33*y;
+		}
+
+		return solutions;
+	}
+}
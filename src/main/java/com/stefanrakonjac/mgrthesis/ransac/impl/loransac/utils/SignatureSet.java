@@ -0,0 +1,89 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import java.util.Arrays;
+
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Set of the inlier set signatures (see {@link RTools#inliersSignature(double[], int, double, int)}) the local optimizations of a run
+ * started from. Open addressing by linear probing over primitive arrays: no boxing and no allocation once the table has grown to the number
+ * of the local optimizations of a run, so that the set can be cleared and reused by the following runs. Not thread-safe. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SignatureSet {
+
+	/** initial number of the slots, power of two */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private boolean[] used = new boolean[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * <p> Adds the signature to the set </p>
+	 *
+	 * @param signature
+	 * 		Signature to be added
+	 * @return
+	 * 		Returns {@code true} if the set did not contain the signature
+	 */
+	public boolean add(final long signature) {
+
+		if(2*(size + 1) > keys.length) {
+			grow();
+		}
+
+		final int mask = keys.length - 1;
+		for(int slot = (int) XorShiftRandom.mix(signature) & mask; ; slot = (slot + 1) & mask) {
+
+			if(!used[slot]) {
+				used[slot] = true;
+				keys[slot] = signature;
+				size++;
+				return true;
+			}
+
+			if(keys[slot] == signature) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		Returns number of the signatures in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * <p> Empties the set, keeping its table </p>
+	 */
+	public void clear() {
+
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * <p> Doubles the table, re-inserting the signatures </p>
+	 */
+	private void grow() {
+
+		final long[] oldKeys = keys;
+		final boolean[] oldUsed = used;
+
+		keys = new long[2*oldKeys.length];
+		used = new boolean[2*oldKeys.length];
+		size = 0;
+
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldUsed[i]) {
+				add(oldKeys[i]);
+			}
+		}
+	}
+}
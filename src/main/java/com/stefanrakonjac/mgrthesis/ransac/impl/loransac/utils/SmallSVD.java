@@ -0,0 +1,411 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * <p> Smallest singular value and its right singular vector of the matrices having at most 9 rows and 9 columns (linearised
+ * minimal and small samples, {@code 8 x 9} and {@code 9 x 9} usually). Unlike {@link MathUtils#svduv(double[], double[], double[], int, double[], int)},
+ * which computes both the complete {@code U} and {@code V}, it works in the matrix itself and does not allocate. </p>
+ *
+ * <p> Matrices having fewer than 9 rows have the smallest singular value zero, its singular vector is any vector of the null
+ * space: orthogonal complement of the rows, taken from the Householder QR decomposition of the transposed matrix (no iterations).
+ * Rows of the {@code 9 x 9} matrices are orthogonalized by the one-sided (Hestenes) Jacobi method: rotations keep their span and
+ * make them the right singular vectors scaled by the singular values, the smallest one is left out and the vector is the
+ * complement of the other ones. The same rotations make the 3 x 3 (fundamental) matrices rank 2, see {@link #closestRank2(double[], double[])}. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SmallSVD {
+
+	/** number of the columns of the matrices, maximal number of their rows */
+	public static final int N = 9;
+
+	/** maximal number of the Jacobi sweeps (all the pairs of the rows rotated once), 5 to 8 are needed usually */
+	private static final int MAX_SWEEPS = 30;
+
+	/** relative precision */
+	private static final double EPS = 0x1p-52;
+
+	private SmallSVD() {
+		// no-op
+	}
+
+	/**
+	 * <p> Smallest singular value of the matrix and its right singular vector </p>
+	 *
+	 * @param a
+	 * 		{@code 9*rows}-element array, matrix stored by the columns (as linearised by {@link FTools#lineariseFundamentalMatrix(double[], double[], int[], int)});
+	 * 		method destroys its content
+	 * @param rows
+	 * 		number of the rows, at most 9
+	 * @param v
+	 * 		9-element array, the unit right singular vector
+	 * @return
+	 * 		Returns the smallest singular value, zero for fewer than 9 rows
+	 */
+	public static double smallestSingularPair(final double[] a, final int rows, final double[] v) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(rows < 0 || rows > N)
+			throw new IllegalArgumentException("rows: " + rows);
+		if(a == null || a.length < N*rows)
+			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
+		if(v == null || v.length < N)
+			throw new IllegalArgumentException("v: " + ArrayUtils.toString(v));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		if(rows < N) {
+			
+			householder(a, rows);
+			
+			for(int k = 0; k < N; k++) {
+				v[k] = 0;
+			}
+			v[N - 1] = 1;
+			
+			reflect(a, rows, v, 0);
+			return 0;
+		}
+		
+		// element k of the row i is a[k*rows + i]
+		for(int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+
+			boolean rotated = false;
+
+			for(int p = 0; p < rows - 1; p++) {
+				for(int q = p + 1; q < rows; q++) {
+
+					double alpha = 0, beta = 0, gamma = 0;
+					for(int i = 0, end = N*rows; i < end; i += rows) {
+
+						final double x = a[i + p], y = a[i + q];
+						alpha += x*x;
+						beta += y*y;
+						gamma += x*y;
+					}
+
+					// orthogonal to the precision already
+					if(Math.abs(gamma) <= EPS * Math.sqrt(alpha * beta)) {
+						continue;
+					}
+
+					final double zeta = (beta - alpha) / (2 * gamma), abs = Math.abs(zeta);
+					final double t = (zeta < 0 ? -1 : 1) / (abs + (abs > 1e150 ? abs : Math.sqrt(1 + zeta*zeta)));
+					final double c = 1 / Math.sqrt(1 + t*t), s = c * t;
+
+					for(int i = 0, end = N*rows; i < end; i += rows) {
+
+						final double x = a[i + p], y = a[i + q];
+						a[i + p] = c*x - s*y;
+						a[i + q] = s*x + c*y;
+					}
+
+					rotated = true;
+				}
+			}
+
+			if(!rotated) {
+				break;
+			}
+		}
+
+		// row of the smallest singular value is left out, the other ones normalized
+		int smallest = -1;
+		double min = Double.POSITIVE_INFINITY;
+		
+		for(int j = 0; j < rows; j++) {
+
+			final double norm = norm(a, rows, j);
+			if(norm < min) {
+				min = norm;
+				smallest = j;
+			}
+		}
+
+		for(int j = 0; j < rows; j++) {
+
+			final double norm = norm(a, rows, j);
+			if(j == smallest || norm == 0) continue;
+
+			final double scale = 1 / Math.sqrt(norm);
+			for(int i = j, end = N*rows; i < end; i += rows) {
+				a[i] *= scale;
+			}
+		}
+
+		// complement: unit vector the rows cover the least, its projection out of them
+		int best = 0;
+		double bestCover = Double.POSITIVE_INFINITY;
+
+		for(int k = 0; k < N; k++) {
+
+			double cover = 0;
+			for(int j = 0; j < rows; j++) {
+				if(j != smallest) cover += a[k*rows + j] * a[k*rows + j];
+			}
+
+			if(cover < bestCover) {
+				bestCover = cover;
+				best = k;
+			}
+		}
+
+		for(int m = 0; m < N; m++) {
+
+			double s = m == best ? 1 : 0;
+			for(int j = 0; j < rows; j++) {
+				if(j != smallest) s -= a[m*rows + j] * a[best*rows + j];
+			}
+
+			v[m] = s;
+		}
+
+		// once more, for the orthogonality to the precision
+		for(int j = 0; j < rows; j++) {
+
+			if(j == smallest) continue;
+
+			double d = 0;
+			for(int m = 0; m < N; m++) {
+				d += a[m*rows + j] * v[m];
+			}
+			for(int m = 0; m < N; m++) {
+				v[m] -= d * a[m*rows + j];
+			}
+		}
+
+		double norm = 0;
+		for(int m = 0; m < N; m++) {
+			norm += v[m] * v[m];
+		}
+
+		final double scale = 1 / Math.sqrt(norm);
+		for(int m = 0; m < N; m++) {
+			v[m] *= scale;
+		}
+
+		return Math.sqrt(min);
+	}
+
+	/**
+	 * <p> Orthonormal basis of the null space of the matrix having fewer than 9 rows (of the full rank, e.g. the 5 x 9 system of the 
+	 * five-point essential matrix): the last {@code 9 - rows} columns of {@code Q} of the Householder QR decomposition of {@code A^T} </p>
+	 *
+	 * @param a
+	 * 		{@code 9*rows}-element array, matrix stored by the columns (as linearised by {@link FTools#lineariseFundamentalMatrix(double[], double[], int[], int)});
+	 * 		method destroys its content
+	 * @param rows
+	 * 		number of the rows, less than 9
+	 * @param basis
+	 * 		{@code 9*(9 - rows)}-element array, the unit vectors one after another
+	 */
+	public static void nullSpace(final double[] a, final int rows, final double[] basis) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(rows < 0 || rows >= N)
+			throw new IllegalArgumentException("rows: " + rows);
+		if(a == null || a.length < N*rows)
+			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
+		if(basis == null || basis.length < N*(N - rows))
+			throw new IllegalArgumentException("basis: " + ArrayUtils.toString(basis));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		householder(a, rows);
+
+		for(int j = 0; j < N - rows; j++) {
+
+			final int offset = N*j;
+			for(int k = 0; k < N; k++) {
+				basis[offset + k] = k == rows + j ? 1 : 0;
+			}
+
+			reflect(a, rows, basis, offset);
+		}
+	}
+
+	/**
+	 * <p> Closest matrix of rank 2 (in the Frobenius norm) to the 3 x 3 matrix, in place: the smallest singular value and its singular vectors 
+	 * are subtracted, {@code A - s_3 u_3 v_3^T}. Columns of {@code W = A V} are orthogonalized by the one-sided Jacobi method as the rows of 
+	 * the 9 x 9 matrices are: they become the left singular vectors scaled by the singular values, {@code A = W V^T}, and the shortest 
+	 * column of {@code W} times the related column of {@code V} is subtracted. </p>
+	 *
+	 * @param a
+	 * 		9-element array, matrix stored by the rows
+	 * @param buffer
+	 * 		at least 18-element array, {@code W} and {@code V}
+	 */
+	public static void closestRank2(final double[] a, final double[] buffer) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(a == null || a.length != 9)
+			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
+		if(buffer == null || buffer.length < 2*9)
+			throw new IllegalArgumentException("buffer: " + ArrayUtils.toString(buffer));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		// element (i, j) of W is buffer[3*i + j], the one of V is buffer[9 + 3*i + j]
+		final double[] w = buffer;
+		for(int i = 0; i < 9; i++) {
+			w[i] = a[i];
+			w[9 + i] = i % 4 == 0 ? 1 : 0;
+		}
+
+		for(int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+
+			boolean rotated = false;
+
+			for(int p = 0; p < 2; p++) {
+				for(int q = p + 1; q < 3; q++) {
+
+					double alpha = 0, beta = 0, gamma = 0;
+					for(int i = 0; i < 9; i += 3) {
+
+						final double x = w[i + p], y = w[i + q];
+						alpha += x*x;
+						beta += y*y;
+						gamma += x*y;
+					}
+
+					// orthogonal to the precision already
+					if(Math.abs(gamma) <= EPS * Math.sqrt(alpha * beta)) {
+						continue;
+					}
+
+					final double zeta = (beta - alpha) / (2 * gamma), abs = Math.abs(zeta);
+					final double t = (zeta < 0 ? -1 : 1) / (abs + (abs > 1e150 ? abs : Math.sqrt(1 + zeta*zeta)));
+					final double c = 1 / Math.sqrt(1 + t*t), s = c * t;
+
+					for(int i = 0; i < 18; i += 3) {
+
+						final double x = w[i + p], y = w[i + q];
+						w[i + p] = c*x - s*y;
+						w[i + q] = s*x + c*y;
+					}
+
+					rotated = true;
+				}
+			}
+
+			if(!rotated) {
+				break;
+			}
+		}
+
+		int smallest = 0;
+		double min = Double.POSITIVE_INFINITY;
+
+		for(int j = 0; j < 3; j++) {
+
+			final double norm = w[j]*w[j] + w[3 + j]*w[3 + j] + w[6 + j]*w[6 + j];
+			if(norm < min) {
+				min = norm;
+				smallest = j;
+			}
+		}
+
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+				a[3*i + j] -= w[3*i + smallest] * w[9 + 3*j + smallest];
+			}
+		}
+	}
+
+	/**
+	 * <p> Householder QR decomposition of {@code A^T} of the matrix having fewer than 9 rows, {@code A^T = H_0 ... H_(rows-1) R}: 
+	 * reflector {@code j} is stored in the elements {@code j ... 8} of the row {@code j}. The columns {@code rows ... 8} of {@code Q} 
+	 * ({@code H_0 ... H_(rows-1) e_k}) are orthogonal to all the columns of {@code A^T}, the last one is its null vector. </p>
+	 */
+	private static void householder(final double[] a, final int rows) {
+		
+		// column j of A^T (row of A) is a[k*rows + j], k = 0 ... 8; reflector j is stored in its elements k = j ... 8
+		for(int j = 0; j < rows; j++) {
+			
+			double norm = 0;
+			for(int k = j; k < N; k++) {
+				norm += a[k*rows + j] * a[k*rows + j];
+			}
+			
+			if(norm == 0) {
+				continue; // identity
+			}
+			
+			final double x = a[j*rows + j];
+			final double alpha = x < 0 ? Math.sqrt(norm) : -Math.sqrt(norm);
+			
+			// v = x - alpha e_j, v^T v = 2 (norm - alpha x)
+			a[j*rows + j] = x - alpha;
+			final double scale = 1 / (norm - alpha * x);
+			
+			for(int i = j + 1; i < rows; i++) {
+				
+				double d = 0;
+				for(int k = j; k < N; k++) {
+					d += a[k*rows + j] * a[k*rows + i];
+				}
+				
+				d *= scale;
+				for(int k = j; k < N; k++) {
+					a[k*rows + i] -= d * a[k*rows + j];
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * <p> Applies the reflectors stored by {@link #householder(double[], int)} to the vector: {@code v = H_0 ... H_(rows-1) v} </p>
+	 */
+	private static void reflect(final double[] a, final int rows, final double[] v, final int offset) {
+		
+		for(int j = rows - 1; j >= 0; j--) {
+			
+			double norm = 0, d = 0;
+			for(int k = j; k < N; k++) {
+				norm += a[k*rows + j] * a[k*rows + j];
+				d += a[k*rows + j] * v[offset + k];
+			}
+			
+			if(norm == 0) {
+				continue;
+			}
+			
+			d *= 2 / norm;
+			for(int k = j; k < N; k++) {
+				v[offset + k] -= d * a[k*rows + j];
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		Returns squared norm of the row
+	 */
+	private static double norm(final double[] a, final int rows, final int row) {
+
+		double norm = 0;
+		for(int i = row, end = N*rows; i < end; i += rows) {
+			norm += a[i] * a[i];
+		}
+
+		return norm;
+	}
+}
@@ -0,0 +1,300 @@
+package com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p> Smallest eigenpair of the 9 x 9 symmetric matrices (scatter matrices of the least squares fits). Unlike
+ * {@link LapWrapper#lapackEigen(double[], double[], int)}, which builds the commons-math matrices and the complete decomposition,
+ * it works in the provided arrays and does not allocate. </p>
+ *
+ * <p> Scatter matrices are positive semi-definite and the smallest eigenvalue of a good fit is well separated (close to zero),
+ * so the eigenpair is found by the inverse iteration on the Cholesky factor, a few steps usually. Matrices the iteration
+ * does not converge on in {@value #MAX_ITERATIONS} steps (close eigenvalues) or indefinite ones are diagonalized by the cyclic
+ * Jacobi method, which keeps the small eigenvalues accurate relatively to the large ones. </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SymmetricEigen {
+
+	private static final Logger logger = LoggerFactory.getLogger(SymmetricEigen.class);
+
+	/** dimension of the matrices */
+	public static final int N = 9;
+
+	/** maximal number of the inverse iteration steps before falling back to the Jacobi method */
+	private static final int MAX_ITERATIONS = 10;
+
+	/** maximal number of the Jacobi sweeps (all the off-diagonal elements rotated once), 6 to 10 are needed usually */
+	private static final int MAX_SWEEPS = 50;
+
+	/** relative precision */
+	private static final double EPS = 0x1p-52;
+
+	/** residual {@code |A v - l v|} of the accepted eigenpair, relatively to the Frobenius norm of the matrix */
+	private static final double TOLERANCE = 64 * EPS;
+
+	/* layout of the buffer during the inverse iteration: packed lower triangle of the Cholesky factor, iterated vector, A v */
+	private static final int Y = N*(N+1)/2;
+	private static final int W = Y + N;
+
+	private SymmetricEigen() {
+		// no-op
+	}
+
+	/**
+	 * <p> Smallest eigenvalue of the symmetric 9 x 9 matrix and its eigenvector </p>
+	 *
+	 * @param a
+	 * 		81-element array, symmetric matrix; method may destroy its content
+	 * @param v
+	 * 		9-element array, the unit eigenvector of the smallest eigenvalue
+	 * @param buffer
+	 * 		at least 81-element array
+	 * @return
+	 * 		Returns the smallest eigenvalue
+	 */
+	public static double smallestEigenpair(final double[] a, final double[] v, final double[] buffer) {
+
+		/* ---------------------------------------------------------------------------------------
+		 * method contract
+		 * --------------------------------------------------------------------------------------- */
+
+		if(a == null || a.length != N*N)
+			throw new IllegalArgumentException("a: " + ArrayUtils.toString(a));
+		if(v == null || v.length != N)
+			throw new IllegalArgumentException("v: " + ArrayUtils.toString(v));
+		if(buffer == null || buffer.length < N*N)
+			throw new IllegalArgumentException("buffer: " + ArrayUtils.toString(buffer));
+
+		/* ---------------------------------------------------------------------------------------
+		 * method business logic
+		 * --------------------------------------------------------------------------------------- */
+
+		double norm = 0;
+		for(int i = 0; i < N*N; i++) {
+			norm += a[i] * a[i];
+		}
+		norm = Math.sqrt(norm);
+
+		if(cholesky(a, buffer, norm)) {
+
+			final double l = inverseIteration(a, v, buffer, norm);
+			if(!Double.isNaN(l)) {
+				return l;
+			}
+		}
+
+		return jacobi(a, v, buffer, norm);
+	}
+
+	/**
+	 * <p> Cholesky factor {@code L} of the matrix, packed lower triangle ({@code L[i][j]} at {@code i*(i+1)/2 + j}). Pivots of
+	 * the (nearly) singular matrices are raised to the precision of the matrix, as if it was shifted by the rounding error. </p>
+	 *
+	 * @return
+	 * 		Returns {@code false} if the matrix is indefinite
+	 */
+	private static boolean cholesky(final double[] a, final double[] l, final double norm) {
+
+		final double floor = EPS * norm;
+
+		for(int i = 0, ii = 0; i < N; i++, ii += i) {
+			for(int j = 0, jj = 0; j <= i; j++, jj += j) {
+
+				double s = a[N*i + j];
+				for(int k = 0; k < j; k++) {
+					s -= l[ii + k] * l[jj + k];
+				}
+
+				if(i == j) {
+
+					if(s < -N * floor) {
+						return false;
+					}
+
+					l[ii + i] = Math.sqrt(Math.max(s, floor));
+
+				} else {
+					l[ii + j] = s / l[jj + j];
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p> Inverse iteration {@code v <- A^-1 v / |A^-1 v|} on the Cholesky factor, until the residual of the Rayleigh quotient
+	 * is within the {@link #TOLERANCE} </p>
+	 *
+	 * @return
+	 * 		Returns the eigenvalue, {@link Double#NaN} if the iteration has not converged
+	 */
+	private static double inverseIteration(final double[] a, final double[] v, final double[] buffer, final double norm) {
+
+		final double tolerance = TOLERANCE * norm;
+
+		for(int i = 0; i < N; i++) {
+			v[i] = 1d / 3;
+		}
+
+		for(int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+
+			// L y = v
+			for(int i = 0, ii = 0; i < N; i++, ii += i) {
+
+				double s = v[i];
+				for(int k = 0; k < i; k++) {
+					s -= buffer[ii + k] * buffer[Y + k];
+				}
+				buffer[Y + i] = s / buffer[ii + i];
+			}
+
+			// L^T y = y
+			for(int i = N-1; i >= 0; i--) {
+
+				double s = buffer[Y + i];
+				for(int k = i + 1, kk = k*(k+1)/2; k < N; kk += ++k) {
+					s -= buffer[kk + i] * buffer[Y + k];
+				}
+				buffer[Y + i] = s / buffer[i*(i+1)/2 + i];
+			}
+
+			double length = 0;
+			for(int i = 0; i < N; i++) {
+				length += buffer[Y + i] * buffer[Y + i];
+			}
+			length = Math.sqrt(length);
+
+			for(int i = 0; i < N; i++) {
+				v[i] = buffer[Y + i] / length;
+			}
+
+			// Rayleigh quotient and its residual
+			double l = 0;
+			for(int i = 0; i < N; i++) {
+
+				double s = 0;
+				for(int j = 0; j < N; j++) {
+					s += a[N*i + j] * v[j];
+				}
+				buffer[W + i] = s;
+				l += s * v[i];
+			}
+
+			double residual = 0;
+			for(int i = 0; i < N; i++) {
+				final double r = buffer[W + i] - l * v[i];
+				residual += r * r;
+			}
+
+			if(residual <= tolerance * tolerance) {
+				return l;
+			}
+		}
+
+		return Double.NaN;
+	}
+
+	/**
+	 * <p> Cyclic Jacobi method, the rotations accumulated in the buffer. Destroys the matrix (the diagonal holds the eigenvalues
+	 * at the end). </p>
+	 *
+	 * @return
+	 * 		Returns the smallest eigenvalue
+	 */
+	private static double jacobi(final double[] a, final double[] v, final double[] buffer, final double norm) {
+
+		final double[] e = buffer; // eigenvectors (columns)
+
+		for(int i = 0; i < N*N; i++) {
+			e[i] = 0d;
+		}
+		for(int i = 0; i < N; i++) {
+			e[N*i + i] = 1d;
+		}
+
+		// off-diagonal elements below the absolute floor (far below the precision of the eigenvalues) are not rotated any more
+		final double floor = EPS * EPS * norm;
+
+		int sweep = 0;
+
+		for(; sweep < MAX_SWEEPS; sweep++) {
+
+			boolean rotated = false;
+
+			for(int p = 0; p < N-1; p++) {
+				for(int q = p + 1; q < N; q++) {
+
+					final double apq = a[N*p + q];
+					final double app = a[N*p + p], aqq = a[N*q + q];
+
+					// negligible relatively to its diagonal elements, so that the small eigenvalues are kept accurate too
+					if(Math.abs(apq) <= EPS * Math.sqrt(Math.abs(app * aqq)) || Math.abs(apq) <= floor) {
+						continue;
+					}
+
+					rotated = true;
+
+					// rotation annihilating a[p][q]: t = tan of the angle, the smaller root of t^2 + 2 t theta - 1 = 0
+					final double theta = 0.5 * (aqq - app) / apq;
+					final double t = theta < 0
+							? -1d / (-theta + Math.sqrt(1d + theta*theta))
+							: 1d / (theta + Math.sqrt(1d + theta*theta));
+
+					final double c = 1d / Math.sqrt(1d + t*t);
+					final double s = t * c;
+					final double tau = s / (1d + c);
+
+					a[N*p + p] = app - t*apq;
+					a[N*q + q] = aqq + t*apq;
+					a[N*p + q] = 0d;
+					a[N*q + p] = 0d;
+
+					for(int r = 0; r < N; r++) {
+
+						if(r == p || r == q) continue;
+
+						final double arp = a[N*r + p], arq = a[N*r + q];
+						final double rp = arp - s*(arq + tau*arp);
+						final double rq = arq + s*(arp - tau*arq);
+
+						a[N*r + p] = rp;
+						a[N*p + r] = rp;
+						a[N*r + q] = rq;
+						a[N*q + r] = rq;
+					}
+
+					for(int r = 0; r < N; r++) {
+
+						final double erp = e[N*r + p], erq = e[N*r + q];
+						e[N*r + p] = erp - s*(erq + tau*erp);
+						e[N*r + q] = erq + s*(erp - tau*erq);
+					}
+				}
+			}
+
+			if(!rotated) {
+				break;
+			}
+		}
+
+		if(sweep == MAX_SWEEPS) {
+			logger.debug("jacobi(...) has not converged in {} sweeps", MAX_SWEEPS);
+		}
+
+		int p = 0;
+		for(int i = 1; i < N; i++) {
+			if(a[N*i + i] < a[N*p + p]) p = i;
+		}
+
+		for(int i = 0; i < N; i++) {
+			v[i] = e[N*i + p];
+		}
+
+		return a[N*p + p];
+	}
+}
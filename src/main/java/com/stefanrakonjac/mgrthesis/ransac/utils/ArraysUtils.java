@@ -40,6 +40,56 @@ public class ArraysUtils {
 		
 	}
 	
+	/**
+	 * <p> Sorts (in place, heap sort) the indices so that the values they point to are in the descending order </p>
+	 * 
+	 * @param values
+	 * 		Values the indices point to
+	 * @param indices
+	 * 		Indices to be sorted
+	 * @param length
+	 * 		Number of indices to be sorted
+	 */
+	public static void sortIndicesDescending(double[] values, int[] indices, int length) {
+		
+		if(values == null)
+			throw new IllegalArgumentException("values");
+		if(indices == null || indices.length < length)
+			throw new IllegalArgumentException("indices");
+		
+		// min-heap, so that the minimum gets to the end
+		for(int i = length/2 - 1; i >= 0; i--) {
+			siftDown(values, indices, i, length);
+		}
+		
+		for(int end = length - 1; end > 0; end--) {
+			final int index = indices[0];
+			indices[0] = indices[end];
+			indices[end] = index;
+			siftDown(values, indices, 0, end);
+		}
+	}
+	
+	private static void siftDown(double[] values, int[] indices, int i, int length) {
+		
+		final int index = indices[i];
+		
+		for(int child = 2*i + 1; child < length; child = 2*i + 1) {
+			
+			if(child + 1 < length && values[indices[child + 1]] < values[indices[child]]) {
+				child++;
+			}
+			if(values[index] <= values[indices[child]]) {
+				break;
+			}
+			
+			indices[i] = indices[child];
+			i = child;
+		}
+		
+		indices[i] = index;
+	}
+	
 	public static double[][] to2Ddouble(Collection<double[]> list) {
 		
 		if(list == null)
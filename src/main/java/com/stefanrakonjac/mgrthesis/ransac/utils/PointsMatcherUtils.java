@@ -19,6 +19,10 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.AffineVerifierImpl;
+import com.stefanrakonjac.mgrthesis.ransac.utils.dataengine.DataEngine;
+
 /**
  * @author Stefan.Rakonjac
  *
@@ -146,13 +150,136 @@ public class PointsMatcherUtils {
 			
 			for(double[] imageAPoint : imageAPointsByWords.get(word)) {
 				for(double[] imageBPoint : imageBPointsByWords.get(word)) {
-					retval.add(ArrayUtils.addAll(imageAPoint, imageBPoint));
+					retval.add(new double[] { imageAPoint[0], imageAPoint[1], imageBPoint[0], imageBPoint[1] });
 				}
 			}
 		}
 		
 		return ArraysUtils.to2Ddouble(retval);
 	}
+	
+	/**
+	 * <p> Matches of {@link #computeMatchesFromWords(Map, Map)} (in the same order), stored flat and in single precision: 
+	 * {@code x1, y1, x2, y2} quadruples one after another, see {@link RANSAC#setTentativePairs(float[], int)}. Takes a quarter 
+	 * of the memory of the two-dimensional array (half of a flat double array) and allocates the single array only. </p>
+	 * 
+	 * @param imageAPointsByWords
+	 * @param imageBPointsByWords
+	 * @return
+	 * 		Returns array of {@code 4*count} coordinates of the {@code count} matches
+	 */
+	public static float[] computeFloatMatchesFromWords(Map<String, double[][]> imageAPointsByWords, Map<String, double[][]> imageBPointsByWords) {
+		
+		if(imageAPointsByWords == null) 
+			throw new IllegalArgumentException("imageAPointsByWords");
+		if(imageBPointsByWords == null) 
+			throw new IllegalArgumentException("imageBPointsByWords");
+		
+		int count = 0;
+		for(String word : imageAPointsByWords.keySet()) {
+			if(imageBPointsByWords.containsKey(word)) {
+				count += imageAPointsByWords.get(word).length * imageBPointsByWords.get(word).length;
+			}
+		}
+		
+		final float[] retval = new float[4*count];
+		
+		int i = 0;
+		for(String word : imageAPointsByWords.keySet()) {
+			
+			if(!imageBPointsByWords.containsKey(word)) continue;
+			
+			for(double[] imageAPoint : imageAPointsByWords.get(word)) {
+				for(double[] imageBPoint : imageBPointsByWords.get(word)) {
+					retval[i++] = (float) imageAPoint[0];
+					retval[i++] = (float) imageAPoint[1];
+					retval[i++] = (float) imageBPoint[0];
+					retval[i++] = (float) imageBPoint[1];
+				}
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * <p> Affine shapes of the matches computed by {@link #computeMatchesFromWords(Map, Map)} (in the same order), 
+	 * the features provided by {@link DataEngine#getImageShapesByWords(String)}: 6 values per match, the ellipse 
+	 * {@code a, b, c} of the first image followed by the ellipse of the second one. </p>
+	 * 
+	 * @param imageAShapesByWords
+	 * @param imageBShapesByWords
+	 * @return
+	 * 		Returns shapes of the matches, see {@link AffineVerifierImpl#setShapes(double[])}
+	 */
+	public static double[] computeMatchShapesFromWords(Map<String, double[][]> imageAShapesByWords, Map<String, double[][]> imageBShapesByWords) {
+		
+		if(imageAShapesByWords == null) 
+			throw new IllegalArgumentException("imageAShapesByWords");
+		if(imageBShapesByWords == null) 
+			throw new IllegalArgumentException("imageBShapesByWords");
+		
+		final List<double[]> shapes = new ArrayList<>();
+		
+		for(String word : imageAShapesByWords.keySet()) {
+			
+			if(!imageBShapesByWords.containsKey(word)) continue;
+			
+			for(double[] imageAShape : imageAShapesByWords.get(word)) {
+				for(double[] imageBShape : imageBShapesByWords.get(word)) {
+					shapes.add(new double[] { imageAShape[2], imageAShape[3], imageAShape[4], imageBShape[2], imageBShape[3], imageBShape[4] });
+				}
+			}
+		}
+		
+		final double[] retval = new double[6*shapes.size()];
+		for(int i = 0; i < shapes.size(); i++) {
+			System.arraycopy(shapes.get(i), 0, retval, 6*i, 6);
+		}
+		
+		return retval;
+	}
+
+	/**
+	 * <p> Qualities of the matches computed by {@link #computeMatchesFromWords(Map, Map)} (in the same order), 
+	 * to be used by the PROSAC sampling: matches of the words having a single feature in both the images get quality 1, 
+	 * matches of the bursty words get lower qualities (the reciprocal of the number of matches of the word). </p>
+	 * 
+	 * @param imageAPointsByWords
+	 * @param imageBPointsByWords
+	 * @return
+	 * 		Array of the qualities
+	 */
+	public static double[] computeMatchQualitiesFromWords(Map<String, double[][]> imageAPointsByWords, Map<String, double[][]> imageBPointsByWords) {
+		
+		if(imageAPointsByWords == null) 
+			throw new IllegalArgumentException("imageAPointsByWords");
+		if(imageBPointsByWords == null) 
+			throw new IllegalArgumentException("imageBPointsByWords");
+		
+		int count = 0;
+		for(String word : imageAPointsByWords.keySet()) {
+			if(imageBPointsByWords.containsKey(word)) {
+				count += imageAPointsByWords.get(word).length * imageBPointsByWords.get(word).length;
+			}
+		}
+		
+		final double[] retval = new double[count];
+		
+		int i = 0;
+		for(String word : imageAPointsByWords.keySet()) {
+			
+			if(!imageBPointsByWords.containsKey(word)) continue;
+			
+			final int wordMatches = imageAPointsByWords.get(word).length * imageBPointsByWords.get(word).length;
+			
+			for(int j = 0; j < wordMatches; j++) {
+				retval[i++] = 1d / wordMatches;
+			}
+		}
+		
+		return retval;
+	}
 
 	public static Map<String, double[][]> computeMappedMatchesFromWords(Map<String, double[][]> imageAPointsByWords, Map<String, double[][]> imageBPointsByWords) {
 		
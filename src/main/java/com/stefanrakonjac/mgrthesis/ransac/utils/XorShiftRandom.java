@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Fast, non-synchronized pseudo-random generator (xorshift64*) to be owned by a single thread. Unlike {@link java.util.Random}
+ * it does not use atomic operations on every draw. Streams seeded by different (even subsequent) seeds are independent, 
+ * since the seed is scrambled first (splitmix64 finalizer). </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class XorShiftRandom {
+	
+	private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(0x5DEECE66DL);
+	
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	private long state;
+
+	/**
+	 * Generator seeded by {@link #newSeed()}
+	 */
+	public XorShiftRandom() {
+		this(newSeed());
+	}
+	
+	public XorShiftRandom(final long seed) {
+		setSeed(seed);
+	}
+	
+	/**
+	 * @param seed
+	 * 		New seed of the generator
+	 */
+	public void setSeed(final long seed) {
+		
+		state = mix(seed);
+		
+		if(state == 0) { // xorshift never leaves the zero state
+			state = GOLDEN_GAMMA;
+		}
+	}
+	
+	/**
+	 * @return
+	 * 		Returns next pseudo-random value uniformly distributed over all the {@code long} values
+	 */
+	public long nextLong() {
+		
+		long x = state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state = x;
+		
+		return x * 0x2545F4914F6CDD1DL;
+	}
+	
+	/**
+	 * @param bound
+	 * 		Upper bound (exclusive), must be positive
+	 * @return
+	 * 		Returns next pseudo-random value from {@code 0} (inclusive) to {@code bound} (exclusive)
+	 */
+	public int nextInt(final int bound) {
+		if(bound <= 0) throw new IllegalArgumentException("bound: " + bound);
+		
+		// upper 32 bits scaled to the bound (multiply-shift), no division needed
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+	
+	/**
+	 * @return
+	 * 		Returns next pseudo-random value from {@code 0.0} (inclusive) to {@code 1.0} (exclusive)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * @param seed
+	 * 		Base seed
+	 * @param stream
+	 * 		Index of the stream
+	 * @return
+	 * 		Returns seed of the {@code stream}-th stream derived from the {@code seed}, used by parallel workers of a single run
+	 */
+	public static long streamSeed(final long seed, final int stream) {
+		return mix(seed + stream * GOLDEN_GAMMA);
+	}
+	
+	/**
+	 * @return
+	 * 		Returns seed differing from all the other seeds returned by this method
+	 */
+	public static long newSeed() {
+		return mix(System.nanoTime() ^ SEED_UNIQUIFIER.addAndGet(GOLDEN_GAMMA));
+	}
+	
+	/**
+	 * splitmix64 finalizer, usable as a hash function of {@code long} values as well
+	 */
+	public static long mix(long z) {
+		
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		
+		return z ^ (z >>> 31);
+	}
+}
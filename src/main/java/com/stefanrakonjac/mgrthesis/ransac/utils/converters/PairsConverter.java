@@ -85,4 +85,46 @@ public class PairsConverter {
 		}
 		return retval;
 	}
+
+	/**
+	 * BoofCV-friendly flat pairs converter
+	 * 
+	 * @param pairs
+	 * 		Pairs stored one after another as {@code x1, y1, x2, y2} quadruples
+	 * @param count
+	 * 		Number of pairs
+	 * @return
+	 */
+	public static List<AssociatedPair> toAssociatedPairList(double[] pairs, int count) {
+		if(pairs == null) throw new IllegalArgumentException("pairs is null");
+		if(count < 0 || pairs.length < 4*count) throw new IllegalArgumentException("count: " + count);
+		logger.debug("toAssociatedPairList(pairs[{}], {})", pairs.length, count);
+		
+		List<AssociatedPair> retval = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			retval.add(new AssociatedPair(pairs[4*i], pairs[4*i + 1], pairs[4*i + 2], pairs[4*i + 3]));
+		}
+		return retval;
+	}
+
+	/**
+	 * BoofCV-friendly single precision flat pairs converter
+	 * 
+	 * @param pairs
+	 * 		Pairs stored one after another as {@code x1, y1, x2, y2} quadruples
+	 * @param count
+	 * 		Number of pairs
+	 * @return
+	 */
+	public static List<AssociatedPair> toAssociatedPairList(float[] pairs, int count) {
+		if(pairs == null) throw new IllegalArgumentException("pairs is null");
+		if(count < 0 || pairs.length < 4*count) throw new IllegalArgumentException("count: " + count);
+		logger.debug("toAssociatedPairList(float[{}], {})", pairs.length, count);
+		
+		List<AssociatedPair> retval = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			retval.add(new AssociatedPair(pairs[4*i], pairs[4*i + 1], pairs[4*i + 2], pairs[4*i + 3]));
+		}
+		return retval;
+	}
 }
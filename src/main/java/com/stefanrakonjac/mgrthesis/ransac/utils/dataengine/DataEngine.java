@@ -58,6 +58,18 @@ public interface DataEngine {
 	 * @throws IOException
 	 */
 	Map<String, double[][]> getImagePointsByWords(String imageName) throws NumberFormatException, IOException;
+	
+	/**
+	 * <p> Same as {@link #getImagePointsByWords(String)}, but each feature carries its affine shape: {x, y, a, b, c}, 
+	 * the ellipse being {@code a(x'-x)^2 + 2b(x'-x)(y'-y) + c(y'-y)^2 = 1}. Features of a word are in the same order 
+	 * as the points provided by {@link #getImagePointsByWords(String)}. </p>
+	 * 
+	 * @param imageName
+	 * @return
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	Map<String, double[][]> getImageShapesByWords(String imageName) throws NumberFormatException, IOException;
 
 	/**
 	 * <p> Provides {@code tf-idf} (Term Frequency to Inverse Document Frequency) measure </p>
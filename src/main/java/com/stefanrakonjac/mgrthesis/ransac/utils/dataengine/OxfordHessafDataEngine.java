@@ -161,8 +161,30 @@ public final class OxfordHessafDataEngine implements DataEngine {
 	 */
 	@Override
 	public Map<String, double[][]> getImagePointsByWords(String imageName) throws NumberFormatException, IOException {
+		return parseImage(imageName, false);
+	}
+
+	/** {@inheritDoc}
+	 */
+	@Override
+	public Map<String, double[][]> getImageShapesByWords(String imageName) throws NumberFormatException, IOException {
+		return parseImage(imageName, true);
+	}
+	
+	/**
+	 * <p> Reads the features of the image, line by line: {@code word x y a b c}, where {@code a, b, c} define the Hessian-affine ellipse 
+	 * {@code a(x'-x)^2 + 2b(x'-x)(y'-y) + c(y'-y)^2 = 1}. Features of each word keep the order of the file. </p>
+	 * 
+	 * @param imageName
+	 * 		Name of the image
+	 * @param shapes
+	 * 		{@code true} to read the points together with the ellipses ({x, y, a, b, c}), {@code false} to read the points only ({x, y})
+	 * @return
+	 * 		Returns the features of the image mapped by the words
+	 */
+	private Map<String, double[][]> parseImage(String imageName, boolean shapes) throws NumberFormatException, IOException {
 		
-		final Map<String, Set<double[]>> retvalSet = new HashMap<>();
+		final Map<String, List<double[]>> retvalList = new HashMap<>();
 		final Map<String, double[][]> retval = new HashMap<>();
 		
 		for(Object line : FileUtils.readLines(getImageFile(imageName))) {
@@ -170,22 +192,26 @@ public final class OxfordHessafDataEngine implements DataEngine {
 			final String lineStr = (String) line;
 			final String[] exploded = lineStr.split("\\s");
 			
-			if(exploded.length < 3) continue;
+			if(exploded.length < (shapes ? 6 : 3)) continue;
 			
 			final String word = exploded[0];
 			final double x = Double.parseDouble(exploded[1]);
 			final double y = Double.parseDouble(exploded[2]);
 			
-			if(!retvalSet.containsKey(word)) {
-				retvalSet.put(word, new HashSet<double[]>());
+			if(!retvalList.containsKey(word)) {
+				retvalList.put(word, new ArrayList<double[]>());
 			}
 			
-			retvalSet.get(word).add(new double[] { x, y });
+			if(shapes) {
+				retvalList.get(word).add(new double[] { x, y, Double.parseDouble(exploded[3]), Double.parseDouble(exploded[4]), Double.parseDouble(exploded[5]) });
+			} else {
+				retvalList.get(word).add(new double[] { x, y });
+			}
 		}
 		
-		// transform from set to array
-		for(String word : retvalSet.keySet()) {
-			retval.put(word, ArraysUtils.to2Ddouble(retvalSet.get(word)));
+		// transform from list to array
+		for(String word : retvalList.keySet()) {
+			retval.put(word, ArraysUtils.to2Ddouble(retvalList.get(word)));
 		}
 		
 		return retval;
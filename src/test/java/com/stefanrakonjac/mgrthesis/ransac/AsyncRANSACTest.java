@@ -0,0 +1,97 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the asynchronous runs provided by {@link RANSACFactory#submit(RANSAC, double[][], java.util.concurrent.Executor)} </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class AsyncRANSACTest {
+
+	@Test(dataProvider="ransacDP")
+	public void submitTest(RANSAC ransac) throws Exception {
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 100, 0.3, 7);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			
+			final Future<RANSACResult> future = RANSACFactory.submit(ransac.setThreshold(1).setSeed(7), tentativePairs, executor);
+			final RANSACResult result = future.get(60, TimeUnit.SECONDS);
+			
+			final RANSAC syncRansac = ransac.getClass().newInstance();
+			syncRansac.setTentativePairs(tentativePairs).setThreshold(1).setSeed(7).run();
+			
+			Assert.assertEquals(syncRansac.getInliersCount(), result.getInliersCount());
+			Assert.assertArrayEquals(syncRansac.getInlierIndices(), result.getInlierIndices());
+			Assert.assertEquals(syncRansac.isConfidenceReached(), result.isConfidenceReached());
+			
+			// result is a snapshot
+			result.getInliersMask()[0] = !result.getInliersMask()[0];
+			Assert.assertEquals(result.isInlier(0), result.getInliersMask()[0]);
+			
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * 15% of inliers would need about a million of samples, the run stops when the future is cancelled
+	 */
+	@Test(dataProvider="ransacDP")
+	public void cancelTest(RANSAC ransac) throws Exception {
+		
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		final Future<RANSACResult> future = RANSACFactory.submit(ransac.setThreshold(1), SyntheticPairs.generate(150, 850, 0.3, 7), executor);
+		Thread.sleep(100);
+		
+		Assert.assertTrue(future.cancel(false));
+		Assert.assertTrue(future.isCancelled());
+		
+		executor.shutdown();
+		Assert.assertTrue("run has not stopped", executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertFalse(ransac.isConfidenceReached());
+	}
+	
+	/**
+	 * Cancellation requested before the run has started is not lost, a request left over is withdrawn when a run is submitted
+	 */
+	@Test(dataProvider="ransacDP")
+	public void cancelBeforeRunTest(RANSAC ransac) throws Exception {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 100, 0.3, 7)).setThreshold(1).setSeed(7).collectStats(true);
+		
+		ransac.cancel();
+		ransac.run();
+		Assert.assertEquals(ransac.getStats().toString(), 0, ransac.getStats().getSamples());
+		Assert.assertFalse(ransac.isConfidenceReached());
+		
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			final RANSACResult result = RANSACFactory.submit(ransac, SyntheticPairs.generate(150, 100, 0.3, 7), executor).get(60, TimeUnit.SECONDS);
+			Assert.assertTrue(result.isConfidenceReached());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@DataProvider
+	public Object[][] ransacDP() {
+		return new Object[][] { { new LoRANSACImpl() }, { new BoofCVRANSACImpl() } };
+	}
+}
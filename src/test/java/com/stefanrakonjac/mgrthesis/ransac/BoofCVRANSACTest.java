@@ -8,6 +8,7 @@ import java.io.IOException;
 import messif.objects.impl.ObjectFeatureSet;
 
 import org.ejml.data.DenseMatrix64F;
+import org.junit.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -20,6 +21,7 @@ import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.util.DisplayUtils;
 import com.stefanrakonjac.mgrthesis.ransac.util.GroundTruth;
 import com.stefanrakonjac.mgrthesis.ransac.util.GroundTruth.GroundTruthBuilder;
 import com.stefanrakonjac.mgrthesis.ransac.util.GroundTruth.TYPE;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
 import com.stefanrakonjac.mgrthesis.ransac.utils.converters.MatrixConverter;
 import com.stefanrakonjac.mgrthesis.ransac.utils.converters.PairsConverter;
 
@@ -90,6 +92,63 @@ public class BoofCVRANSACTest extends AbstractTest {
 	}
 	
 	
+	/**
+	 * Runs of different sizes on a single thread share its pooled pairs and solvers, the results do not depend on the previous runs
+	 */
+	@Test
+	public void reuseTest() throws InterruptedException {
+
+		final double[][] small = SyntheticPairs.generate(40, 20, 0.3, 3), large = SyntheticPairs.generate(150, 100, 0.3, 4);
+
+		final RANSAC ransac = new BoofCVRANSACImpl().setThreshold(2).setSeed(1);
+		ransac.setTentativePairs(large).run();
+		ransac.setTentativePairs(small).run();
+
+		final int[] inliers = ransac.getInlierIndices().clone();
+		final double[][] geometryEstimation = ransac.getGeometryEstimation();
+
+		// same run on a fresh thread
+		final RANSAC fresh = new BoofCVRANSACImpl().setThreshold(2).setSeed(1).setTentativePairs(small);
+		final Thread thread = new Thread(fresh);
+		thread.start();
+		thread.join();
+
+		Assert.assertArrayEquals(inliers, fresh.getInlierIndices());
+		for(int i = 0; i < 3; i++) {
+			Assert.assertArrayEquals(geometryEstimation[i], fresh.getGeometryEstimation()[i], 0d);
+		}
+	}
+
+	/**
+	 * Logs the time and the memory allocated per run of the small numbers of pairs (2/3 of them inliers), the setup of the run dominates
+	 */
+	@Test(enabled=false)
+	public void smallPairsBenchmark() {
+
+		final int runs = 500;
+
+		for(int count : new int[] { 30, 60, 120, 240 }) {
+
+			final double[][] pairs = SyntheticPairs.generate(count * 2/3, count/3, 0.3, count);
+			final RANSAC ransac = new BoofCVRANSACImpl().setTentativePairs(pairs).setThreshold(2).setSeed(1);
+
+			for(int round = 0; round < 2; round++) { // first round warms up the JIT
+
+				long time = System.nanoTime(), allocated = 0, samples = 0;
+				for(int run = 0; run < runs; run++) {
+					ransac.collectStats(run % 10 == 0).run();
+					if(run % 10 == 0) {
+						allocated += ransac.getStats().getAllocatedBytes();
+						samples += ransac.getStats().getSamples();
+					}
+				}
+
+				logger.info("{} pairs, round {}: {} us per run, {} bytes allocated, {} samples", count, round, (System.nanoTime() - time) / runs / 1000,
+						allocated / (runs/10), samples / (runs/10));
+			}
+		}
+	}
+
 	private double runRANSACAndComputeAverageScore(ObjectFeatureSet ofsA, ObjectFeatureSet ofsB) {
 		double retval = 0;
 		
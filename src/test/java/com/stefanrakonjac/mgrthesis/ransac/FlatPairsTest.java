@@ -0,0 +1,113 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the flat tentative pairs input and the index/mask results of the {@link RANSAC} implementations </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class FlatPairsTest {
+	
+	private static final int INLIERS = 150;
+	private static final int OUTLIERS = 100;
+
+	@Test(dataProvider="ransacDP")
+	public void flatArrayTest(RANSAC ransac) {
+		
+		final double[] pairs = flatten(SyntheticPairs.generate(INLIERS, OUTLIERS, 0.3, 7));
+		
+		ransac.setTentativePairs(pairs, INLIERS + OUTLIERS).setThreshold(1).setBestSolutionProbability(0.99).run();
+		
+		assertResultsConsistent(ransac, pairs);
+	}
+	
+	@Test(dataProvider="ransacDP")
+	public void directBufferTest(RANSAC ransac) {
+		
+		final double[] pairs = flatten(SyntheticPairs.generate(INLIERS, OUTLIERS, 0.3, 7));
+		final DoubleBuffer buffer = ByteBuffer.allocateDirect(8*pairs.length).asDoubleBuffer();
+		buffer.put(pairs).flip();
+		
+		ransac.setTentativePairs(buffer, INLIERS + OUTLIERS).setThreshold(1).setBestSolutionProbability(0.99).run();
+		
+		Assert.assertEquals(0, buffer.position());
+		assertResultsConsistent(ransac, pairs);
+	}
+	
+	/**
+	 * Single precision pairs: the same inliers as of the double precision pairs having the same (rounded) coordinates
+	 */
+	@Test(dataProvider="singlePrecisionDP")
+	public void floatArrayTest(RANSAC ransac, RANSAC reference) {
+		
+		final double[] pairs = flatten(SyntheticPairs.generate(INLIERS, OUTLIERS, 0.3, 7));
+		final float[] floatPairs = new float[pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			floatPairs[i] = (float) pairs[i];
+			pairs[i] = floatPairs[i];
+		}
+		
+		ransac.setTentativePairs(floatPairs, INLIERS + OUTLIERS).setThreshold(1).setBestSolutionProbability(0.99).setSeed(7).run();
+		reference.setTentativePairs(pairs, INLIERS + OUTLIERS).setThreshold(1).setBestSolutionProbability(0.99).setSeed(7).run();
+		
+		assertResultsConsistent(ransac, pairs);
+		Assert.assertTrue(Arrays.equals(reference.getInliersMask(), ransac.getInliersMask()));
+		Assert.assertArrayEquals(reference.getGeometryEstimation(), ransac.getGeometryEstimation());
+	}
+	
+	@DataProvider
+	public Object[][] singlePrecisionDP() {
+		return new Object[][] { 
+				{ new LoRANSACImpl(), new LoRANSACImpl() }, 
+				{ new LoRANSACImpl().doOptimizations(false), new LoRANSACImpl().doOptimizations(false) }, 
+				{ new BoofCVRANSACImpl(), new BoofCVRANSACImpl() } 
+		};
+	}
+	
+	@DataProvider
+	public Object[][] ransacDP() {
+		return new Object[][] { { new LoRANSACImpl() }, { new BoofCVRANSACImpl() } };
+	}
+	
+	private static void assertResultsConsistent(RANSAC ransac, double[] pairs) {
+		
+		final boolean[] mask = ransac.getInliersMask();
+		final int[] indices = ransac.getInlierIndices();
+		final double[][] inliers = ransac.getInliers();
+		final double[][] outliers = ransac.getOutliers();
+		
+		Assert.assertEquals(INLIERS + OUTLIERS, mask.length);
+		Assert.assertEquals(ransac.getInliersCount(), indices.length);
+		Assert.assertEquals(ransac.getInliersCount(), inliers.length);
+		Assert.assertEquals(mask.length - ransac.getInliersCount(), outliers.length);
+		Assert.assertTrue("too few inliers: " + indices.length, indices.length > INLIERS / 2);
+		
+		for(int i = 0; i < indices.length; i++) {
+			Assert.assertTrue(mask[indices[i]]);
+			for(int j = 0; j < 4; j++) {
+				Assert.assertEquals(pairs[4*indices[i] + j], inliers[i][j], 0d);
+			}
+		}
+	}
+	
+	private static double[] flatten(double[][] pairs) {
+		
+		final double[] retval = new double[4*pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			System.arraycopy(pairs[i], 0, retval, 4*i, 4);
+		}
+		return retval;
+	}
+}
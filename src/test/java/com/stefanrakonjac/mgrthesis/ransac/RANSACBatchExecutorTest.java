@@ -0,0 +1,314 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.Batch;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.Job;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.JobFuture;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the batches of the runs provided by {@link RANSACBatchExecutor} </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class RANSACBatchExecutorTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(RANSACBatchExecutorTest.class);
+
+	private static final int JOBS = 24;
+
+	/**
+	 * Results of the reused instances are the same as the ones of the fresh instances, all the jobs are provided once
+	 */
+	@Test
+	public void batchTest() throws Exception {
+
+		final List<Job> jobs = new ArrayList<>();
+		for(int i = 0; i < JOBS; i++) {
+			// the image pairs differ in size, so that the buffers of the reused instances are both grown and reused
+			jobs.add(new Job("image_" + i, SyntheticPairs.generate(50 + 10*(i % 7), 20 + 15*(i % 5), 0.3, i)).setThreshold(1).setSeed(i).collectStats(true));
+		}
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getLoRANSACOnImpl();
+			}
+		}, 3);
+
+		try {
+
+			final Batch batch = executor.submit(jobs);
+			Assert.assertEquals(JOBS, batch.size());
+
+			final Set<String> names = new HashSet<>();
+			while(batch.hasNext()) {
+
+				final JobFuture future = batch.take();
+				Assert.assertTrue(future.isDone());
+				Assert.assertTrue("job provided twice: " + future.getJob(), names.add(future.getJob().getName()));
+
+				final RANSACResult result = future.get();
+				final Job job = future.getJob();
+
+				final RANSAC ransac = RANSACFactory.getLoRANSACOnImpl();
+				ransac.setTentativePairs(job.getPairs(), job.getCount()).setThreshold(1).setSeed(Integer.parseInt(job.getName().substring(6))).run();
+
+				Assert.assertArrayEquals(job.getName(), ransac.getInlierIndices(), result.getInlierIndices());
+				Assert.assertNotNull(result.getStats());
+			}
+
+			Assert.assertEquals(JOBS, names.size());
+			Assert.assertTrue(batch.isDone());
+			Assert.assertEquals(JOBS, executor.getVerifiedJobs());
+			Assert.assertEquals(batch.getPairs(), executor.getVerifiedPairs());
+			Assert.assertTrue(batch.getThroughput() > 0);
+
+			logger.info("{} tentative pairs verified, {} pairs/s", batch.getPairs(), batch.getThroughput());
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void failedJobTest() throws Exception {
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getAffineVerifierImpl();
+			}
+		}, 1);
+
+		try {
+
+			// affine verifier requires the shapes
+			final List<Job> jobs = new ArrayList<>();
+			jobs.add(new Job("no shapes", SyntheticPairs.generate(50, 50, 0.3, 1)));
+
+			final Batch batch = executor.submit(jobs);
+
+			try {
+				batch.take().get();
+				Assert.fail("job should have failed");
+			} catch (ExecutionException ex) {
+				Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+			}
+
+			Assert.assertFalse(batch.hasNext());
+			Assert.assertEquals(0, executor.getVerifiedJobs());
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The shapes are used by the affine verifier only, the job having them fails on the other implementations
+	 */
+	@Test
+	public void unusedShapesJobTest() throws Exception {
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getLoRANSACOnImpl();
+			}
+		}, 1);
+
+		try {
+
+			final Batch batch = executor.submit(Collections.singletonList(new Job("shapes", SyntheticPairs.generate(50, 50, 0.3, 1)).setShapes(new double[6*100])));
+
+			try {
+				batch.take().get();
+				Assert.fail("job should have failed");
+			} catch (ExecutionException ex) {
+				Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+			}
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * 15% of inliers would need about a million of samples, the runs stop when the batch is cancelled
+	 */
+	@Test
+	public void cancelTest() throws Exception {
+
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 850, 0.3, 7);
+
+		final List<Job> jobs = new ArrayList<>();
+		for(int i = 0; i < 4; i++) {
+			jobs.add(new Job("image_" + i, tentativePairs).setThreshold(1));
+		}
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getLoRANSACOnImpl();
+			}
+		}, 2);
+
+		final Batch batch = executor.submit(jobs);
+		Thread.sleep(100);
+		batch.cancel();
+
+		for(int i = 0; i < jobs.size(); i++) {
+
+			final JobFuture future = batch.take();
+			Assert.assertTrue(future.isCancelled());
+
+			try {
+				future.get();
+				Assert.fail("job should have been cancelled");
+			} catch (CancellationException ex) {
+				// expected
+			}
+		}
+
+		executor.shutdown();
+		Assert.assertTrue("runs have not stopped", executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * The job cancelled while running stops early, it is not counted as verified
+	 */
+	@Test
+	public void cancelledJobCountersTest() throws Exception {
+
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 850, 0.3, 7);
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getLoRANSACOnImpl();
+			}
+		}, 1);
+
+		final Batch batch = executor.submit(Collections.singletonList(new Job("long", tentativePairs).setThreshold(1)));
+		Thread.sleep(100);
+		batch.cancel();
+
+		Assert.assertTrue(batch.take().isCancelled());
+
+		executor.shutdown();
+		Assert.assertTrue("run has not stopped", executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		Assert.assertEquals(0, executor.getVerifiedJobs());
+		Assert.assertEquals(0, executor.getVerifiedPairs());
+		Assert.assertEquals(0d, executor.getThreadThroughput(), 0d);
+		Assert.assertEquals(0d, batch.getThroughput(), 0d);
+	}
+
+	/**
+	 * The first job finishes while it is being cancelled, the next job run by the same instance must not be stopped by the late cancellation
+	 */
+	@Test
+	public void lateCancelTest() throws Exception {
+
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 100, 0.3, 7);
+		final LateCancelRANSAC ransac = new LateCancelRANSAC();
+
+		final RANSACBatchExecutor executor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return ransac;
+			}
+		}, 1);
+
+		try {
+
+			final Batch first = executor.submit(Collections.singletonList(new Job("first", tentativePairs).setThreshold(1)));
+			final Batch second = executor.submit(Collections.singletonList(new Job("second", tentativePairs).setThreshold(1)));
+
+			Assert.assertTrue(ransac.firstRunStarted.await(5, TimeUnit.SECONDS));
+			first.cancel();
+
+			Assert.assertTrue(first.take().isCancelled());
+			Assert.assertTrue(second.take().get().isConfidenceReached());
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void invalidThreadsTest() {
+
+		RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+
+			@Override
+			public RANSAC newInstance() {
+				return RANSACFactory.getLoRANSACOnImpl();
+			}
+		}, 0);
+	}
+
+	/**
+	 * <p> Instance asked to stop only after its next run has started, its first run takes a while (see {@link #lateCancelTest()}) </p>
+	 */
+	private static final class LateCancelRANSAC extends LoRANSACImpl {
+
+		private final CountDownLatch firstRunStarted = new CountDownLatch(1);
+		private final CountDownLatch secondRunStarted = new CountDownLatch(1);
+		private final CountDownLatch cancelRequested = new CountDownLatch(1);
+		private int runs;
+
+		@Override
+		public void run() {
+
+			try {
+				if(++runs == 1) {
+					firstRunStarted.countDown();
+					Thread.sleep(300);
+				} else {
+					secondRunStarted.countDown();
+					cancelRequested.await(1, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+			super.run();
+		}
+
+		@Override
+		public void cancel() {
+
+			try {
+				secondRunStarted.await(1, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+			super.cancel();
+			cancelRequested.countDown();
+		}
+	}
+}
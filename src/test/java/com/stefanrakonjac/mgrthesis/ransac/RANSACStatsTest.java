@@ -0,0 +1,116 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the statistics provided by the {@link RANSAC} implementations </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class RANSACStatsTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(RANSACStatsTest.class);
+
+	@Test(dataProvider="ransacDP")
+	public void statsTest(RANSAC ransac) {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 100, 0.3, 7)).setThreshold(1).setBestSolutionProbability(0.99).setSeed(7).collectStats(true).run();
+		
+		final RANSACStats stats = ransac.getStats();
+		logger.info("{}: {}", ransac.name(), stats);
+		
+		Assert.assertNotNull(stats);
+		Assert.assertTrue(stats.getSamples() > 0);
+		Assert.assertTrue(stats.getHypotheses() >= stats.getOrientationRejections() + stats.getRejectedHypotheses());
+		Assert.assertTrue(stats.getDegenerateSamples() <= stats.getSamples());
+		Assert.assertTrue(stats.getSamples() >= stats.getIterationBound() || stats.getSamples() == RANSAC.D_MAX_ITERATIONS);
+		Assert.assertTrue(stats.getTime() > 0);
+		Assert.assertTrue(stats.getSolverTime() + stats.getVerificationTime() + stats.getLocalOptimizationTime() <= stats.getTime());
+		Assert.assertTrue(stats.getLeastSquaresTime() <= stats.getLocalOptimizationTime());
+		
+		// scores are getting better, the last one is the result
+		final int[] inliers = stats.getBestScoreInliers();
+		final int[] samples = stats.getBestScoreSamples();
+		Assert.assertEquals(inliers.length, samples.length);
+		Assert.assertTrue(inliers.length > 0);
+		for(int i = 1; i < inliers.length; i++) {
+			Assert.assertTrue(inliers[i - 1] < inliers[i]);
+			Assert.assertTrue(samples[i - 1] <= samples[i]);
+		}
+		Assert.assertEquals(ransac.getInliersCount(), inliers[inliers.length - 1]);
+	}
+	
+	/**
+	 * The workers of a parallel run grow their workspaces for a size not seen before on the threads of the pool while the calling thread
+	 * has its workspace grown already, the allocations of the pool threads are part of the run statistics
+	 */
+	@Test
+	public void parallelAllocatedBytesTest() {
+		
+		final int pairs = 6007;
+		final RANSAC ransac = new LoRANSACImpl().setTentativePairs(SyntheticPairs.generate(1507, pairs - 1507, 0.3, 7))
+												.setThreshold(1)
+												.setMaxIterations(50)
+												.doOptimizations(false)
+												.collectStats(true);
+		
+		// the single worker runs on the calling thread, its workspace is grown here
+		ransac.setParallelism(1).run();
+		ransac.setParallelism(4).run();
+		
+		final RANSACStats stats = ransac.getStats();
+		logger.info("{}: {}", ransac.name(), stats);
+		
+		if(stats.getAllocatedBytes() >= 0) {
+			// at least the verification buffer of a single worker
+			Assert.assertTrue("allocated bytes: " + stats.getAllocatedBytes(), stats.getAllocatedBytes() >= 9L*8*pairs);
+		}
+	}
+	
+	/**
+	 * Statistics of the result are a copy of the ones of the run, not affected by the following runs
+	 */
+	@Test(dataProvider="ransacDP")
+	public void resultStatsTest(RANSAC ransac) {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 100, 0.3, 7)).setThreshold(1).setSeed(7).collectStats(true).run();
+		
+		final RANSACStats expected = ransac.getStats();
+		final RANSACStatsSnapshot stats = new RANSACResult(ransac).getStats();
+		
+		Assert.assertEquals(expected.getSamples(), stats.getSamples());
+		Assert.assertEquals(expected.getHypotheses(), stats.getHypotheses());
+		Assert.assertEquals(expected.getLocalOptimizations(), stats.getLocalOptimizations());
+		Assert.assertEquals(expected.getTime(), stats.getTime());
+		Assert.assertArrayEquals(expected.getBestScoreInliers(), stats.getBestScoreInliers());
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 300, 0.3, 7)).run();
+		Assert.assertNotEquals(ransac.getStats().getSamples(), stats.getSamples());
+		
+		// the arrays provided are copies
+		stats.getBestScoreInliers()[0] = -1;
+		Assert.assertArrayEquals(expected.getBestScoreInliers(), stats.getBestScoreInliers());
+	}
+	
+	@Test(dataProvider="ransacDP")
+	public void noStatsTest(RANSAC ransac) {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 100, 0.3, 7)).setThreshold(1).run();
+		
+		Assert.assertNull(ransac.getStats());
+	}
+	
+	@DataProvider
+	public Object[][] ransacDP() {
+		return new Object[][] { { new LoRANSACImpl() }, { new BoofCVRANSACImpl() } };
+	}
+}
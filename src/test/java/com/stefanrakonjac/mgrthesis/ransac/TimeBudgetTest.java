@@ -0,0 +1,64 @@
+package com.stefanrakonjac.mgrthesis.ransac;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the time-budgeted runs of the {@link RANSAC} implementations </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class TimeBudgetTest {
+	
+	private static final long TIME_BUDGET = TimeUnit.MILLISECONDS.toNanos(50);
+	
+	/** tolerance for the iterations in progress and the final model refinement */
+	private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(500);
+
+	/**
+	 * 15% of inliers would need about a million of samples, so the budget gets exhausted
+	 */
+	@Test(dataProvider="ransacDP")
+	public void budgetExhaustedTest(RANSAC ransac) {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 850, 0.3, 7)).setThreshold(1).setBestSolutionProbability(0.99).setTimeBudget(TIME_BUDGET);
+		
+		final long startTime = System.nanoTime();
+		ransac.run();
+		final long time = System.nanoTime() - startTime;
+		
+		Assert.assertTrue("run took " + time + " ns", time < TIME_BUDGET + TOLERANCE);
+		Assert.assertFalse(ransac.isConfidenceReached());
+		Assert.assertTrue("confidence: " + ransac.getConfidence(), ransac.getConfidence() < 0.99);
+		Assert.assertEquals(1000, ransac.getInliersMask().length);
+	}
+	
+	@Test(dataProvider="ransacDP")
+	public void confidenceReachedTest(RANSAC ransac) {
+		
+		ransac.setTentativePairs(SyntheticPairs.generate(150, 50, 0.3, 7)).setThreshold(1).setBestSolutionProbability(0.99).setTimeBudget(TimeUnit.SECONDS.toNanos(60));
+		ransac.run();
+		
+		Assert.assertTrue(ransac.isConfidenceReached());
+		Assert.assertTrue("confidence: " + ransac.getConfidence(), ransac.getConfidence() >= 0.98);
+		Assert.assertTrue("too few inliers: " + ransac.getInliersCount(), ransac.getInliersCount() > 75);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void negativeBudgetTest() {
+		new LoRANSACImpl().setTimeBudget(-1);
+	}
+	
+	@DataProvider
+	public Object[][] ransacDP() {
+		return new Object[][] { { new LoRANSACImpl() }, { new BoofCVRANSACImpl() } };
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.AbstractTest;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACFactory;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.utils.PointsMatcherUtils;
+import com.stefanrakonjac.mgrthesis.ransac.utils.dataengine.DataEngine;
+import com.stefanrakonjac.mgrthesis.ransac.utils.dataengine.DataEngineFactory.InitializationException;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class AffineVerifierTest extends AbstractTest {
+
+	private static final int INLIERS = 40;
+	private static final int OUTLIERS = 160;
+
+	/** affine transformation of the inliers, keeping the vertical direction */
+	private static final double[] AFFINE = { 0.9, 0, 35, 0.15, 1.1, -20 };
+
+	@Test
+	public void affineVerifierTest() {
+
+		final double[] shapes = new double[6*(INLIERS + OUTLIERS)];
+		final double[][] tentativePairs = affinePairs(shapes);
+
+		final RANSAC ransac = newRansac(tentativePairs, shapes);
+		ransac.run();
+
+		logger.info("Affine verifier: {}", ransac.getStats());
+
+		int found = 0;
+		for(int index : ransac.getInlierIndices()) {
+			if(index < INLIERS) found++;
+		}
+
+		Assert.assertTrue("inliers found: " + found + " out of " + INLIERS, found >= INLIERS * 9 / 10);
+		Assert.assertTrue(ransac.getInliersCount() - found <= 2);
+		Assert.assertTrue(ransac.isConfidenceReached());
+		Assert.assertEquals(INLIERS + OUTLIERS, ransac.getStats().getSamples());
+
+		final double[][] a = ransac.getGeometryEstimation();
+		Assert.assertEquals(AFFINE[0], a[0][0], 0.01);
+		Assert.assertEquals(AFFINE[1], a[0][1], 0.01);
+		Assert.assertEquals(AFFINE[3], a[1][0], 0.01);
+		Assert.assertEquals(AFFINE[4], a[1][1], 0.01);
+		Assert.assertEquals(0d, a[2][0], 0d);
+		Assert.assertEquals(0d, a[2][1], 0d);
+		Assert.assertEquals(1d, a[2][2], 0d);
+	}
+
+	@Test
+	public void deterministicTest() {
+
+		final double[] shapes = new double[6*(INLIERS + OUTLIERS)];
+		final double[][] tentativePairs = affinePairs(shapes);
+
+		final RANSAC first = newRansac(tentativePairs, shapes).setSeed(1);
+		first.run();
+
+		final RANSAC second = newRansac(tentativePairs, shapes).setSeed(2);
+		second.run();
+
+		Assert.assertArrayEquals(first.getInlierIndices(), second.getInlierIndices());
+		for(int i = 0; i < 3; i++) {
+			Assert.assertArrayEquals(first.getGeometryEstimation()[i], second.getGeometryEstimation()[i], 0d);
+		}
+	}
+
+	@Test(expectedExceptions=IllegalStateException.class)
+	public void missingShapesTest() {
+
+		final double[][] tentativePairs = affinePairs(new double[6*(INLIERS + OUTLIERS)]);
+		RANSACFactory.getAffineVerifierImpl().setTentativePairs(tentativePairs).run();
+	}
+
+	@Test(enabled=false)
+	public void affineVerifierHessafBenchmark() throws InitializationException, IOException {
+
+		final DataEngine dataEngine = getOxfordHessafDE(false);
+
+		final Map<String, double[][]> imageA = dataEngine.getImageShapesByWords("all_souls_000013");
+		final Map<String, double[][]> imageB = dataEngine.getImageShapesByWords("all_souls_000026");
+
+		final double[][] tentativePairs = PointsMatcherUtils.computeMatchesFromWords(imageA, imageB);
+		final double[] shapes = PointsMatcherUtils.computeMatchShapesFromWords(imageA, imageB);
+
+		for(RANSAC ransac : new RANSAC[] { RANSACFactory.getAffineVerifierImpl().setShapes(shapes), RANSACFactory.getLoRANSACHomographyImpl(), RANSACFactory.getLoRANSACOnImpl() }) {
+
+			ransac.setTentativePairs(tentativePairs).setThreshold(2).collectStats(true).run();
+
+			final RANSACStats stats = ransac.getStats();
+			logger.info("{}: inliers {} out of {}, hypotheses {}, time {}ms", ransac.name(), ransac.getInliersCount(), tentativePairs.length,
+					stats.getHypotheses(), stats.getTime() / 1000000);
+		}
+	}
+
+	/**
+	 * Inliers come first: points mapped by {@link #AFFINE} with their ellipses, outliers random points with random ellipses
+	 */
+	private static double[][] affinePairs(double[] shapes) {
+
+		final Random random = new Random(23);
+		final double[][] pairs = new double[INLIERS + OUTLIERS][];
+
+		// inverse of the 2 x 2 part
+		final double det = AFFINE[0]*AFFINE[4] - AFFINE[1]*AFFINE[3];
+		final double i0 = AFFINE[4]/det, i1 = -AFFINE[1]/det, i3 = -AFFINE[3]/det, i4 = AFFINE[0]/det;
+
+		for(int i = 0; i < pairs.length; i++) {
+
+			final double x = random.nextDouble()*1000, y = random.nextDouble()*1000;
+
+			// random ellipse: axes 2 to 10 pixels, random orientation
+			final double angle = random.nextDouble()*Math.PI, l1 = 1/Math.pow(2 + 8*random.nextDouble(), 2), l2 = 1/Math.pow(2 + 8*random.nextDouble(), 2);
+			final double cos = Math.cos(angle), sin = Math.sin(angle);
+			final double a = l1*cos*cos + l2*sin*sin, b = (l1 - l2)*cos*sin, c = l1*sin*sin + l2*cos*cos;
+
+			shapes[6*i] = a;
+			shapes[6*i + 1] = b;
+			shapes[6*i + 2] = c;
+
+			if(i < INLIERS) {
+
+				pairs[i] = new double[] { x, y, AFFINE[0]*x + AFFINE[1]*y + AFFINE[2] + random.nextGaussian()*0.3, AFFINE[3]*x + AFFINE[4]*y + AFFINE[5] + random.nextGaussian()*0.3 };
+
+				// E2 = A^-T E1 A^-1
+				final double ea = a*i0 + b*i3, eb = a*i1 + b*i4, ec = b*i0 + c*i3, ed = b*i1 + c*i4;
+				shapes[6*i + 3] = i0*ea + i3*ec;
+				shapes[6*i + 4] = i0*eb + i3*ed;
+				shapes[6*i + 5] = i1*eb + i4*ed;
+
+			} else {
+
+				pairs[i] = new double[] { x, y, random.nextDouble()*1000, random.nextDouble()*1000 };
+
+				System.arraycopy(shapes, 6*i, shapes, 6*i + 3, 3);
+			}
+		}
+
+		return pairs;
+	}
+
+	private static RANSAC newRansac(double[][] tentativePairs, double[] shapes) {
+
+		return RANSACFactory.getAffineVerifierImpl().setShapes(shapes)
+													 .setTentativePairs(tentativePairs)
+													 .setThreshold(2)
+													 .collectStats(true);
+	}
+}
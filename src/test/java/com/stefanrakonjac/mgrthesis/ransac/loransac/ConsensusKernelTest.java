@@ -0,0 +1,331 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.exFDs;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.exFDsScatter;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fds;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.fdsInliers;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrixN;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.inlierIndices;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.covMat;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.normu;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl.Score;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the fused consensus kernel against the errors and the score computed separately </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class ConsensusKernelTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ConsensusKernelTest.class);
+	
+	private static final double THRESHOLD = 10000;
+
+	@Test
+	public void fdsInliersTest() {
+		
+		final double[][] pairs = SyntheticPairs.generate(100, 100, 0.3, 9);
+		final int length = pairs.length;
+		
+		final double[] u = new double[6*length];
+		for(int i = 0; i < length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+		
+		final XorShiftRandom random = new XorShiftRandom(3);
+		final double[] f = new double[9];
+		final double[] expected = new double[length], actual = new double[length];
+		final int[] inliers = new int[length];
+		
+		for(int model = 0; model < 100; model++) {
+			
+			for(int i = 0; i < 9; i++) {
+				f[i] = random.nextDouble() - 0.5;
+			}
+			
+			fds(u, f, expected, length);
+			final Score score = inlierIndices(expected, length, THRESHOLD, inliers, new Score());
+			
+			// the same count if not bailed out
+			Assert.assertEquals(score.getInliers(), fdsInliers(u, f, actual, length, THRESHOLD, -1));
+			Assert.assertArrayEquals(expected, actual, 0d);
+			
+			// bail out iff the count would not exceed the best one
+			Assert.assertEquals(score.getInliers(), fdsInliers(u, f, actual, length, THRESHOLD, score.getInliers() - 1));
+			Assert.assertEquals(-1, fdsInliers(u, f, actual, length, THRESHOLD, score.getInliers()));
+		}
+	}
+	
+	/**
+	 * Structure-of-arrays kernels compute the same errors, weights and counts as the interleaved ones (lengths not multiple of the blocks)
+	 */
+	@Test
+	public void structureOfArraysTest() {
+		
+		final double[][] pairs = SyntheticPairs.generate(400, 313, 0.3, 4);
+		final int length = pairs.length;
+		
+		final double[] u = new double[6*length];
+		final double[] x1 = new double[length], y1 = new double[length], x2 = new double[length], y2 = new double[length];
+		serialize(pairs, u, x1, y1, x2, y2);
+		
+		final XorShiftRandom random = new XorShiftRandom(5);
+		final double[] f = new double[9];
+		final double[] expected = new double[length], actual = new double[length];
+		final double[] expectedWeights = new double[length], actualWeights = new double[length];
+		
+		for(int model = 0; model < 100; model++) {
+			
+			for(int i = 0; i < 9; i++) {
+				f[i] = random.nextDouble() - 0.5;
+			}
+			
+			fds(u, f, expected, length);
+			fds(x1, y1, x2, y2, f, actual, length);
+			Assert.assertArrayEquals(expected, actual, 0d);
+			
+			exFDs(u, f, expected, expectedWeights, length);
+			exFDs(x1, y1, x2, y2, f, actual, actualWeights, length);
+			Assert.assertArrayEquals(expected, actual, 0d);
+			Assert.assertArrayEquals(expectedWeights, actualWeights, 0d);
+			
+			// any best, the same count or bail out
+			for(int best = -1; best <= length; best += 37) {
+				Assert.assertEquals(fdsInliers(u, f, expected, length, THRESHOLD, best), fdsInliers(x1, y1, x2, y2, f, actual, length, THRESHOLD, best));
+			}
+		}
+	}
+	
+	/**
+	 * Fused reweighted least squares step against its passes done separately: errors and weights, scores by both the thresholds, 
+	 * inliers by the wider one and {@code covMat} of their weighted rows
+	 */
+	@Test
+	public void exFDsScatterTest() {
+		
+		final double[][] pairs = SyntheticPairs.generate(400, 313, 0.3, 4);
+		final int length = pairs.length;
+		
+		final double[] u = new double[6*length];
+		final double[] x1 = new double[length], y1 = new double[length], x2 = new double[length], y2 = new double[length];
+		serialize(pairs, u, x1, y1, x2, y2);
+		
+		final int[] all = new int[length];
+		for(int i = 0; i < length; i++) {
+			all[i] = i;
+		}
+		
+		final double[] z = new double[9*length], a1 = new double[3], a2 = new double[3];
+		normu(u, all, length, a1, a2);
+		lineariseFundamentalMatrixN(u, z, all, length, a1, a2);
+		
+		final XorShiftRandom random = new XorShiftRandom(6);
+		final double[] f = new double[9], weighted = new double[9*length];
+		final double[] expected = new double[length], actual = new double[length];
+		final double[] expectedWeights = new double[length], actualWeights = new double[length];
+		final double[] expectedCv = new double[81], actualCv = new double[81];
+		final int[] expectedInliers = new int[length], actualInliers = new int[length];
+		final Score expectedScore = new Score(), actualScore = new Score(), expectedInliersScore = new Score(), actualInliersScore = new Score();
+		
+		for(int model = 0; model < 100; model++) {
+			
+			for(int i = 0; i < 9; i++) {
+				f[i] = random.nextDouble() - 0.5;
+			}
+			
+			final double threshold = model % 10 == 0 ? 0 : THRESHOLD, thresholds = (1 + model % 4) * THRESHOLD;
+			
+			exFDs(x1, y1, x2, y2, f, expected, expectedWeights, length);
+			inlierIndices(expected, length, threshold, expectedInliers, expectedScore);
+			inlierIndices(expected, length, thresholds, expectedInliers, expectedInliersScore);
+			
+			final int count = expectedInliersScore.getInliers();
+			for(int i = 0; i < count; i++) {
+				for(int j = 0; j < 9; j++) {
+					weighted[9*i + j] = expectedWeights[expectedInliers[i]] * z[9*expectedInliers[i] + j];
+				}
+			}
+			covMat(expectedCv, weighted, count, 9);
+			
+			exFDsScatter(x1, y1, x2, y2, z, f, actual, actualWeights, length, threshold, actualScore, thresholds, actualInliers, actualInliersScore, actualCv);
+			
+			Assert.assertArrayEquals(expected, actual, 0d);
+			Assert.assertArrayEquals(expectedWeights, actualWeights, 0d);
+			Assert.assertEquals(expectedScore.getInliers(), actualScore.getInliers());
+			Assert.assertEquals(expectedScore.getError(), actualScore.getError(), 0d);
+			Assert.assertEquals(count, actualInliersScore.getInliers());
+			Assert.assertEquals(expectedInliersScore.getError(), actualInliersScore.getError(), 0d);
+			for(int i = 0; i < count; i++) {
+				Assert.assertEquals(expectedInliers[i], actualInliers[i]);
+			}
+			for(int i = 0; i < 81; i++) {
+				Assert.assertEquals(expectedCv[i], actualCv[i], 1e-12 * (1 + Math.abs(expectedCv[i])));
+			}
+		}
+	}
+	
+	/**
+	 * Logs the time per correspondence of the interleaved and the structure-of-arrays kernels, from 100 to 1M correspondences
+	 */
+	@Test(enabled=false)
+	public void kernelBenchmark() {
+		
+		final XorShiftRandom random = new XorShiftRandom(1);
+		final double[] f = new double[9];
+		for(int i = 0; i < 9; i++) {
+			f[i] = random.nextDouble() - 0.5;
+		}
+		
+		for(int length = 100; length <= 1000000; length *= 10) {
+			
+			final double[][] pairs = SyntheticPairs.generate(length / 2, length - length / 2, 0.3, length);
+			final double[] u = new double[6*length];
+			final double[] x1 = new double[length], y1 = new double[length], x2 = new double[length], y2 = new double[length];
+			serialize(pairs, u, x1, y1, x2, y2);
+			
+			final double[] p = new double[length], w = new double[length];
+			final int runs = Math.max(20, 50000000 / length);
+			double sink = 0;
+			
+			for(int round = 0; round < 3; round++) { // first rounds warm up the JIT
+				
+				long time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					fds(u, f, p, length);
+					sink += p[r % length];
+				}
+				final long fds = System.nanoTime() - time;
+				
+				time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					fds(x1, y1, x2, y2, f, p, length);
+					sink += p[r % length];
+				}
+				final long fdsSoA = System.nanoTime() - time;
+				
+				time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					exFDs(u, f, p, w, length);
+					sink += w[r % length];
+				}
+				final long exFDs = System.nanoTime() - time;
+				
+				time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					exFDs(x1, y1, x2, y2, f, p, w, length);
+					sink += w[r % length];
+				}
+				final long exFDsSoA = System.nanoTime() - time;
+				
+				final double n = (double) runs * length;
+				logger.info(String.format("n = %d, round %d: fds %.2f / %.2f ns, exFDs %.2f / %.2f ns per pair (interleaved / structure of arrays) (%s)", 
+						length, round, fds / n, fdsSoA / n, exFDs / n, exFDsSoA / n, sink));
+			}
+		}
+	}
+	
+	/**
+	 * Logs the time of a reweighted least squares step (without the eigen solver) of 1000 to 100k correspondences: the separate passes of 
+	 * {@code iterF} ({@code exFDs}, {@code inlierIndices} twice, the weighted rows and {@code covMat} of the inliers) and the fused kernel
+	 */
+	@Test(enabled=false)
+	public void exFDsScatterBenchmark() {
+		
+		for(int length = 1000; length <= 100000; length *= 10) {
+			
+			final double[][] pairs = SyntheticPairs.generate(length / 2, length - length / 2, 0.3, length);
+			final double[] u = new double[6*length];
+			final double[] x1 = new double[length], y1 = new double[length], x2 = new double[length], y2 = new double[length];
+			serialize(pairs, u, x1, y1, x2, y2);
+			
+			final int[] all = new int[length];
+			for(int i = 0; i < length; i++) {
+				all[i] = i;
+			}
+			
+			final double[] z = new double[9*length], weighted = new double[9*length], a1 = new double[3], a2 = new double[3];
+			normu(u, all, length, a1, a2);
+			lineariseFundamentalMatrixN(u, z, all, length, a1, a2);
+			
+			// random model, thresholds by the quantiles of its errors: a quarter and a half of the pairs are inliers
+			final XorShiftRandom random = new XorShiftRandom(2);
+			final int[] inliers = new int[length];
+			final double[] f = new double[9], cv = new double[81], p = new double[length], w = new double[length];
+			for(int i = 0; i < 9; i++) {
+				f[i] = random.nextDouble() - 0.5;
+			}
+			
+			fds(x1, y1, x2, y2, f, p, length);
+			final double[] sorted = Arrays.copyOf(p, length);
+			Arrays.sort(sorted);
+			final double threshold = sorted[length / 4], thresholds = sorted[length / 2];
+			
+			final Score score = new Score(), inliersScore = new Score();
+			final int runs = Math.max(20, 20000000 / length);
+			double sink = 0;
+			
+			for(int round = 0; round < 3; round++) { // first rounds warm up the JIT
+				
+				long time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					
+					exFDs(x1, y1, x2, y2, f, p, w, length);
+					inlierIndices(p, length, threshold, inliers, score);
+					inlierIndices(p, length, thresholds, inliers, inliersScore);
+					
+					final int count = inliersScore.getInliers();
+					for(int i = 0; i < count; i++) {
+						for(int j = 0; j < 9; j++) {
+							weighted[9*i + j] = w[inliers[i]] * z[9*inliers[i] + j];
+						}
+					}
+					covMat(cv, weighted, count, 9);
+					sink += cv[r % 81];
+				}
+				final long separate = System.nanoTime() - time;
+				
+				time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+					exFDsScatter(x1, y1, x2, y2, z, f, p, w, length, threshold, score, thresholds, inliers, inliersScore, cv);
+					sink += cv[r % 81];
+				}
+				final long fused = System.nanoTime() - time;
+				
+				final double n = (double) runs * length;
+				logger.info(String.format("n = %d, round %d, %d inliers: separate %.2f ns, fused %.2f ns per pair (%s)", 
+						length, round, inliersScore.getInliers(), separate / n, fused / n, sink));
+			}
+		}
+	}
+	
+	private static void serialize(final double[][] pairs, final double[] u, final double[] x1, final double[] y1, final double[] x2, final double[] y2) {
+		
+		for(int i = 0; i < pairs.length; i++) {
+			u[6*i] = x1[i] = pairs[i][0];
+			u[6*i + 1] = y1[i] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = x2[i] = pairs[i][2];
+			u[6*i + 4] = y2[i] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.invertIntrinsics;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ETools.normalise;
+
+import org.junit.Assert;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.AbstractTest;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACFactory;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FivePointSolver;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class EssentialTest extends AbstractTest {
+
+	private static final int INLIERS = 150;
+	private static final int OUTLIERS = 350;
+
+	/**
+	 * Noise-free minimal samples, the true essential matrix is one of the solutions
+	 */
+	@Test
+	public void fivePointSolverTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(500, 0, 0, 3));
+		final double[] n = new double[u.length], inverse = new double[9], expected = SyntheticPairs.essential();
+		invertIntrinsics(SyntheticPairs.intrinsics(), inverse);
+		normalise(u, 500, inverse, inverse, n);
+
+		final FivePointSolver solver = new FivePointSolver();
+		final double[][] es = new double[FivePointSolver.MAX_SOLUTIONS][9];
+
+		for(int offset = 0; offset + 5 <= 500; offset += 5) {
+
+			final int solutions = solver.solve(n, new int[] { offset, offset + 1, offset + 2, offset + 3, offset + 4 }, 0, es);
+
+			double best = 0;
+			for(int i = 0; i < solutions; i++) {
+
+				double dot = 0;
+				for(int k = 0; k < 9; k++) {
+					dot += es[i][k] * expected[k];
+				}
+				best = Math.max(best, Math.abs(dot));
+			}
+
+			Assert.assertEquals("sample " + offset / 5 + ", solutions: " + solutions, 1d, best, 1e-8);
+		}
+	}
+
+	@Test
+	public void essentialTest() {
+
+		final double[][] tentativePairs = pairs(INLIERS, OUTLIERS);
+
+		final RANSAC ransac = newRansac(essential(), tentativePairs);
+		ransac.run();
+
+		logger.info("Essential: {}", ransac.getStats());
+
+		// few random outliers may happen to be consistent with the model
+		int found = 0;
+		for(int index : ransac.getInlierIndices()) {
+			if(index < INLIERS) found++;
+		}
+
+		Assert.assertTrue("inliers found: " + found + " out of " + INLIERS, found >= INLIERS * 9 / 10);
+		Assert.assertTrue(ransac.getInliersCount() - found < OUTLIERS / 20);
+		Assert.assertTrue(ransac.isConfidenceReached());
+		Assert.assertTrue(ransac.getStats().getLocalOptimizations() > 0);
+
+		// estimated fundamental matrix is the one of the true essential matrix, K^-T E K^-1
+		final double[][] f = ransac.getGeometryEstimation();
+		for(double[] pair : SyntheticPairs.generate(20, 0, 0, 11)) {
+
+			final double lx = f[0][0]*pair[0] + f[0][1]*pair[1] + f[0][2];
+			final double ly = f[1][0]*pair[0] + f[1][1]*pair[1] + f[1][2];
+			final double lw = f[2][0]*pair[0] + f[2][1]*pair[1] + f[2][2];
+
+			// distance of the second point to its epipolar line, within the threshold (few outliers consistent with the model bias the fit)
+			Assert.assertEquals(0d, (lx*pair[2] + ly*pair[3] + lw) / Math.hypot(lx, ly), Math.sqrt(2));
+		}
+	}
+
+	@Test
+	public void essentialSamplesTest() {
+
+		final double[][] tentativePairs = pairs(INLIERS, OUTLIERS);
+
+		final RANSAC essential = newRansac(essential(), tentativePairs);
+		essential.run();
+
+		final RANSAC fundamental = newRansac(RANSACFactory.getLoRANSACOnImpl(), tentativePairs);
+		fundamental.run();
+
+		// 30% inliers: roughly 0.3^5 against 0.3^7 all-inlier samples
+		Assert.assertTrue(essential.getStats().getSamples() * 5 < fundamental.getStats().getSamples());
+	}
+
+	@Test(expectedExceptions=IllegalStateException.class)
+	public void missingIntrinsicsTest() {
+
+		newRansac(RANSACFactory.getLoRANSACEssentialImpl(), pairs(INLIERS, OUTLIERS)).run();
+	}
+
+	/**
+	 * Sampling not supported is ignored (as the parallelism and the randomized verification settings), the samples are uniform
+	 */
+	@Test
+	public void unsupportedSamplingTest() {
+
+		final double[][] tentativePairs = pairs(INLIERS, OUTLIERS);
+
+		final RANSAC uniform = newRansac(essential(), tentativePairs);
+		uniform.run();
+
+		final RANSAC prosac = newRansac(essential(), tentativePairs).setSampling(RANSAC.SAMPLING.PROSAC);
+		prosac.run();
+
+		Assert.assertArrayEquals(uniform.getInlierIndices(), prosac.getInlierIndices());
+	}
+
+	/**
+	 * Logs the samples drawn, the inliers found and the time of the essential and of the fundamental matrix LoRANSAC,
+	 * for 30%, 20% and 15% of the inliers
+	 */
+	@Test(enabled=false)
+	public void essentialSyntheticBenchmark() {
+
+		for(int outliers : new int[] { 350, 600, 850 }) {
+			for(long seed = 1; seed <= 5; seed++) {
+				for(RANSAC ransac : new RANSAC[] { essential(), RANSACFactory.getLoRANSACOnImpl() }) {
+
+					newRansac(ransac, pairs(INLIERS, outliers)).setSeed(seed).run();
+
+					final RANSACStats stats = ransac.getStats();
+					logger.info("{} (outliers {}, seed {}): inliers {}, samples drawn {}, hypotheses {}, time {}ms", ransac.name(), outliers, seed,
+							ransac.getInliersCount(), stats.getSamples(), stats.getHypotheses(), stats.getTime() / 1000000);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inliers come first
+	 */
+	private static double[][] pairs(int inliers, int outliers) {
+
+		final double[][] pairs = new double[inliers + outliers][];
+		System.arraycopy(SyntheticPairs.generate(inliers, 0, 0.3, 17), 0, pairs, 0, inliers);
+		System.arraycopy(SyntheticPairs.generate(0, outliers, 0, 17), 0, pairs, inliers, outliers);
+
+		return pairs;
+	}
+
+	private static RANSAC newRansac(RANSAC ransac, double[][] tentativePairs) {
+
+		return ransac.setTentativePairs(tentativePairs)
+					 .setThreshold(2)
+					 .setBestSolutionProbability(0.99)
+					 .setSeed(1)
+					 .collectStats(true);
+	}
+
+	/**
+	 * Essential matrix LoRANSAC having the intrinsics of {@link SyntheticPairs}
+	 */
+	private static RANSAC essential() {
+		return RANSACFactory.getLoRANSACEssentialImpl().setIntrinsics(SyntheticPairs.intrinsics(), SyntheticPairs.intrinsics());
+	}
+
+	private static double[] serialize(final double[][] pairs) {
+
+		final double[] u = new double[6*pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+
+		return u;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import org.junit.Assert;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.AbstractTest;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACFactory;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.dataengine.DataEngineFactory.InitializationException;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class HomographyTest extends AbstractTest {
+
+	private static final int INLIERS = 150;
+	private static final int OUTLIERS = 350;
+
+	@Test
+	public void homographyTest() {
+
+		final double[][] tentativePairs = planarPairs(INLIERS, OUTLIERS);
+
+		final RANSAC ransac = newRansac(RANSACFactory.getLoRANSACHomographyImpl(), tentativePairs);
+		ransac.run();
+
+		logger.info("Homography: {}", ransac.getStats());
+
+		// few random outliers may happen to be consistent with the model
+		int found = 0;
+		for(int index : ransac.getInlierIndices()) {
+			if(index < INLIERS) found++;
+		}
+
+		Assert.assertTrue("inliers found: " + found + " out of " + INLIERS, found >= INLIERS * 9 / 10);
+		Assert.assertTrue(ransac.getInliersCount() - found < OUTLIERS / 20);
+		Assert.assertTrue(ransac.isConfidenceReached());
+		Assert.assertTrue(ransac.getStats().getLocalOptimizations() > 0);
+
+		// estimated homography maps the noise-free points of the plane
+		final double[][] h = ransac.getGeometryEstimation();
+		for(double[] pair : SyntheticPairs.generatePlanar(20, 0, 0, 0)) {
+
+			final double w = h[2][0]*pair[0] + h[2][1]*pair[1] + h[2][2];
+			final double x = (h[0][0]*pair[0] + h[0][1]*pair[1] + h[0][2]) / w;
+			final double y = (h[1][0]*pair[0] + h[1][1]*pair[1] + h[1][2]) / w;
+
+			Assert.assertEquals(pair[2], x, 1d);
+			Assert.assertEquals(pair[3], y, 1d);
+		}
+	}
+
+	@Test
+	public void homographySamplesTest() {
+
+		final double[][] tentativePairs = planarPairs(INLIERS, OUTLIERS);
+
+		final RANSAC homography = newRansac(RANSACFactory.getLoRANSACHomographyImpl(), tentativePairs);
+		homography.run();
+
+		final RANSAC fundamental = newRansac(RANSACFactory.getLoRANSACOnImpl(), tentativePairs);
+		fundamental.run();
+
+		// 30% inliers: roughly 0.3^4 against 0.3^7 all-inlier samples
+		Assert.assertTrue(homography.getStats().getSamples() * 10 < fundamental.getStats().getSamples());
+	}
+
+	/**
+	 * Sampling not supported is ignored (as the parallelism and the randomized verification settings), the samples are uniform
+	 */
+	@Test
+	public void unsupportedSamplingTest() {
+
+		final double[][] tentativePairs = planarPairs(INLIERS, OUTLIERS);
+
+		final RANSAC uniform = newRansac(RANSACFactory.getLoRANSACHomographyImpl(), tentativePairs);
+		uniform.run();
+
+		final RANSAC napsac = newRansac(RANSACFactory.getLoRANSACHomographyImpl(), tentativePairs).setSampling(RANSAC.SAMPLING.NAPSAC);
+		napsac.run();
+
+		Assert.assertArrayEquals(uniform.getInlierIndices(), napsac.getInlierIndices());
+	}
+
+	@Test(enabled=false)
+	public void homographySyntheticBenchmark() {
+		compareModels(planarPairs(INLIERS, 850), 2);
+	}
+
+	@Test(enabled=false)
+	public void homographyHessafBenchmark() throws InitializationException {
+		compareModels(getOxfordHessafDE(false).computeMatches("all_souls_000013", "all_souls_000026"), 2);
+		compareModels(getOxfordHessafDE(false).computeMatches("radcliffe_camera_000519", "radcliffe_camera_000523"), 2);
+	}
+
+	/**
+	 * Logs the samples drawn, the inliers found and the time of the homography and of the fundamental matrix LoRANSAC
+	 */
+	private static void compareModels(double[][] tentativePairs, double threshold) {
+
+		for(long seed = 1; seed <= 5; seed++) {
+			for(RANSAC ransac : new RANSAC[] { RANSACFactory.getLoRANSACHomographyImpl(), RANSACFactory.getLoRANSACOnImpl() }) {
+
+				newRansac(ransac, tentativePairs).setThreshold(threshold).setSeed(seed).run();
+
+				final RANSACStats stats = ransac.getStats();
+				logger.info("{} (seed {}): inliers {} out of {}, samples drawn {}, time {}ms", ransac.name(), seed, ransac.getInliersCount(),
+						tentativePairs.length, stats.getSamples(), stats.getTime() / 1000000);
+			}
+		}
+	}
+
+	/**
+	 * Inliers come first
+	 */
+	private static double[][] planarPairs(int inliers, int outliers) {
+
+		final double[][] pairs = new double[inliers + outliers][];
+		System.arraycopy(SyntheticPairs.generatePlanar(inliers, 0, 0.3, 17), 0, pairs, 0, inliers);
+		System.arraycopy(SyntheticPairs.generatePlanar(0, outliers, 0, 17), 0, pairs, inliers, outliers);
+
+		return pairs;
+	}
+
+	private static RANSAC newRansac(RANSAC ransac, double[][] tentativePairs) {
+
+		return ransac.setTentativePairs(tentativePairs)
+					 .setThreshold(2)
+					 .setBestSolutionProbability(0.99)
+					 .setSeed(1)
+					 .collectStats(true);
+	}
+}
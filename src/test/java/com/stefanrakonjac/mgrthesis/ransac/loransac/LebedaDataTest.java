@@ -125,6 +125,43 @@ public class LebedaDataTest extends AbstractTest {
 		logger.info("lebedaDataTest(..., '{}', ...) finished correctly", imageName);
 	}
 	
+	@Test(dataProvider="lebedaDataTestDP", enabled=false)
+	public void lebedaDataParallelTest(final double[][] tentativePairs, 
+									   final double[][] groundTruthPairs, 
+									   final double errorThershold, 
+									   final double confidence, 
+									   final int maxSamples, 
+									   final String leftImageURL, 
+									   final String rightImageURL, 
+									   final double[][] expectedModel, 
+									   final String imageName, 
+									   final Set<Pair> expectedCRecognizedInliers,
+									   final double[][] expectedCRecognizedModel) {
+		
+		logger.info("");
+		logger.info("lebedaDataParallelTest(..., '{}', ...) started" , imageName);
+		
+		final int processors = Runtime.getRuntime().availableProcessors();
+		
+		for(int parallelism = 1; parallelism <= processors; parallelism *= 2) {
+			
+			final long ransacStartTime = System.currentTimeMillis();
+			
+			final RANSAC ransac = new LoRANSACImpl().setTentativePairs(tentativePairs)
+													.setThreshold(errorThershold)
+													.setBestSolutionProbability(confidence)
+													.setMaxIterations(maxSamples)
+													.setParallelism(parallelism);
+			
+			ransac.run();
+			
+			logTime(ransacStartTime, System.currentTimeMillis(), "LoRANSAC RUN (parallelism: " + parallelism + ")");
+			logger.info("Actual/expected inliers: {}/{} out of {}", ransac.getInliers().length, expectedCRecognizedInliers.size(), tentativePairs.length);
+		}
+		
+		logger.info("lebedaDataParallelTest(..., '{}', ...) finished correctly", imageName);
+	}
+	
 	@AfterClass
 	public void printAverageInliersHitPercent() {
 
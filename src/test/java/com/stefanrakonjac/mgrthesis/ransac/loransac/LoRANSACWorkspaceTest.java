@@ -0,0 +1,109 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks that the main LoRANSAC loop and the local optimization do not allocate once the workspace of the thread is large enough </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public class LoRANSACWorkspaceTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(LoRANSACWorkspaceTest.class);
+	
+	/**
+	 * Allocations independent of the number of iterations (input copy, results, new maxima) are well below this limit
+	 */
+	private static final long ALLOCATION_TOLERANCE = 64*1024;
+	
+	/**
+	 * Runs differing in the local optimization effort only allocate the same, up to the debug logging of their (slightly different) maxima
+	 */
+	private static final long LO_ALLOCATION_TOLERANCE = 8*1024;
+
+	@Test
+	public void mainLoopAllocationTest() {
+		
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if(!threadBean.isThreadAllocatedMemorySupported()) {
+			logger.warn("Thread allocated memory not supported by the JVM, skipping the test");
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		// outliers only, so that the number of iterations is not downsized
+		final double[][] tentativePairs = SyntheticPairs.generate(0, 500, 0, 1);
+		
+		// warm up (grows the workspace)
+		allocatedBytes(threadBean, newRansac(tentativePairs).setMaxIterations(1000).doOptimizations(false));
+		
+		final long shortRun = allocatedBytes(threadBean, newRansac(tentativePairs).setMaxIterations(1000).doOptimizations(false));
+		final long longRun = allocatedBytes(threadBean, newRansac(tentativePairs).setMaxIterations(11000).doOptimizations(false));
+		
+		logger.info("Allocated bytes, 1000 iterations: {}; 11000 iterations: {}", shortRun, longRun);
+		
+		Assert.assertTrue("10000 additional iterations allocated " + (longRun - shortRun) + " bytes", longRun - shortRun < ALLOCATION_TOLERANCE);
+	}
+	
+	/**
+	 * Local optimizations of the real inliers: six times more inner RANSAC repetitions (least squares fits) per local optimization 
+	 * allocate nothing more
+	 */
+	@Test
+	public void localOptimizationAllocationTest() {
+		
+		final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if(!threadBean.isThreadAllocatedMemorySupported()) {
+			logger.warn("Thread allocated memory not supported by the JVM, skipping the test");
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 350, 0.3, 5);
+		
+		// warm up (grows the workspace)
+		allocatedBytes(threadBean, newRansac(tentativePairs).setLocalOptimizationRepetitions(10));
+		
+		final RANSAC few = newRansac(tentativePairs).setLocalOptimizationRepetitions(10);
+		final RANSAC many = newRansac(tentativePairs).setLocalOptimizationRepetitions(60);
+		
+		final long fewRepetitions = allocatedBytes(threadBean, few);
+		final long manyRepetitions = allocatedBytes(threadBean, many);
+		
+		logger.info("Allocated bytes, 10 repetitions: {}; 60 repetitions: {}", fewRepetitions, manyRepetitions);
+		
+		Assert.assertTrue(many.getInliersCount() >= 150);
+		Assert.assertTrue("50 additional repetitions per local optimization allocated " + (manyRepetitions - fewRepetitions) + " bytes", 
+				manyRepetitions - fewRepetitions < LO_ALLOCATION_TOLERANCE);
+	}
+	
+	private static RANSAC newRansac(double[][] tentativePairs) {
+		
+		return new LoRANSACImpl().setTentativePairs(tentativePairs)
+								 .setThreshold(1)
+								 .setBestSolutionProbability(0.99)
+								 .setSeed(1);
+	}
+	
+	private static long allocatedBytes(com.sun.management.ThreadMXBean threadBean, RANSAC ransac) {
+		
+		final long threadId = Thread.currentThread().getId();
+		
+		final long before = threadBean.getThreadAllocatedBytes(threadId);
+		ransac.run();
+		return threadBean.getThreadAllocatedBytes(threadId) - before;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.utils.LoggingUtils.logTime;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class LocalOptimizationSchedulingTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(LocalOptimizationSchedulingTest.class);
+	
+	private static final int INLIERS = 150;
+	private static final int OUTLIERS = 100;
+
+	/**
+	 * No time for the local optimizations during the main loop, only the final one is done
+	 */
+	@Test
+	public void finalLocalOptimizationOnlyTest() {
+		
+		final RANSAC ransac = newRansac(SyntheticPairs.generate(INLIERS, OUTLIERS, 0.3, 7)).setLocalOptimizationTimeFraction(0);
+		ransac.run();
+		
+		final RANSACStats stats = ransac.getStats();
+		logger.info("{}", stats);
+		
+		Assert.assertEquals(1, stats.getLocalOptimizations());
+		Assert.assertTrue(stats.getSkippedLocalOptimizations() > 0);
+		Assert.assertTrue("too few inliers: " + ransac.getInliersCount(), ransac.getInliersCount() > INLIERS * 9 / 10);
+	}
+	
+	@Test
+	public void localOptimizationParametersTest() {
+		
+		final RANSAC ransac = newRansac(SyntheticPairs.generate(INLIERS, OUTLIERS, 0.3, 7)).setLocalOptimizationMinSamples(10)
+																						  .setLocalOptimizationRepetitions(2)
+																						  .setLocalOptimizationIterations(1)
+																						  .setLocalOptimizationThresholdMultiplier(2);
+		ransac.run();
+		
+		Assert.assertTrue(ransac.getStats().getLocalOptimizations() > 0);
+		Assert.assertTrue("too few inliers: " + ransac.getInliersCount(), ransac.getInliersCount() > INLIERS * 9 / 10);
+	}
+	
+	/**
+	 * In the parallel runs local optimization is triggered by the samples accepted as the new maximum of the run only (each of them in the history 
+	 * of the best scores), not by the samples improving the best of a single worker; at most one more per worker if no local optimization happened 
+	 * by {@code loMinSamples}
+	 */
+	@Test
+	public void parallelLocalOptimizationsTest() {
+
+		final double[][] tentativePairs = SyntheticPairs.generate(INLIERS, 4*OUTLIERS, 0.3, 7);
+		final int parallelism = 4;
+
+		for(long seed = 1; seed <= 5; seed++) {
+
+			final RANSAC ransac = newRansac(tentativePairs).setSeed(seed).setParallelism(parallelism);
+			ransac.run();
+
+			final RANSACStats stats = ransac.getStats();
+			final int triggered = stats.getLocalOptimizations() + stats.getSkippedLocalOptimizations();
+
+			Assert.assertTrue(stats.toString(), triggered <= stats.getBestScoreInliers().length + parallelism);
+			Assert.assertTrue("too few inliers: " + ransac.getInliersCount(), ransac.getInliersCount() > INLIERS * 9 / 10);
+		}
+	}
+
+	/**
+	 * Seeded sequential runs optimize every new best sample of the single worker, as the sequential LoRANSAC loop did, and find the same
+	 * number of inliers it found for each of the seeds
+	 */
+	@Test
+	public void sequentialLocalOptimizationsTest() {
+
+		final double[][] tentativePairs = SyntheticPairs.generate(INLIERS, 4*OUTLIERS, 0.5, 7);
+
+		for(long seed = 1; seed <= 5; seed++) {
+
+			final RANSAC ransac = newRansac(tentativePairs).setSeed(seed).setParallelism(1);
+			ransac.run();
+
+			Assert.assertEquals("seed " + seed + ": " + ransac.getStats(), 146, ransac.getInliersCount());
+		}
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void invalidTimeFractionTest() {
+		new LoRANSACImpl().setLocalOptimizationTimeFraction(1.5);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void invalidThresholdMultiplierTest() {
+		new LoRANSACImpl().setLocalOptimizationThresholdMultiplier(0.5);
+	}
+	
+	@Test(enabled=false)
+	public void schedulingTimeTest() {
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(INLIERS, 850, 0.3, 7);
+		
+		for(double timeFraction : new double[] { 1, 0.5, 0.1, 0 }) {
+			
+			final RANSAC ransac = newRansac(tentativePairs).setLocalOptimizationTimeFraction(timeFraction).setMaxIterations(100000);
+			
+			final long startTime = System.currentTimeMillis();
+			ransac.run();
+			logTime(startTime, "LoRANSAC RUN (LO time fraction: " + timeFraction + ", inliers: " + ransac.getInliersCount() + ")");
+			logger.info("{}", ransac.getStats());
+		}
+	}
+	
+	private static RANSAC newRansac(double[][] tentativePairs) {
+		
+		return new LoRANSACImpl().setTentativePairs(tentativePairs)
+								 .setThreshold(1)
+								 .setBestSolutionProbability(0.99)
+								 .setSeed(1)
+								 .collectStats(true);
+	}
+}
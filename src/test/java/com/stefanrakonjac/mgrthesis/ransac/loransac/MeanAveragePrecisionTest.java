@@ -24,6 +24,12 @@ import org.testng.annotations.Test;
 
 import com.stefanrakonjac.mgrthesis.ransac.AbstractTest;
 import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.Batch;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.Job;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACBatchExecutor.JobFuture;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACFactory;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACResult;
 import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.BoofCVRANSACImpl;
 import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.util.DisplayUtils;
 import com.stefanrakonjac.mgrthesis.ransac.impl.boofcv.util.DisplayUtils.PointType;
@@ -53,6 +59,20 @@ public class MeanAveragePrecisionTest extends AbstractTest {
 	private int ransacRuns;
 	private int ransacSuccessfulRuns;
 	
+	/** verifies the candidate images of a query concurrently, each thread reusing its RANSAC instance */
+	private final RANSACBatchExecutor batchExecutor = RANSACFactory.getBatchExecutor(new RANSACBatchExecutor.Provider() {
+		
+		@Override
+		public RANSAC newInstance() {
+			
+			return new LoRANSACImpl();
+			// TODO re-comment
+//			return new BoofCVRANSACImpl();
+			// TODO comment following one line
+//			return new LoRANSACImpl().doOptimizations(false);
+		}
+	}, Runtime.getRuntime().availableProcessors());
+	
 	@Test(dataProvider="mapTestDP", enabled=true)
 	public void mapTest(String gtName, String gtGroupName, String imageName, Map<String, double[][]> imageQueryPoints, Set<String> goodImages, Set<String> okImages, Set<String> junkImages, Map<String, Map<String, double[][]>> similarImages, Map<String, ImageScore> sortedSimilarImages) {
 
@@ -111,6 +131,10 @@ public class MeanAveragePrecisionTest extends AbstractTest {
 		final int maxSamples = 100000;
 		
 		List<ImageScore> reRankedScores = new ArrayList<>();
+		
+		// scores are kept in the order of the similar images, so that the ties are sorted the same way whatever order the runs complete in
+		final List<Job> jobs = new ArrayList<>();
+		final Map<String, ImageScore> reRankedScoresByJobs = new HashMap<>();
 				
 		int exceptionCaughtTimes = 0;
 		int tooFewTentativePairsImages = 0;
@@ -126,51 +150,73 @@ public class MeanAveragePrecisionTest extends AbstractTest {
 			}
 			
 			final double[][] tentativePairs = ArraysUtils.to2Ddouble(tentativePairsSet);
+			
+			final ImageScore reRankedScore = new ImageScore(similarImageName);
+			reRankedScores.add(reRankedScore);
 
+			if(tentativePairs.length >= 10) {
+				
+				jobs.add(new Job(similarImageName, tentativePairs)
+										  .setThreshold(errorThershold)
+										  .setBestSolutionProbability(confidence)
+										  .setMaxIterations(maxSamples));
+				reRankedScoresByJobs.put(similarImageName, reRankedScore);
+				
+			} else {
+				
+				// this way we keep the original ordering
+				reRankedScore.setScore(- ++tooFewTentativePairsImages);
+			}
+		}
+		
+		final long ransacStartTime = System.currentTimeMillis();
+		
+		// the candidate images are verified concurrently, results come in the order the runs complete
+		final Batch batch = batchExecutor.submit(jobs);
+		while(batch.hasNext()) {
+			
+			final JobFuture future;
+			try {
+				future = batch.take();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while waiting for the RANSAC runs", ex);
+			}
+			
+			final Job job = future.getJob();
+			final String similarImageName = job.getName();
+			
 			double score = 0;
 			
-			if(tentativePairs.length >= 10) {
+			try {
+				final RANSACResult result = future.get();
 				
-				try {
-					final long ransacStartTime = System.currentTimeMillis();
-					
-					final RANSAC ransac = new LoRANSACImpl()
-					// TODO re-comment
-//					final RANSAC ransac = new BoofCVRANSACImpl()
-					// TODO comment following one line
-//											  .doOptimizations(false)
-											  .setTentativePairs(tentativePairs)
-											  .setThreshold(errorThershold)
-											  .setBestSolutionProbability(confidence)
-											  .setMaxIterations(maxSamples);
-					
-					ransac.run();
-					
-					logTimeDebug(ransacStartTime, "LoRANSAC RUN");
-					
-					score = calculateTFIDF(imageName, ransac.getInliers(), mappedTentativePairs);
-					ransacSuccessfulRuns++;
-					
-					// TODO comment
-					DisplayUtils.showPairs(getImagePath(imageName), getImagePath(similarImageName), PairsConverter.toAssociatedPairList(tentativePairs));
-					DisplayUtils.showPairs(getImagePath(imageName), getImagePath(similarImageName), PairsConverter.toAssociatedPairList(ransac.getInliers()));
-					
-				} catch (Exception ex) {
-					exceptionCaughtTimes++;
-					logger.debug("{}", ex.getMessage(), ex);
+				final int[] inlierIndices = result.getInlierIndices();
+				final double[][] inliers = new double[inlierIndices.length][];
+				for(int i = 0; i < inlierIndices.length; i++) {
+					inliers[i] = job.getPair(inlierIndices[i]);
 				}
 				
-				ransacRuns++;
+				score = calculateTFIDF(imageName, inliers, similarImages.get(similarImageName));
+				ransacSuccessfulRuns++;
 				
-			} else {
+				// TODO comment
+				DisplayUtils.showPairs(getImagePath(imageName), getImagePath(similarImageName), PairsConverter.toAssociatedPairList(job.getPairs(), job.getCount()));
+				DisplayUtils.showPairs(getImagePath(imageName), getImagePath(similarImageName), PairsConverter.toAssociatedPairList(inliers));
 				
-				// this way we keep the original ordering
-				score = - ++tooFewTentativePairsImages;
+			} catch (Exception ex) {
+				exceptionCaughtTimes++;
+				logger.debug("{}", ex.getMessage(), ex);
 			}
 			
-			reRankedScores.add(new ImageScore(similarImageName).setScore(score));
+			ransacRuns++;
+			
+			reRankedScoresByJobs.get(similarImageName).setScore(score);
 		}
 		
+		logTimeDebug(ransacStartTime, "LoRANSAC RUNS");
+		logger.info("{} images ({} tentative pairs) verified, {} pairs/s", batch.size(), batch.getPairs(), String.format("%.0f", batch.getThroughput()));
+		
 		Collections.sort(reRankedScores);
 		Collections.reverse(reRankedScores);
 		
@@ -341,6 +387,8 @@ public class MeanAveragePrecisionTest extends AbstractTest {
 	@AfterClass
 	public void calculateMAPs() {
 
+		batchExecutor.shutdown();
+
 		logger.info("\n\n------------------------------------------------------------\n");
 		
 		double finalMAP = 0;
@@ -0,0 +1,111 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.AbstractTest;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLING;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.dataengine.DataEngineFactory.InitializationException;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class NAPSACTest extends AbstractTest {
+	
+	private static final int OUTLIERS = 850;
+	
+	/**
+	 * Inliers clustered in a part of the first image: uniform sampling needs hundreds of thousands of samples, 
+	 * samples drawn from the neighbourhoods consist of inliers much more often
+	 */
+	@Test
+	public void napsacTest() {
+		
+		final double[][] tentativePairs = clusteredPairs();
+		final int inliersCount = tentativePairs.length - OUTLIERS;
+		
+		final RANSAC ransac = newRansac(tentativePairs, SAMPLING.NAPSAC).setMaxIterations(20000);
+		ransac.run();
+		
+		logger.info("NAPSAC: {}", ransac.getStats());
+		
+		// few random outliers may happen to be consistent with the model
+		int found = 0;
+		for(int index : ransac.getInlierIndices()) {
+			if(index < inliersCount) found++;
+		}
+		
+		Assert.assertTrue("inliers found: " + found + " out of " + inliersCount, found >= inliersCount * 9 / 10);
+		Assert.assertTrue(ransac.isConfidenceReached());
+	}
+	
+	@Test(enabled=false)
+	public void napsacSyntheticBenchmark() {
+		compareSamplings(clusteredPairs(), 1);
+	}
+	
+	@Test(enabled=false)
+	public void napsacHessafBenchmark() throws InitializationException {
+		compareSamplings(getOxfordHessafDE(false).computeMatches("magdalen_000694", "magdalen_000709"), 1);
+	}
+	
+	/**
+	 * Logs the samples needed to reach the final score (iterations to convergence) and the samples drawn in total
+	 */
+	private static void compareSamplings(double[][] tentativePairs, double threshold) {
+		
+		for(SAMPLING sampling : new SAMPLING[] { SAMPLING.UNIFORM, SAMPLING.NAPSAC }) {
+			for(long seed = 1; seed <= 5; seed++) {
+				
+				final RANSAC ransac = newRansac(tentativePairs, sampling).setThreshold(threshold).setSeed(seed);
+				ransac.run();
+				
+				final RANSACStats stats = ransac.getStats();
+				final int[] history = stats.getBestScoreSamples();
+				
+				logger.info("{} (seed {}): inliers {} out of {}, converged after {} samples, samples drawn {}, time {}ms", sampling, seed, ransac.getInliersCount(), 
+						tentativePairs.length, history.length == 0 ? -1 : history[history.length - 1], stats.getSamples(), stats.getTime() / 1000000);
+			}
+		}
+	}
+	
+	/**
+	 * Inliers come first, they are the synthetic inliers falling into the 200 x 200 window of the first image
+	 */
+	private static double[][] clusteredPairs() {
+		
+		final List<double[]> pairs = new ArrayList<>();
+		for(double[] pair : SyntheticPairs.generate(1000, 0, 0.3, 13)) {
+			if(pair[0] >= 400 && pair[0] < 600 && pair[1] >= 400 && pair[1] < 600) {
+				pairs.add(pair);
+			}
+		}
+		
+		for(double[] pair : SyntheticPairs.generate(0, OUTLIERS, 0, 13)) {
+			pairs.add(pair);
+		}
+		
+		return pairs.toArray(new double[pairs.size()][]);
+	}
+	
+	private static RANSAC newRansac(double[][] tentativePairs, SAMPLING sampling) {
+		
+		return new LoRANSACImpl().setTentativePairs(tentativePairs)
+								 .setThreshold(1)
+								 .setBestSolutionProbability(0.99)
+								 .setSeed(1)
+								 .setSampling(sampling)
+								 .collectStats(true);
+	}
+}
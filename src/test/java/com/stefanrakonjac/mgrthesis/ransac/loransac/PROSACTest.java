@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.utils.LoggingUtils.logTime;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLING;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class PROSACTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(PROSACTest.class);
+	
+	private static final int INLIERS = 150;
+	private static final int OUTLIERS = 850;
+
+	/**
+	 * 15% of inliers would need about a million of uniform samples, PROSAC needs only few of them 
+	 * if the inliers have higher qualities
+	 */
+	@Test
+	public void prosacTest() {
+		
+		final double[][] tentativePairs = new double[INLIERS + OUTLIERS][];
+		final double[] qualities = new double[tentativePairs.length];
+		prepareData(tentativePairs, qualities);
+		
+		final RANSAC ransac = newRansac(tentativePairs, qualities, SAMPLING.PROSAC).setMaxIterations(1000);
+		ransac.run();
+		
+		logger.info("Inliers found with PROSAC: {} out of {}", ransac.getInliersCount(), tentativePairs.length);
+		
+		// few random outliers may happen to be consistent with the model
+		int found = 0;
+		for(int index : ransac.getInlierIndices()) {
+			if(index < INLIERS) found++;
+		}
+		
+		Assert.assertTrue("inliers found: " + found, found >= INLIERS * 9 / 10);
+	}
+	
+	@Test(expectedExceptions=IllegalStateException.class)
+	public void prosacWithoutQualitiesTest() {
+		
+		newRansac(SyntheticPairs.generate(20, 0, 0, 1), null, SAMPLING.PROSAC).run();
+	}
+	
+	@Test(enabled=false)
+	public void prosacTimeTest() {
+		
+		final double[][] tentativePairs = new double[INLIERS + OUTLIERS][];
+		final double[] qualities = new double[tentativePairs.length];
+		prepareData(tentativePairs, qualities);
+		
+		for(SAMPLING sampling : SAMPLING.values()) {
+			
+			final RANSAC ransac = newRansac(tentativePairs, qualities, sampling);
+			
+			final long startTime = System.currentTimeMillis();
+			ransac.run();
+			logTime(startTime, "LoRANSAC RUN (sampling: " + sampling + ", inliers: " + ransac.getInliersCount() + ")");
+		}
+	}
+	
+	/**
+	 * Inliers come first, qualities of the inliers are higher in average
+	 */
+	private static void prepareData(double[][] tentativePairs, double[] qualities) {
+		
+		final double[][] inliers = SyntheticPairs.generate(INLIERS, 0, 0.3, 13);
+		final double[][] outliers = SyntheticPairs.generate(0, OUTLIERS, 0, 13);
+		
+		System.arraycopy(inliers, 0, tentativePairs, 0, INLIERS);
+		System.arraycopy(outliers, 0, tentativePairs, INLIERS, OUTLIERS);
+		
+		final Random random = new Random(13);
+		for(int i = 0; i < qualities.length; i++) {
+			qualities[i] = i < INLIERS ? 0.4 + random.nextDouble() : random.nextDouble();
+		}
+	}
+	
+	private static RANSAC newRansac(double[][] tentativePairs, double[] qualities, SAMPLING sampling) {
+		
+		return new LoRANSACImpl().setTentativePairs(tentativePairs)
+								 .setThreshold(1)
+								 .setBestSolutionProbability(0.99)
+								 .setSeed(1)
+								 .setSampling(sampling)
+								 .setQualities(qualities);
+	}
+}
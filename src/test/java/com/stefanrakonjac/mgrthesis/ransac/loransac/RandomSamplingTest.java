@@ -0,0 +1,118 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.utils.LoggingUtils.logTime;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class RandomSamplingTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(RandomSamplingTest.class);
+	
+	private static final int POOL_SIZE = 1000;
+	private static final int SAMPLES = 2000000;
+
+	@Test
+	public void seededRunsTest() {
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 350, 0.3, 3);
+		
+		final RANSAC first = seededRansac(tentativePairs, 11);
+		final RANSAC second = seededRansac(tentativePairs, 11);
+		
+		Assert.assertArrayEquals(first.getInlierIndices(), second.getInlierIndices());
+		for(int i = 0; i < 3; i++) {
+			Assert.assertArrayEquals(first.getGeometryEstimation()[i], second.getGeometryEstimation()[i], 0d);
+		}
+	}
+	
+	@Test
+	public void boundsTest() {
+		
+		final XorShiftRandom random = new XorShiftRandom(5);
+		final int[] counts = new int[7];
+		
+		for(int i = 0; i < 70000; i++) {
+			counts[random.nextInt(7)]++;
+		}
+		
+		logger.info("Distribution of 70000 draws from [0, 7): {}", Arrays.toString(counts));
+		
+		for(int count : counts) {
+			Assert.assertTrue("count: " + count, count > 9000 && count < 11000);
+		}
+	}
+	
+	@Test(enabled=false)
+	public void samplingBenchmark() {
+		
+		final int[] pool = new int[POOL_SIZE];
+		for(int i = 0; i < POOL_SIZE; i++) {
+			pool[i] = i;
+		}
+		
+		long checksum = 0;
+		
+		// as done by the original port: new generator for every draw
+		long startTime = System.currentTimeMillis();
+		for(int i = 0; i < SAMPLES; i++) {
+			checksum += sample(pool, POOL_SIZE, i % 7, new Random());
+		}
+		logTime(startTime, "Sampling, new java.util.Random per draw");
+		
+		final Random shared = new Random(1);
+		startTime = System.currentTimeMillis();
+		for(int i = 0; i < SAMPLES; i++) {
+			checksum += sample(pool, POOL_SIZE, i % 7, shared);
+		}
+		logTime(startTime, "Sampling, shared java.util.Random");
+		
+		final XorShiftRandom xorShift = new XorShiftRandom(1);
+		startTime = System.currentTimeMillis();
+		for(int i = 0; i < SAMPLES; i++) {
+			checksum += RTools.sample(pool, POOL_SIZE, i % 7, xorShift);
+		}
+		logTime(startTime, "Sampling, XorShiftRandom");
+		
+		logger.info("checksum: {}", checksum);
+	}
+	
+	private static RANSAC seededRansac(double[][] tentativePairs, long seed) {
+		
+		final RANSAC ransac = new LoRANSACImpl().setTentativePairs(tentativePairs)
+												.setThreshold(1)
+												.setBestSolutionProbability(0.99)
+												.setSeed(seed);
+		ransac.run();
+		
+		return ransac;
+	}
+	
+	private static int sample(int[] pool, int maxSize, int i, Random random) {
+		
+		int s = random.nextInt(Integer.MAX_VALUE) % (maxSize - i);
+		int j = maxSize - i - 1;
+		int q = pool[s];
+		pool[s] = pool[j];
+		pool[j] = q;
+		return q;
+	}
+}
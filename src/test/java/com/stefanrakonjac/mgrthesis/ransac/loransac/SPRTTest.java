@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.utils.LoggingUtils.logTime;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SPRTTest {
+	
+	private static final Logger logger = LoggerFactory.getLogger(SPRTTest.class);
+
+	@Test
+	public void sprtInliersTest() {
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(200, 300, 0.3, 5);
+		
+		final RANSAC ransac = newRansac(tentativePairs, true);
+		ransac.run();
+		
+		logger.info("Inliers found with SPRT: {} out of {}", ransac.getInliersCount(), tentativePairs.length);
+		
+		Assert.assertTrue("inliers: " + ransac.getInliersCount(), ransac.getInliersCount() >= 190);
+	}
+	
+	@Test(enabled=false)
+	public void sprtTimeTest() {
+		
+		final double[][] tentativePairs = SyntheticPairs.generate(150, 850, 0.3, 42);
+		
+		for(boolean doSPRT : new boolean[] { false, true, false, true }) {
+			
+			final RANSAC ransac = newRansac(tentativePairs, doSPRT);
+			
+			final long startTime = System.currentTimeMillis();
+			ransac.run();
+			logTime(startTime, "LoRANSAC RUN (SPRT: " + doSPRT + ", inliers: " + ransac.getInliersCount() + ")");
+		}
+	}
+	
+	private static RANSAC newRansac(double[][] tentativePairs, boolean doSPRT) {
+		
+		return new LoRANSACImpl().setTentativePairs(tentativePairs)
+								 .setThreshold(1)
+								 .setBestSolutionProbability(0.99)
+								 .setMaxIterations(100000)
+								 .setSeed(1)
+								 .doSPRT(doSPRT);
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC;
+import com.stefanrakonjac.mgrthesis.ransac.RANSAC.SAMPLE_TEST;
+import com.stefanrakonjac.mgrthesis.ransac.RANSACStats;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.LoRANSACImpl;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SampleValidator;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+
+/**
+ * <p> Checks the sample tests of {@link SampleValidator} and the ones of the {@link LoRANSACImpl} runs </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SampleValidatorTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SampleValidatorTest.class);
+
+	private static final int[] SAMPLE = { 0, 1, 2, 3, 4, 5, 6 };
+
+	@Test
+	public void validSampleTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(7, 0, 0.3, 5));
+
+		Assert.assertNull(new SampleValidator(EnumSet.allOf(SAMPLE_TEST.class)).validate(u, SAMPLE, 0, 7));
+		Assert.assertNull(new SampleValidator(EnumSet.noneOf(SAMPLE_TEST.class)).validate(u, SAMPLE, 0, 7));
+	}
+
+	@Test
+	public void repeatedTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(7, 0, 0.3, 5));
+		System.arraycopy(u, 6*2, u, 6*5, 6);
+
+		Assert.assertEquals(SAMPLE_TEST.REPEATED, new SampleValidator(EnumSet.of(SAMPLE_TEST.REPEATED)).validate(u, SAMPLE, 0, 7));
+		Assert.assertEquals(SAMPLE_TEST.REPEATED, new SampleValidator(EnumSet.allOf(SAMPLE_TEST.class)).validate(u, SAMPLE, 0, 7));
+		// repeated pair shares the points as well
+		Assert.assertEquals(SAMPLE_TEST.COINCIDENT, new SampleValidator(EnumSet.of(SAMPLE_TEST.COINCIDENT)).validate(u, SAMPLE, 0, 7));
+		Assert.assertNull(new SampleValidator(EnumSet.of(SAMPLE_TEST.COLLINEAR, SAMPLE_TEST.ORIENTATION)).validate(u, SAMPLE, 0, 7));
+
+		// copy outside of the sample
+		final int[] indices = { 5, 0, 1, 2, 3, 4, 6, 5 };
+		Assert.assertNull(new SampleValidator(EnumSet.of(SAMPLE_TEST.REPEATED)).validate(u, indices, 1, 6));
+	}
+
+	@Test
+	public void coincidentTest() {
+
+		for(int image = 0; image < 2; image++) {
+
+			final double[] u = serialize(SyntheticPairs.generate(7, 0, 0.3, 5));
+			u[6*6 + 3*image] = u[6*1 + 3*image];
+			u[6*6 + 3*image + 1] = u[6*1 + 3*image + 1];
+
+			Assert.assertEquals(SAMPLE_TEST.COINCIDENT, new SampleValidator(EnumSet.of(SAMPLE_TEST.COINCIDENT)).validate(u, SAMPLE, 0, 7));
+			Assert.assertEquals(SAMPLE_TEST.COINCIDENT, new SampleValidator(EnumSet.allOf(SAMPLE_TEST.class)).validate(u, SAMPLE, 0, 7));
+			Assert.assertNull(new SampleValidator(RANSAC.D_SAMPLE_TESTS).validate(u, SAMPLE, 0, 7));
+		}
+	}
+
+	@Test
+	public void collinearTest() {
+
+		for(int image = 0; image < 2; image++) {
+
+			final double[] u = serialize(SyntheticPairs.generate(7, 0, 0.3, 5));
+			for(int i = 0; i < 7; i++) {
+				u[6*i + 3*image] = 100 + 20*i;
+				u[6*i + 3*image + 1] = 300 + 10*i + 1e-6*(i % 2);
+			}
+
+			Assert.assertEquals(SAMPLE_TEST.COLLINEAR, new SampleValidator(EnumSet.of(SAMPLE_TEST.COLLINEAR)).validate(u, SAMPLE, 0, 7));
+			Assert.assertNull(new SampleValidator(RANSAC.D_SAMPLE_TESTS).validate(u, SAMPLE, 0, 7));
+		}
+	}
+
+	@Test
+	public void orientationTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(7, 0, 0.3, 5));
+		final double[] f = { 0, 0, 1, 0, 0, 0, -1, 0, 0 };
+
+		// fourth point on the other side, allOrientationValid tested against the C version by SevenPointSolverTest
+		Assert.assertTrue(SampleValidator.allOrientationValid(f, u, SAMPLE, 0, 7));
+		u[6*3 + 5] = -1;
+		Assert.assertFalse(SampleValidator.allOrientationValid(f, u, SAMPLE, 0, 7));
+
+		Assert.assertFalse(new SampleValidator(EnumSet.of(SAMPLE_TEST.ORIENTATION)).orientationValid(f, u, SAMPLE, 0, 7));
+		Assert.assertTrue(new SampleValidator(EnumSet.of(SAMPLE_TEST.REPEATED)).orientationValid(f, u, SAMPLE, 0, 7));
+	}
+
+	/**
+	 * Duplicated and bursty matches: the default tests reject the samples having duplicated ones before the solver, the results are the ones 
+	 * of the orientation constraint only. Coincident points are rejected if asked for.
+	 */
+	@Test
+	public void duplicatedPairsTest() {
+
+		final double[][] generated = SyntheticPairs.generate(100, 100, 0.3, 7);
+		final double[][] pairs = Arrays.copyOf(generated, 300);
+		for(int i = 200; i < 250; i++) {
+			pairs[i] = generated[(i * 37) % 200];
+		}
+		// matches of a bursty word: the first point of a pair, a random one in the second image
+		for(int i = 250; i < 300; i++) {
+			final double[] pair = generated[(i * 37) % 200];
+			pairs[i] = new double[] { pair[0], pair[1], generated[i - 250][3], generated[i - 250][2] };
+		}
+
+		final RANSAC orientation = new LoRANSACImpl().setSampleTests(EnumSet.of(SAMPLE_TEST.ORIENTATION));
+		final RANSAC defaults = new LoRANSACImpl();
+		final RANSAC all = new LoRANSACImpl().setSampleTests(EnumSet.allOf(SAMPLE_TEST.class));
+
+		for(RANSAC ransac : new RANSAC[] { orientation, defaults, all }) {
+			ransac.setTentativePairs(pairs).setThreshold(1).setSeed(5).collectStats(true).run();
+			logger.info("{}", ransac.getStats());
+		}
+
+		Assert.assertEquals(orientation.getInliersCount(), defaults.getInliersCount());
+		Assert.assertTrue(Arrays.deepEquals(orientation.getInliers(), defaults.getInliers()));
+		Assert.assertEquals(orientation.getStats().getSamples(), defaults.getStats().getSamples());
+
+		final RANSACStats stats = defaults.getStats();
+		Assert.assertEquals(0, orientation.getStats().getSampleTestRejections(SAMPLE_TEST.REPEATED));
+		Assert.assertTrue(stats.getSampleTestRejections(SAMPLE_TEST.REPEATED) > 0);
+		Assert.assertEquals(0, stats.getSampleTestRejections(SAMPLE_TEST.COINCIDENT));
+		Assert.assertEquals(0, stats.getSampleTestRejections(SAMPLE_TEST.COLLINEAR));
+		Assert.assertEquals(stats.getOrientationRejections(), stats.getSampleTestRejections(SAMPLE_TEST.ORIENTATION));
+		Assert.assertTrue(stats.getSampleTestRejections(SAMPLE_TEST.REPEATED) + stats.getDegenerateSamples() <= stats.getSamples());
+
+		Assert.assertTrue(all.getStats().getSampleTestRejections(SAMPLE_TEST.COINCIDENT) > 0);
+		Assert.assertTrue(all.getInliersCount() >= 100);
+	}
+
+	private static double[] serialize(final double[][] pairs) {
+
+		final double[] u = new double[6*pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+
+		return u;
+	}
+}
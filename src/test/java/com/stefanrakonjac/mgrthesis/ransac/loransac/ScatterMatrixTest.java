@@ -0,0 +1,184 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.covMat;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.ScatterMatrix;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the incrementally maintained scatter matrix against {@code covMat} of the same sets </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class ScatterMatrixTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScatterMatrixTest.class);
+
+	private static final int LENGTH = 500;
+
+	/**
+	 * Sets changing by a few points (incremental updates) and by many of them (rebuilds), in 5000 fits (periodic rebuilds)
+	 */
+	@Test
+	public void fitTest() {
+
+		final XorShiftRandom random = new XorShiftRandom(7);
+		final double[] z = rows(random);
+
+		final ScatterMatrix scatter = new ScatterMatrix();
+		scatter.reset(z, LENGTH);
+
+		final boolean[] mask = new boolean[LENGTH];
+		final int[] indices = new int[LENGTH];
+		final double[] expected = new double[81], actual = new double[81], cz = new double[9*LENGTH];
+
+		for(int fit = 0; fit < 5000; fit++) {
+
+			// mostly a few points toggled, sometimes a quarter of them
+			final int changes = fit % 10 == 9 ? LENGTH / 4 : 1 + random.nextInt(5);
+			for(int i = 0; i < changes; i++) {
+				final int index = random.nextInt(LENGTH);
+				mask[index] = !mask[index];
+			}
+
+			int length = 0;
+			for(int i = 0; i < LENGTH; i++) {
+				if(mask[i]) {
+					System.arraycopy(z, 9*i, cz, 9*length, 9);
+					indices[length++] = i;
+				}
+			}
+
+			// order of the indices does not matter
+			for(int i = length - 1; i > 0; i--) {
+				final int j = random.nextInt(i + 1), k = indices[i];
+				indices[i] = indices[j];
+				indices[j] = k;
+			}
+
+			scatter.fit(indices, length);
+			Assert.assertEquals(length, scatter.size());
+
+			covMat(expected, cz, length, 9);
+			scatter.get(actual);
+
+			for(int i = 0; i < 81; i++) {
+				Assert.assertEquals("fit " + fit + ", element " + i, expected[i], actual[i], 1e-10 * (1 + Math.abs(expected[i])));
+			}
+		}
+	}
+
+	@Test
+	public void resetTest() {
+
+		final XorShiftRandom random = new XorShiftRandom(5);
+		final double[] z = rows(random);
+		final double[] expected = new double[81], actual = new double[81];
+
+		final ScatterMatrix scatter = new ScatterMatrix();
+		scatter.reset(z, LENGTH);
+		scatter.fit(new int[] { 1, 2, 3, 4, 5 }, 5);
+
+		// other rows, the set of the previous ones is forgotten
+		final double[] other = rows(random);
+		scatter.reset(other, LENGTH);
+		Assert.assertEquals(0, scatter.size());
+
+		scatter.fit(new int[] { 3, 4 }, 2);
+		covMat(expected, Arrays.copyOfRange(other, 27, 45), 2, 9);
+		scatter.get(actual);
+
+		Assert.assertArrayEquals(expected, actual, 0d);
+	}
+
+	@Test(expectedExceptions=IllegalStateException.class)
+	public void noRowsTest() {
+		new ScatterMatrix().fit(new int[1], 1);
+	}
+
+	/**
+	 * Logs the time of a refit of a set of 300 points, 5 of them swapped for others each time: covMat of the set and the incremental update
+	 */
+	@Test(enabled=false)
+	public void fitBenchmark() {
+
+		final XorShiftRandom random = new XorShiftRandom(3);
+		final double[] z = rows(random);
+
+		final ScatterMatrix scatter = new ScatterMatrix();
+		scatter.reset(z, LENGTH);
+
+		// points of the set and the rest of them
+		final int[] indices = new int[300], rest = new int[LENGTH - 300];
+		for(int i = 0; i < LENGTH; i++) {
+			if(i < 300) indices[i] = i; else rest[i - 300] = i;
+		}
+
+		final double[] cv = new double[81], cz = new double[9*300];
+		final int fits = 100000;
+		double sink = 0;
+
+		for(int round = 0; round < 5; round++) { // first rounds warm up the JIT
+
+			long time = System.nanoTime();
+			for(int fit = 0; fit < fits; fit++) {
+
+				swap(indices, rest, random);
+				for(int i = 0; i < 300; i++) {
+					System.arraycopy(z, 9*indices[i], cz, 9*i, 9);
+				}
+
+				covMat(cv, cz, 300, 9);
+				sink += cv[fit % 81];
+			}
+			final long covMatTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for(int fit = 0; fit < fits; fit++) {
+
+				swap(indices, rest, random);
+
+				scatter.fit(indices, 300);
+				scatter.get(cv);
+				sink += cv[fit % 81];
+			}
+			final long scatterTime = System.nanoTime() - time;
+
+			logger.info("round {}: covMat {} ns, incremental {} ns ({})", round, covMatTime / fits, scatterTime / fits, sink);
+		}
+	}
+
+	/**
+	 * Swaps 5 points of the set for 5 of the rest
+	 */
+	private static void swap(final int[] indices, final int[] rest, final XorShiftRandom random) {
+
+		for(int k = 0; k < 5; k++) {
+
+			final int i = random.nextInt(indices.length), j = random.nextInt(rest.length), index = indices[i];
+			indices[i] = rest[j];
+			rest[j] = index;
+		}
+	}
+
+	private static double[] rows(final XorShiftRandom random) {
+
+		final double[] z = new double[9*LENGTH];
+		for(int i = 0; i < z.length; i++) {
+			z[i] = 2 * random.nextDouble() - 1;
+		}
+
+		return z;
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.allOrientationValid;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrix;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.realRoots;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.slcm;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.rSampleT;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.RTools.sampleT;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.nullSpace;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SampleValidator;
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SevenPointSolver;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.ArraysUtils;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the fused seven-point solver against the chain of the C version it replaces </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SevenPointSolverTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SevenPointSolverTest.class);
+
+	private static final int SAMPLES = 2000;
+
+	@Test
+	public void solveTest() {
+
+		final double[][] pairs = SyntheticPairs.generate(100, 100, 0.3, 5);
+		final int length = pairs.length;
+
+		final double[] u = serialize(pairs);
+		final double[] p = linearise(u, length);
+
+		final XorShiftRandom random = new XorShiftRandom(11);
+		final int[] sample = new int[7];
+		final double[] a = new double[81], a7 = new double[63];
+		final double[][] expected = new double[3][9], actual = new double[3][9];
+		final Chain chain = new Chain();
+
+		int solutions = 0;
+
+		for(int s = 0; s < SAMPLES; s++) {
+
+			for(int i = 0; i < 7; i++) {
+				sample[i] = random.nextInt(length);
+			}
+
+			sampleT(p, 9, sample, 7, length, a);
+			sampleT(p, 9, sample, 7, length, a7);
+
+			final int n = chain.solve(a, expected);
+			Assert.assertEquals(n, SevenPointSolver.solve(a7, actual));
+
+			for(int i = 0; i < n; i++) {
+
+				// operation by operation the same
+				Assert.assertArrayEquals(expected[i], actual[i], 0d);
+				Assert.assertEquals(allOrientationValid(expected[i], u, sample, 0, 7, new double[3]), SampleValidator.allOrientationValid(actual[i], u, sample, 0, 7));
+
+				// epipolar constraint of the sample
+				for(int j = 0; j < 7; j++) {
+					Assert.assertEquals(0d, epipolar(actual[i], u, sample[j]), 1e-6);
+				}
+			}
+
+			solutions += n;
+		}
+
+		Assert.assertTrue(solutions >= SAMPLES);
+	}
+
+	@Test
+	public void degenerateSampleTest() {
+
+		final double[][] pairs = SyntheticPairs.generate(20, 0, 0.3, 5);
+		final double[] u = serialize(pairs);
+		final double[] p = linearise(u, pairs.length);
+
+		// 2 pairs repeated: rank of the system is 5
+		final double[] a = new double[63];
+		sampleT(p, 9, new int[] { 0, 1, 2, 3, 4, 0, 1 }, 7, pairs.length, a);
+
+		Assert.assertEquals(0, SevenPointSolver.solve(a, new double[3][9]));
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void smallBufferTest() {
+		SevenPointSolver.solve(new double[63], new double[2][9]);
+	}
+
+	/**
+	 * Logs the time of a sample (sampling, null space, cubic, hypotheses and their orientation) of the chain and of the fused solver
+	 */
+	@Test(enabled=false)
+	public void solverBenchmark() {
+
+		final double[][] pairs = SyntheticPairs.generate(300, 700, 0.3, 5);
+		final int length = pairs.length;
+
+		final double[] u = serialize(pairs);
+		final double[] p = linearise(u, length);
+
+		final int[] pool = new int[length];
+
+		final double[] a = new double[81], a7 = new double[63];
+		final double[][] fs = new double[3][9];
+		final double[] ec = new double[3];
+		final Chain chain = new Chain();
+
+		final int samples = 1000000;
+
+		for(int round = 0; round < 5; round++) { // first rounds warm up the JIT
+
+			final XorShiftRandom random = new XorShiftRandom(round);
+			int valid = 0;
+
+			resetPool(pool);
+
+			long time = System.nanoTime();
+			for(int s = 0; s < samples; s++) {
+
+				rSampleT(p, 9, pool, 7, length, a, random);
+				final int n = chain.solve(a, fs);
+
+				for(int i = 0; i < n; i++) {
+					if(allOrientationValid(fs[i], u, pool, length-7, 7, ec)) valid++;
+				}
+			}
+			final long chainTime = System.nanoTime() - time;
+
+			random.setSeed(round);
+			resetPool(pool);
+
+			time = System.nanoTime();
+			for(int s = 0; s < samples; s++) {
+
+				rSampleT(p, 9, pool, 7, length, a7, random);
+				final int n = SevenPointSolver.solve(a7, fs);
+
+				for(int i = 0; i < n; i++) {
+					if(SampleValidator.allOrientationValid(fs[i], u, pool, length-7, 7)) valid--;
+				}
+			}
+			final long solverTime = System.nanoTime() - time;
+
+			logger.info("round {}: chain {} ns/sample, fused solver {} ns/sample (valid hypotheses difference: {})", round,
+					chainTime / samples, solverTime / samples, valid);
+		}
+	}
+
+	/**
+	 * Chain of the C version, as used by the main loop before the fused solver
+	 */
+	private static final class Chain {
+
+		private final double[] f1 = new double[81];
+		private final double[] f2 = new double[9];
+		private final double[] poly = new double[4];
+		private final double[] roots = new double[3];
+		private final int[] buffer = new int[18];
+
+		private int solve(final double[] a, final double[][] fs) {
+
+			for(int i = 7*9; i < 9*9; i++) {
+				a[i] = 0d;
+			}
+
+			if(nullSpace(a, f1, 9, buffer) != 2) {
+				return 0;
+			}
+
+			System.arraycopy(f1, 9, f2, 0, 9);
+			slcm(f1, f2, poly);
+			ArraysUtils.copySubArray(f1, f2, 9);
+
+			final int n = realRoots(poly, roots);
+
+			for(int i = 0; i < n; i++) {
+				for(int j = 0; j < 9; j++) {
+					fs[i][j] = f1[j] * roots[i] + f2[j] * (1 - roots[i]);
+				}
+			}
+
+			return n;
+		}
+	}
+
+	private static double epipolar(final double[] f, final double[] u, final int i) {
+
+		final double x1 = u[6*i], y1 = u[6*i + 1], x2 = u[6*i + 3], y2 = u[6*i + 4];
+
+		double norm = 0;
+		for(int j = 0; j < 9; j++) {
+			norm += f[j]*f[j];
+		}
+
+		final double r = x2*(f[0]*x1 + f[1]*y1 + f[2]) + y2*(f[3]*x1 + f[4]*y1 + f[5]) + (f[6]*x1 + f[7]*y1 + f[8]);
+		return r / Math.sqrt(norm) / (Math.abs(x1) + Math.abs(y1) + 1) / (Math.abs(x2) + Math.abs(y2) + 1);
+	}
+
+	private static void resetPool(final int[] pool) {
+
+		for(int i = 0; i < pool.length; i++) {
+			pool[i] = i;
+		}
+	}
+
+	private static double[] serialize(final double[][] pairs) {
+
+		final double[] u = new double[6*pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+
+		return u;
+	}
+
+	private static double[] linearise(final double[] u, final int length) {
+
+		final int[] indices = new int[length];
+		for(int i = 0; i < length; i++) {
+			indices[i] = i;
+		}
+
+		final double[] p = new double[9*length];
+		lineariseFundamentalMatrix(u, p, indices, length);
+
+		return p;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SignatureSet;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the primitive signature set against {@link HashSet} of the same signatures </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SignatureSetTest {
+
+	/**
+	 * Signatures drawn from a small range (repeated ones), including 0 and the negative ones; the set grows and is reused after clearing
+	 */
+	@Test
+	public void addTest() {
+
+		final XorShiftRandom random = new XorShiftRandom(3);
+		final SignatureSet signatures = new SignatureSet();
+
+		for(int run = 0; run < 10; run++) {
+
+			final Set<Long> expected = new HashSet<>();
+			signatures.clear();
+
+			for(int i = 0; i < 50*(run + 1); i++) {
+
+				final long signature = random.nextInt(100*(run + 1)) - 50*(run + 1);
+				Assert.assertEquals("signature " + signature, expected.add(signature), signatures.add(signature));
+			}
+
+			Assert.assertEquals(expected.size(), signatures.size());
+		}
+	}
+}
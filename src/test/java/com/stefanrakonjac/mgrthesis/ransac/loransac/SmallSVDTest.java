@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrix;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.MathUtils.svduv;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SmallSVD;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the small singular value decomposition against {@code svduv} of the C version and the commons-math one </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SmallSVDTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SmallSVDTest.class);
+
+	private static final int SAMPLES = 1000;
+
+	/**
+	 * 8-point samples of the synthetic pairs, the null vector of {@code svduv} (as used by {@code u2f}). Samples of the inliers 
+	 * only are (nearly) of rank 7, any vector of the null space is fine then, not compared with the one of {@code svduv}.
+	 */
+	@Test
+	public void eightRowsTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(100, 100, 0.3, 5));
+		final XorShiftRandom random = new XorShiftRandom(3);
+
+		final int[] sample = new int[8];
+		final double[] z = new double[72], a = new double[72], expected = new double[9], actual = new double[9];
+		int compared = 0;
+
+		for(int s = 0; s < SAMPLES; s++) {
+
+			for(int i = 0; i < 8; i++) {
+				sample[i] = random.nextInt(200);
+			}
+
+			lineariseFundamentalMatrix(u, z, sample, 8);
+			System.arraycopy(z, 0, a, 0, 72);
+
+			final double gap = svd(z, expected);
+			Assert.assertEquals(0d, SmallSVD.smallestSingularPair(a, 8, actual), 0d);
+
+			lineariseFundamentalMatrix(u, z, sample, 8);
+			Assert.assertEquals(0d, residual(z, 8, actual), 1e-15 * norm(z));
+			
+			if(gap > 1e-6) {
+				Assert.assertEquals(1d, Math.abs(dot(expected, actual)), 1e-8);
+				compared++;
+			}
+		}
+		
+		Assert.assertTrue("compared: " + compared, compared > SAMPLES / 4);
+	}
+
+	/**
+	 * Random 9 x 9 matrices, the smallest singular value and its vector of commons-math
+	 */
+	@Test
+	public void nineRowsTest() {
+
+		final XorShiftRandom random = new XorShiftRandom(4);
+		final double[] a = new double[81], v = new double[9];
+		final double[][] matrix = new double[9][9];
+
+		for(int s = 0; s < SAMPLES; s++) {
+
+			for(int k = 0; k < 9; k++) {
+				for(int i = 0; i < 9; i++) {
+					matrix[i][k] = a[9*k + i] = 2 * random.nextDouble() - 1;
+				}
+			}
+
+			final SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(matrix, false));
+			final double[] expected = svd.getV().getColumn(8);
+
+			final double sigma = SmallSVD.smallestSingularPair(a, 9, v);
+
+			Assert.assertEquals(svd.getSingularValues()[8], sigma, 1e-12);
+			Assert.assertEquals(1d, Math.abs(dot(expected, v)), 1e-8);
+		}
+	}
+
+	/**
+	 * Fewer rows and rank deficient systems (repeated pairs): some of the null vectors
+	 */
+	@Test
+	public void rankDeficientTest() {
+
+		final double[] u = serialize(SyntheticPairs.generate(50, 0, 0.3, 6));
+		final double[] z = new double[81], a = new double[81], v = new double[9];
+
+		for(int rows = 0; rows <= 9; rows++) {
+
+			final int[] sample = new int[rows];
+			for(int i = 0; i < rows; i++) {
+				sample[i] = i < 5 ? i : i - 5; // repeated from the 6th one
+			}
+
+			lineariseFundamentalMatrix(u, z, sample, rows);
+			System.arraycopy(z, 0, a, 0, 9*rows);
+
+			Assert.assertEquals(0d, SmallSVD.smallestSingularPair(a, rows, v), 1e-12 * (1 + norm(z)));
+			Assert.assertEquals(1d, Math.sqrt(dot(v, v)), 1e-14);
+			Assert.assertEquals(0d, residual(z, rows, v), 1e-10 * (1 + norm(z)));
+		}
+	}
+
+	/**
+	 * Random 3 x 3 matrices made rank 2, the projection {@code U diag(s_1, s_2, 0) V^T} of commons-math
+	 */
+	@Test
+	public void closestRank2Test() {
+
+		final XorShiftRandom random = new XorShiftRandom(6);
+		final double[] f = new double[9], buffer = new double[18];
+		final double[][] matrix = new double[3][3];
+
+		for(int s = 0; s < SAMPLES; s++) {
+
+			for(int i = 0; i < 3; i++) {
+				for(int j = 0; j < 3; j++) {
+					matrix[i][j] = f[3*i + j] = 2 * random.nextDouble() - 1;
+				}
+			}
+
+			final SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(matrix));
+			final double[] singularValues = svd.getSingularValues();
+			final double[][] expected = svd.getU().multiply(new Array2DRowRealMatrix(new double[][] { 
+					{ singularValues[0], 0, 0 }, { 0, singularValues[1], 0 }, { 0, 0, 0 } })).multiply(svd.getVT()).getData();
+
+			SmallSVD.closestRank2(f, buffer);
+
+			for(int i = 0; i < 3; i++) {
+				for(int j = 0; j < 3; j++) {
+					Assert.assertEquals("sample " + s, expected[i][j], f[3*i + j], 1e-12);
+				}
+			}
+
+			// rank 2: the determinant vanishes
+			final double det = f[0]*(f[4]*f[8] - f[5]*f[7]) - f[1]*(f[3]*f[8] - f[5]*f[6]) + f[2]*(f[3]*f[7] - f[4]*f[6]);
+			Assert.assertEquals(0d, det, 1e-14);
+		}
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void tooManyRowsTest() {
+		SmallSVD.smallestSingularPair(new double[90], 10, new double[9]);
+	}
+
+	/**
+	 * Logs the time of the 8-point fit: {@code svduv} and the column of {@code U}, and the small decomposition
+	 */
+	@Test(enabled=false)
+	public void svdBenchmark() {
+
+		final double[] u = serialize(SyntheticPairs.generate(300, 700, 0.3, 5));
+		final XorShiftRandom random = new XorShiftRandom(7);
+
+		final int[] sample = new int[8];
+		final double[] z = new double[72], f = new double[9];
+		final int samples = 1000000;
+		double sink = 0;
+
+		for(int round = 0; round < 5; round++) { // first rounds warm up the JIT
+
+			long time = System.nanoTime();
+			for(int s = 0; s < samples; s++) {
+
+				for(int i = 0; i < 8; i++) {
+					sample[i] = random.nextInt(1000);
+				}
+
+				lineariseFundamentalMatrix(u, z, sample, 8);
+				svd(z, f);
+				sink += f[s % 9];
+			}
+			final long svduvTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for(int s = 0; s < samples; s++) {
+
+				for(int i = 0; i < 8; i++) {
+					sample[i] = random.nextInt(1000);
+				}
+
+				lineariseFundamentalMatrix(u, z, sample, 8);
+				SmallSVD.smallestSingularPair(z, 8, f);
+				sink += f[s % 9];
+			}
+			final long smallTime = System.nanoTime() - time;
+
+			logger.info("round {}: svduv {} ns, small SVD {} ns ({})", round, svduvTime / samples, smallTime / samples, sink);
+		}
+	}
+
+	/**
+	 * {@code svduv} as called by {@code u2f} before the small decomposition
+	 * 
+	 * @return
+	 * 		Returns the smallest non-zero singular value relatively to the largest one
+	 */
+	private static double svd(final double[] z, final double[] f) {
+
+		final double[] v = new double[81], U = new double[64], d = new double[9];
+		svduv(d, z, v, 9, U, 8);
+
+		for(int i = 0; i < 9; i++) {
+			f[i] = v[9*i + 8];
+		}
+		
+		double min = Double.POSITIVE_INFINITY, max = 0;
+		for(int i = 0; i < 8; i++) {
+			min = Math.min(min, d[i]);
+			max = Math.max(max, d[i]);
+		}
+		
+		return min / max;
+	}
+
+	/**
+	 * @return
+	 * 		Returns norm of {@code A v}, the matrix stored by the columns
+	 */
+	private static double residual(final double[] a, final int rows, final double[] v) {
+
+		double norm = 0;
+		for(int i = 0; i < rows; i++) {
+
+			double r = 0;
+			for(int k = 0; k < 9; k++) {
+				r += a[k*rows + i] * v[k];
+			}
+			norm += r*r;
+		}
+
+		return Math.sqrt(norm);
+	}
+
+	private static double norm(final double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	private static double dot(final double[] a, final double[] b) {
+
+		double dot = 0;
+		for(int i = 0; i < Math.min(a.length, b.length); i++) {
+			dot += a[i] * b[i];
+		}
+
+		return dot;
+	}
+
+	private static double[] serialize(final double[][] pairs) {
+
+		final double[] u = new double[6*pairs.length];
+		for(int i = 0; i < pairs.length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+		}
+
+		return u;
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ *
+ */
+package com.stefanrakonjac.mgrthesis.ransac.loransac;
+
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.FTools.lineariseFundamentalMatrixN;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.LapWrapper.lapackEigen;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.covMat;
+import static com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.UTools.normu;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.stefanrakonjac.mgrthesis.ransac.impl.loransac.utils.SymmetricEigen;
+import com.stefanrakonjac.mgrthesis.ransac.util.SyntheticPairs;
+import com.stefanrakonjac.mgrthesis.ransac.utils.XorShiftRandom;
+
+/**
+ * <p> Checks the smallest eigenpair of the Jacobi solver against the commons-math decomposition it replaces </p>
+ *
+ * @author Stefan.Rakonjac
+ *
+ */
+public class SymmetricEigenTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SymmetricEigenTest.class);
+
+	private static final int MATRICES = 500;
+
+	@Test
+	public void randomScatterTest() {
+
+		final XorShiftRandom random = new XorShiftRandom(3);
+		final double[] z = new double[9*20];
+
+		for(int m = 0; m < MATRICES; m++) {
+
+			// rows of very different magnitudes, as of the non-normalized correspondences
+			for(int i = 0; i < z.length; i++) {
+				z[i] = (random.nextDouble() - 0.5) * Math.pow(10, (i % 9) / 3);
+			}
+
+			final double[] cov = new double[81];
+			covMat(cov, z, 20, 9);
+
+			check(cov);
+		}
+	}
+
+	@Test
+	public void fundamentalScatterTest() {
+
+		for(int m = 0; m < 50; m++) {
+
+			// noise-free inliers only (even) have the smallest eigenvalue (nearly) zero, the noisy ones with outliers (odd) close eigenvalues
+			check(scatter(SyntheticPairs.generate(10 + 3*m, m % 2 == 0 ? 0 : 2*m, m % 2 == 0 ? 0 : 0.5, m)));
+		}
+	}
+
+	@Test
+	public void diagonalTest() {
+
+		final double[] a = new double[81], v = new double[9];
+		for(int i = 0; i < 9; i++) {
+			a[10*i] = 9 - i == 4 ? -1 : 9 - i;
+		}
+
+		Assert.assertEquals(-1d, SymmetricEigen.smallestEigenpair(a, v, new double[81]), 0d);
+		Assert.assertArrayEquals(new double[] { 0, 0, 0, 0, 0, 1, 0, 0, 0 }, v, 0d);
+	}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void smallBufferTest() {
+		SymmetricEigen.smallestEigenpair(new double[81], new double[9], new double[72]);
+	}
+
+	/**
+	 * Logs the time of the smallest eigenpair of the fundamental matrix scatter matrices, commons-math and the solver: of the inliers
+	 * (as of the local optimization, solved by the inverse iteration) and of the inliers and outliers (close eigenvalues, Jacobi)
+	 */
+	@Test(enabled=false)
+	public void eigenBenchmark() {
+
+		final double[][] covs = { scatter(SyntheticPairs.generate(300, 0, 0.5, 5)), scatter(SyntheticPairs.generate(300, 100, 0.5, 5)) };
+		final double[] a = new double[81], d = new double[9], v = new double[9], buffer = new double[81];
+
+		final int runs = 200000;
+		double sink = 0;
+
+		for(int round = 0; round < 5; round++) { // first rounds warm up the JIT
+			for(int c = 0; c < covs.length; c++) {
+
+				long time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+
+					System.arraycopy(covs[c], 0, a, 0, 81);
+					lapackEigen(a, d, 9);
+					sink += d[r % 9];
+				}
+				final long commonsTime = System.nanoTime() - time;
+
+				time = System.nanoTime();
+				for(int r = 0; r < runs; r++) {
+
+					System.arraycopy(covs[c], 0, a, 0, 81);
+					sink += SymmetricEigen.smallestEigenpair(a, v, buffer);
+				}
+				final long solverTime = System.nanoTime() - time;
+
+				logger.info("round {}, {}: commons-math {} ns, solver {} ns ({})", round, c == 0 ? "inliers" : "outliers",
+						commonsTime / runs, solverTime / runs, sink);
+			}
+		}
+	}
+
+	/**
+	 * Scatter matrix of the normalized fundamental matrix equations of the pairs
+	 */
+	private static double[] scatter(final double[][] pairs) {
+
+		final int length = pairs.length;
+		final double[] u = new double[6*length], z = new double[9*length];
+		final int[] indices = new int[length];
+
+		for(int i = 0; i < length; i++) {
+			u[6*i] = pairs[i][0];
+			u[6*i + 1] = pairs[i][1];
+			u[6*i + 2] = 1;
+			u[6*i + 3] = pairs[i][2];
+			u[6*i + 4] = pairs[i][3];
+			u[6*i + 5] = 1;
+			indices[i] = i;
+		}
+
+		final double[] a1 = new double[3], a2 = new double[3];
+		normu(u, indices, length, a1, a2);
+		lineariseFundamentalMatrixN(u, z, indices, length, a1, a2);
+
+		final double[] cov = new double[81];
+		covMat(cov, z, length, 9);
+
+		return cov;
+	}
+
+	/**
+	 * Smallest eigenvalue equal relatively to the largest one, eigenvector equal up to the sign (and orthogonal to the rest
+	 * of the eigenvectors) and satisfying A v = l v
+	 */
+	private static void check(final double[] cov) {
+
+		final double[] a = cov.clone(), d = new double[9];
+		lapackEigen(a, d, 9);
+
+		int p = 0, q = 0;
+		for(int i = 1; i < 9; i++) {
+			if(d[i] < d[p]) p = i;
+			if(d[i] > d[q]) q = i;
+		}
+
+		final double[] v = new double[9];
+		final double l = SymmetricEigen.smallestEigenpair(cov.clone(), v, new double[81]);
+
+		final double scale = Math.abs(d[q]);
+		Assert.assertEquals(d[p], l, 1e-12 * scale);
+
+		// second smallest eigenvalue: the eigenvector is well defined only if separated
+		double second = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < 9; i++) {
+			if(i != p && d[i] < second) second = d[i];
+		}
+
+		double dot = 0, norm = 0;
+		for(int i = 0; i < 9; i++) {
+			dot += v[i] * a[p + 9*i];
+			norm += v[i] * v[i];
+		}
+
+		Assert.assertEquals(1d, norm, 1e-12);
+		Assert.assertEquals(1d, Math.abs(dot), 1e-12 * scale / (second - d[p]) + 1e-12);
+
+		for(int i = 0; i < 9; i++) {
+
+			double av = 0;
+			for(int j = 0; j < 9; j++) {
+				av += cov[9*i + j] * v[j];
+			}
+
+			Assert.assertEquals(l * v[i], av, 1e-12 * scale);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * 
+ */
+package com.stefanrakonjac.mgrthesis.ransac.util;
+
+import java.util.Random;
+
+/**
+ * <p> Generates tentative pairs of two synthetic views of a random scene, so that the tests do not depend on the image data. </p>
+ * 
+ * <p> Inliers are projections of random 3D points into two pinhole cameras (the second one being rotated and translated), 
+ * outliers are uniformly distributed over the images. Pairs are shuffled. </p>
+ * 
+ * @author Stefan.Rakonjac
+ *
+ */
+public final class SyntheticPairs {
+	
+	private static final double FOCAL_LENGTH = 800;
+	private static final double IMAGE_SIZE = 1000;
+	
+	private SyntheticPairs() {
+		// no-op
+	}
+
+	/**
+	 * @param inliersCount
+	 * 		Number of pairs consistent with the two-view geometry
+	 * @param outliersCount
+	 * 		Number of random pairs
+	 * @param noise
+	 * 		Standard deviation of the gaussian noise added to the inliers coordinates (in pixels)
+	 * @param seed
+	 * 		Seed of the generator
+	 * @return
+	 * 		Returns array of {@code inliersCount + outliersCount} pairs in the {x1, y1, x2, y2} format
+	 */
+	public static double[][] generate(int inliersCount, int outliersCount, double noise, long seed) {
+		
+		final Random random = new Random(seed);
+		final double[][] pairs = new double[inliersCount + outliersCount][4];
+		
+		// second camera rotated about y axis and translated
+		final double cos = Math.cos(0.2), sin = Math.sin(0.2);
+		
+		for(int i = 0; i < inliersCount; i++) {
+			
+			final double x = random.nextDouble()*4 - 2, y = random.nextDouble()*4 - 2, z = 5 + random.nextDouble()*5;
+			final double x2 = cos*x + sin*z - 1.0, y2 = y + 0.1, z2 = -sin*x + cos*z + 0.3;
+			
+			pairs[i][0] = IMAGE_SIZE/2 + FOCAL_LENGTH*x/z + random.nextGaussian()*noise;
+			pairs[i][1] = IMAGE_SIZE/2 + FOCAL_LENGTH*y/z + random.nextGaussian()*noise;
+			pairs[i][2] = IMAGE_SIZE/2 + FOCAL_LENGTH*x2/z2 + random.nextGaussian()*noise;
+			pairs[i][3] = IMAGE_SIZE/2 + FOCAL_LENGTH*y2/z2 + random.nextGaussian()*noise;
+		}
+		
+		for(int i = inliersCount; i < pairs.length; i++) {
+			for(int j = 0; j < 4; j++) {
+				pairs[i][j] = random.nextDouble()*IMAGE_SIZE;
+			}
+		}
+		
+		for(int i = pairs.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final double[] pair = pairs[i];
+			pairs[i] = pairs[j];
+			pairs[j] = pair;
+		}
+		
+		return pairs;
+	}
+	
+	/**
+	 * @return
+	 * 		Returns calibration matrix of both the cameras of {@link #generate(int, int, double, long)}, stored by the rows
+	 */
+	public static double[] intrinsics() {
+		return new double[] { FOCAL_LENGTH, 0, IMAGE_SIZE/2, 0, FOCAL_LENGTH, IMAGE_SIZE/2, 0, 0, 1 };
+	}
+	
+	/**
+	 * @return
+	 * 		Returns essential matrix {@code [t]x R} of the cameras of {@link #generate(int, int, double, long)}, stored by the rows, unit Frobenius norm
+	 */
+	public static double[] essential() {
+		
+		final double cos = Math.cos(0.2), sin = Math.sin(0.2);
+		final double[] r = { cos, 0, sin, 0, 1, 0, -sin, 0, cos }, t = { -1.0, 0.1, 0.3 };
+		final double[] tx = { 0, -t[2], t[1], t[2], 0, -t[0], -t[1], t[0], 0 };
+		
+		final double[] e = new double[9];
+		double norm = 0;
+		
+		for(int i = 0; i < 3; i++) {
+			for(int j = 0; j < 3; j++) {
+				for(int k = 0; k < 3; k++) {
+					e[3*i + j] += tx[3*i + k] * r[3*k + j];
+				}
+				norm += e[3*i + j] * e[3*i + j];
+			}
+		}
+		
+		for(int i = 0; i < 9; i++) {
+			e[i] /= Math.sqrt(norm);
+		}
+		
+		return e;
+	}
+	
+	/**
+	 * <p> Same as {@link #generate(int, int, double, long)}, but the inliers are projections of the random points of a plane 
+	 * (a facade facing the first camera), so that they are related by a homography </p>
+	 * 
+	 * @param inliersCount
+	 * 		Number of pairs consistent with the homography
+	 * @param outliersCount
+	 * 		Number of random pairs
+	 * @param noise
+	 * 		Standard deviation of the gaussian noise added to the inliers coordinates (in pixels)
+	 * @param seed
+	 * 		Seed of the generator
+	 * @return
+	 * 		Returns array of {@code inliersCount + outliersCount} pairs in the {x1, y1, x2, y2} format
+	 */
+	public static double[][] generatePlanar(int inliersCount, int outliersCount, double noise, long seed) {
+		
+		final Random random = new Random(seed);
+		final double[][] pairs = new double[inliersCount + outliersCount][4];
+		
+		final double cos = Math.cos(0.2), sin = Math.sin(0.2);
+		
+		for(int i = 0; i < inliersCount; i++) {
+			
+			// plane z = 7 + 0.3x
+			final double x = random.nextDouble()*4 - 2, y = random.nextDouble()*4 - 2, z = 7 + 0.3*x;
+			final double x2 = cos*x + sin*z - 1.0, y2 = y + 0.1, z2 = -sin*x + cos*z + 0.3;
+			
+			pairs[i][0] = IMAGE_SIZE/2 + FOCAL_LENGTH*x/z + random.nextGaussian()*noise;
+			pairs[i][1] = IMAGE_SIZE/2 + FOCAL_LENGTH*y/z + random.nextGaussian()*noise;
+			pairs[i][2] = IMAGE_SIZE/2 + FOCAL_LENGTH*x2/z2 + random.nextGaussian()*noise;
+			pairs[i][3] = IMAGE_SIZE/2 + FOCAL_LENGTH*y2/z2 + random.nextGaussian()*noise;
+		}
+		
+		for(int i = inliersCount; i < pairs.length; i++) {
+			for(int j = 0; j < 4; j++) {
+				pairs[i][j] = random.nextDouble()*IMAGE_SIZE;
+			}
+		}
+		
+		for(int i = pairs.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final double[] pair = pairs[i];
+			pairs[i] = pairs[j];
+			pairs[j] = pair;
+		}
+		
+		return pairs;
+	}
+}